@@ -21,11 +21,14 @@ Keeping the ML scoring in a separate, tiny process allows:
 - INCLUDE_MODEL_HASH (bool-ish, optional): include a short model hash in responses
   for traceability. Accepts "1", "true", "yes" (case-insensitive). Defaults to false.
 - LOG_LEVEL (str, optional): logging level (e.g., "DEBUG", "INFO"). Defaults to "INFO".
+- MAX_BATCH_ITEMS (int, optional): largest accepted /predict_batch request. Defaults to 1024.
 
 # Endpoints
 - GET  /health  : readiness probe + model provenance snippet
 - GET  /healthz : legacy liveness probe (always returns {"status":"ok"})
 - POST /predict : score a single feature set (JSON body), return prediction & decision
+- POST /predict_batch : score many feature sets with one vectorized pipeline call;
+  results are returned in request order
 
 Example request body for /predict:
 {
@@ -76,6 +79,9 @@ DEFAULT_THRESHOLD_MB = float(os.getenv("DEFAULT_THRESHOLD_MB", "3500.0"))
 # (useful for A/B tests, incident forensics, reproducibility).
 INCLUDE_MODEL_HASH = os.getenv("INCLUDE_MODEL_HASH", "false").lower() in {"1", "true", "yes"}
 
+# Upper bound on documents per /predict_batch request (keeps one call's memory bounded).
+MAX_BATCH_ITEMS = int(os.getenv("MAX_BATCH_ITEMS", "1024"))
+
 # Basic logger. In k8s, prefer structured logging via sidecar/collector if needed.
 logger = logging.getLogger("sidecar")
 logging.basicConfig(level=os.getenv("LOG_LEVEL", "INFO"))
@@ -212,6 +218,18 @@ class ScoreRequest(BaseModel):
     features: PdfFeatures
     big_mem_threshold_mb: float | None = None
 
+class BatchScoreRequest(BaseModel):
+    """
+    Envelope for /predict_batch:
+
+    Attributes:
+        items: list[PdfFeatures] — documents to score; results keep this order.
+        big_mem_threshold_mb: Optional[float] — overrides the default decision threshold
+                             for every item.
+    """
+    items: list[PdfFeatures] = Field(max_length=MAX_BATCH_ITEMS)
+    big_mem_threshold_mb: float | None = None
+
 # ------------------------------------------------------------------------------
 # FastAPI app
 # ------------------------------------------------------------------------------
@@ -314,14 +332,39 @@ def predict(req: ScoreRequest):
 
     # Decide which path to route based on the threshold (request > env default)
     thr = req.big_mem_threshold_mb or DEFAULT_THRESHOLD_MB
-    decision = "ROUTE_BIG_MEMORY" if y >= thr else "STANDARD_PATH"
 
-    # Build response (optionally include model hash for traceability)
+    return _result(y, thr)
+
+def _result(y: float, thr: float) -> dict:
+    """
+    Build one response item (optionally including the model hash for traceability).
+    """
     resp = {
         "predicted_peak_mb": y,
-        "decision": decision,
+        "decision": "ROUTE_BIG_MEMORY" if y >= thr else "STANDARD_PATH",
         "threshold_mb": thr,
     }
     if INCLUDE_MODEL_HASH and MODEL_HASH:
         resp["model_hash"] = MODEL_HASH
     return resp
+
+@app.post("/predict_batch")
+def predict_batch(req: BatchScoreRequest):
+    """
+    Score many PDF feature sets with a single pipeline call.
+
+    All items are laid out as one `pandas.DataFrame` (one row per item), so the
+    pipeline's transformers and estimator run vectorized over the batch instead
+    of once per document. This is what the Java client's request coalescing
+    (`triage.batch.enabled`) calls.
+
+    Returns:
+        dict: { "results": [ {predicted_peak_mb, decision, threshold_mb[, model_hash]}, ... ] }
+              in the same order as `items`.
+    """
+    if not req.items:
+        return {"results": []}
+    df = pd.DataFrame([f.model_dump() for f in req.items])
+    ys = pipe.predict(df)
+    thr = req.big_mem_threshold_mb or DEFAULT_THRESHOLD_MB
+    return {"results": [_result(float(y), thr) for y in ys]}
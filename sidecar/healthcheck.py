@@ -0,0 +1,34 @@
+"""Exec probe for a sidecar that listens on a Unix domain socket (uvicorn --uds).
+
+HTTP probes cannot reach a socket file, so Kubernetes runs this instead:
+    python healthcheck.py /var/run/bds/sidecar.sock
+Exit status 0 when GET /health answers 200, 1 otherwise.
+"""
+import http.client
+import socket
+import sys
+
+
+class _UnixConnection(http.client.HTTPConnection):
+    def __init__(self, path: str, timeout: float):
+        super().__init__("localhost", timeout=timeout)
+        self._path = path
+
+    def connect(self):
+        self.sock = socket.socket(socket.AF_UNIX, socket.SOCK_STREAM)
+        self.sock.settimeout(self.timeout)
+        self.sock.connect(self._path)
+
+
+def main() -> int:
+    path = sys.argv[1] if len(sys.argv) > 1 else "/var/run/bds/sidecar.sock"
+    try:
+        conn = _UnixConnection(path, timeout=2.0)
+        conn.request("GET", "/health")
+        return 0 if conn.getresponse().status == 200 else 1
+    except OSError:
+        return 1
+
+
+if __name__ == "__main__":
+    sys.exit(main())
@@ -1,11 +1,18 @@
 package com.example.bds;
 
+import com.example.bds.ml.CircuitBreaker;
+import com.example.bds.ml.RequestHedger;
+import com.example.bds.ml.SidecarHttp;
+import com.example.bds.pdf.PdfFeatureExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
 
@@ -22,11 +29,17 @@ import java.time.Duration;
  * <ul>
  *   <li>Provide a {@link WebClient} configured with a base URL
  *       defined via external configuration (application.yaml).</li>
- *   <li>Configure a Reactor Netty {@link HttpClient} with
- *       a response timeout to avoid long-hanging requests.</li>
+ *   <li>Configure a Reactor Netty {@link HttpClient} on a dedicated,
+ *       bounded {@link ConnectionProvider} with connect/response
+ *       timeouts, optional h2c and an optional Unix domain socket
+ *       transport (see {@link SidecarHttp}).</li>
+ *   <li>Provide the {@link CircuitBreaker} and {@link RequestHedger} limits for sidecar
+ *       calls, and the client for the hedge endpoint.</li>
  *   <li>Expose the configured {@code WebClient} as a Spring
  *       bean so that it can be injected into services that
  *       communicate with the ML sidecar.</li>
+ *   <li>Provide the shared {@link PdfFeatureExtractor}, including its
+ *       dedicated worker pool for parallel page walks.</li>
  * </ul>
  *
  * <h2>Usage Example:</h2>
@@ -51,6 +64,61 @@ import java.time.Duration;
  */
 @Configuration
 public class DefaultConfiguration {
+    /**
+     * Creates the connection pool used only for the sidecar hop.
+     *
+     * <p>
+     * Pool occupancy is exported as {@code triage.http.pool.*} gauges.
+     * The pool is disposed with the context.
+     * </p>
+     *
+     * @param maxConnections        connections per address ({@code triage.http.max-connections})
+     * @param pendingAcquireMax     requests allowed to queue for a connection ({@code triage.http.pending-acquire-max})
+     * @param pendingAcquireTimeout longest queueing time ({@code triage.http.pending-acquire-timeout})
+     * @param maxIdleTime           idle eviction age ({@code triage.http.max-idle-time})
+     * @param maxLifeTime           connection recycle age ({@code triage.http.max-life-time})
+     * @param evictionInterval      background eviction period, {@code 0} to disable ({@code triage.http.eviction-interval})
+     * @param meterRegistry         registry for the pool gauges
+     * @return the pool
+     */
+    @Bean(destroyMethod = "dispose")
+    ConnectionProvider sidecarConnectionProvider(
+            @Value("${triage.http.max-connections:16}") int maxConnections,
+            @Value("${triage.http.pending-acquire-max:256}") int pendingAcquireMax,
+            @Value("${triage.http.pending-acquire-timeout:1s}") Duration pendingAcquireTimeout,
+            @Value("${triage.http.max-idle-time:30s}") Duration maxIdleTime,
+            @Value("${triage.http.max-life-time:5m}") Duration maxLifeTime,
+            @Value("${triage.http.eviction-interval:30s}") Duration evictionInterval,
+            MeterRegistry meterRegistry) {
+        return SidecarHttp.pool("triage", new SidecarHttp.PoolSettings(maxConnections, pendingAcquireMax,
+                pendingAcquireTimeout, maxIdleTime, maxLifeTime, evictionInterval), meterRegistry);
+    }
+
+    /**
+     * Limits of the circuit breaker around sidecar predictions.
+     *
+     * @param windowSize            calls in the sliding window ({@code triage.breaker.window-size})
+     * @param minimumCalls          calls recorded before rates count ({@code triage.breaker.minimum-calls})
+     * @param failureRateThreshold  failure percent that opens ({@code triage.breaker.failure-rate-threshold})
+     * @param slowCallDuration      slow-call cutoff ({@code triage.breaker.slow-call-duration})
+     * @param slowCallRateThreshold slow-call percent that opens ({@code triage.breaker.slow-call-rate-threshold})
+     * @param openDuration          time spent open before probing ({@code triage.breaker.open-duration})
+     * @param halfOpenCalls         probes while half-open ({@code triage.breaker.half-open-calls})
+     * @return the settings
+     */
+    @Bean
+    CircuitBreaker.Settings sidecarBreakerSettings(
+            @Value("${triage.breaker.window-size:50}") int windowSize,
+            @Value("${triage.breaker.minimum-calls:20}") int minimumCalls,
+            @Value("${triage.breaker.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${triage.breaker.slow-call-duration:500ms}") Duration slowCallDuration,
+            @Value("${triage.breaker.slow-call-rate-threshold:80}") double slowCallRateThreshold,
+            @Value("${triage.breaker.open-duration:10s}") Duration openDuration,
+            @Value("${triage.breaker.half-open-calls:5}") int halfOpenCalls) {
+        return new CircuitBreaker.Settings(windowSize, minimumCalls, failureRateThreshold,
+                slowCallDuration, slowCallRateThreshold, openDuration, halfOpenCalls);
+    }
+
     /**
      * Creates and configures a {@link WebClient} bean for communicating
      * with the PDF Memory Spike Predictor sidecar.
@@ -58,23 +126,135 @@ public class DefaultConfiguration {
      * <p>
      * The base URL for the sidecar is injected from the application’s
      * configuration properties (e.g., {@code application.yaml}) using
-     * the key {@code triage.base-url}. The underlying HTTP client is
-     * set up with a 2-second response timeout to fail fast on slow
-     * or unresponsive requests.
+     * the key {@code triage.base-url}. The underlying HTTP client runs
+     * on {@link #sidecarConnectionProvider}, fails fast on connect
+     * (default 250 ms) and on slow responses (default 2 s), and can
+     * speak h2c. When {@code triage.socket-path} is set, requests go
+     * over that Unix domain socket instead of TCP loopback; the base
+     * URL then only supplies the path and Host header. The Boot-managed builder contributes the shared JSON
+     * codecs and client request observations.
      * </p>
      *
-     * @param baseUrl the base URL of the ML sidecar service,
-     *                typically {@code http://127.0.0.1:8000}
-     *                when running as a sidecar in Kubernetes
+     * @param baseUrl         the base URL of the ML sidecar service,
+     *                        typically {@code http://127.0.0.1:8000}
+     *                        when running as a sidecar in Kubernetes
+     * @param protocol        {@code http11} or {@code h2c} ({@code triage.http.protocol})
+     * @param socketPath      sidecar's Unix domain socket, blank for TCP ({@code triage.socket-path})
+     * @param connectTimeout  connect timeout ({@code triage.http.connect-timeout})
+     * @param responseTimeout response timeout ({@code triage.http.response-timeout})
+     * @param maxInMemorySize largest buffered response body, e.g. a batch
+     *                        ({@code triage.http.max-in-memory-size})
+     * @param pool            the sidecar connection pool
+     * @param builder         Boot's {@link WebClient.Builder}
      * @return a configured {@link WebClient} instance ready to make
      *         requests to the sidecar service
      */
     @Bean
-    WebClient memoryScoreWebClient(@Value("${triage.base-url}") String baseUrl) {
-        var http = HttpClient.create().responseTimeout(Duration.ofSeconds(2));
-        return WebClient.builder()
+    WebClient memoryScoreWebClient(
+            @Value("${triage.base-url}") String baseUrl,
+            @Value("${triage.http.protocol:http11}") String protocol,
+            @Value("${triage.socket-path:}") String socketPath,
+            @Value("${triage.http.connect-timeout:250ms}") Duration connectTimeout,
+            @Value("${triage.http.response-timeout:2s}") Duration responseTimeout,
+            @Value("${triage.http.max-in-memory-size:2MB}") DataSize maxInMemorySize,
+            ConnectionProvider pool,
+            WebClient.Builder builder) {
+        HttpClient http = SidecarHttp.client(pool, protocol, socketPath, connectTimeout, responseTimeout);
+        return sidecarClient(builder, baseUrl, http, maxInMemorySize);
+    }
+
+    /**
+     * Creates the {@link WebClient} that hedged sidecar calls go to.
+     *
+     * <p>
+     * With {@code triage.hedge.base-url} set (e.g. another replica's
+     * Service), backup calls go there over TCP on the same pool, which
+     * keeps a separate set of connections per address. Left blank, the
+     * backup is sent to the primary endpoint and transport, which still
+     * helps when a single slow request (not the whole sidecar) is the
+     * cause.
+     * </p>
+     *
+     * @param hedgeBaseUrl    alternate sidecar URL, blank for the primary ({@code triage.hedge.base-url})
+     * @param baseUrl         primary sidecar URL ({@code triage.base-url})
+     * @param protocol        {@code http11} or {@code h2c} ({@code triage.http.protocol})
+     * @param socketPath      primary's Unix domain socket, used only without a hedge URL
+     * @param connectTimeout  connect timeout ({@code triage.http.connect-timeout})
+     * @param responseTimeout response timeout ({@code triage.http.response-timeout})
+     * @param maxInMemorySize largest buffered response body ({@code triage.http.max-in-memory-size})
+     * @param pool            the sidecar connection pool
+     * @param builder         Boot's {@link WebClient.Builder}
+     * @return the hedge client
+     */
+    @Bean
+    WebClient sidecarHedgeWebClient(
+            @Value("${triage.hedge.base-url:}") String hedgeBaseUrl,
+            @Value("${triage.base-url}") String baseUrl,
+            @Value("${triage.http.protocol:http11}") String protocol,
+            @Value("${triage.socket-path:}") String socketPath,
+            @Value("${triage.http.connect-timeout:250ms}") Duration connectTimeout,
+            @Value("${triage.http.response-timeout:2s}") Duration responseTimeout,
+            @Value("${triage.http.max-in-memory-size:2MB}") DataSize maxInMemorySize,
+            ConnectionProvider pool,
+            WebClient.Builder builder) {
+        boolean alternate = !hedgeBaseUrl.isBlank();
+        HttpClient http = SidecarHttp.client(pool, protocol, alternate ? null : socketPath,
+                connectTimeout, responseTimeout);
+        return sidecarClient(builder, alternate ? hedgeBaseUrl : baseUrl, http, maxInMemorySize);
+    }
+
+    /**
+     * Limits of request hedging for sidecar predictions.
+     *
+     * @param percentile    latency percentile that triggers a hedge ({@code triage.hedge.percentile})
+     * @param minDelay      lower bound of the hedge delay ({@code triage.hedge.min-delay})
+     * @param budgetPercent share of calls that may be hedged ({@code triage.hedge.budget-percent})
+     * @param window        recent latencies kept ({@code triage.hedge.window})
+     * @param minSamples    latencies needed before hedging ({@code triage.hedge.min-samples})
+     * @return the settings
+     */
+    @Bean
+    RequestHedger.Settings sidecarHedgeSettings(
+            @Value("${triage.hedge.percentile:95}") double percentile,
+            @Value("${triage.hedge.min-delay:10ms}") Duration minDelay,
+            @Value("${triage.hedge.budget-percent:5}") double budgetPercent,
+            @Value("${triage.hedge.window:1000}") int window,
+            @Value("${triage.hedge.min-samples:100}") int minSamples) {
+        return new RequestHedger.Settings(percentile, minDelay, budgetPercent, window, minSamples);
+    }
+
+    private static WebClient sidecarClient(WebClient.Builder builder, String baseUrl, HttpClient http,
+                                           DataSize maxInMemorySize) {
+        return builder
                 .baseUrl(baseUrl)
                 .clientConnector(new ReactorClientHttpConnector(http))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(Math.toIntExact(maxInMemorySize.toBytes())))
                 .build();
     }
+
+    /**
+     * Creates the shared {@link PdfFeatureExtractor}.
+     *
+     * <p>
+     * Large documents whose page-model walk cannot be skipped by the quick
+     * scanner are split into page ranges and walked on a dedicated
+     * {@link java.util.concurrent.ForkJoinPool}, kept separate from the
+     * common pool and from Reactor's schedulers. The pool is shut down with
+     * the context via {@link PdfFeatureExtractor#close()}.
+     * </p>
+     *
+     * @param quickScan              try the COS-level quick scanner first ({@code bds.extract.quick-scan})
+     * @param poolSize               worker threads; {@code <= 1} disables parallelism ({@code bds.extract.pool-size})
+     * @param parallelThresholdPages minimum pages for a parallel walk ({@code bds.extract.parallel-threshold-pages})
+     * @param maxParallelism         maximum page ranges per document ({@code bds.extract.max-parallelism})
+     * @return the extractor
+     */
+    @Bean(destroyMethod = "close")
+    PdfFeatureExtractor pdfFeatureExtractor(
+            @Value("${bds.extract.quick-scan:true}") boolean quickScan,
+            @Value("${bds.extract.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int poolSize,
+            @Value("${bds.extract.parallel-threshold-pages:200}") int parallelThresholdPages,
+            @Value("${bds.extract.max-parallelism:4}") int maxParallelism) {
+        return new PdfFeatureExtractor(quickScan, poolSize, parallelThresholdPages, maxParallelism);
+    }
 }
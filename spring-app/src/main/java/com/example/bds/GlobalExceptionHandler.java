@@ -1,10 +1,12 @@
 package com.example.bds;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -15,6 +17,21 @@ public class GlobalExceptionHandler {
                 .body(Map.of("error", ex.getMessage()));
     }
 
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String,Object>> overloaded(RejectedExecutionException ex) {
+        // A bounded work queue is full; the client should retry later
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("error", "Server busy, retry later"));
+    }
+
+    @ExceptionHandler(MemoryBudget.RejectedException.class)
+    public ResponseEntity<Map<String,Object>> overBudget(MemoryBudget.RejectedException ex) {
+        // Shed at once when too many uploads already wait for memory, else timed out waiting
+        return ResponseEntity.status(ex.queueFull() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String,Object>> unprocessable(Exception ex) {
         // Don’t leak internals in prod; log it and return a generic message
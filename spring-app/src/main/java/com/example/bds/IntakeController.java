@@ -4,12 +4,16 @@ package com.example.bds;
 import com.example.bds.dto.PdfFeatures;
 import com.example.bds.dto.RouteDecision;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,14 +31,23 @@ import java.util.Map;
  *   <li>Accept {@link PdfFeatures} JSON payloads describing an uploaded PDF.</li>
  *   <li>Invoke the {@link MemorySpikeService} to obtain a {@link RouteDecision}.</li>
  *   <li>Return the decision to the client as a reactive {@link Mono}.</li>
+ *   <li>Route whole batches in one request, for high-rate upstream ingestion.</li>
  * </ul>
  *
- * <h2>Endpoint:</h2>
+ * <h2>Endpoints:</h2>
  * <ul>
  *   <li><b>POST /v1/intake/route</b></li>
  *   <li><b>Consumes:</b> {@code application/json}</li>
  *   <li><b>Produces:</b> {@code application/json}</li>
  * </ul>
+ * <ul>
+ *   <li><b>POST /v1/intake/route:batch</b> — a JSON array of feature objects, or one object per
+ *       line ({@code application/x-ndjson}); responds with a JSON array of decisions in input
+ *       order. Batches larger than {@code bds.batch.max-size} (default 10000) are rejected with
+ *       400. See {@link MemorySpikeService#predictBatch}.</li>
+ *   <li><b>Consumes:</b> {@code application/json}, {@code application/x-ndjson}</li>
+ *   <li><b>Produces:</b> {@code application/json}</li>
+ * </ul>
  *
  * <h2>Example Request:</h2>
  * <pre>{@code
@@ -68,13 +81,28 @@ import java.util.Map;
 public class IntakeController {
     private final MemorySpikeService service;
 
+    /** Largest accepted batch (property {@code bds.batch.max-size}). */
+    private final int maxBatchSize;
+
+    /** Concurrent sidecar calls per batch (property {@code bds.batch.sidecar-concurrency}). */
+    private final int sidecarConcurrency;
+
     /**
      * Creates a new {@code IntakeController}.
      *
-     * @param service the {@link MemorySpikeService} used to evaluate
-     *                PDF features and produce routing decisions
+     * @param service            the {@link MemorySpikeService} used to evaluate
+     *                           PDF features and produce routing decisions
+     * @param maxBatchSize       largest accepted batch (property {@code bds.batch.max-size})
+     * @param sidecarConcurrency concurrent sidecar calls per batch
+     *                           (property {@code bds.batch.sidecar-concurrency})
      */
-    public IntakeController(MemorySpikeService service) { this.service = service; }
+    public IntakeController(MemorySpikeService service,
+                            @Value("${bds.batch.max-size:10000}") int maxBatchSize,
+                            @Value("${bds.batch.sidecar-concurrency:16}") int sidecarConcurrency) {
+        this.service = service;
+        this.maxBatchSize = maxBatchSize;
+        this.sidecarConcurrency = sidecarConcurrency;
+    }
 
     /**
      * Analyzes the given PDF features and determines the routing
@@ -106,6 +134,32 @@ public class IntakeController {
                 });
     }
 
+    /**
+     * Routes a batch of documents in one request.
+     *
+     * <p>
+     * The body is decoded element by element (JSON array or NDJSON) and collected, up to
+     * {@code bds.batch.max-size} documents, before scoring; decisions are returned in input order.
+     * </p>
+     *
+     * @param features the features of the PDFs being analyzed
+     * @return a {@link Mono} that emits one decision per input document
+     * @throws IllegalArgumentException (as an error signal) if the batch exceeds the size limit
+     */
+    @PostMapping(path = "/route:batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<List<RouteDecision>> routeBatch(@RequestBody Flux<PdfFeatures> features) {
+        long t0 = System.nanoTime();
+        return features.take(maxBatchSize + 1L)
+                .collectList()
+                .flatMap(batch -> batch.size() > maxBatchSize
+                        ? Mono.error(new IllegalArgumentException("Batch exceeds " + maxBatchSize + " documents"))
+                        : service.predictBatch(batch, sidecarConcurrency))
+                .doOnNext(decisions -> log.info("memSpike batch decision: size={}, latency_ms={}",
+                        decisions.size(), (System.nanoTime() - t0) / 1_000_000));
+    }
+
     // tiny helper for kv logging
     private Map<String,Object> kv(String k, Object v) {
         return Map.of(k, v);
@@ -0,0 +1,302 @@
+package com.example.bds;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Pod-wide memory budget that uploads reserve from before their memory-heavy phases, so a burst
+ * of large PDFs queues or is shed instead of running the pod out of memory.
+ *
+ * <h2>Reservations</h2>
+ * {@link UploadController} reserves {@code bds.max-bytes} around feature extraction (the upload
+ * size is what PDFBox parses) and the routing prediction's {@code predicted_peak_mb} around the
+ * measured workload ({@code bds.workload.heap-per-job} when there is no prediction). The two are
+ * taken one after the other, never held together, so a request cannot deadlock against itself.
+ * A reservation larger than the whole budget is cut down to the budget: such a document runs
+ * alone rather than never.
+ *
+ * <h2>Queueing &amp; shedding</h2>
+ * A reservation that does not fit waits in a FIFO queue; releases admit waiters from the head
+ * while they fit, so a large reservation is not starved by a stream of small ones. Requests are
+ * refused with {@link RejectedException}:
+ * <ul>
+ *   <li>at once when {@code bds.admission.max-queue} reservations are already waiting
+ *       (mapped to 429);</li>
+ *   <li>after waiting {@code bds.admission.queue-timeout} (mapped to 503).</li>
+ * </ul>
+ * A waiter cancelled by its client leaves the queue; one admitted at the same instant gives its
+ * bytes back. The queue timeout is a timer owned by the budget, not a {@code timeout} operator:
+ * it only refuses a waiter it can still take out of the queue under the lock, so a release that
+ * admits the waiter at the same instant wins and the permit is never lost.
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * <ul>
+ *   <li><code>bds.admission.budget</code>, <code>bds.admission.reserved</code> (gauges, bytes).</li>
+ *   <li><code>bds.admission.utilization</code> (gauge) — reserved / budget.</li>
+ *   <li><code>bds.admission.queue.depth</code> (gauge) — reservations waiting.</li>
+ *   <li><code>bds.admission.wait</code> (timer) — time from request to admission.</li>
+ *   <li><code>bds.admission.rejected{reason=queue_full|timeout}</code> (counter).</li>
+ * </ul>
+ *
+ * <h2>Configuration properties</h2>
+ * <ul>
+ *   <li><code>bds.admission.enabled</code> (default <code>true</code>)</li>
+ *   <li><code>bds.admission.budget</code> (default <code>0</code> = 3/4 of the max heap)</li>
+ *   <li><code>bds.admission.max-queue</code> (default <code>64</code>)</li>
+ *   <li><code>bds.admission.queue-timeout</code> (default <code>10s</code>)</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+@Component
+@Slf4j
+public class MemoryBudget {
+
+    private static final long MB = 1024 * 1024;
+
+    private final boolean enabled;
+    private final long budget;
+    private final long defaultWorkloadBytes;
+    private final int maxQueue;
+    private final Duration queueTimeout;
+
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    /** Guarded by {@code this}. */
+    private long reserved;
+
+    private final Timer wait;
+    private final Counter rejectedFull;
+    private final Counter rejectedTimeout;
+
+    /**
+     * @param enabled         reserve at all (property {@code bds.admission.enabled})
+     * @param budget          pod-wide budget, {@code 0} for 3/4 of the max heap (property {@code bds.admission.budget})
+     * @param maxQueue        reservations allowed to wait (property {@code bds.admission.max-queue})
+     * @param queueTimeout    longest wait (property {@code bds.admission.queue-timeout})
+     * @param defaultWorkload workload reservation without a prediction (property {@code bds.workload.heap-per-job})
+     * @param registry        registry for the admission metrics
+     * @throws IllegalArgumentException if a limit is out of range
+     */
+    public MemoryBudget(@Value("${bds.admission.enabled:true}") boolean enabled,
+                        @Value("${bds.admission.budget:0}") DataSize budget,
+                        @Value("${bds.admission.max-queue:64}") int maxQueue,
+                        @Value("${bds.admission.queue-timeout:10s}") Duration queueTimeout,
+                        @Value("${bds.workload.heap-per-job:512MB}") DataSize defaultWorkload,
+                        MeterRegistry registry) {
+        if (budget.toBytes() < 0) throw new IllegalArgumentException("bds.admission.budget must be >= 0");
+        if (maxQueue < 0) throw new IllegalArgumentException("bds.admission.max-queue must be >= 0");
+        if (queueTimeout.isNegative() || queueTimeout.isZero()) {
+            throw new IllegalArgumentException("bds.admission.queue-timeout must be > 0");
+        }
+        this.enabled = enabled;
+        this.budget = budget.toBytes() > 0 ? budget.toBytes() : Runtime.getRuntime().maxMemory() / 4 * 3;
+        this.maxQueue = maxQueue;
+        this.queueTimeout = queueTimeout;
+        this.defaultWorkloadBytes = defaultWorkload.toBytes();
+
+        this.wait = registry.timer("bds.admission.wait");
+        this.rejectedFull = registry.counter("bds.admission.rejected", "reason", "queue_full");
+        this.rejectedTimeout = registry.counter("bds.admission.rejected", "reason", "timeout");
+        Gauge.builder("bds.admission.budget", this, b -> b.budget).baseUnit("bytes").register(registry);
+        Gauge.builder("bds.admission.reserved", this, MemoryBudget::reservedBytes).baseUnit("bytes").register(registry);
+        Gauge.builder("bds.admission.utilization", this, b -> (double) b.reservedBytes() / b.budget).register(registry);
+        Gauge.builder("bds.admission.queue.depth", this, MemoryBudget::queueDepth).register(registry);
+        if (enabled) log.info("Admission budget {} MB, queue {} for {}", this.budget / MB, maxQueue, queueTimeout);
+    }
+
+    /**
+     * Run {@code work} while holding {@code bytes} of the budget; the reservation is returned
+     * when {@code work} terminates or is cancelled.
+     *
+     * @param bytes memory the work may need
+     * @param work  the work, subscribed once admitted
+     * @param <T>   element type
+     * @return {@code work}, admitted; errors with {@link RejectedException} if it could not be
+     */
+    public <T> Mono<T> withReservation(long bytes, Function<Permit, Mono<T>> work) {
+        return Mono.usingWhen(reserve(bytes), work,
+                p -> Mono.fromRunnable(p::release),
+                (p, e) -> Mono.fromRunnable(p::release),
+                p -> Mono.fromRunnable(p::release));
+    }
+
+    /**
+     * Bytes to reserve for the measured workload of a document.
+     *
+     * @param predictedPeakMb the routing prediction; {@code <= 0} or non-finite when there is none
+     *                        (the fallback sentinel is {@code -1})
+     * @return the prediction in bytes, else {@code bds.workload.heap-per-job}
+     */
+    public long workloadBytes(double predictedPeakMb) {
+        return Double.isFinite(predictedPeakMb) && predictedPeakMb > 0
+                ? (long) Math.ceil(predictedPeakMb * MB)
+                : defaultWorkloadBytes;
+    }
+
+    /**
+     * Reserve part of the budget; see the class notes on queueing.
+     *
+     * @param bytes memory to reserve, cut down to the whole budget
+     * @return a {@link Mono} emitting the {@link Permit} once admitted
+     */
+    public Mono<Permit> reserve(long bytes) {
+        if (!enabled) return Mono.just(new Permit(this, 0));
+        long need = Math.max(0, Math.min(bytes, budget));
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            return Mono.<Permit>create(sink -> admit(need, sink))
+                    .doOnNext(p -> wait.record(Duration.ofNanos(System.nanoTime() - started)));
+        });
+    }
+
+    private void admit(long need, MonoSink<Permit> sink) {
+        Waiter w;
+        synchronized (this) {
+            if (queue.isEmpty() && reserved + need <= budget) {
+                reserved += need;
+                w = null;
+            } else if (queue.size() >= maxQueue) {
+                rejectedFull.increment();
+                sink.error(new RejectedException("Too many uploads waiting for memory, retry later", true));
+                return;
+            } else {
+                w = new Waiter(need, sink);
+                queue.addLast(w);
+                w.timer = Schedulers.parallel().schedule(() -> expire(w), queueTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (w == null) {
+            sink.success(new Permit(this, need));
+            return;
+        }
+        sink.onCancel(() -> abandon(w));
+    }
+
+    /** A waiter's queue timeout fired: refuse it unless a release admitted it first. */
+    private void expire(Waiter w) {
+        synchronized (this) {
+            if (!queue.remove(w)) return;
+        }
+        rejectedTimeout.increment();
+        w.sink.error(new RejectedException("Memory budget exhausted for " + queueTimeout.toMillis()
+                + " ms, retry later", false));
+        // it may have been the head holding others back
+        release(0);
+    }
+
+    /** A waiter's subscriber went away: leave the queue, or hand back bytes admitted meanwhile. */
+    private void abandon(Waiter w) {
+        boolean admitted;
+        synchronized (this) {
+            admitted = !queue.remove(w);
+        }
+        w.timer.dispose();
+        // admitted: the success signal was dropped by the cancelled sink, so give the bytes back;
+        // not admitted: it may have been the head holding others back
+        release(admitted ? w.bytes : 0);
+    }
+
+    private void release(long bytes) {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            reserved -= bytes;
+            while (!queue.isEmpty() && reserved + queue.peekFirst().bytes <= budget) {
+                Waiter head = queue.pollFirst();
+                reserved += head.bytes;
+                admitted.add(head);
+            }
+        }
+        for (Waiter w : admitted) {
+            w.timer.dispose();
+            w.sink.success(new Permit(this, w.bytes));
+        }
+    }
+
+    /** @return bytes currently reserved */
+    public synchronized long reservedBytes() {
+        return reserved;
+    }
+
+    /** @return reservations waiting */
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /** @return the pod-wide budget in bytes */
+    public long budgetBytes() {
+        return budget;
+    }
+
+    private static final class Waiter {
+        final long bytes;
+        final MonoSink<Permit> sink;
+        /** Set under the budget's lock as the waiter is queued. */
+        Disposable timer;
+
+        Waiter(long bytes, MonoSink<Permit> sink) {
+            this.bytes = bytes;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * An admitted reservation. Release it exactly once; further calls do nothing.
+     */
+    public static final class Permit {
+        private final MemoryBudget owner;
+        private final long bytes;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(MemoryBudget owner, long bytes) {
+            this.owner = owner;
+            this.bytes = bytes;
+        }
+
+        /** @return bytes held */
+        public long bytes() {
+            return bytes;
+        }
+
+        /** Return the bytes to the budget and admit waiters that now fit. */
+        public void release() {
+            if (released.compareAndSet(false, true) && owner.enabled) owner.release(bytes);
+        }
+    }
+
+    /**
+     * The budget could not admit a request.
+     * <p>
+     * Stackless: shedding happens under load, where stack traces are pure cost.
+     */
+    public static final class RejectedException extends RuntimeException {
+        private final boolean queueFull;
+
+        RejectedException(String message, boolean queueFull) {
+            super(message, null, false, false);
+            this.queueFull = queueFull;
+        }
+
+        /** @return {@code true} if shed at once (queue full), {@code false} if it timed out waiting */
+        public boolean queueFull() {
+            return queueFull;
+        }
+    }
+}
@@ -2,31 +2,52 @@ package com.example.bds;
 
 import com.example.bds.dto.PdfFeatures;
 import com.example.bds.dto.RouteDecision;
+import com.example.bds.jfr.PhaseEvent;
+import com.example.bds.ml.CircuitBreaker;
+import com.example.bds.ml.GradientDescentTrainer;
+import com.example.bds.ml.LinearModel;
 import com.example.bds.ml.PredictionService;
+import com.example.bds.ml.RecursiveLeastSquares;
+import com.example.bds.ml.RidgeTrainer;
+import com.example.bds.ml.Trainer;
+import com.example.bds.ml.TreeEnsembleModel;
+import com.example.bds.ml.TrainingStore;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.example.bds.pdf.PdfFeatureExtractor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import jdk.jfr.EventType;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service that predicts and (optionally) learns a simple “memory spike” model for PDF processing.
@@ -34,10 +55,18 @@ import java.util.stream.Stream;
  * <h2>Responsibilities</h2>
  * <ul>
  *   <li><b>Prediction path:</b> {@link #predictOnly(PdfFeatures)} returns a {@link RouteDecision}.
- *       If a tiny local model is available, it is used; otherwise the request is proxied to the ML
- *       sidecar via {@link PredictionService}.</li>
- *   <li><b>Online training:</b> {@link #train(PdfFeatures, double)} appends labeled rows to a CSV
- *       and retrains a tiny linear model in-process every {@code bds.retrain-every} samples.</li>
+ *       The first available of these scores it: the exported gradient-boosted trees
+ *       ({@link TreeEnsembleModel}, the sidecar's own model evaluated in-process), the tiny local
+ *       linear model, or the ML sidecar via {@link PredictionService}.</li>
+ *   <li><b>Online training:</b> {@link #train(PdfFeatures, double)} enqueues labelled samples on a
+ *       bounded {@link TrainingQueue}; a single background trainer drains it in batches, appends
+ *       the rows to the training store and updates a {@link RecursiveLeastSquares} learner in
+ *       O(d&sup2;) per row. The learner's weights are published as the local model whenever the
+ *       store crosses a multiple of {@code bds.retrain-every} rows.
+ *       With {@code bds.trainer=ridge|gd} the publish step instead refits a batch {@link Trainer}
+ *       over the whole store.</li>
+ *   <li><b>Compaction (optional):</b> every {@code bds.compaction-interval}, the learner is rebuilt
+ *       exactly from the whole store, bounding numerical drift of the recursive updates.</li>
  *   <li><b>Model lifecycle:</b> loads a persisted JSON model at startup (async) and persists new
  *       weights after retraining.</li>
  *   <li><b>Observability:</b> emits counters/timers for predictions and sidecar latency.</li>
@@ -48,30 +77,81 @@ import java.util.stream.Stream;
  *   <li><code>bds.route.decision</code> (counter) — tags:
  *       <ul>
  *         <li><code>decision</code>: {@code STANDARD_PATH} or {@code ROUTE_BIG_MEMORY}</li>
- *         <li><code>source</code>: {@code local}|{@code sidecar}|{@code fallback}</li>
+ *         <li><code>source</code>: {@code local}|{@code sidecar}|{@code recent}|{@code linear}|{@code fallback}
+ *             (see {@link Source})</li>
  *       </ul>
  *   </li>
  *   <li><code>bds.sidecar.predict.duration</code> (timer) — latency of calls to sidecar <code>/predict</code></li>
+ *   <li><code>bds.route.batch.size</code> (summary), <code>bds.route.batch.duration</code> (timer),
+ *       <code>bds.route.batch.sidecar.rows</code> (counter) — {@link #predictBatch}</li>
+ *   <li><code>bds.train.queue.depth</code>, <code>bds.train.queue.lag</code>,
+ *       <code>bds.train.queue.dropped</code> — training backlog (see {@link TrainingQueue})</li>
  * </ul>
  *
- * <h2>CSV schema</h2>
- * Rows appended by {@link #appendTrainingRow(PdfFeatures, double)}:
+ * <h2>Local scoring cost</h2>
+ * {@link #scoreLocal(PdfFeatures)} reads the record's fields directly against coefficients that
+ * {@link Model} folds with the standardization once, at load/publish time, and allocates nothing.
+ * {@link #predictOnly(PdfFeatures)} increments pre-registered counters (one per
+ * decision/source pair) and reuses a constant fallback; only the {@link RouteDecision} and its
+ * {@link Mono} are allocated per local prediction, plus its {@link PhaseEvent.Predict} while a
+ * JFR recording enables that event. The tree ensemble scores allocation-free as well (see
+ * {@link TreeEnsembleModel}).
+ *
+ * <h2>Tree ensemble</h2>
+ * If {@code bds.tree-model-file} exists at startup it is loaded next to the linear model and
+ * takes precedence over it. It is read-only: online training keeps updating and publishing the
+ * linear model, which serves again only if the tree file is absent or fails to load. Decisions
+ * from either model are counted with {@code source=local}.
+ *
+ * <h2>Training data</h2>
+ * Rows appended by {@link #appendTrainingRow(PdfFeatures, double)} go to a binary columnar
+ * {@link TrainingStore} under {@code bds.store-dir}; retraining memory-maps it into primitive
+ * arrays. {@code bds.train-csv} is kept as an interchange file in the historical schema (read by
+ * {@code training/memory_spike_train.py}):
  * <pre>
  * size_mb,pages,image_page_ratio,dpi_estimate,avg_image_size_kb,fonts_embedded_pct,
  * xref_error_count,ocr_required,producer,label_mb
  * </pre>
+ * It is imported once into an empty store at startup and re-exported from the store on shutdown.
+ *
+ * <h2>Trainers</h2>
+ * <ul>
+ *   <li>{@code online} (default) — the {@link RecursiveLeastSquares} learner; standardization is
+ *       estimated at startup/compaction and frozen in between.</li>
+ *   <li>{@code ridge} — {@link RidgeTrainer}: closed-form normal equations on standardized
+ *       features, one pass over the store per publish.</li>
+ *   <li>{@code gd} — {@link GradientDescentTrainer}: the original fixed-epoch gradient descent on
+ *       raw features, kept for comparison.</li>
+ * </ul>
+ * The published model carries its feature means and scales, so {@code model.json} reproduces
+ * predictions exactly after a restart.
+ *
+ * <h2>Sample counters</h2>
+ * The row count comes from the store's file lengths and the labelled-sample count is kept in
+ * memory (seeded by one scan of the mapped label column at startup, updated on every append),
+ * so {@link #sampleCount()} is O(1) regardless of the dataset size.
  *
  * <h2>Thread-safety</h2>
  * <ul>
  *   <li>All public methods are safe to call from reactive chains; file I/O and CPU work are
  *       offloaded to {@code boundedElastic} where noted.</li>
- *   <li>Model reads use a volatile reference; writes are synchronized within retrain/persist logic.</li>
+ *   <li>Model reads use a volatile reference. Appends and learner updates happen on the single
+ *       trainer thread under one lock per batch ({@code O(d^2)} work per sample); compaction fits
+ *       outside it and only holds it to replay rows appended meanwhile and swap the learner in.</li>
+ *   <li>{@link #sampleCount()} and the published model trail {@link #train} by the queue lag;
+ *       {@link #awaitTrainingIdle(Duration)} waits for the backlog to be applied.</li>
  * </ul>
  *
  * <h2>Error handling</h2>
  * <ul>
- *   <li>Sidecar failures are logged and mapped to a conservative fallback decision
- *       (decision {@code STANDARD_PATH}, predicted {@code -1.0}).</li>
+ *   <li>Sidecar failures, including calls rejected by the open circuit breaker (see
+ *       {@link PredictionService}), are answered in order from: the sidecar's recent decision
+ *       for identical features ({@code source=recent}); the last published linear model, which
+ *       scores a missing (NaN) feature at its training mean, so it answers the documents the tree
+ *       ensemble declines ({@code source=linear}); and only then the conservative
+ *       {@code STANDARD_PATH} with predicted {@code -1.0} ({@code source=fallback}).
+ *       {@link #predict(PdfFeatures)} reports which of these answered, so callers can avoid
+ *       caching outage-time decisions ({@link Source#cacheable()}).</li>
  *   <li>Training I/O errors are logged and skipped; the server continues to run.</li>
  * </ul>
  *
@@ -79,9 +159,23 @@ import java.util.stream.Stream;
  * <ul>
  *   <li><code>bds.data-dir</code> (default <code>data</code>)</li>
  *   <li><code>bds.train-csv</code> (default <code>data/training.csv</code>)</li>
+ *   <li><code>bds.store-dir</code> (default <code>data/store</code>)</li>
  *   <li><code>bds.model-file</code> (default <code>data/model.json</code>)</li>
- *   <li><code>bds.retrain-every</code> (default <code>5</code>)</li>
+ *   <li><code>bds.tree-model-file</code> (default <code>data/tree_ensemble.json</code>) — exported
+ *       trees, used when present</li>
+ *   <li><code>bds.retrain-every</code> (default <code>5</code>) — model publish cadence, in rows</li>
+ *   <li><code>bds.online.forgetting-factor</code> (default <code>1.0</code>) — RLS lambda</li>
+ *   <li><code>bds.online.prior-variance</code> (default <code>1e6</code>) — RLS delta</li>
+ *   <li><code>bds.compaction-interval</code> (default <code>0s</code> = disabled)</li>
+ *   <li><code>bds.trainer</code> (default <code>online</code>) — {@code online}|{@code ridge}|{@code gd}</li>
+ *   <li><code>bds.train.ridge</code> (default <code>1.0</code>) — L2 penalty of the ridge trainer</li>
+ *   <li><code>bds.train.queue-capacity</code> (default <code>10000</code>) — training backlog bound</li>
+ *   <li><code>bds.train.batch-size</code> (default <code>256</code>) — samples per trainer batch</li>
+ *   <li><code>bds.train.overflow</code> (default <code>drop-oldest</code>) — {@code drop-oldest}|{@code block}</li>
  *   <li><code>bds.route-threshold-mb</code> (default <code>3500</code>)</li>
+ *   <li><code>bds.fallback.recent-decisions</code> (default <code>10000</code>, {@code 0} disables)
+ *       and <code>bds.fallback.recent-ttl</code> (default <code>10m</code>) — sidecar decisions kept
+ *       for replay while the sidecar is unavailable</li>
  * </ul>
  *
  * @since 1.0
@@ -99,13 +193,16 @@ public class MemorySpikeService {
     /** Base data directory for CSV/model artifacts. */
     private final Path dataDir;
 
-    /** Path to the labeled training CSV. */
+    /** CSV interchange file: imported into an empty store, exported on shutdown. */
     private final Path csvPath;
 
     /** Path to the persisted local model JSON. */
     private final Path modelPath;
 
-    /** Retrain frequency (every N samples). */
+    /** Path to the exported tree ensemble (read-only). */
+    private final Path treeModelPath;
+
+    /** Publish frequency of the learner's weights (every N rows). */
     private final int retrainEvery;
 
     /** Threshold (MB) to decide routing: >= threshold → ROUTE_BIG_MEMORY. */
@@ -114,12 +211,87 @@ public class MemorySpikeService {
     /** In-memory model cache; set after async load or retrain. */
     private volatile Model model;
 
+    /** Exported tree ensemble, preferred over {@link #model}; set by the async load. */
+    private volatile TreeEnsembleModel trees;
+
+    /** Bumped every time {@link #model} is replaced; lets callers invalidate cached decisions. */
+    private final AtomicLong modelVersion = new AtomicLong();
+
+    /** Binary columnar training rows. */
+    private final TrainingStore store;
+
+    /** Guards {@link #learner} and orders store appends with learner updates. */
+    private final Object learnLock = new Object();
+
+    /**
+     * Serializes {@link #publish}: the model is read and persisted in one step, so an older model
+     * (say, from compaction) never overwrites a newer one. Taken before {@link #learnLock}.
+     */
+    private final Object publishLock = new Object();
+
+    /** Online learner over all labelled rows; guarded by {@link #learnLock}. */
+    private RecursiveLeastSquares learner;
+
+    /** RLS forgetting factor. */
+    private final double forgettingFactor;
+
+    /** RLS prior variance. */
+    private final double priorVariance;
+
+    /** Batch trainer used at publish time, or {@code null} to publish the online learner. */
+    private final Trainer batchTrainer;
+
+    /** Period of the optional compaction job; zero or negative disables it. */
+    private final Duration compactionInterval;
+
+    /** Bounded backlog of labelled samples, drained by the single trainer thread. */
+    private final TrainingQueue trainingQueue;
+
+    /** Scratch feature vector for learner updates; guarded by {@link #learnLock}. */
+    private final double[] updateRow = new double[8];
+
+    /** Rows with a usable label ({@code label_mb >= 0}). */
+    private final AtomicInteger labelledCount = new AtomicInteger();
+
     /** Disposable for the async startup load. */
     private Disposable initDisposable;
 
+    /** Disposable for the periodic compaction job, if enabled. */
+    private Disposable compactionDisposable;
+
+    /** Upper bound on how long shutdown waits for the training backlog. */
+    private static final Duration SHUTDOWN_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+
     /** Micrometer registry for metrics emission. */
     private final MeterRegistry meterRegistry;
 
+    /** Decision reported when the sidecar fails. */
+    private static final String FALLBACK_DECISION = "STANDARD_PATH";
+
+    /** Constant fallback result, used when nothing better is known about a document. */
+    private static final RouteDecision FALLBACK = new RouteDecision(FALLBACK_DECISION, -1.0);
+
+    /** Checked before a local prediction creates its JFR event, so none is allocated while no recording wants it. */
+    private static final EventType PREDICT_EVENT = EventType.getEventType(PhaseEvent.Predict.class);
+
+    /** Recent sidecar decisions by features, replayed while the sidecar is failing. */
+    private final Cache<PdfFeatures, RouteDecision> recentDecisions;
+
+    /** Pre-registered {@code bds.route.decision} counters: {@code [Source.ordinal()][decision]}, see {@link #decisionIndex}. */
+    private final Counter[][] decisionCounters;
+
+    /** Pre-registered sidecar latency timer. */
+    private final Timer sidecarTimer;
+
+    /** Documents per {@link #predictBatch} call. */
+    private final DistributionSummary batchSize;
+
+    /** Latency of a whole {@link #predictBatch} call, including sidecar fan-out. */
+    private final Timer batchTimer;
+
+    /** Batch rows that could not be scored locally and went to the sidecar. */
+    private final Counter batchSidecarRows;
+
     /**
      * Construct the service with filesystem locations, thresholds, and dependencies.
      * <p>
@@ -129,37 +301,95 @@ public class MemorySpikeService {
      *
      * @param sidecar           client to call the sidecar {@code /predict}
      * @param dataDir           base directory for artifacts (property {@code bds.data-dir})
-     * @param csvPath           training CSV path (property {@code bds.train-csv})
+     * @param csvPath           training CSV import/export path (property {@code bds.train-csv})
      * @param modelPath         persisted model path (property {@code bds.model-file})
-     * @param retrainEvery      retrain cadence (property {@code bds.retrain-every})
+     * @param treeModelPath     exported tree ensemble path (property {@code bds.tree-model-file})
+     * @param storeDir          columnar training store directory (property {@code bds.store-dir})
+     * @param retrainEvery      model publish cadence (property {@code bds.retrain-every})
+     * @param forgettingFactor  RLS forgetting factor (property {@code bds.online.forgetting-factor})
+     * @param priorVariance     RLS prior variance (property {@code bds.online.prior-variance})
+     * @param compactionInterval learner rebuild period, {@code 0} to disable
+     *                          (property {@code bds.compaction-interval})
+     * @param trainer           {@code online}, {@code ridge} or {@code gd} (property {@code bds.trainer})
+     * @param ridge             ridge penalty (property {@code bds.train.ridge})
+     * @param queueCapacity     training backlog bound (property {@code bds.train.queue-capacity})
+     * @param batchSize         samples per trainer batch (property {@code bds.train.batch-size})
+     * @param overflow          {@code drop-oldest} or {@code block} (property {@code bds.train.overflow})
      * @param routeThresholdMb  routing threshold in MB (property {@code bds.route-threshold-mb})
+     * @param recentDecisions   sidecar decisions kept for fallback, {@code 0} to disable
+     *                          (property {@code bds.fallback.recent-decisions})
+     * @param recentTtl         how long a kept decision stays usable (property {@code bds.fallback.recent-ttl})
      * @param meterRegistry     (unused) Micrometer registry — see note below
      * @param meterRegistry1    Micrometer registry actually assigned to the field
      *                          <br><b>Note:</b> the constructor accepts two {@link MeterRegistry}
      *                          parameters; only {@code meterRegistry1} is used. Consider removing
      *                          the unused parameter and wiring a single registry.
-     * @throws IOException if the data directory or CSV header cannot be created
+     * @throws IOException if the data directory or training store cannot be opened or read
+     * @throws IllegalArgumentException if {@code trainer} or {@code overflow} is not a known name,
+     *                                  or a queue size is not positive
      */
     public MemorySpikeService(
             PredictionService sidecar,
             @Value("${bds.data-dir:data}") String dataDir,
             @Value("${bds.train-csv:data/training.csv}") String csvPath,
             @Value("${bds.model-file:data/model.json}") String modelPath,
+            @Value("${bds.tree-model-file:data/tree_ensemble.json}") String treeModelPath,
+            @Value("${bds.store-dir:data/store}") String storeDir,
             @Value("${bds.retrain-every:5}") int retrainEvery,
-            @Value("${bds.route-threshold-mb:3500}") double routeThresholdMb, MeterRegistry meterRegistry, MeterRegistry meterRegistry1
+            @Value("${bds.online.forgetting-factor:1.0}") double forgettingFactor,
+            @Value("${bds.online.prior-variance:1e6}") double priorVariance,
+            @Value("${bds.compaction-interval:0s}") Duration compactionInterval,
+            @Value("${bds.trainer:online}") String trainer,
+            @Value("${bds.train.ridge:1.0}") double ridge,
+            @Value("${bds.train.queue-capacity:10000}") int queueCapacity,
+            @Value("${bds.train.batch-size:256}") int batchSize,
+            @Value("${bds.train.overflow:drop-oldest}") String overflow,
+            @Value("${bds.route-threshold-mb:3500}") double routeThresholdMb,
+            @Value("${bds.fallback.recent-decisions:10000}") long recentDecisions,
+            @Value("${bds.fallback.recent-ttl:10m}") Duration recentTtl, MeterRegistry meterRegistry, MeterRegistry meterRegistry1
     ) throws IOException {
         this.sidecar = sidecar;
         this.retrainEvery = retrainEvery;
         this.routeThresholdMb = routeThresholdMb;
+        this.forgettingFactor = forgettingFactor;
+        this.priorVariance = priorVariance;
+        this.compactionInterval = compactionInterval;
+        this.batchTrainer = switch (trainer) {
+            case "online" -> null;
+            case "ridge" -> new RidgeTrainer(ridge);
+            case "gd" -> new GradientDescentTrainer(1e-5, 8);
+            default -> throw new IllegalArgumentException("Unknown bds.trainer: " + trainer);
+        };
 
         this.dataDir = Paths.get(dataDir);
         this.csvPath = Paths.get(csvPath);
         this.modelPath = Paths.get(modelPath);
+        this.treeModelPath = Paths.get(treeModelPath);
         this.meterRegistry = meterRegistry1; // NOTE: only the second registry is used
+        this.decisionCounters = new Counter[Source.values().length][];
+        for (Source source : Source.values()) {
+            this.decisionCounters[source.ordinal()] = decisionCounters(this.meterRegistry, source.tag);
+        }
+        this.recentDecisions = Caffeine.newBuilder()
+                .maximumSize(recentDecisions)
+                .expireAfterWrite(recentTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(this.meterRegistry, this.recentDecisions, "bds.recent.decisions");
+        this.sidecarTimer = this.meterRegistry.timer("bds.sidecar.predict.duration");
+        this.batchSize = DistributionSummary.builder("bds.route.batch.size")
+                .description("Documents per batch routing request")
+                .register(this.meterRegistry);
+        this.batchTimer = this.meterRegistry.timer("bds.route.batch.duration");
+        this.batchSidecarRows = this.meterRegistry.counter("bds.route.batch.sidecar.rows");
+        TrainingQueue.Overflow policy = TrainingQueue.Overflow.parse(overflow);
 
         // These are quick FS ops; OK to do here.
         Files.createDirectories(this.dataDir);
-        ensureCsvHeader();
+        this.store = TrainingStore.open(Paths.get(storeDir));
+        seedStore();
+        this.learner = fitLearner(store.read());
+        this.trainingQueue = new TrainingQueue(queueCapacity, batchSize, policy, this::applyBatch, this.meterRegistry);
 
         this.mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
         // Defer potentially heavier disk I/O for model loading to a boundedElastic thread.
@@ -167,28 +397,46 @@ public class MemorySpikeService {
     }
 
     /**
-     * Asynchronously load a previously persisted local model (if present) after the bean is constructed.
+     * Asynchronously load the exported tree ensemble and a previously persisted local model (each if
+     * present) after the bean is constructed.
      * <p>
      * Uses {@code boundedElastic} to avoid blocking event-loop threads during file I/O.
      * Stores the resulting subscription so it can be disposed in {@link #close()}.
      */
     @PostConstruct
     void initAsyncModelLoad() {
-        initDisposable = Mono.fromRunnable(this::loadModelIfExists)
+        initDisposable = Mono.fromRunnable(() -> {
+                    loadTreeModelIfExists();
+                    loadModelIfExists();
+                })
                 .subscribeOn(Schedulers.boundedElastic())
                 .doOnSubscribe(s -> log.info("Initializing local model (async)… path={}", modelPath.toAbsolutePath()))
                 .doOnError(e -> log.warn("Async model init failed: {}", e.toString()))
                 .subscribe();
+
+        if (!compactionInterval.isZero() && !compactionInterval.isNegative()) {
+            compactionDisposable = Flux.interval(compactionInterval, compactionInterval, Schedulers.boundedElastic())
+                    .onBackpressureDrop()
+                    .concatMap(tick -> Mono.fromRunnable(this::compact), 1)
+                    .subscribe();
+        }
     }
 
     /**
-     * Dispose of the async initialization subscription (if any) during bean shutdown.
+     * Dispose of the async initialization and compaction subscriptions (if any), apply the training
+     * backlog, export the training CSV and close the training store during bean shutdown.
      */
     @PreDestroy
     void close() {
         if (initDisposable != null) {
             initDisposable.dispose();
         }
+        if (compactionDisposable != null) {
+            compactionDisposable.dispose();
+        }
+        trainingQueue.close(SHUTDOWN_DRAIN_TIMEOUT);
+        exportCsv();
+        store.close();
     }
 
     /* ===================== PREDICTION ===================== */
@@ -196,52 +444,207 @@ public class MemorySpikeService {
     /**
      * Side-effect-free prediction of a routing decision.
      * <p>
-     * If a local model has been loaded/trained, it is used to compute the predicted peak (MB)
-     * and corresponding decision. Otherwise, the method calls the sidecar {@code /predict}
+     * If a local model (tree ensemble or linear) has been loaded/trained, it is used to compute the
+     * predicted peak (MB) and corresponding decision. Otherwise, the method calls the sidecar {@code /predict}
      * endpoint. In both flows, metrics are emitted:
      * <ul>
-     *   <li><code>bds.route.decision{decision=...,source=local|sidecar|fallback}</code></li>
+     *   <li><code>bds.route.decision{decision=...,source=local|sidecar|recent|linear|fallback}</code></li>
      *   <li><code>bds.sidecar.predict.duration</code> — only for sidecar calls</li>
      * </ul>
-     * If the sidecar call fails, a conservative fallback is returned:
+     * If the sidecar call fails or its circuit breaker is open, the sidecar's recent decision for
+     * the same features or the linear model's is returned; with neither, the conservative fallback:
      * <pre>decision=STANDARD_PATH, predicted_peak_mb=-1.0</pre>
      *
      * @param f features for a single document
      * @return a {@link Mono} emitting the {@link RouteDecision}; errors are mapped to fallback
      */
     public Mono<RouteDecision> predictOnly(PdfFeatures f) {
-        double local = predictLocalOrNa(f);
-        if (!Double.isNaN(local)) {
-            final String decision = makeDecision(local);
-            meterRegistry.counter("bds.route.decision",
-                    "decision", decision,
-                    "source", "local").increment();
-            return Mono.just(new RouteDecision(decision, round1(local)));
+        RouteDecision local = decideLocally(f);
+        if (local != null) return Mono.just(local);
+        return predictRemotely(f).map(Prediction::decision);
+    }
+
+    /**
+     * Like {@link #predictOnly(PdfFeatures)}, but also reports which tier answered.
+     *
+     * @param f features for a single document
+     * @return a {@link Mono} emitting the decision and its {@link Source}; never errors
+     */
+    public Mono<Prediction> predict(PdfFeatures f) {
+        RouteDecision local = decideLocally(f);
+        if (local != null) return Mono.just(new Prediction(local, Source.LOCAL));
+        return predictRemotely(f);
+    }
+
+    /**
+     * Score with the local model and count the decision; allocates only the result (and the JFR
+     * event while a recording enables it).
+     *
+     * @param f features
+     * @return the decision, or {@code null} if no local model can score {@code f}
+     */
+    private RouteDecision decideLocally(PdfFeatures f) {
+        PhaseEvent.Predict event = null;
+        if (PREDICT_EVENT.isEnabled()) {
+            event = new PhaseEvent.Predict();
+            event.begin();
         }
+        double local = scoreLocal(f);
+        if (Double.isNaN(local)) return null;
+        final String decision = makeDecision(local);
+        decisionCounters[Source.LOCAL.ordinal()][decisionIndex(decision)].increment();
+        if (event != null) event.commit(PhaseEvent.bytes(f.size_mb()), f.pages());
+        return new RouteDecision(decision, round1(local));
+    }
+
+    /** The sidecar tier, for a document the local model declined. */
+    private Mono<Prediction> predictRemotely(PdfFeatures f) {
         // No local model → log clearly and use sidecar.
         log.info("No local model loaded or available at {} — using sidecar for prediction.",
                 modelPath.toAbsolutePath());
+        return PhaseEvent.around(PhaseEvent.Predict::new, PhaseEvent.bytes(f.size_mb()), f.pages(), viaSidecar(f));
+    }
+
+    /**
+     * Route a batch of documents; decisions are emitted in input order.
+     * <p>
+     * With the tree ensemble, the batch is encoded as a column-major {@code float} matrix
+     * ({@link TreeEnsembleModel#encode}) and scored level by level across rows, in SIMD lanes when
+     * the Vector API is enabled ({@link TreeEnsembleModel#predict(float[], int, double[])}). With only
+     * the linear model, the batch is laid out as a primitive column-major matrix
+     * ({@link PdfFeatureExtractor#toColumns}) and scored in one loop per feature
+     * ({@link Model#predict(double[][], int, double[])}). Decision counters are bumped once per
+     * batch. Rows that cannot be scored locally (no model, or a NaN input) are sent to the
+     * sidecar with at most {@code sidecarConcurrency} calls in flight; sidecar failures map to the
+     * usual conservative fallback for that row only.
+     *
+     * @param batch              documents to route
+     * @param sidecarConcurrency maximum concurrent sidecar calls
+     * @return a {@link Mono} emitting one decision per input, in order
+     */
+    public Mono<List<RouteDecision>> predictBatch(List<PdfFeatures> batch, int sidecarConcurrency) {
+        final int n = batch.size();
+        final RouteDecision[] out = new RouteDecision[n];
+        final double[] scores = new double[n];
+        var sample = Timer.start(meterRegistry);
+        batchSize.record(n);
+
+        TreeEnsembleModel t = trees;
+        Model m = model;
+        if (t != null) {
+            t.predict(t.encode(batch), n, scores);
+        } else if (m == null) {
+            Arrays.fill(scores, Double.NaN);
+        } else {
+            m.predict(PdfFeatureExtractor.toColumns(batch), n, scores);
+        }
+
+        int[] remote = new int[n];
+        int remoteCount = 0;
+        int big = 0;
+        for (int i = 0; i < n; i++) {
+            double y = scores[i];
+            if (Double.isNaN(y)) {
+                remote[remoteCount++] = i;
+                continue;
+            }
+            String decision = makeDecision(y);
+            if (decision.equals("ROUTE_BIG_MEMORY")) big++;
+            out[i] = new RouteDecision(decision, round1(y));
+        }
+        int local = n - remoteCount;
+        decisionCounters[Source.LOCAL.ordinal()][decisionIndex("ROUTE_BIG_MEMORY")].increment(big);
+        decisionCounters[Source.LOCAL.ordinal()][decisionIndex("STANDARD_PATH")].increment(local - big);
+
+        if (remoteCount == 0) {
+            sample.stop(batchTimer);
+            return Mono.just(Arrays.asList(out));
+        }
+        log.info("Routing {} of {} batch rows via sidecar", remoteCount, n);
+        batchSidecarRows.increment(remoteCount);
+        return Flux.range(0, remoteCount)
+                .map(k -> remote[k])
+                .flatMapSequential(i -> viaSidecar(batch.get(i)).doOnNext(p -> out[i] = p.decision()), sidecarConcurrency)
+                .then(Mono.fromCallable(() -> Arrays.asList(out)))
+                .doFinally(sig -> sample.stop(batchTimer));
+    }
+
+    /**
+     * Ask the sidecar for a decision, recording latency and the decision counter; failures map to
+     * {@link #fallback}. Successful decisions are remembered for that fallback.
+     *
+     * @param f features for a single document
+     * @return a {@link Mono} emitting the decision and the tier that made it; never errors
+     */
+    private Mono<Prediction> viaSidecar(PdfFeatures f) {
         var sample = Timer.start(meterRegistry);
         return sidecar.predictViaSidecar(f)
-                .doOnTerminate(() -> sample.stop(meterRegistry.timer("bds.sidecar.predict.duration")))
+                .doOnTerminate(() -> sample.stop(sidecarTimer))
                 .doOnSubscribe(s -> log.debug("Calling sidecar /predict…"))
                 .map(rd -> {
-                    meterRegistry.counter("bds.route.decision",
-                            "decision", rd.decision(),
-                            "source", "sidecar").increment();
-                    return rd;
+                    int idx = decisionIndex(rd.decision());
+                    if (idx >= 0) {
+                        decisionCounters[Source.SIDECAR.ordinal()][idx].increment();
+                    } else {
+                        meterRegistry.counter("bds.route.decision",
+                                "decision", rd.decision(),
+                                "source", "sidecar").increment();
+                    }
+                    if (rd.predicted_peak_mb() >= 0) recentDecisions.put(f, rd);
+                    return new Prediction(rd, Source.SIDECAR);
                 })
                 .onErrorResume(err -> {
-                    log.warn("Sidecar predict failed; returning conservative default: {}", err.toString());
-                    double fallback = -1.0; // “unknown” sentinel
-                    final String decision = "STANDARD_PATH";
-                    meterRegistry.counter("bds.route.decision",
-                            "decision", decision,
-                            "source", "fallback").increment();
-                    return Mono.just(new RouteDecision("STANDARD_PATH", fallback));
+                    if (err instanceof CircuitBreaker.OpenException) {
+                        log.debug("Sidecar circuit open; using fallback");
+                    } else {
+                        log.warn("Sidecar predict failed; using fallback: {}", err.toString());
+                    }
+                    return Mono.just(fallback(f));
                 });
     }
 
+    /**
+     * Best decision available without the sidecar: its recent decision for the same features,
+     * else the linear model's with missing features imputed (the local path already declined the
+     * document, because of a NaN feature or because no model was loaded yet), else
+     * {@link #FALLBACK}.
+     *
+     * @param f features
+     * @return the decision and the tier that made it; never {@code null}
+     */
+    private Prediction fallback(PdfFeatures f) {
+        RouteDecision recent = recentDecisions.getIfPresent(f);
+        if (recent != null) {
+            int idx = decisionIndex(recent.decision());
+            if (idx >= 0) decisionCounters[Source.RECENT.ordinal()][idx].increment();
+            return new Prediction(recent, Source.RECENT);
+        }
+        Model m = model;
+        if (m != null) {
+            double y = m.predictImputed(f);
+            String decision = makeDecision(y);
+            decisionCounters[Source.LINEAR.ordinal()][decisionIndex(decision)].increment();
+            return new Prediction(new RouteDecision(decision, round1(y)), Source.LINEAR);
+        }
+        decisionCounters[Source.FALLBACK.ordinal()][decisionIndex(FALLBACK_DECISION)].increment();
+        return new Prediction(FALLBACK, Source.FALLBACK);
+    }
+
+    /**
+     * Score a document in-process, without allocating: with the tree ensemble if loaded, else with
+     * the linear model.
+     *
+     * @param f features
+     * @return predicted peak MB (unrounded), or {@link Double#NaN} if no local model is loaded
+     *         (or the tree ensemble cannot score a NaN input)
+     */
+    public double scoreLocal(PdfFeatures f) {
+        TreeEnsembleModel t = trees;
+        if (t != null) return t.predict(f);
+        Model m = model;
+        return m == null ? Double.NaN : m.predict(f);
+    }
+
     /**
      * Convenience alias for {@link #predictOnly(PdfFeatures)}.
      *
@@ -253,10 +656,23 @@ public class MemorySpikeService {
     }
 
     /**
-     * @return {@code true} if a local model has been loaded or trained in this process
+     * @return {@code true} if a local model (tree ensemble or linear) has been loaded or trained
+     *         in this process
      */
     public boolean hasLocalModel() {
-        return model != null;
+        return trees != null || model != null;
+    }
+
+    /**
+     * Version of the local model currently used by {@link #predictOnly(PdfFeatures)}.
+     * <p>
+     * Starts at 0 (no local model) and increases whenever a model is loaded or retrained, so a
+     * decision stamped with an older version must not be reused.
+     *
+     * @return monotonically increasing model version
+     */
+    public long modelVersion() {
+        return modelVersion.get();
     }
 
     /**
@@ -267,70 +683,48 @@ public class MemorySpikeService {
     }
 
     /**
-     * Count how many labeled rows exist in the training CSV (label &gt;= 0).
+     * Number of labeled rows in the training CSV (label &gt;= 0).
+     * <p>
+     * Constant-time: served from an in-memory counter (see "Sample counters" above).
      *
-     * @return number of usable samples; returns 0 on errors
+     * @return number of usable samples
      */
     public int sampleCount() {
-        if (!Files.exists(csvPath)) return 0;
-        try (Stream<String> lines = Files.lines(csvPath, StandardCharsets.UTF_8)) {
-            long n = lines
-                    .skip(1)
-                    .map(String::trim)
-                    .filter(s -> !s.isEmpty())
-                    .map(l -> l.split(",", -1))
-                    .filter(cols -> cols.length >= 10)
-                    .mapToDouble(cols -> parse(cols[9]))
-                    .filter(lbl -> lbl >= 0.0)
-                    .count();
-            return (int) n;
-        } catch (IOException e) {
-            log.warn("sampleCount failed: {}", e.toString());
-            return 0;
-        }
+        return labelledCount.get();
     }
 
     /* ===================== TRAINING ===================== */
 
     /**
-     * Append a labeled row and retrain the tiny local model every N samples.
+     * Hand a labelled sample to the background trainer.
      * <p>
-     * File I/O and CSV scanning are offloaded to {@code boundedElastic} to avoid blocking
-     * reactive event-loop threads.
+     * Only enqueues: the store append, learner update and any model publish happen later on the
+     * trainer thread, so the caller never waits for training. With {@code bds.train.overflow=block}
+     * a full queue blocks, so the enqueue is moved to {@code boundedElastic}; with
+     * {@code drop-oldest} it completes immediately on the calling thread.
      *
      * @param f               features used as the row's predictors
-     * @param measuredPeakMb  observed label (peak memory in MB) to store
-     * @return a {@link Mono} completing when the append/retrain flow finishes
+     * @param measuredPeakMb  observed label (peak memory in MB) to store; negative or NaN means
+     *                        "no usable label" (the row is stored but not learned from)
+     * @return a {@link Mono} completing once the sample is queued
      */
     public Mono<Void> train(PdfFeatures f, double measuredPeakMb) {
-        // Offload file writes and CSV scanning to boundedElastic to avoid blocking event-loop threads.
-        return Mono.fromRunnable(() -> {
-                    appendTrainingRow(f, measuredPeakMb);
-                    maybeRetrain();
-                })
-                .subscribeOn(Schedulers.boundedElastic())
-                .then();
+        Mono<Void> enqueue = Mono.fromRunnable(() -> trainingQueue.submit(f, measuredPeakMb));
+        return trainingQueue.mayBlock() ? enqueue.subscribeOn(Schedulers.boundedElastic()) : enqueue;
     }
 
-    /* ===================== INTERNAL: local model predict ===================== */
-
     /**
-     * Predict using the in-process linear model if available; otherwise return NaN.
+     * Wait until every sample passed to {@link #train} so far has been applied.
      *
-     * @param f features
-     * @return predicted peak MB, or {@link Double#NaN} if no local model is loaded
+     * @param timeout maximum wait
+     * @return {@code true} if the backlog drained in time
      */
-    private double predictLocalOrNa(PdfFeatures f) {
-        Model m = model;
-        if (m == null) return Double.NaN;
-        double[] x = com.example.bds.pdf.PdfFeatureExtractor.toVector(f);
-        double y = m.bias;
-        for (int i = 0; i < m.weights.length; i++) {
-            y += m.weights[i] * x[i];
-        }
-        return y;
+    public boolean awaitTrainingIdle(Duration timeout) {
+        return trainingQueue.awaitIdle(timeout);
     }
 
+    /* ===================== INTERNAL: local model predict ===================== */
+
     /**
      * Map a predicted peak (MB) to a routing decision using the configured threshold.
      * Negative predictions (e.g., fallbacks) are treated conservatively as {@code STANDARD_PATH}.
@@ -346,121 +740,180 @@ public class MemorySpikeService {
     /* ===================== DATA & RETRAIN ===================== */
 
     /**
-     * Append a single labeled row to the training CSV using a stable column order.
-     * Values are rounded/clamped where appropriate; the producer string is CSV-escaped.
+     * Trainer-thread sink of {@link #trainingQueue}: append a batch under one lock acquisition,
+     * then publish if the store crossed a multiple of {@link #retrainEvery}.
+     *
+     * @param batch samples in submission order
+     */
+    private void applyBatch(List<TrainingQueue.Sample> batch) {
+        long before = store.size();
+        synchronized (learnLock) {
+            for (TrainingQueue.Sample s : batch) appendTrainingRow(s.features(), s.labelMb());
+        }
+        maybePublish(before, store.size());
+    }
+
+    /**
+     * Append a single labeled row to the training store and feed it to the learner. The caller
+     * holds {@link #learnLock}.
      *
      * @param f       features for the predictors
      * @param labelMb observed peak memory (MB)
      */
-    private synchronized void appendTrainingRow(PdfFeatures f, double labelMb) {
-        try (BufferedWriter w = Files.newBufferedWriter(
-                csvPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-            // CSV: size_mb,pages,image_page_ratio,dpi_estimate,avg_image_size_kb,fonts_embedded_pct,xref_error_count,ocr_required,producer,label_mb
-            w.write(String.format("%s,%s,%s,%s,%s,%s,%s,%s,%s,%s%n",
-                    num(f.size_mb()), f.pages(), num(f.image_page_ratio()), f.dpi_estimate(),
-                    num(f.avg_image_size_kb()), num(f.fonts_embedded_pct()), f.xref_error_count(), f.ocr_required(),
-                    safeCsv(f.producer()), num(labelMb)));
+    private void appendTrainingRow(PdfFeatures f, double labelMb) {
+        PhaseEvent.Train event = new PhaseEvent.Train();
+        event.begin();
+        try {
+            learn(f, labelMb);
+        } finally {
+            event.commit(PhaseEvent.bytes(f.size_mb()), f.pages());
+        }
+    }
+
+    private void learn(PdfFeatures f, double labelMb) {
+        // a missing label (NaN, e.g. rss where the OS does not report it) is stored as unlabelled:
+        // the store would otherwise keep it as 0.0, which counts as a label
+        double label = Double.isFinite(labelMb) ? labelMb : -1.0;
+        try {
+            store.append(f, label);
         } catch (IOException e) {
             log.warn("Failed to append training row: {}", e.toString());
+            return;
+        }
+        if (label >= 0.0) {
+            labelledCount.incrementAndGet();
+            double[] x = updateRow;
+            x[0] = f.size_mb();
+            x[1] = f.pages();
+            x[2] = f.image_page_ratio();
+            x[3] = f.dpi_estimate();
+            x[4] = f.avg_image_size_kb();
+            x[5] = f.fonts_embedded_pct();
+            x[6] = f.xref_error_count();
+            x[7] = f.ocr_required();
+            for (int j = 0; j < x.length; j++) if (!Double.isFinite(x[j])) x[j] = 0.0;
+            learner.update(x, label);
         }
     }
 
     /**
-     * If the number of rows is a multiple of {@link #retrainEvery}, retrain the local model
-     * from the CSV and persist it.
+     * If the store crossed a multiple of {@link #retrainEvery} rows since {@code before}, publish a
+     * new local model and persist it: the learner's current weights, or a full refit by
+     * {@link #batchTrainer}.
      * <p>
      * Errors are logged and ignored; no exception is thrown to the caller.
+     *
+     * @param before store size before the batch
+     * @param rows   store size after the batch
      */
-    private synchronized void maybeRetrain() {
-        try (Stream<String> lines = Files.lines(csvPath, StandardCharsets.UTF_8)) {
-            long rows = lines.skip(1).count();
-            if (rows > 0 && rows % retrainEvery == 0) {
-                // Train + persist on boundedElastic from caller (train()).
-                Model newModel = trainFromCsv(csvPath);
-                persistModel(newModel);
-                this.model = newModel;
-                log.info("Retrained model on {} rows. Weights={}, bias={}", rows, arr(newModel.weights), newModel.bias);
+    private void maybePublish(long before, long rows) {
+        if (rows <= 0 || rows / retrainEvery == before / retrainEvery) return;
+        if (batchTrainer == null) {
+            publishLearner("online update");
+            return;
+        }
+        try {
+            synchronized (publishLock) {
+                TrainingStore.Columns all = store.read();
+                publish("batch fit", all.rows(), batchTrainer.fit(all));
             }
-        } catch (IOException e) {
-            log.warn("Retrain check failed: {}", e.toString());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Batch fit failed: {}", e.toString());
         }
     }
 
     /**
-     * Train a tiny linear model from the CSV using batch gradient descent.
-     * <p>
-     * The model is intentionally simple (no external ML deps) and expects 8 numeric features,
-     * excluding the categorical {@code producer}.
+     * Publish the online learner's current weights. The weights are read under
+     * {@link #learnLock}, inside {@link #publishLock}, so publishes happen in learner order.
      *
-     * @param path path to the CSV file
-     * @return a new {@link Model} instance
-     * @throws IOException if the CSV cannot be read
-     */
-    private Model trainFromCsv(Path path) throws IOException {
-        List<double[]> X = new ArrayList<>();
-        List<Double> y = new ArrayList<>();
-
-        try (Stream<String> stream = Files.lines(path, StandardCharsets.UTF_8).skip(1)) {
-            stream.forEach(line -> {
-                String[] cols = line.split(",", -1);
-                if (cols.length < 10) return;
-                try {
-                    double[] x = new double[8];
-                    x[0] = parse(cols[0]); // size_mb
-                    x[1] = parse(cols[1]); // pages
-                    x[2] = parse(cols[2]); // image_page_ratio
-                    x[3] = parse(cols[3]); // dpi_estimate
-                    x[4] = parse(cols[4]); // avg_image_size_kb
-                    x[5] = parse(cols[5]); // fonts_embedded_pct
-                    x[6] = parse(cols[6]); // xref_error_count
-                    x[7] = parse(cols[7]); // ocr_required
-                    double label = parse(cols[9]); // label_mb
-                    if (label >= 0) {
-                        X.add(x);
-                        y.add(label);
-                    }
-                } catch (Exception ignore) { }
-            });
+     * @param reason for the log line
+     */
+    private void publishLearner(String reason) {
+        synchronized (publishLock) {
+            LinearModel lm;
+            long rows;
+            synchronized (learnLock) {
+                lm = learner.model();
+                rows = store.size();
+            }
+            publish(reason, rows, lm);
         }
+    }
 
-        if (X.isEmpty()) {
-            // no usable rows → zero model
-            return new Model(new double[8], 0.0);
+    /**
+     * Rebuild the learner exactly from the whole training store (compaction).
+     * <p>
+     * The fit runs without holding {@link #learnLock}; rows appended meanwhile are replayed into
+     * the new learner under the lock before it replaces the old one, so no sample is lost or
+     * counted twice. The rebuilt model is published. Errors are logged and ignored.
+     */
+    void compact() {
+        try {
+            TrainingStore.Columns snapshot = store.read();
+            RecursiveLeastSquares rebuilt = fitLearner(snapshot);
+            synchronized (learnLock) {
+                TrainingStore.Columns tail = store.read(snapshot.rows());
+                double[] x = new double[8];
+                for (int i = 0; i < tail.rows(); i++) {
+                    if (tail.label()[i] < 0) continue;
+                    for (int j = 0; j < 8; j++) x[j] = tail.features()[j][i];
+                    rebuilt.update(x, tail.label()[i]);
+                }
+                learner = rebuilt;
+            }
+            if (batchTrainer == null) publishLearner("compaction");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Compaction failed: {}", e.toString());
         }
+    }
 
-        // tiny batch GD (no deps)
-        int nFeat = 8;
-        double[] w = new double[nFeat];
-        double b = 0.0;
-
-        double lr = 1e-5;
-        int epochs = 8;
+    /**
+     * Persist a fitted model and make it the active model. The caller holds {@link #publishLock}.
+     *
+     * @param reason for the log line
+     * @param rows   store size at publish time, for the log line
+     * @param fitted the model to publish
+     */
+    private void publish(String reason, long rows, LinearModel fitted) {
+        Model newModel = new Model(fitted.weights(), fitted.bias(), fitted.means(), fitted.scales());
+        persistModel(newModel);
+        this.model = newModel;
+        modelVersion.incrementAndGet();
+        log.info("Published model ({}) at {} rows. Weights={}, bias={}", reason, rows, arr(newModel.weights), newModel.bias);
+    }
 
-        for (int ep = 0; ep < epochs; ep++) {
-            double[] gw = new double[nFeat];
-            double gb = 0.0;
+    /**
+     * Fit a fresh learner over all labelled rows of {@code c}; allocation is per column, not per row.
+     *
+     * @param c training columns (see {@link TrainingStore#read()})
+     * @return the learner
+     */
+    private RecursiveLeastSquares fitLearner(TrainingStore.Columns c) {
+        return RecursiveLeastSquares.fit(8, forgettingFactor, priorVariance, c.features(), c.label(), c.rows());
+    }
 
-            for (int i = 0; i < X.size(); i++) {
-                double pred = b;
-                double[] xi = X.get(i);
-                for (int j = 0; j < nFeat; j++) pred += w[j] * xi[j];
-                double err = pred - y.get(i);
-                gb += err;
-                for (int j = 0; j < nFeat; j++) gw[j] += err * xi[j];
-            }
-            double invN = 1.0 / X.size();
-            gb *= invN;
-            for (int j = 0; j < nFeat; j++) gw[j] *= invN;
+    /* ===================== MODEL IO ===================== */
 
-            b -= lr * gb;
-            for (int j = 0; j < nFeat; j++) w[j] -= lr * gw[j];
+    /**
+     * Load the exported tree ensemble from {@link #treeModelPath}, if present.
+     * <p>
+     * On success, assigns {@link #trees}. On any error, logs a warning and keeps running on the
+     * linear model or the sidecar.
+     */
+    private void loadTreeModelIfExists() {
+        if (!Files.exists(treeModelPath)) return;
+        try {
+            TreeEnsembleModel loaded = TreeEnsembleModel.read(treeModelPath);
+            this.trees = loaded;
+            modelVersion.incrementAndGet();
+            log.info("Loaded tree ensemble from {} ({} trees, {} nodes, batch scoring: {})",
+                    treeModelPath.toAbsolutePath(), loaded.trees(), loaded.nodes(),
+                    loaded.vectorized() ? "vector" : "scalar");
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read tree ensemble; not using it: {}", e.toString());
         }
-
-        return new Model(w, b);
     }
 
-    /* ===================== MODEL IO ===================== */
-
     /**
      * Load a previously persisted model from {@link #modelPath}, if present.
      * <p>
@@ -471,6 +924,7 @@ public class MemorySpikeService {
         if (Files.exists(modelPath)) {
             try {
                 this.model = mapper.readValue(Files.readString(modelPath), Model.class);
+                modelVersion.incrementAndGet();
                 log.info("Loaded local model from {}", modelPath.toAbsolutePath());
             } catch (Exception e) {
                 log.warn("Failed to read model; starting without one: {}", e.toString());
@@ -502,51 +956,53 @@ public class MemorySpikeService {
     }
 
     /**
-     * Ensure the training CSV exists and contains a header row. Creates parent
-     * directories as needed.
+     * Import {@link #csvPath} into the store if the store is empty (first start, or migration
+     * from the CSV-only layout), then seed {@link #labelledCount}.
      *
-     * @throws IOException if the file cannot be created
+     * @throws IOException if the CSV cannot be imported or the store cannot be scanned
      */
-    private void ensureCsvHeader() throws IOException {
-        if (!Files.exists(csvPath)) {
-            Files.createDirectories(csvPath.getParent());
-            Files.writeString(
-                    csvPath,
-                    "size_mb,pages,image_page_ratio,dpi_estimate,avg_image_size_kb,fonts_embedded_pct,xref_error_count,ocr_required,producer,label_mb\n",
-                    StandardCharsets.UTF_8,
-                    StandardOpenOption.CREATE_NEW
-            );
+    private void seedStore() throws IOException {
+        if (store.size() == 0 && Files.exists(csvPath)) {
+            long imported = store.importCsv(csvPath);
+            if (imported > 0) log.info("Imported {} training rows from {}", imported, csvPath.toAbsolutePath());
         }
+        labelledCount.set(store.labelledCount());
+        log.info("Training store: rows={}, labelled={}", store.size(), labelledCount.get());
     }
 
-    /* ===================== helpers ===================== */
-
     /**
-     * CSV-escape a string value (double-quote quoting).
-     *
-     * @param s input
-     * @return escaped value wrapped in quotes; empty string if null
+     * Export the store to {@link #csvPath} for offline training. Best-effort; errors are logged.
      */
-    private static String safeCsv(String s) {
-        if (s == null) return "";
-        String v = s.replace("\"", "\"\"");
-        return "\"" + v + "\"";
+    private synchronized void exportCsv() {
+        try {
+            store.exportCsv(csvPath);
+        } catch (IOException e) {
+            log.warn("Failed to export training CSV: {}", e.toString());
+        }
     }
 
+    /* ===================== helpers ===================== */
+
     /**
-     * Format a double for CSV with 4 decimal places; returns {@code 0.0} for NaN/Infinity.
+     * @param decision a decision name
+     * @return its column in {@link #decisionCounters}, or {@code -1} for a name we do not emit
      */
-    private static String num(double v) {
-        if (Double.isNaN(v) || Double.isInfinite(v)) return "0.0";
-        return String.format(java.util.Locale.ROOT, "%.4f", v);
+    private static int decisionIndex(String decision) {
+        return switch (decision) {
+            case "STANDARD_PATH" -> 0;
+            case "ROUTE_BIG_MEMORY" -> 1;
+            default -> -1;
+        };
     }
 
     /**
-     * Parse a string to double; returns {@code 0.0} if blank or unparsable.
+     * Register the {@code bds.route.decision} counters of one source, in {@link #decisionIndex} order.
      */
-    private static double parse(String s) {
-        if (s == null || s.isBlank()) return 0.0;
-        try { return Double.parseDouble(s); } catch (Exception e) { return 0.0; }
+    private static Counter[] decisionCounters(MeterRegistry registry, String source) {
+        return new Counter[]{
+                registry.counter("bds.route.decision", "decision", "STANDARD_PATH", "source", source),
+                registry.counter("bds.route.decision", "decision", "ROUTE_BIG_MEMORY", "source", source)
+        };
     }
 
     /** Round to 1 decimal place. */
@@ -567,18 +1023,115 @@ public class MemorySpikeService {
     }
 
     /**
-     * Immutable, minimal linear model: {@code y = dot(weights, x) + bias}.
+     * Immutable, minimal linear model over standardized features:
+     * {@code y = bias + sum_i weights[i] * (x[i] - means[i]) / scales[i]}.
+     * <p>
+     * <b>Dimensions:</b> all arrays have length 8 (matching the numeric features). Models persisted
+     * before standardization was introduced have no means/scales and load as the identity.
      * <p>
-     * <b>Dimensions:</b> weights length is 8 (matching the numeric features).
+     * The standardization is folded into raw-space coefficients on construction, so
+     * {@link #predict(PdfFeatures)} is eight multiply-adds over the record's fields.
      */
     @Getter
     public static final class Model {
         private final double[] weights; // length 8
         private final double bias;
+        private final double[] means;
+        private final double[] scales;
+
+        /** {@code weights[i] / scales[i]}; not serialized. */
+        @Getter(AccessLevel.NONE)
+        private final double[] coef;
+        /** {@code bias - sum_i coef[i] * means[i]}; not serialized. */
+        @Getter(AccessLevel.NONE)
+        private final double offset;
 
         public Model(double[] weights, double bias) {
+            this(weights, bias, null, null);
+        }
+
+        @JsonCreator
+        public Model(@JsonProperty("weights") double[] weights,
+                     @JsonProperty("bias") double bias,
+                     @JsonProperty("means") double[] means,
+                     @JsonProperty("scales") double[] scales) {
             this.weights = (weights == null ? new double[8] : weights);
             this.bias = bias;
+            this.means = (means == null ? new double[this.weights.length] : means);
+            if (scales == null) {
+                scales = new double[this.weights.length];
+                Arrays.fill(scales, 1.0);
+            }
+            this.scales = scales;
+            if (this.weights.length != 8 || this.means.length != 8 || this.scales.length != 8) {
+                throw new IllegalArgumentException("model arrays must have length 8");
+            }
+            this.coef = new double[8];
+            double o = bias;
+            for (int i = 0; i < 8; i++) {
+                coef[i] = this.weights[i] / this.scales[i];
+                o -= coef[i] * this.means[i];
+            }
+            this.offset = o;
+        }
+
+        /**
+         * Score a column-major batch ({@code x[j][i]}, see {@link PdfFeatureExtractor#toColumns}).
+         *
+         * @param x    8 feature columns
+         * @param rows rows to score
+         * @param out  receives the unrounded predictions, length {@code >= rows}
+         */
+        public void predict(double[][] x, int rows, double[] out) {
+            Arrays.fill(out, 0, rows, offset);
+            for (int j = 0; j < 8; j++) {
+                double cj = coef[j];
+                double[] col = x[j];
+                for (int i = 0; i < rows; i++) out[i] += cj * col[i];
+            }
+        }
+
+        /**
+         * @param f features (the categorical {@code producer} is ignored)
+         * @return predicted peak MB, unrounded
+         */
+        public double predict(PdfFeatures f) {
+            double[] c = coef;
+            return offset
+                    + c[0] * f.size_mb()
+                    + c[1] * f.pages()
+                    + c[2] * f.image_page_ratio()
+                    + c[3] * f.dpi_estimate()
+                    + c[4] * f.avg_image_size_kb()
+                    + c[5] * f.fonts_embedded_pct()
+                    + c[6] * f.xref_error_count()
+                    + c[7] * f.ocr_required();
+        }
+
+        /**
+         * Like {@link #predict(PdfFeatures)}, but a NaN feature is taken at its training mean,
+         * so it contributes nothing to the standardized sum. Used only when the sidecar cannot
+         * answer; models without standardization impute 0.
+         *
+         * @param f features, possibly with NaN values
+         * @return predicted peak MB, unrounded; never NaN for finite coefficients
+         */
+        public double predictImputed(PdfFeatures f) {
+            double[] c = coef;
+            double[] mu = means;
+            return offset
+                    + c[0] * orMean(f.size_mb(), mu[0])
+                    + c[1] * f.pages()
+                    + c[2] * orMean(f.image_page_ratio(), mu[2])
+                    + c[3] * f.dpi_estimate()
+                    + c[4] * orMean(f.avg_image_size_kb(), mu[4])
+                    + c[5] * orMean(f.fonts_embedded_pct(), mu[5])
+                    + c[6] * f.xref_error_count()
+                    + c[7] * f.ocr_required();
+        }
+
+        private static double orMean(double x, double mean) {
+            return Double.isNaN(x) ? mean : x;
         }
 
         /** Alias for stats/ML convention. */
@@ -587,6 +1140,45 @@ public class MemorySpikeService {
         public double intercept() { return bias; }
     }
 
+    /**
+     * Tier that answered a prediction; {@link #tag} is the {@code source} tag of
+     * {@code bds.route.decision}.
+     */
+    public enum Source {
+        /** In-process tree ensemble or linear model. */
+        LOCAL("local"),
+        /** Live sidecar call. */
+        SIDECAR("sidecar"),
+        /** Conservative {@code STANDARD_PATH}, nothing better known. */
+        FALLBACK("fallback"),
+        /** Sidecar's earlier decision for identical features, replayed during an outage. */
+        RECENT("recent"),
+        /** Linear model with imputed features, during an outage. */
+        LINEAR("linear");
+
+        private final String tag;
+
+        Source(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * @return {@code true} if the decision reflects the current model or a live sidecar
+         *         answer and may be reused for later uploads; outage-time answers may not
+         */
+        public boolean cacheable() {
+            return this == LOCAL || this == SIDECAR;
+        }
+    }
+
+    /**
+     * A decision with the tier that made it.
+     *
+     * @param decision the routing decision
+     * @param source   who answered
+     */
+    public record Prediction(RouteDecision decision, Source source) {}
+
     /**
      * Snapshot of the current in-memory model and dataset state for diagnostics.
      *
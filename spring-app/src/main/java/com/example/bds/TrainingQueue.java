@@ -0,0 +1,222 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Bounded hand-off between uploads that produce labelled samples and the single background
+ * trainer that consumes them.
+ *
+ * <h2>Flow</h2>
+ * {@link #submit} only enqueues. The first submit into an idle queue schedules a drain on a
+ * dedicated single-thread scheduler ({@code bds-trainer}); the drain takes up to
+ * {@code batchSize} samples at a time and hands them to the sink until the queue is empty. At
+ * most one drain runs at a time, so the sink never sees concurrent batches.
+ *
+ * <h2>Overflow</h2>
+ * <ul>
+ *   <li>{@link Overflow#DROP_OLDEST} — a full queue discards its oldest sample to make room;
+ *       {@link #submit} never blocks. Dropped samples are counted.</li>
+ *   <li>{@link Overflow#BLOCK} — {@link #submit} waits for space, so callers must be on a thread
+ *       that may block (see {@link #mayBlock()}).</li>
+ * </ul>
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * <ul>
+ *   <li><code>bds.train.queue.depth</code> (gauge) — samples waiting to be drained.</li>
+ *   <li><code>bds.train.queue.lag</code> (gauge, seconds) — age of the oldest sample not yet
+ *       applied by the sink; 0 when idle.</li>
+ *   <li><code>bds.train.queue.dropped</code> (counter) — samples discarded by
+ *       {@link Overflow#DROP_OLDEST}.</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+@Slf4j
+final class TrainingQueue {
+
+    /** What {@link #submit} does when the queue is full. */
+    enum Overflow {
+        DROP_OLDEST, BLOCK;
+
+        /**
+         * @param value {@code drop-oldest} or {@code block} (case-insensitive)
+         * @return the policy
+         * @throws IllegalArgumentException for any other value
+         */
+        static Overflow parse(String value) {
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "drop-oldest" -> DROP_OLDEST;
+                case "block" -> BLOCK;
+                default -> throw new IllegalArgumentException("Unknown bds.train.overflow: " + value);
+            };
+        }
+    }
+
+    /**
+     * One labelled sample.
+     *
+     * @param features      predictors
+     * @param labelMb       measured peak memory (MB)
+     * @param enqueuedNanos {@link System#nanoTime()} at submit, for the lag gauge
+     */
+    record Sample(PdfFeatures features, double labelMb, long enqueuedNanos) {}
+
+    private final ArrayBlockingQueue<Sample> queue;
+    private final int batchSize;
+    private final Overflow overflow;
+    private final Consumer<List<Sample>> sink;
+    private final Scheduler scheduler;
+    private final Counter dropped;
+
+    /** True while a drain is scheduled or running. */
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /** Enqueue time of the oldest sample in the batch being applied, or {@code 0} if none. */
+    private volatile long inFlightSince;
+
+    /**
+     * @param capacity      maximum queued samples
+     * @param batchSize     maximum samples per sink call
+     * @param overflow      full-queue policy
+     * @param sink          consumer of batches; called from the trainer thread only
+     * @param meterRegistry registry for the queue gauges
+     * @throws IllegalArgumentException if {@code capacity} or {@code batchSize} is not positive
+     */
+    TrainingQueue(int capacity, int batchSize, Overflow overflow, Consumer<List<Sample>> sink,
+                  MeterRegistry meterRegistry) {
+        if (capacity < 1) throw new IllegalArgumentException("bds.train.queue-capacity must be >= 1");
+        if (batchSize < 1) throw new IllegalArgumentException("bds.train.batch-size must be >= 1");
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.overflow = overflow;
+        this.sink = sink;
+        this.scheduler = Schedulers.newSingle("bds-trainer", true);
+
+        Gauge.builder("bds.train.queue.depth", queue, ArrayBlockingQueue::size)
+                .description("Labelled samples waiting for the trainer")
+                .register(meterRegistry);
+        Gauge.builder("bds.train.queue.lag", this, TrainingQueue::lagSeconds)
+                .description("Age of the oldest labelled sample not yet applied")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("bds.train.queue.dropped")
+                .description("Labelled samples dropped because the training queue was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return {@code true} if {@link #submit} may block the calling thread
+     */
+    boolean mayBlock() {
+        return overflow == Overflow.BLOCK;
+    }
+
+    /**
+     * Enqueue a sample and make sure a drain is scheduled.
+     *
+     * @param features predictors
+     * @param labelMb  measured peak memory (MB)
+     */
+    void submit(PdfFeatures features, double labelMb) {
+        Sample s = new Sample(features, labelMb, System.nanoTime());
+        if (overflow == Overflow.BLOCK) {
+            try {
+                queue.put(s);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for training queue space", e);
+            }
+        } else {
+            while (!queue.offer(s)) {
+                if (queue.poll() != null) dropped.increment();
+            }
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * @return samples waiting to be drained
+     */
+    int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Wait until every submitted sample has been applied.
+     *
+     * @param timeout maximum wait
+     * @return {@code true} if the queue drained in time
+     */
+    boolean awaitIdle(Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!queue.isEmpty() || draining.get()) {
+            if (System.nanoTime() - deadline > 0) return false;
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply what is queued (waiting up to {@code timeout}), then stop the trainer thread.
+     *
+     * @param timeout maximum wait for the backlog
+     */
+    void close(Duration timeout) {
+        if (!awaitIdle(timeout)) {
+            log.warn("Training queue not drained on shutdown; {} samples discarded", queue.size());
+        }
+        scheduler.dispose();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) scheduler.schedule(this::drain);
+    }
+
+    private void drain() {
+        List<Sample> batch = new ArrayList<>(Math.min(batchSize, queue.remainingCapacity() + queue.size()));
+        while (true) {
+            while (queue.drainTo(batch, batchSize) > 0) {
+                inFlightSince = batch.get(0).enqueuedNanos();
+                try {
+                    sink.accept(batch);
+                } catch (RuntimeException e) {
+                    log.warn("Training batch of {} samples failed: {}", batch.size(), e.toString());
+                }
+                batch.clear();
+                inFlightSince = 0L;
+            }
+            draining.set(false);
+            // a submit may have raced with the flag reset; take the drain back if so
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) return;
+        }
+    }
+
+    private double lagSeconds() {
+        long oldest = inFlightSince;
+        if (oldest == 0L) {
+            Sample head = queue.peek();
+            if (head == null) return 0.0;
+            oldest = head.enqueuedNanos();
+        }
+        return Math.max(0L, System.nanoTime() - oldest) / 1e9;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Bounded cache of extraction and routing results for repeat uploads, keyed by the SHA-256 of
+ * the uploaded bytes (see {@link com.example.bds.pdf.SpooledPdf#sha256()}).
+ *
+ * <h2>What is cached</h2>
+ * <ul>
+ *   <li><b>Features:</b> {@link PdfFeatures} depend only on the document bytes, so a cached record
+ *       is valid for as long as the entry lives.</li>
+ *   <li><b>Decision:</b> the {@link RouteDecision} is stored together with the
+ *       {@link MemorySpikeService#modelVersion()} it was computed under. A lookup with a different
+ *       version is a miss, so loading or retraining the local model invalidates every cached
+ *       decision at once while keeping the features.</li>
+ *   <li>Decisions served while the sidecar fails or its breaker is open are never cached, so a
+ *       transient outage is not replayed to later uploads: the caller stores only decisions whose
+ *       {@link MemorySpikeService.Source#cacheable()} holds, and {@link #putDecision} drops any
+ *       {@code predicted_peak_mb < 0} as a second line of defence.</li>
+ * </ul>
+ *
+ * <h2>Eviction</h2>
+ * Entries are evicted by count ({@code bds.cache.max-entries}, default 10000) and after a fixed
+ * time since they were written ({@code bds.cache.ttl}, default 1h); the TTL also bounds how long
+ * a sidecar decision outlives a redeploy of the sidecar model. {@code bds.cache.max-entries=0}
+ * disables caching.
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * <ul>
+ *   <li><code>bds.upload.cache.requests</code> (counter) — tags {@code kind=features|decision},
+ *       {@code result=hit|miss}.</li>
+ *   <li><code>cache.size</code>, <code>cache.evictions</code>, … with tag
+ *       {@code cache=bds.upload} — standard Caffeine binder.</li>
+ * </ul>
+ *
+ * <h2>Thread-safety</h2>
+ * Entries are immutable and replaced atomically; safe to use from any thread.
+ *
+ * @since 1.1
+ */
+@Component
+public class UploadCache {
+
+    /**
+     * Cached results for one document.
+     *
+     * @param features     extracted features
+     * @param decision     last non-fallback decision, or {@code null} if none yet
+     * @param modelVersion model version {@code decision} was computed under
+     */
+    record Entry(PdfFeatures features, RouteDecision decision, long modelVersion) {}
+
+    private final Cache<String, Entry> cache;
+
+    private final Counter featureHits;
+    private final Counter featureMisses;
+    private final Counter decisionHits;
+    private final Counter decisionMisses;
+
+    /**
+     * @param maxEntries    maximum cached documents (property {@code bds.cache.max-entries})
+     * @param ttl           expiry after write (property {@code bds.cache.ttl})
+     * @param meterRegistry registry for hit/miss counters and cache gauges
+     */
+    public UploadCache(
+            @Value("${bds.cache.max-entries:10000}") long maxEntries,
+            @Value("${bds.cache.ttl:1h}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "bds.upload");
+
+        this.featureHits = requests(meterRegistry, "features", "hit");
+        this.featureMisses = requests(meterRegistry, "features", "miss");
+        this.decisionHits = requests(meterRegistry, "decision", "hit");
+        this.decisionMisses = requests(meterRegistry, "decision", "miss");
+    }
+
+    /**
+     * Look up the features extracted from a document.
+     *
+     * @param sha256 content digest of the upload
+     * @return cached features, or {@code null} on a miss
+     */
+    public PdfFeatures features(String sha256) {
+        Entry e = cache.getIfPresent(sha256);
+        (e == null ? featureMisses : featureHits).increment();
+        return e == null ? null : e.features();
+    }
+
+    /**
+     * Look up a routing decision computed under the given model version.
+     *
+     * @param sha256       content digest of the upload
+     * @param modelVersion current {@link MemorySpikeService#modelVersion()}
+     * @return the cached decision, or {@code null} if absent or computed under another version
+     */
+    public RouteDecision decision(String sha256, long modelVersion) {
+        Entry e = cache.getIfPresent(sha256);
+        boolean hit = e != null && e.decision() != null && e.modelVersion() == modelVersion;
+        (hit ? decisionHits : decisionMisses).increment();
+        return hit ? e.decision() : null;
+    }
+
+    /**
+     * Remember the features of a document, keeping any decision already cached for it.
+     *
+     * @param sha256   content digest of the upload
+     * @param features extracted features
+     */
+    public void putFeatures(String sha256, PdfFeatures features) {
+        cache.asMap().compute(sha256, (k, old) -> old != null && old.features().equals(features)
+                ? old
+                : new Entry(features, null, 0L));
+    }
+
+    /**
+     * Remember a routing decision from the local model or a live sidecar call. Decisions with
+     * {@code predicted_peak_mb < 0} (the conservative fallback) are ignored.
+     *
+     * @param sha256       content digest of the upload
+     * @param features     features the decision was computed from
+     * @param decision     the decision
+     * @param modelVersion model version read <em>before</em> predicting, so a concurrent retrain
+     *                     leaves the entry stale rather than mislabelled
+     */
+    public void putDecision(String sha256, PdfFeatures features, RouteDecision decision, long modelVersion) {
+        if (decision.predicted_peak_mb() < 0) return;
+        cache.put(sha256, new Entry(features, decision, modelVersion));
+    }
+
+    private static Counter requests(MeterRegistry registry, String kind, String result) {
+        return Counter.builder("bds.upload.cache.requests")
+                .tag("kind", kind)
+                .tag("result", result)
+                .register(registry);
+    }
+}
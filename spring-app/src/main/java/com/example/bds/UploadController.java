@@ -1,23 +1,31 @@
 package com.example.bds;
 
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import com.example.bds.jfr.PhaseEvent;
 import com.example.bds.ml.MemorySampler;
 import com.example.bds.pdf.PdfFeatureExtractor;
+import com.example.bds.pdf.PdfSpooler;
+import com.example.bds.pdf.SpooledPdf;
+import com.example.bds.workload.WorkloadRunner;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
-import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.codec.multipart.FilePartEvent;
+import org.springframework.http.codec.multipart.FormPartEvent;
+import org.springframework.http.codec.multipart.PartEvent;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
-import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 /**
  * Reactive HTTP controller for PDF uploads.
@@ -47,16 +55,29 @@ import java.nio.ByteBuffer;
  *
  * <h2>Processing flow</h2>
  * <ol>
- *   <li><b>Validation:</b> verify content type is compatible with {@code application/pdf},
- *       enforce byte-size cap, and perform a quick PDF header check ({@code %PDF-}).</li>
- *   <li><b>Feature extraction:</b> offloaded to {@code boundedElastic} to avoid blocking
- *       event-loop threads; duration is recorded in {@code bds.pdf.extract.duration}.</li>
- *   <li><b>Predict-before:</b> call {@link MemorySpikeService#predictOnly} (no side effects).</li>
- *   <li><b>Measure label:</b> run a representative workload wrapped by
- *       {@link MemorySampler#measure(java.util.function.Supplier, long)} to record peak heap MB.</li>
- *   <li><b>Train (optional):</b> append features + measured label to CSV and maybe retrain the
- *       local linear model (see {@link MemorySpikeService#train}).</li>
- *   <li><b>Predict-after:</b> call {@link MemorySpikeService#predictOnly} again (no side effects);
+ *   <li><b>Streaming intake:</b> the multipart body is consumed as {@link PartEvent}s. The
+ *       {@code file} part's content type is checked from its headers, then its chunks are
+ *       spooled to a temp file by {@link PdfSpooler}, which checks the {@code %PDF-} header and
+ *       the byte-size cap on the first chunks, before the rest of the upload arrives.</li>
+ *   <li><b>Cache lookup:</b> the spooler hashes the upload (SHA-256) while it streams in; a
+ *       byte-identical upload seen recently reuses its features, and its decision if the local
+ *       model has not changed since (see {@link UploadCache}).</li>
+ *   <li><b>Admission:</b> extraction and the workload each first reserve memory from the pod-wide
+ *       {@link MemoryBudget} ({@code bds.max-bytes}, then {@code predicted_peak_mb}); an upload
+ *       that does not fit waits, or is refused with 429/503.</li>
+ *   <li><b>Feature extraction:</b> on a cache miss, PDFBox reads the memory-mapped spool file
+ *       (no {@code byte[]} copy of the upload); offloaded to {@code boundedElastic} to avoid
+ *       blocking event-loop threads; duration is recorded in {@code bds.pdf.extract.duration}.</li>
+ *   <li><b>Predict-before:</b> call {@link MemorySpikeService#predict} (no side effects),
+ *       unless a cached decision for the current model version exists.</li>
+ *   <li><b>Measure label:</b> run the configured PDF workload ({@code bds.workload.kind}:
+ *       watermark, rasterize or text) on {@link WorkloadRunner}'s memory-sized pool, recording heap
+ *       ({@link MemorySampler}), off-heap and resident growth; {@code bds.workload.label} picks
+ *       which one becomes the label.</li>
+ *   <li><b>Train (optional):</b> enqueue features + measured label for the background trainer
+ *       (see {@link MemorySpikeService#train}); the upload never waits for a store append or a
+ *       model publish.</li>
+ *   <li><b>Predict-after:</b> call {@link MemorySpikeService#predict} again (no side effects);
  *       return a response that includes decisions, measured label, sample counts, and model usage flags.</li>
  * </ol>
  *
@@ -64,20 +85,28 @@ import java.nio.ByteBuffer;
  * <ul>
  *   <li>{@code bds.upload.bytes} — Distribution summary of uploaded payload sizes (bytes).</li>
  *   <li>{@code bds.pdf.extract.duration} — Timer for feature extraction latency (ms recorded).</li>
+ *   <li>{@code bds.upload.cache.requests} — cache hits/misses (see {@link UploadCache}).</li>
  *   <li>Additional metrics for routing and sidecar latency are emitted by {@link MemorySpikeService}.</li>
+ *   <li>Each phase (receive, PDF load, page scan, predict, workload, train) is also a JFR
+ *       {@link PhaseEvent}; {@link com.example.bds.jfr.PhaseProfiler} turns them into
+ *       {@code bds.phase.*} metrics.</li>
  * </ul>
  *
  * <h2>Threading &amp; back-pressure</h2>
  * <ul>
- *   <li>Large/CPU or blocking operations are offloaded using {@code subscribeOn(Schedulers.boundedElastic())}.</li>
- *   <li>File bytes are aggregated via {@link DataBufferUtils#join}, then the buffer is released promptly.</li>
+ *   <li>Large/CPU or blocking operations are offloaded using {@code subscribeOn(Schedulers.boundedElastic())};
+ *       the measured workload runs on {@link WorkloadRunner}'s own bounded pool, and a full
+ *       workload queue fails the upload with 503.</li>
+ *   <li>Upload chunks are written to disk one at a time and released immediately; the upload is
+ *       never held on the heap as a whole. The spool file is deleted when the request completes,
+ *       fails, or is cancelled.</li>
  *   <li>All steps return non-blocking {@link Mono} chains.</li>
  * </ul>
  *
  * <h2>Error handling</h2>
  * <ul>
- *   <li>Invalid content type, empty payloads, files over the size cap, and non-PDF headers
- *       produce {@link IllegalArgumentException} which is expected to be mapped by your
+ *   <li>Invalid content type, a missing or repeated {@code file} part, empty payloads, files over the size
+ *       cap, and non-PDF headers produce {@link IllegalArgumentException} which is expected to be mapped by your
  *       global exception handler to a 4xx response.</li>
  *   <li>Unexpected exceptions are propagated as error signals; your
  *       {@code @ControllerAdvice} / global handler should map them to 5xx.</li>
@@ -105,11 +134,27 @@ public class UploadController {
     @Value("${bds.max-bytes:52428800}") // default 50 MiB
     private long maxBytes;
 
+    /**
+     * Directory for temporary upload spool files. Defaults to {@code java.io.tmpdir}.
+     * <p>Bound from property {@code bds.spool-dir}.</p>
+     */
+    @Value("${bds.spool-dir:${java.io.tmpdir}}")
+    private Path spoolDir;
+
     /** Orchestrates prediction + optional training + model lifecycle. */
     private final MemorySpikeService memorySpikeService;
 
-    /** Stateless, reusable feature extractor. */
-    private final PdfFeatureExtractor extractor = new PdfFeatureExtractor();
+    /** Shared feature extractor (see {@link DefaultConfiguration#pdfFeatureExtractor}). */
+    private final PdfFeatureExtractor extractor;
+
+    /** Content-hash keyed features/decisions of recent uploads. */
+    private final UploadCache uploadCache;
+
+    /** Runs the measured PDF workload. */
+    private final WorkloadRunner workloadRunner;
+
+    /** Pod-wide memory admission for extraction and the workload. */
+    private final MemoryBudget memoryBudget;
 
     /** Micrometer registry for upload/extraction metrics. */
     private final MeterRegistry meterRegistry;
@@ -117,9 +162,10 @@ public class UploadController {
     /**
      * Handle a PDF upload, optionally train on a measured label, and return a detailed outcome.
      *
-     * @param file      the uploaded PDF (multipart part named {@code file})
-     * @param trainFlag optional training flag; training occurs when {@code null}, {@code "true"},
-     *                  or {@code "on"} (case-insensitive). Any other value disables training.
+     * @param parts the multipart body as a stream of part events. Expected parts are
+     *              {@code file} (the PDF) and an optional {@code train} form field; training occurs
+     *              when it is absent, {@code "true"}, or {@code "on"} (case-insensitive). Any other
+     *              value disables training.
      * @return a {@link Mono} emitting {@link UploadResponse} on success
      */
     @PostMapping(
@@ -127,82 +173,162 @@ public class UploadController {
             consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public Mono<UploadResponse> uploadAndRoute(@RequestPart("file") FilePart file,
-                                               @RequestPart(name = "train", required = false) String trainFlag) {
-        var ct = file.headers().getContentType();
-        if (ct == null || !MediaType.APPLICATION_PDF.isCompatibleWith(ct)) {
-            return Mono.error(new IllegalArgumentException("Only application/pdf is supported"));
-        }
+    public Mono<UploadResponse> uploadAndRoute(@RequestBody Flux<PartEvent> parts) {
+        return Mono.usingWhen(
+                        receive(parts),
+                        this::route,
+                        intake -> Mono.fromRunnable(intake::close).subscribeOn(Schedulers.boundedElastic()))
+                .doOnCancel(() -> System.out.println("Upload cancelled by client; aborting processing"));
+    }
+
+    /**
+     * Consume the multipart stream part by part: the {@code file} part is validated and spooled
+     * to disk as it arrives, the {@code train} form field is captured, anything else is drained.
+     *
+     * @param parts multipart events in wire order
+     * @return a {@link Mono} emitting the completed {@link Intake}; if it errors, any spool file
+     *         already written is deleted
+     */
+    private Mono<Intake> receive(Flux<PartEvent> parts) {
+        return Mono.defer(() -> {
+            Intake intake = new Intake();
+            PhaseEvent.UploadReceive event = new PhaseEvent.UploadReceive();
+            event.begin();
+            return parts.windowUntil(PartEvent::isLast)
+                    .concatMap(part -> part.switchOnFirst((signal, events) -> {
+                        if (!signal.hasValue()) return events.then();
+                        PartEvent first = signal.get();
+                        if (first instanceof FilePartEvent && "file".equals(first.name())) {
+                            // one spool file per request: a second part would leak the first
+                            if (intake.pdf != null) {
+                                return reject(events, "Only one file part is allowed");
+                            }
+                            var ct = first.headers().getContentType();
+                            if (ct == null || !MediaType.APPLICATION_PDF.isCompatibleWith(ct)) {
+                                return reject(events, "Only application/pdf is supported");
+                            }
+                            return PdfSpooler.spool(events.map(PartEvent::content), spoolDir, maxBytes)
+                                    .doOnNext(pdf -> intake.pdf = pdf)
+                                    .then();
+                        }
+                        if (first instanceof FormPartEvent form && "train".equals(first.name())) {
+                            intake.trainFlag = form.value();
+                        }
+                        return events.doOnNext(e -> DataBufferUtils.release(e.content())).then();
+                    }))
+                    .then(Mono.fromCallable(() -> {
+                        if (intake.pdf == null) throw new IllegalArgumentException("Missing file part");
+                        event.commit(intake.pdf.sizeBytes(), 0);
+                        return intake;
+                    }))
+                    .doOnError(e -> intake.close())
+                    .doOnCancel(intake::close);
+        });
+    }
+
+    /**
+     * Release a refused part's buffers, then fail. {@code events} replays the first event, so its
+     * buffer is released here too.
+     *
+     * @param events  the part's events, first one included
+     * @param message error message
+     * @return a {@link Mono} failing with {@link IllegalArgumentException} once the part is drained
+     */
+    private static Mono<Void> reject(Flux<PartEvent> events, String message) {
+        return events.doOnNext(e -> DataBufferUtils.release(e.content()))
+                .then(Mono.error(new IllegalArgumentException(message)));
+    }
 
+    /**
+     * Extract, predict, measure, (optionally) train and predict again for a spooled upload.
+     *
+     * @param intake the received upload; closed by the caller once the returned {@link Mono} terminates
+     * @return a {@link Mono} emitting the {@link UploadResponse}
+     */
+    private Mono<UploadResponse> route(Intake intake) {
+        final SpooledPdf pdf = intake.pdf;
+        final String trainFlag = intake.trainFlag;
         final boolean doTrain =
                 trainFlag == null ||
                         "true".equalsIgnoreCase(trainFlag) ||
                         "on".equalsIgnoreCase(trainFlag);
 
-        return DataBufferUtils.join(file.content())
-                .flatMap(buf -> {
-                    try {
-                        byte[] bytes = toByteArrayAndRelease(buf);
+        // Record size metric
+        meterRegistry.summary("bds.upload.bytes").record(pdf.sizeBytes());
 
-                        // Quick signature guardrail (ASCII "%PDF-")
-                        if (bytes.length < 5 || bytes[0] != '%' || bytes[1] != 'P' || bytes[2] != 'D' || bytes[3] != 'F' || bytes[4] != '-') {
-                            throw new IllegalArgumentException("Not a valid PDF header");
-                        }
-                        if (bytes.length == 0) return Mono.error(new IllegalArgumentException("Empty upload"));
-                        if (bytes.length > maxBytes) return Mono.error(new IllegalArgumentException("File too large"));
-
-                        // Record size metric
-                        meterRegistry.summary("bds.upload.bytes").record(bytes.length);
-
-                        // Extract features off the event loop
-                        return Mono.fromCallable(() -> extractor.extract(bytes))
+        // Reuse features of a byte-identical earlier upload, else extract off the event loop
+        // within an ingest reservation of the memory budget
+        Mono<PdfFeatures> extracted = memoryBudget.withReservation(maxBytes, permit ->
+                        Mono.fromCallable(() -> extractor.extract(pdf.path()))
                                 .subscribeOn(Schedulers.boundedElastic())
                                 .elapsed()
                                 .map(tuple -> {
                                     meterRegistry.timer("bds.pdf.extract.duration").record(tuple.getT1(), java.util.concurrent.TimeUnit.MILLISECONDS);
                                     return tuple.getT2();
-                                })
-                                .flatMap(features -> {
-                                    final boolean usedLocalBefore = memorySpikeService.hasLocalModel();
-                                    final int samplesBefore = memorySpikeService.sampleCount();
-
-                                    // 1) predict (no side-effects)
-                                    return memorySpikeService.predictOnly(features)
-                                            .flatMap(predBefore ->
-                                                    // 2) measure real processing peak (do heavy work off the event loop)
-                                                    Mono.fromCallable(() -> MemorySampler.measure(() -> {
-                                                                // TODO: replace with actual PDF processing (e.g., watermark via PDFBox)
-                                                                int s = 0;
-                                                                for (byte b : bytes) s += (b & 0xFF);
-                                                                return s;
-                                                            }, 25)).subscribeOn(Schedulers.boundedElastic())
-                                                            .flatMap(sampled -> {
-                                                                // 3) train on measured label (only if requested)
-                                                                Mono<Void> trainMono = doTrain
-                                                                        ? memorySpikeService.train(features, sampled.peakMb())
-                                                                        : Mono.empty();
-
-                                                                // 4) predict again after (no side-effects)
-                                                                return trainMono.then(memorySpikeService.predictOnly(features))
-                                                                        .map(predAfter -> new UploadResponse(
-                                                                                predAfter.decision(),
-                                                                                Math.max(0.0, predAfter.predicted_peak_mb()),
-                                                                                memorySpikeService.threshold(),
-                                                                                usedLocalBefore,
-                                                                                samplesBefore,
-                                                                                memorySpikeService.hasLocalModel(),
-                                                                                memorySpikeService.sampleCount(),
-                                                                                sampled.peakMb(),
-                                                                                doTrain
-                                                                        ));
-                                                            })
-                                            );
-                                });
-                    } catch (Exception e) {
-                        return Mono.error(e);
-                    }
+                                }))
+                .doOnNext(features -> uploadCache.putFeatures(pdf.sha256(), features));
+
+        return Mono.justOrEmpty(uploadCache.features(pdf.sha256()))
+                .switchIfEmpty(extracted)
+                .flatMap(features -> {
+                    final boolean usedLocalBefore = memorySpikeService.hasLocalModel();
+                    final int samplesBefore = memorySpikeService.sampleCount();
+
+                    // 1) predict (no side-effects)
+                    return decide(pdf.sha256(), features)
+                            .flatMap(predBefore ->
+                                    // 2) measure real processing peak (on the workload pool), within a
+                                    //    reservation of the predicted peak
+                                    memoryBudget.withReservation(memoryBudget.workloadBytes(predBefore.predicted_peak_mb()),
+                                                    permit -> workloadRunner.measure(pdf.path(), features))
+                                            .flatMap(sampled -> {
+                                                // 3) train on measured label (only if requested and measured)
+                                                boolean trained = doTrain && sampled.labelled();
+                                                Mono<Void> trainMono = trained
+                                                        ? memorySpikeService.train(features, sampled.labelMb())
+                                                        : Mono.empty();
+
+                                                // 4) predict again after (no side-effects)
+                                                return trainMono.then(Mono.defer(() -> decide(pdf.sha256(), features)))
+                                                        .map(predAfter -> new UploadResponse(
+                                                                predAfter.decision(),
+                                                                Math.max(0.0, predAfter.predicted_peak_mb()),
+                                                                memorySpikeService.threshold(),
+                                                                usedLocalBefore,
+                                                                samplesBefore,
+                                                                memorySpikeService.hasLocalModel(),
+                                                                memorySpikeService.sampleCount(),
+                                                                sampled.labelled() ? sampled.labelMb() : null,
+                                                                sampled.labelSource(),
+                                                                sampled.heapPeakMb(),
+                                                                sampled.offHeapMb(),
+                                                                Double.isNaN(sampled.rssMb()) ? null : sampled.rssMb(),
+                                                                trained
+                                                        ));
+                                            })
+                            );
+                });
+    }
+
+    /**
+     * Routing decision for a document, served from {@link UploadCache} when one was computed under
+     * the current model version, otherwise predicted and cached unless a sidecar fallback tier
+     * answered ({@link MemorySpikeService.Source#cacheable()}), so outage-time answers are not
+     * replayed once the sidecar recovers.
+     *
+     * @param sha256   content digest of the upload
+     * @param features the document's features
+     * @return a {@link Mono} emitting the decision
+     */
+    private Mono<RouteDecision> decide(String sha256, PdfFeatures features) {
+        final long version = memorySpikeService.modelVersion();
+        RouteDecision cached = uploadCache.decision(sha256, version);
+        if (cached != null) return Mono.just(cached);
+        return memorySpikeService.predict(features)
+                .doOnNext(p -> {
+                    if (p.source().cacheable()) uploadCache.putDecision(sha256, features, p.decision(), version);
                 })
-                .doOnCancel(() -> System.out.println("Upload cancelled by client; aborting processing"));
+                .map(MemorySpikeService.Prediction::decision);
     }
 
     /**
@@ -212,10 +338,18 @@ public class UploadController {
      * <ul>
      *   <li>{@code predicted_peak_mb} may be {@code 0.0} if the sidecar failed and a conservative
      *       fallback was used (the negative sentinel is clamped to non-negative here).</li>
-     *   <li>{@code measured_peak_mb} is from {@link MemorySampler} around a representative workload,
-     *       not from full production processing (replace the TODO with real work).</li>
+     *   <li>{@code measured_peak_mb} is the label measured while the configured
+     *       {@link com.example.bds.workload.PdfWorkload} processed this document, built from the
+     *       {@code measured_*_mb} readings as {@code label_source} says; {@code measured_rss_mb} is
+     *       the window's peak resident growth, sampled every {@code bds.workload.rss-sample-interval}
+     *       (a spike shorter than that can be missed), {@code null} where the OS does not report
+     *       resident memory, and so is
+     *       {@code measured_peak_mb} when the label is built from it alone ({@code rss}). Such an
+     *       upload is not trained on: {@code trained_this_upload} is {@code false}.</li>
      *   <li>{@code used_local_model_*} indicate whether an in-process model was available before/after
      *       this request (training may have produced one).</li>
+     *   <li>{@code samples_after} and the after-decision reflect the training backlog applied so
+     *       far; this upload's own sample is usually still queued.</li>
      * </ul>
      */
     public record UploadResponse(
@@ -226,26 +360,26 @@ public class UploadController {
             int samples_before,
             boolean used_local_model_after,
             int samples_after,
-            double measured_peak_mb,
+            Double measured_peak_mb,
+            String label_source,
+            double measured_heap_mb,
+            double measured_offheap_mb,
+            Double measured_rss_mb,
             boolean trained_this_upload
     ) {
     }
 
     /**
-     * Copy the contents of a {@link DataBuffer} into a new byte array and
-     * <em>always</em> release the buffer to avoid leaks.
-     *
-     * @param buf the joined data buffer for this upload
-     * @return a fresh {@code byte[]} with the same contents
+     * Per-request multipart state collected by {@link #receive(Flux)}.
+     * Closing it deletes the spool file (idempotent).
      */
-    private static byte[] toByteArrayAndRelease(DataBuffer buf) {
-        try {
-            ByteBuffer nio = buf.toByteBuffer();
-            byte[] out = new byte[nio.remaining()];
-            nio.get(out);
-            return out;
-        } finally {
-            DataBufferUtils.release(buf);
+    private static final class Intake implements AutoCloseable {
+        private SpooledPdf pdf;
+        private String trainFlag;
+
+        @Override
+        public void close() {
+            if (pdf != null) pdf.close();
         }
     }
 }
@@ -0,0 +1,132 @@
+package com.example.bds.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * JFR events for the phases of an upload, one event type per phase, each carrying the document's
+ * size and page count.
+ * <p>
+ * They are plain {@code jdk.jfr} events: visible in any recording ({@code jcmd <pid> JFR.start},
+ * JDK Mission Control) under the {@code BDS} category, and cheap when no recording has them
+ * enabled ({@code commit()} returns at once). {@link PhaseProfiler} enables them in-process and
+ * turns them into Micrometer metrics.
+ *
+ * <h2>Usage</h2>
+ * <pre>{@code
+ * var e = new PhaseEvent.PdfLoad();
+ * e.begin();
+ * ... load ...
+ * e.commit(sizeBytes, pages);
+ * }</pre>
+ * Phases that run as a {@link Mono} use {@link #around}. Stack traces are off: the event types
+ * already say where they come from.
+ *
+ * @since 1.1
+ */
+@Category({"BDS", "Upload"})
+@StackTrace(false)
+public abstract class PhaseEvent extends Event {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    @Label("Document Size")
+    @DataAmount
+    long documentBytes;
+
+    @Label("Pages")
+    int pages;
+
+    /**
+     * Record the document and commit (if the event is enabled).
+     *
+     * @param documentBytes size of the PDF
+     * @param pages         its page count, or {@code 0} if not known yet
+     */
+    public void commit(long documentBytes, int pages) {
+        if (!shouldCommit()) return;
+        this.documentBytes = documentBytes;
+        this.pages = pages;
+        commit();
+    }
+
+    /**
+     * Size of a document from its {@code size_mb} feature, for phases that only have features.
+     *
+     * @param sizeMb document size in MiB
+     * @return bytes
+     */
+    public static long bytes(double sizeMb) {
+        return Double.isFinite(sizeMb) ? Math.round(sizeMb * MB) : 0;
+    }
+
+    /**
+     * Time a reactive phase from subscription to termination (success, error or cancel).
+     *
+     * @param event         creates the phase's event
+     * @param documentBytes size of the PDF
+     * @param pages         its page count
+     * @param phase         the work
+     * @param <T>           element type
+     * @return {@code phase}, timed
+     */
+    public static <T> Mono<T> around(Supplier<? extends PhaseEvent> event, long documentBytes, int pages,
+                                     Mono<T> phase) {
+        return Mono.defer(() -> {
+            PhaseEvent e = event.get();
+            e.begin();
+            return phase.doFinally(s -> e.commit(documentBytes, pages));
+        });
+    }
+
+    /** Multipart upload streamed to the spool file. Hops between event-loop callbacks. */
+    @Name(UploadReceive.NAME)
+    @Label("Upload Receive")
+    public static final class UploadReceive extends PhaseEvent {
+        static final String NAME = "bds.UploadReceive";
+    }
+
+    /** {@code Loader.loadPDF} of the spooled upload: xref and trailer parsing. */
+    @Name(PdfLoad.NAME)
+    @Label("PDF Load")
+    public static final class PdfLoad extends PhaseEvent {
+        static final String NAME = "bds.PdfLoad";
+    }
+
+    /** Feature extraction over the loaded document: quick scan, else a walk of every page. */
+    @Name(PageScan.NAME)
+    @Label("Page Scan")
+    @Description("Parallel slices run on pool threads; their allocations are not attributed here")
+    public static final class PageScan extends PhaseEvent {
+        static final String NAME = "bds.PageScan";
+    }
+
+    /** Routing prediction (local model, else the sidecar). Hops threads on the sidecar path. */
+    @Name(Predict.NAME)
+    @Label("Predict")
+    public static final class Predict extends PhaseEvent {
+        static final String NAME = "bds.Predict";
+    }
+
+    /** The measured PDFBox workload on the workload pool. */
+    @Name(Workload.NAME)
+    @Label("Workload")
+    public static final class Workload extends PhaseEvent {
+        static final String NAME = "bds.Workload";
+    }
+
+    /** One training row appended and fed to the online learner, on the trainer thread. */
+    @Name(Train.NAME)
+    @Label("Train")
+    public static final class Train extends PhaseEvent {
+        static final String NAME = "bds.Train";
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.bds.jfr;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Always-on, in-process profiling of the upload phases: a {@link RecordingStream} that turns the
+ * {@link PhaseEvent}s, allocation samples and GC pauses into per-phase Micrometer metrics.
+ *
+ * <h2>Attribution</h2>
+ * The stream is ordered by commit time, and a phase event commits when the phase ends, so by the
+ * time it arrives every allocation sample and GC inside it has already been seen. The consumer
+ * keeps the recent ones and, per phase event:
+ * <ul>
+ *   <li>sums the {@code weight} of the {@code jdk.ObjectAllocationSample} events on the phase's
+ *       thread within its start and end, an estimate of the bytes the phase allocated. This is
+ *       done only for phases that stay on one thread ({@code pdf_load}, {@code page_scan},
+ *       {@code workload}, {@code train}); receive and predict hop threads, and their threads
+ *       interleave other requests.</li>
+ *   <li>records the pauses of every {@code jdk.GarbageCollection} that started within it, for
+ *       any phase: a stop-the-world pause stalls every phase in flight.</li>
+ * </ul>
+ * Samples and GCs older than {@value #HORIZON_SECONDS} s are forgotten. All handlers run on the
+ * stream's own thread, so the bookkeeping is single-threaded.
+ *
+ * <h2>Overhead</h2>
+ * Allocation samples are throttled ({@code bds.jfr.allocation-throttle}), phase events are a few
+ * per upload and stack traces are off; the stream keeps at most {@code bds.jfr.max-age} of data
+ * on disk. If JFR is unavailable the profiler logs a warning and stays off.
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * All three publish percentile histograms, so phase latency and allocation percentiles can be
+ * aggregated across pods. The meters are registered once per phase, up front.
+ * <ul>
+ *   <li><code>bds.phase.duration{phase}</code> (timer).</li>
+ *   <li><code>bds.phase.allocated{phase}</code> (summary, bytes) — sampled allocation per phase.</li>
+ *   <li><code>bds.phase.gc.pause{phase}</code> (timer) — GC pause time inside a phase.</li>
+ * </ul>
+ *
+ * <h2>Configuration properties</h2>
+ * <ul>
+ *   <li><code>bds.jfr.enabled</code> (default <code>true</code>)</li>
+ *   <li><code>bds.jfr.allocation-throttle</code> (default <code>100/s</code>) — JFR throttle of
+ *       {@code jdk.ObjectAllocationSample}</li>
+ *   <li><code>bds.jfr.max-age</code> (default <code>1m</code>) — stream data kept on disk</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+@Component
+@Slf4j
+public class PhaseProfiler implements AutoCloseable {
+
+    /** How long unclaimed samples and GCs are kept. */
+    static final int HORIZON_SECONDS = 30;
+
+    private static final String ALLOCATION_SAMPLE = "jdk.ObjectAllocationSample";
+    private static final String GC = "jdk.GarbageCollection";
+
+    /** Event type → phase tag and whether its allocations are attributed. */
+    private static final Map<String, Phase> PHASES = Map.of(
+            PhaseEvent.UploadReceive.NAME, new Phase("receive", false),
+            PhaseEvent.PdfLoad.NAME, new Phase("pdf_load", true),
+            PhaseEvent.PageScan.NAME, new Phase("page_scan", true),
+            PhaseEvent.Predict.NAME, new Phase("predict", false),
+            PhaseEvent.Workload.NAME, new Phase("workload", true),
+            PhaseEvent.Train.NAME, new Phase("train", true));
+
+    private record Phase(String tag, boolean allocations) {}
+
+    private record Sample(Instant time, long bytes) {}
+
+    private record Pause(Instant start, Duration pauses) {}
+
+    /** Meters of one phase; {@code allocated} is {@code null} where allocations are not attributed. */
+    private record Meters(Timer duration, DistributionSummary allocated, Timer gcPause) {}
+
+    /** Event type → meters of its phase. */
+    private final Map<String, Meters> meters = new HashMap<>();
+    private final RecordingStream stream;
+
+    /** Unclaimed allocation samples per Java thread id, oldest first. */
+    private final Map<Long, ArrayDeque<Sample>> samples = new HashMap<>();
+    private final ArrayDeque<Pause> pauses = new ArrayDeque<>();
+    private Instant latest = Instant.EPOCH;
+
+    /**
+     * @param enabled            start the stream (property {@code bds.jfr.enabled})
+     * @param allocationThrottle allocation sample rate (property {@code bds.jfr.allocation-throttle})
+     * @param maxAge             stream retention (property {@code bds.jfr.max-age})
+     * @param registry           registry for the phase metrics
+     */
+    public PhaseProfiler(@Value("${bds.jfr.enabled:true}") boolean enabled,
+                         @Value("${bds.jfr.allocation-throttle:100/s}") String allocationThrottle,
+                         @Value("${bds.jfr.max-age:1m}") Duration maxAge,
+                         MeterRegistry registry) {
+        PHASES.forEach((event, phase) -> meters.put(event, new Meters(
+                Timer.builder("bds.phase.duration").tag("phase", phase.tag())
+                        .publishPercentileHistogram().register(registry),
+                phase.allocations()
+                        ? DistributionSummary.builder("bds.phase.allocated").tag("phase", phase.tag())
+                                .baseUnit("bytes").publishPercentileHistogram().register(registry)
+                        : null,
+                Timer.builder("bds.phase.gc.pause").tag("phase", phase.tag())
+                        .publishPercentileHistogram().register(registry))));
+        this.stream = enabled ? start(allocationThrottle, maxAge) : null;
+    }
+
+    private RecordingStream start(String allocationThrottle, Duration maxAge) {
+        RecordingStream rs;
+        try {
+            rs = new RecordingStream();
+        } catch (RuntimeException | Error e) {
+            log.warn("JFR not available, phase profiling disabled: {}", e.toString());
+            return null;
+        }
+        for (String name : PHASES.keySet()) {
+            rs.enable(name);
+            rs.onEvent(name, this::onPhase);
+        }
+        rs.enable(ALLOCATION_SAMPLE).with("throttle", allocationThrottle);
+        rs.onEvent(ALLOCATION_SAMPLE, this::onAllocation);
+        rs.enable(GC);
+        rs.onEvent(GC, e -> pauses.addLast(new Pause(e.getStartTime(), e.getDuration("sumOfPauses"))));
+        rs.onFlush(this::trim);
+        rs.setMaxAge(maxAge);
+        rs.setReuse(true);
+        rs.startAsync();
+        log.info("JFR phase profiling on (allocation samples {})", allocationThrottle);
+        return rs;
+    }
+
+    private void onAllocation(RecordedEvent e) {
+        RecordedThread t = e.getThread();
+        if (t == null) return;
+        samples.computeIfAbsent(t.getJavaThreadId(), id -> new ArrayDeque<>())
+                .addLast(new Sample(e.getStartTime(), e.getLong("weight")));
+        if (e.getStartTime().isAfter(latest)) latest = e.getStartTime();
+    }
+
+    private void onPhase(RecordedEvent e) {
+        Meters m = meters.get(e.getEventType().getName());
+        Instant start = e.getStartTime(), end = e.getEndTime();
+        if (end.isAfter(latest)) latest = end;
+        m.duration().record(e.getDuration());
+
+        if (m.allocated() != null && e.getThread() != null) {
+            ArrayDeque<Sample> own = samples.get(e.getThread().getJavaThreadId());
+            long bytes = 0;
+            if (own != null) {
+                // samples on this thread up to the phase's end are claimed now or never
+                while (!own.isEmpty() && !own.peekFirst().time().isAfter(end)) {
+                    Sample s = own.pollFirst();
+                    if (!s.time().isBefore(start)) bytes += s.bytes();
+                }
+            }
+            m.allocated().record(bytes);
+        }
+
+        for (Pause p : pauses) {
+            if (p.start().isBefore(start) || p.start().isAfter(end)) continue;
+            m.gcPause().record(p.pauses());
+        }
+    }
+
+    /** Forget samples and GCs that no phase can claim any more. */
+    private void trim() {
+        Instant cutoff = latest.minusSeconds(HORIZON_SECONDS);
+        for (Iterator<ArrayDeque<Sample>> it = samples.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Sample> own = it.next();
+            while (!own.isEmpty() && own.peekFirst().time().isBefore(cutoff)) own.pollFirst();
+            if (own.isEmpty()) it.remove();
+        }
+        while (!pauses.isEmpty() && pauses.peekFirst().start().isBefore(cutoff)) pauses.pollFirst();
+    }
+
+    /** @return {@code true} while the stream is running */
+    public boolean running() {
+        return stream != null;
+    }
+
+    /** Stop the stream. */
+    @PreDestroy
+    @Override
+    public void close() {
+        if (stream != null) stream.close();
+    }
+}
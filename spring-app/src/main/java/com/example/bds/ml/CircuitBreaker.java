@@ -0,0 +1,277 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Count-based circuit breaker for calls to the ML sidecar.
+ * <p>
+ * The outcomes of the last {@code windowSize} calls are kept in a ring. Once at least
+ * {@code minimumCalls} are recorded, the breaker opens when the share of failures or the share of
+ * calls slower than {@code slowCallDuration} reaches its threshold. While open, {@link #protect}
+ * fails immediately with {@link OpenException} instead of subscribing to the call, so a browned-out
+ * sidecar costs callers nothing. After {@code openDuration} the next caller moves the breaker to
+ * half-open, where {@code halfOpenCalls} probe calls are let through; when they have all finished
+ * the breaker closes (with a fresh window) or opens again, using the same thresholds.
+ *
+ * <h2>Outcomes</h2>
+ * <ul>
+ *   <li>An error accepted by the {@code isFailure} predicate is a failure; other errors (e.g. a
+ *       4xx for a bad request) count as successes, since they say nothing about sidecar health.</li>
+ *   <li>A call that completes, with or without a value, after {@code slowCallDuration} is slow. A
+ *       slow failure counts as a failure only.</li>
+ *   <li>A cancelled call is not recorded; in half-open it hands its probe slot back.</li>
+ *   <li>Calls that finish after the state they started in has been left are ignored.</li>
+ * </ul>
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * All tagged {@code name}:
+ * <ul>
+ *   <li><code>triage.breaker.state</code> (gauge) — 0 closed, 1 open, 2 half-open.</li>
+ *   <li><code>triage.breaker.transitions</code> (counter) — tags {@code from}, {@code to}.</li>
+ *   <li><code>triage.breaker.calls</code> (counter) — tag
+ *       {@code outcome=success|failure|slow|rejected}.</li>
+ *   <li><code>triage.breaker.failure.rate</code>, <code>triage.breaker.slow.rate</code> (gauges) —
+ *       percent of the current window, {@code -1} until {@code minimumCalls} are recorded.</li>
+ * </ul>
+ *
+ * <h2>Thread-safety</h2>
+ * State changes happen under the instance lock; the critical sections are a few field updates.
+ *
+ * @since 1.1
+ */
+@Slf4j
+public final class CircuitBreaker {
+
+    /** Breaker state; the ordinal is the value of the {@code triage.breaker.state} gauge. */
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * Breaker limits.
+     *
+     * @param windowSize            calls in the sliding window
+     * @param minimumCalls          calls recorded before rates are evaluated
+     * @param failureRateThreshold  failure percentage that opens the breaker
+     * @param slowCallDuration      calls taking at least this long are slow
+     * @param slowCallRateThreshold slow-call percentage that opens the breaker
+     * @param openDuration          time spent open before probing
+     * @param halfOpenCalls         probe calls allowed while half-open
+     * @throws IllegalArgumentException if a limit is out of range
+     */
+    public record Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+                           Duration slowCallDuration, double slowCallRateThreshold,
+                           Duration openDuration, int halfOpenCalls) {
+        public Settings {
+            if (windowSize < 1) throw new IllegalArgumentException("triage.breaker.window-size must be >= 1");
+            if (minimumCalls < 1 || minimumCalls > windowSize) {
+                throw new IllegalArgumentException("triage.breaker.minimum-calls must be in [1, window-size]");
+            }
+            if (!(failureRateThreshold > 0 && failureRateThreshold <= 100)
+                    || !(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100)) {
+                throw new IllegalArgumentException("triage.breaker rate thresholds must be in (0, 100]");
+            }
+            if (slowCallDuration.isNegative() || slowCallDuration.isZero()
+                    || openDuration.isNegative() || openDuration.isZero()) {
+                throw new IllegalArgumentException("triage.breaker durations must be > 0");
+            }
+            if (halfOpenCalls < 1) throw new IllegalArgumentException("triage.breaker.half-open-calls must be >= 1");
+        }
+    }
+
+    /** Signalled instead of calling through while the breaker is open. Stackless: it is expected. */
+    public static final class OpenException extends RuntimeException {
+        OpenException(String name) {
+            super("Circuit breaker '" + name + "' is open", null, false, false);
+        }
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final Settings settings;
+    private final Predicate<Throwable> isFailure;
+    private final LongSupplier nanoClock;
+    private final long slowNanos;
+    private final long openNanos;
+    private final MeterRegistry registry;
+
+    /** Ring of outcomes; guarded by {@code this}. */
+    private final byte[] window;
+    private int head;
+    private int recorded;
+    private int failures;
+    private int slows;
+
+    private volatile State state = State.CLOSED;
+    /** Bumped on every transition; outcomes of calls admitted under an older epoch are dropped. */
+    private long epoch;
+    private long openedAt;
+    /** Half-open probes handed out and finished. */
+    private int probesIssued;
+    private int probesDone;
+
+    private final Counter successes;
+    private final Counter failureCalls;
+    private final Counter slowCalls;
+    private final Counter rejected;
+
+    /**
+     * @param name      breaker name (also the {@code name} tag)
+     * @param settings  limits
+     * @param isFailure which errors count as failures
+     * @param registry  registry for the breaker metrics
+     */
+    public CircuitBreaker(String name, Settings settings, Predicate<Throwable> isFailure, MeterRegistry registry) {
+        this(name, settings, isFailure, registry, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, Settings settings, Predicate<Throwable> isFailure, MeterRegistry registry,
+                   LongSupplier nanoClock) {
+        this.name = name;
+        this.settings = settings;
+        this.isFailure = isFailure;
+        this.registry = registry;
+        this.nanoClock = nanoClock;
+        this.slowNanos = settings.slowCallDuration().toNanos();
+        this.openNanos = settings.openDuration().toNanos();
+        this.window = new byte[settings.windowSize()];
+
+        Gauge.builder("triage.breaker.state", this, b -> b.state.ordinal())
+                .description("Circuit breaker state: 0 closed, 1 open, 2 half-open")
+                .tag("name", name).register(registry);
+        Gauge.builder("triage.breaker.failure.rate", this, b -> b.rate(FAILURE))
+                .description("Failed calls in the window, percent").baseUnit("percent")
+                .tag("name", name).register(registry);
+        Gauge.builder("triage.breaker.slow.rate", this, b -> b.rate(SLOW))
+                .description("Slow calls in the window, percent").baseUnit("percent")
+                .tag("name", name).register(registry);
+        this.successes = calls("success");
+        this.failureCalls = calls("failure");
+        this.slowCalls = calls("slow");
+        this.rejected = calls("rejected");
+    }
+
+    /**
+     * Guard a call. The call is only subscribed when the breaker admits it.
+     *
+     * @param call the sidecar call
+     * @param <T>  element type
+     * @return {@code call} with its outcome recorded, or a {@link Mono} failing with
+     *         {@link OpenException} if the breaker rejects it
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+        return Mono.defer(() -> {
+            long permit = tryAcquire();
+            if (permit < 0) {
+                rejected.increment();
+                return Mono.error(new OpenException(name));
+            }
+            long start = nanoClock.getAsLong();
+            return call
+                    .doOnSuccess(v -> onResult(permit, nanoClock.getAsLong() - start, null))
+                    .doOnError(e -> onResult(permit, nanoClock.getAsLong() - start, e))
+                    .doOnCancel(() -> onCancel(permit));
+        });
+    }
+
+    /** @return current state; an expired {@link State#OPEN} breaker turns half-open on the next call */
+    public State state() {
+        return state;
+    }
+
+    /** @return breaker name */
+    public String name() {
+        return name;
+    }
+
+    /** @return the current epoch as a permit, or {@code -1} to reject */
+    private synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) return -1;
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesIssued >= settings.halfOpenCalls()) return -1;
+            probesIssued++;
+        }
+        return epoch;
+    }
+
+    private void onResult(long permit, long elapsedNanos, Throwable error) {
+        byte outcome = error != null && isFailure.test(error) ? FAILURE
+                : elapsedNanos >= slowNanos ? SLOW
+                : SUCCESS;
+        (outcome == FAILURE ? failureCalls : outcome == SLOW ? slowCalls : successes).increment();
+        record(permit, outcome);
+    }
+
+    private synchronized void record(long permit, byte outcome) {
+        if (permit != epoch) return;
+        add(outcome);
+        if (state == State.HALF_OPEN) {
+            if (++probesDone < settings.halfOpenCalls()) return;
+            transition(tripped() ? State.OPEN : State.CLOSED);
+        } else if (recorded >= settings.minimumCalls() && tripped()) {
+            transition(State.OPEN);
+        }
+    }
+
+    private synchronized void onCancel(long permit) {
+        if (permit == epoch && state == State.HALF_OPEN) probesIssued--;
+    }
+
+    private void add(byte outcome) {
+        if (recorded == window.length) {
+            byte evicted = window[head];
+            if (evicted == FAILURE) failures--;
+            else if (evicted == SLOW) slows--;
+        } else {
+            recorded++;
+        }
+        window[head] = outcome;
+        head = (head + 1) % window.length;
+        if (outcome == FAILURE) failures++;
+        else if (outcome == SLOW) slows++;
+    }
+
+    private boolean tripped() {
+        return 100.0 * failures / recorded >= settings.failureRateThreshold()
+                || 100.0 * slows / recorded >= settings.slowCallRateThreshold();
+    }
+
+    private synchronized double rate(byte outcome) {
+        if (recorded < settings.minimumCalls()) return -1;
+        return 100.0 * (outcome == FAILURE ? failures : slows) / recorded;
+    }
+
+    /** Switch state and start a fresh window. Caller holds the lock. */
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        epoch++;
+        head = recorded = failures = slows = 0;
+        probesIssued = probesDone = 0;
+        if (to == State.OPEN) openedAt = nanoClock.getAsLong();
+        registry.counter("triage.breaker.transitions", "name", name,
+                "from", from.name().toLowerCase(Locale.ROOT), "to", to.name().toLowerCase(Locale.ROOT)).increment();
+        if (to == State.OPEN) log.warn("Circuit breaker '{}' opened ({} -> {})", name, from, to);
+        else log.info("Circuit breaker '{}' {} -> {}", name, from, to);
+    }
+
+    private Counter calls(String outcome) {
+        return Counter.builder("triage.breaker.calls")
+                .description("Calls seen by the circuit breaker")
+                .tag("name", name).tag("outcome", outcome)
+                .register(registry);
+    }
+}
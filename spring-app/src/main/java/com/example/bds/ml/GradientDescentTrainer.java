@@ -0,0 +1,64 @@
+package com.example.bds.ml;
+
+import java.util.Arrays;
+
+/**
+ * The original trainer: full-batch gradient descent from zero weights on raw (unscaled)
+ * features, with a fixed learning rate and epoch count.
+ * <p>
+ * Kept for comparison (see {@code TrainerBenchmark}). With the defaults ({@code lr = 1e-5},
+ * 8 epochs) and features spanning several orders of magnitude it barely moves off zero; prefer
+ * {@link RidgeTrainer}.
+ *
+ * @since 1.1
+ */
+public final class GradientDescentTrainer implements Trainer {
+
+    private final double learningRate;
+    private final int epochs;
+
+    /**
+     * @param learningRate step size
+     * @param epochs       passes over the data
+     */
+    public GradientDescentTrainer(double learningRate, int epochs) {
+        this.learningRate = learningRate;
+        this.epochs = epochs;
+    }
+
+    @Override
+    public LinearModel fit(double[][] x, double[] y, int rows) {
+        final int nFeat = x.length;
+        Standardization raw = Standardization.identity(nFeat);
+
+        int usable = 0;
+        for (int i = 0; i < rows; i++) if (y[i] >= 0) usable++;
+        if (usable == 0) return new LinearModel(new double[nFeat], 0.0, raw.means(), raw.scales());
+
+        double[] w = new double[nFeat];
+        double[] gw = new double[nFeat];
+        double b = 0.0;
+
+        for (int ep = 0; ep < epochs; ep++) {
+            Arrays.fill(gw, 0.0);
+            double gb = 0.0;
+
+            for (int i = 0; i < rows; i++) {
+                if (y[i] < 0) continue;
+                double pred = b;
+                for (int j = 0; j < nFeat; j++) pred += w[j] * x[j][i];
+                double err = pred - y[i];
+                gb += err;
+                for (int j = 0; j < nFeat; j++) gw[j] += err * x[j][i];
+            }
+            double invN = 1.0 / usable;
+            gb *= invN;
+            for (int j = 0; j < nFeat; j++) gw[j] *= invN;
+
+            b -= learningRate * gb;
+            for (int j = 0; j < nFeat; j++) w[j] -= learningRate * gw[j];
+        }
+
+        return new LinearModel(w, b, raw.means(), raw.scales());
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.bds.ml;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Process-wide heap high-water mark, pushed by the JVM instead of polled.
+ * <p>
+ * Heap usage only climbs between collections, so its true peak is the usage right before each
+ * collection. Every {@link GarbageCollectorMXBean} emits a {@link GarbageCollectionNotificationInfo}
+ * carrying exactly that (the heap pools' usage before the GC); this tracker listens once for the
+ * whole process and raises every open {@link Window} to it. Usage that climbs without triggering
+ * a collection is caught by {@link MemoryPoolMXBean} usage thresholds, which are re-armed one
+ * step above the last crossing while any window is open; pools without threshold support
+ * (G1 eden, for instance) are covered by the GC notifications, since filling them is what
+ * triggers a young collection.
+ *
+ * <h2>Windows</h2>
+ * {@link #open()} registers a window starting at the current heap usage; {@link Window#close()}
+ * takes a last reading and unregisters it. Both are a set insert/remove plus a few MXBean reads:
+ * no thread, executor or forced GC per window. A collection counts for a window if its
+ * collector had not yet counted it when the window opened ({@link GcInfo#getId()} against
+ * {@link GarbageCollectorMXBean#getCollectionCount()}; GC timestamps and JVM uptime do not share
+ * a clock). Notifications are delivered asynchronously, typically within
+ * milliseconds; a collection that ends just before {@code close()} may be reported after it and
+ * is then missed by that window.
+ *
+ * <h2>What is measured?</h2>
+ * The whole JVM heap: concurrent work shows up in every open window. For the footprint of one
+ * task regardless of its neighbours, see {@link MemorySampler#measureAllocations}.
+ *
+ * @since 1.1
+ */
+@Slf4j
+public final class HeapPeakTracker {
+
+    private static final HeapPeakTracker SHARED = new HeapPeakTracker();
+
+    /** Usage thresholds are re-armed 1/{@value} of the pool's max (or committed) size higher. */
+    static final int THRESHOLD_STEPS = 32;
+
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    private final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(p -> p.getType() == MemoryType.HEAP).toList();
+    private final Set<String> heapPoolNames = heapPools.stream().map(MemoryPoolMXBean::getName)
+            .collect(Collectors.toUnmodifiableSet());
+    private final Set<Window> windows = ConcurrentHashMap.newKeySet();
+    private final List<GcListener> listeners = new CopyOnWriteArrayList<>();
+
+    private HeapPeakTracker() {
+        for (int i = 0; i < collectors.size(); i++) {
+            int collector = i;
+            if (collectors.get(i) instanceof NotificationEmitter emitter) emitter.addNotificationListener(
+                    (n, h) -> onGc(collector, n), n -> GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
+                            .equals(n.getType()), null);
+        }
+        if (ManagementFactory.getMemoryMXBean() instanceof NotificationEmitter emitter) {
+            emitter.addNotificationListener((n, h) -> onThreshold(n),
+                    n -> MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(n.getType()), null);
+        }
+    }
+
+    /** @return the tracker shared by the whole process */
+    public static HeapPeakTracker shared() {
+        return SHARED;
+    }
+
+    /**
+     * Start tracking the heap peak; close the window when the work is done.
+     *
+     * @return a window whose peak starts at the current heap usage
+     */
+    public Window open() {
+        long[] counts = new long[collectors.size()];
+        for (int i = 0; i < counts.length; i++) counts[i] = collectors.get(i).getCollectionCount();
+        Window w = new Window(counts, usedHeapBytes());
+        synchronized (windows) {
+            if (windows.isEmpty()) armThresholds();
+            windows.add(w);
+        }
+        return w;
+    }
+
+    /** @return bytes currently used across the heap pools */
+    public long usedHeapBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean p : heapPools) used += p.getUsage().getUsed();
+        return used;
+    }
+
+    /**
+     * Receive every collection's heap usage before and after, for as long as the process runs.
+     * Called on the JMX notification thread; keep it short.
+     */
+    void addListener(GcListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Heap usage around one collection. */
+    @FunctionalInterface
+    interface GcListener {
+        void onGc(long beforeBytes, long afterBytes);
+    }
+
+    private void onGc(int collector, Notification n) {
+        GcInfo gc = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()).getGcInfo();
+        long before = heapBytes(gc.getMemoryUsageBeforeGc());
+        long after = heapBytes(gc.getMemoryUsageAfterGc());
+        for (Window w : windows) {
+            if (gc.getId() > w.counts[collector]) w.offer(before);
+        }
+        for (GcListener l : listeners) {
+            try {
+                l.onGc(before, after);
+            } catch (RuntimeException e) {
+                log.warn("GC listener failed: {}", e.toString());
+            }
+        }
+    }
+
+    private void onThreshold(Notification n) {
+        MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) n.getUserData());
+        long used = usedHeapBytes();
+        for (Window w : windows) w.offer(used);
+        synchronized (windows) {
+            if (windows.isEmpty()) return;
+            heapPools.stream().filter(p -> p.getName().equals(info.getPoolName())).findFirst()
+                    .ifPresent(this::arm);
+        }
+    }
+
+    private long heapBytes(Map<String, MemoryUsage> usage) {
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> e : usage.entrySet()) {
+            if (heapPoolNames.contains(e.getKey())) used += e.getValue().getUsed();
+        }
+        return used;
+    }
+
+    /** Called with {@code windows} locked. */
+    private void armThresholds() {
+        for (MemoryPoolMXBean p : heapPools) arm(p);
+    }
+
+    /** Called with {@code windows} locked. */
+    private void disarmThresholds() {
+        for (MemoryPoolMXBean p : heapPools) {
+            if (p.isUsageThresholdSupported()) p.setUsageThreshold(0);
+        }
+    }
+
+    /** Next threshold one step above the pool's current usage, if the pool supports one. */
+    private void arm(MemoryPoolMXBean pool) {
+        if (!pool.isUsageThresholdSupported()) return;
+        MemoryUsage u = pool.getUsage();
+        long size = u.getMax() > 0 ? u.getMax() : u.getCommitted();
+        long step = Math.max(1 << 20, size / THRESHOLD_STEPS);
+        long next = u.getUsed() + step;
+        try {
+            pool.setUsageThreshold(u.getMax() > 0 ? Math.min(next, u.getMax()) : next);
+        } catch (IllegalArgumentException e) {
+            // max shrank under us; the GC notifications still cover this pool
+        }
+    }
+
+    /**
+     * One tracked span of work. Not reusable.
+     */
+    public final class Window implements AutoCloseable {
+        /** Collections per collector when the window opened. */
+        private final long[] counts;
+        private final AtomicLong peak;
+        private volatile boolean closed;
+
+        private Window(long[] counts, long used) {
+            this.counts = counts;
+            this.peak = new AtomicLong(used);
+        }
+
+        private void offer(long used) {
+            peak.accumulateAndGet(used, Math::max);
+        }
+
+        /** @return the highest heap usage seen since {@link #open()}, bytes */
+        public long peakBytes() {
+            return peak.get();
+        }
+
+        /** Take a last reading and stop tracking; idempotent. */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            offer(usedHeapBytes());
+            synchronized (windows) {
+                windows.remove(this);
+                if (windows.isEmpty()) disarmThresholds();
+            }
+        }
+    }
+}
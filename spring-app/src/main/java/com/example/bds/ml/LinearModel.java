@@ -0,0 +1,27 @@
+package com.example.bds.ml;
+
+/**
+ * Fitted linear model over standardized features:
+ * {@code y = bias + sum_j weights[j] * (x[j] - means[j]) / scales[j]}.
+ * <p>
+ * Produced by every {@link Trainer}. Trainers that work on raw features return means {@code 0}
+ * and scales {@code 1}.
+ *
+ * @param weights coefficients in standardized space
+ * @param bias    intercept (prediction at the feature means)
+ * @param means   per-feature centering
+ * @param scales  per-feature scaling (never 0)
+ * @since 1.1
+ */
+public record LinearModel(double[] weights, double bias, double[] means, double[] scales) {
+
+    /**
+     * @param x raw feature values, same order as {@link TrainingStore#FEATURE_COLUMNS}
+     * @return the prediction
+     */
+    public double predict(double[] x) {
+        double y = bias;
+        for (int j = 0; j < weights.length; j++) y += weights[j] * (x[j] - means[j]) / scales[j];
+        return y;
+    }
+}
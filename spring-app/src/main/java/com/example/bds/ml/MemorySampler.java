@@ -1,61 +1,69 @@
 package com.example.bds.ml;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 /**
- * Utility for sampling the JVM heap while executing a task, reporting the peak
- * sampled heap usage in megabytes together with the task's return value.
+ * Utility for measuring the JVM heap while executing a task, reporting the peak
+ * in megabytes together with the task's return value.
  * <p>
  * This is intended for lightweight, coarse-grained instrumentation during
  * experimentation or demos where you want a quick sense of how much heap a
- * piece of work might consume. It uses a single daemon {@link ScheduledExecutorService}
- * to periodically poll {@link Runtime#totalMemory()} - {@link Runtime#freeMemory()}
- * and keeps the maximum observed value as the "peak".
+ * piece of work might consume. Both modes hang off the process-wide
+ * {@link HeapPeakTracker}, which is told about every garbage collection by the JVM;
+ * measuring a task is a register/unregister around it, with no thread, executor or
+ * forced GC per call.
  *
  * <h2>What is measured?</h2>
  * <ul>
- *   <li><b>Only JVM heap</b> is sampled (i.e., the managed heap reported by
- *       {@link Runtime}).</li>
- *   <li><b>Not sampled:</b> off-heap/native allocations (direct byte buffers,
+ *   <li><b>Only JVM heap</b> is measured (the heap memory pools).</li>
+ *   <li><b>Not measured:</b> off-heap/native allocations (direct byte buffers,
  *       mmap, JNI, PDFBox native libs, etc.), thread stacks, metaspace, code
  *       cache, or the process's RSS. For a complete picture, use OS tooling or
  *       JVM Native Memory Tracking.</li>
  * </ul>
  *
- * <h2>Accuracy &amp; caveats</h2>
+ * <h2>Heap mode</h2>
+ * {@link #measure(Supplier)} reports the whole-heap high-water mark while the task ran: the
+ * usage before each collection in the window (the true peak between two collections, so short
+ * spikes are not missed) and the usage at both ends. Everything else running in the JVM is
+ * included, as is garbage left over from before the task.
+ *
+ * <h2>Allocation mode</h2>
+ * {@link #measureAllocations(Supplier)} measures only the calling thread, via
+ * {@link ThreadMXBean#getThreadAllocatedBytes(long)}, so concurrent requests do not leak into
+ * each other's numbers. It reports the bytes the task allocated (exact) and an estimate of the
+ * most heap the task held at once:
  * <ul>
- *   <li>Sampling is periodic; very short-lived spikes between ticks may be
- *       missed, yielding an <i>underestimate</i> of the true peak.</li>
- *   <li>A best-effort {@code System.gc()} is invoked immediately before the
- *       task runs to reduce noise from prior allocations. This is only a hint
- *       to the JVM and is <em>not</em> guaranteed.</li>
- *   <li>If the task allocates mostly off-heap memory, the reported peak will
- *       not reflect that.</li>
- *   <li>Sampling overhead is small but non-zero (one extra thread + polling).
- *       For microbenchmarks, consider JMH or flight recordings instead.</li>
+ *   <li>Between two collections nothing is freed, so what the task allocated since the last
+ *       collection is all still on the heap; the estimate is that, plus what the task carried
+ *       over earlier collections.</li>
+ *   <li>At each collection the carried amount shrinks by the collection's heap-wide survival
+ *       ratio (used after / used before). This is where the estimate is approximate: the task's
+ *       objects are assumed to survive like the average object.</li>
+ *   <li>The estimate only grows between collections, so its maximum is read at each collection
+ *       notification and at the end of the task.</li>
  * </ul>
- *
- * <h2>Threading</h2>
- * A single daemon thread named {@code mem-sampler} performs the sampling.
- * It is started for the duration of {@link #measure(Supplier, long)} and is
- * shut down in a {@code finally} block to avoid leaks, even if the task throws.
+ * The thread's counter is read when the notification arrives, slightly after the pause, so a
+ * few allocations made right after a collection count as surviving it. Allocations by other
+ * threads the task hands work to are not counted.
  *
  * <h2>Exceptions</h2>
  * If the supplied task throws, the exception is propagated to the caller after
- * the sampler is cancelled and the scheduler is shut down. No {@code Result}
- * is returned in that case.
+ * the measurement is unregistered. No {@code Result} is returned in that case.
  *
  * <h2>Typical usage</h2>
  * <pre>{@code
- * MemorySampler.Result<Integer> r = MemorySampler.measure(() -> {
+ * MemorySampler.Result<Integer> r = MemorySampler.measureAllocations(() -> {
  *     // your workload here
  *     return doPdfWork();
- * }, 25); // sample every 25 ms
+ * });
  *
- * System.out.printf("Value=%d, PeakHeap=%.1f MB%n", r.value(), r.peakMb());
+ * System.out.printf("Value=%d, Peak=%.1f MB, Allocated=%.1f MB%n", r.value(), r.peakMb(), r.allocatedMb());
  * }</pre>
  *
  * @since 1.0
@@ -66,76 +74,117 @@ public final class MemorySampler {
     private MemorySampler() {}
 
     /**
-     * Execute a task while periodically sampling the JVM heap usage, returning
-     * the task's value and the <em>maximum sampled</em> heap in megabytes.
-     * <p>
-     * Implementation notes:
-     * <ul>
-     *   <li>Creates a single-threaded, daemon {@link ScheduledExecutorService}
-     *       that calls {@link #usedHeapBytes()} every {@code periodMillis}.</li>
-     *   <li>Invokes {@code System.gc()} just before running the task to reduce
-     *       cross-run noise (best-effort only).</li>
-     *   <li>Cancels the sampling task and shuts down the scheduler in a
-     *       {@code finally} block.</li>
-     * </ul>
+     * Execute a task while tracking the JVM heap, returning the task's value and the heap
+     * high-water mark in megabytes. See the class notes on heap mode.
      *
-     * @param <T>           the task's return type
-     * @param task          the work to execute; must be non-null. If this supplier
-     *                      throws, its exception is propagated after cleanup.
-     * @param periodMillis  sampling period in milliseconds; smaller values may
-     *                      capture spikes more accurately at the cost of overhead.
+     * @param <T>  the task's return type
+     * @param task the work to execute; must be non-null. If this supplier
+     *             throws, its exception is propagated after cleanup.
      * @return a {@link Result} containing the task's return value and the peak
-     *         sampled heap usage in megabytes
+     *         heap usage in megabytes
      * @throws NullPointerException if {@code task} is {@code null}
      * @implNote This method measures <strong>heap usage only</strong>. It does not
      *           capture native/off-heap allocations or process RSS.
      */
-    public static <T> Result<T> measure(Supplier<T> task, long periodMillis) {
-        ScheduledExecutorService ses = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "mem-sampler");
-            t.setDaemon(true);
-            return t;
-        });
-
-        final long[] peak = { usedHeapBytes() };
-
-        // Start periodic sampling (fixed rate helps avoid drift over long tasks).
-        var tick = ses.scheduleAtFixedRate(() -> {
-            long u = usedHeapBytes();
-            if (u > peak[0]) peak[0] = u;
-        }, 0, periodMillis, TimeUnit.MILLISECONDS);
-
+    public static <T> Result<T> measure(Supplier<T> task) {
+        HeapPeakTracker.Window window = HeapPeakTracker.shared().open();
         T value;
         try {
-            // Best-effort to reduce interference from previous allocations.
-            System.gc();
             value = task.get();
         } finally {
-            // Always stop the sampler and scheduler to avoid thread leaks.
-            tick.cancel(true);
-            ses.shutdownNow();
+            window.close();
         }
-
-        // Convert bytes to megabytes using 1024^2 (MiB).
-        return new Result<>(value, peak[0] / (1024.0 * 1024.0));
+        return new Result<>(value, window.peakBytes() / MB, Double.NaN);
     }
 
     /**
-     * Compute current used heap in bytes as {@code totalMemory - freeMemory}.
+     * Execute a task on the calling thread and measure the heap it allocates and (approximately)
+     * retains, isolated from other threads. See the class notes on allocation mode.
      *
-     * @return used heap in bytes at the instant of the call
+     * @param <T>  the task's return type
+     * @param task the work to execute; its exceptions propagate after the measurement is stopped
+     * @return the task's value, its retained-peak estimate as {@link Result#peakMb()} and its
+     *         allocations as {@link Result#allocatedMb()}
+     * @throws UnsupportedOperationException if the JVM cannot count per-thread allocations
      */
-    private static long usedHeapBytes() {
-        Runtime rt = Runtime.getRuntime();
-        return rt.totalMemory() - rt.freeMemory();
+    public static <T> Result<T> measureAllocations(Supplier<T> task) {
+        if (!THREADS.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("Per-thread allocation counting is not supported by this JVM");
+        }
+        if (!THREADS.isThreadAllocatedMemoryEnabled()) THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        Tracker tracker = new Tracker(Thread.currentThread().threadId(), THREADS.getCurrentThreadAllocatedBytes());
+        TRACKERS.add(tracker);
+        T value;
+        try {
+            value = task.get();
+        } finally {
+            TRACKERS.remove(tracker);
+        }
+        tracker.advance(THREADS.getCurrentThreadAllocatedBytes(), 1.0);
+        return new Result<>(value, tracker.peak / MB, tracker.allocated / MB);
+    }
+
+    private static final double MB = 1024.0 * 1024.0;
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Set<Tracker> TRACKERS = ConcurrentHashMap.newKeySet();
+
+    static {
+        HeapPeakTracker.shared().addListener(MemorySampler::onGc);
+    }
+
+    /** Advance every running allocation measurement past a collection. */
+    private static void onGc(long beforeBytes, long afterBytes) {
+        if (TRACKERS.isEmpty()) return;
+        double survival = beforeBytes <= 0 ? 1.0 : Math.min(1.0, (double) afterBytes / beforeBytes);
+        for (Tracker t : TRACKERS) {
+            long allocated = THREADS.getThreadAllocatedBytes(t.threadId);
+            if (allocated >= 0) t.advance(allocated, survival);
+        }
+    }
+
+    /** Allocation state of one running measurement. */
+    private static final class Tracker {
+        final long threadId;
+        final long start;
+        /** Thread allocation counter at the last collection seen. */
+        long base;
+        /** Estimated bytes kept from before {@link #base}. */
+        double carried;
+        double peak;
+        double allocated;
+
+        Tracker(long threadId, long start) {
+            this.threadId = threadId;
+            this.start = start;
+            this.base = start;
+        }
+
+        /**
+         * @param allocatedNow the thread's allocation counter
+         * @param survival     fraction of the heap that survived the collection just seen, or
+         *                     {@code 1} when reading without one
+         */
+        synchronized void advance(long allocatedNow, double survival) {
+            double live = carried + Math.max(0, allocatedNow - base);
+            // nothing is freed between collections, so the estimate peaks right before one
+            peak = Math.max(peak, live);
+            if (survival < 1.0) {
+                carried = live * survival;
+                base = allocatedNow;
+            }
+            allocated = allocatedNow - start;
+        }
     }
 
     /**
      * Immutable container for the measured result.
      *
-     * @param value  the task's return value
-     * @param peakMb the maximum sampled JVM heap usage in megabytes
-     * @param <T>    type of the task's return value
+     * @param value       the task's return value
+     * @param peakMb      the JVM heap high-water mark in megabytes; in allocation mode, the
+     *                    task's estimated retained peak
+     * @param allocatedMb megabytes the task allocated (allocation mode), else {@link Double#NaN}
+     * @param <T>         type of the task's return value
      */
-    public record Result<T>(T value, double peakMb) {}
+    public record Result<T>(T value, double peakMb, double allocatedMb) {}
 }
@@ -2,11 +2,19 @@ package com.example.bds.ml;
 
 import com.example.bds.dto.PdfFeatures;
 import com.example.bds.dto.RouteDecision;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
+
 /**
  * Reactive HTTP client for the ML sidecar's <code>/predict</code> endpoint.
  * <p>
@@ -47,6 +55,40 @@ import reactor.core.publisher.Mono;
  * The JSON response from the sidecar (e.g., <code>{"predicted_peak_mb": ..., "decision": "...", "threshold_mb": ...}</code>)
  * is deserialized into {@link RouteDecision}.
  *
+ * <h2>Request coalescing (optional)</h2>
+ * With {@code triage.batch.enabled=true}, concurrent {@link #predictViaSidecar} calls are
+ * collected by a {@link SidecarBatcher} (up to {@code triage.batch.max-items} documents or
+ * {@code triage.batch.max-wait}) and sent as one <code>POST /predict_batch</code>:
+ * <pre>{@code
+ * { "items": [ {features...}, ... ], "big_mem_threshold_mb": null }
+ *   -> { "results": [ {"predicted_peak_mb": ..., "decision": "...", "threshold_mb": ...}, ... ] }
+ * }</pre>
+ * The sidecar scores the whole batch with one vectorized pipeline call. Each caller still gets
+ * its own {@link Mono}; if the batch call fails, every caller in it sees the error. A caller
+ * that has not been answered within {@code triage.batch.timeout} (queueing included) fails with
+ * a {@link java.util.concurrent.TimeoutException}, and one that finds
+ * {@code triage.batch.max-queued} documents already waiting fails at once, so both reach the
+ * breaker and the fallback. Off by default, since it needs a sidecar that serves
+ * {@code /predict_batch}.
+ *
+ * <h2>Circuit breaker</h2>
+ * With {@code triage.breaker.enabled=true} (the default) every {@link #predictViaSidecar} call
+ * goes through a {@link CircuitBreaker} named {@code sidecar}. Errors other than a 4xx response,
+ * and calls slower than {@code triage.breaker.slow-call-duration}, count against the sidecar;
+ * when either share of the last {@code triage.breaker.window-size} calls reaches its threshold
+ * the breaker opens and calls fail at once with {@link CircuitBreaker.OpenException} for
+ * {@code triage.breaker.open-duration}, after which a few probe calls decide whether it closes.
+ * Callers see the exception like any other error and apply their fallback without waiting for
+ * the response timeout.
+ *
+ * <h2>Hedging (optional)</h2>
+ * With {@code triage.hedge.enabled=true}, a {@code /predict} call that has not answered within
+ * the {@code triage.hedge.percentile} of recent latency is repeated against the hedge client
+ * ({@code triage.hedge.base-url}, a replica, or the primary endpoint when blank) and the first
+ * answer wins; see {@link RequestHedger} for the delay and the {@code triage.hedge.budget-percent}
+ * cap. Hedging happens inside the circuit breaker, so a hedged call is one breaker outcome.
+ * Coalesced batch calls are not hedged.
+ *
  * <h2>Error semantics</h2>
  * <ul>
  *   <li>Non-2xx responses cause {@link org.springframework.web.reactive.function.client.WebClientResponseException}
@@ -89,8 +131,38 @@ public class PredictionService {
      */
     public record PredictRequest(PdfFeatures features, Double big_mem_threshold_mb) {}
 
+    /**
+     * Request envelope for <code>/predict_batch</code>.
+     *
+     * @param items                documents to score, in order
+     * @param big_mem_threshold_mb optional override for the decision threshold in MB
+     */
+    public record PredictBatchRequest(List<PdfFeatures> items, Double big_mem_threshold_mb) {}
+
+    /**
+     * Response envelope of <code>/predict_batch</code>.
+     *
+     * @param results one decision per requested document, in request order
+     */
+    public record PredictBatchResponse(List<RouteDecision> results) {}
+
     private final WebClient webClient;
 
+    /** Client for hedged calls; see {@link #hedger}. */
+    private final WebClient hedgeWebClient;
+
+    /** Hedging policy, or {@code null} when {@code triage.hedge.enabled=false}. */
+    private final RequestHedger hedger;
+
+    /** Coalescing client, or {@code null} when {@code triage.batch.enabled=false}. */
+    private final SidecarBatcher batcher;
+
+    /** Longest a coalesced call may take, queueing included ({@code triage.batch.timeout}). */
+    private final Duration batchTimeout;
+
+    /** Breaker around every prediction call, or {@code null} when {@code triage.breaker.enabled=false}. */
+    private final CircuitBreaker breaker;
+
     /**
      * Create a new {@link PredictionService}.
      *
@@ -105,9 +177,67 @@ public class PredictionService {
      *     return builder.baseUrl(baseUrl).build();
      * }
      *                             }</pre>
+     * @param batchEnabled         coalesce calls into {@code /predict_batch} ({@code triage.batch.enabled})
+     * @param batchMaxItems        largest batch ({@code triage.batch.max-items})
+     * @param batchMaxWait         longest a call waits for companions ({@code triage.batch.max-wait})
+     * @param batchMaxInFlight     concurrent batch requests ({@code triage.batch.max-in-flight})
+     * @param batchMaxQueued       documents allowed to wait for a batch ({@code triage.batch.max-queued})
+     * @param batchTimeout         longest a coalesced call may take ({@code triage.batch.timeout})
+     * @param breakerEnabled       guard calls with a circuit breaker ({@code triage.breaker.enabled})
+     * @param breakerSettings      breaker limits ({@code triage.breaker.*}); a bean built by the application configuration
+     * @param sidecarHedgeWebClient client for hedged calls (a replica, or the primary endpoint)
+     * @param hedgeEnabled         hedge slow {@code /predict} calls ({@code triage.hedge.enabled})
+     * @param hedgeSettings        hedging limits ({@code triage.hedge.*})
+     * @param meterRegistry        registry for the breaker and hedging metrics
+     * @throws IllegalArgumentException if a batch limit is out of range
      */
-    public PredictionService(WebClient memoryScoreWebClient) {
+    public PredictionService(@Qualifier("memoryScoreWebClient") WebClient memoryScoreWebClient,
+                             @Value("${triage.batch.enabled:false}") boolean batchEnabled,
+                             @Value("${triage.batch.max-items:32}") int batchMaxItems,
+                             @Value("${triage.batch.max-wait:1ms}") Duration batchMaxWait,
+                             @Value("${triage.batch.max-in-flight:4}") int batchMaxInFlight,
+                             @Value("${triage.batch.max-queued:1024}") int batchMaxQueued,
+                             @Value("${triage.batch.timeout:2s}") Duration batchTimeout,
+                             @Value("${triage.breaker.enabled:true}") boolean breakerEnabled,
+                             CircuitBreaker.Settings breakerSettings,
+                             @Qualifier("sidecarHedgeWebClient") WebClient sidecarHedgeWebClient,
+                             @Value("${triage.hedge.enabled:false}") boolean hedgeEnabled,
+                             RequestHedger.Settings hedgeSettings,
+                             MeterRegistry meterRegistry) {
         this.webClient = memoryScoreWebClient;
+        this.hedgeWebClient = sidecarHedgeWebClient;
+        this.hedger = hedgeEnabled ? new RequestHedger(hedgeSettings, meterRegistry) : null;
+        if (batchEnabled && (batchTimeout.isNegative() || batchTimeout.isZero())) {
+            throw new IllegalArgumentException("triage.batch.timeout must be > 0");
+        }
+        this.batchTimeout = batchTimeout;
+        this.batcher = batchEnabled
+                ? new SidecarBatcher(this::predictBatchViaSidecar, batchMaxItems, batchMaxWait, batchMaxInFlight,
+                        batchMaxQueued)
+                : null;
+        this.breaker = breakerEnabled
+                ? new CircuitBreaker("sidecar", breakerSettings, PredictionService::isSidecarFailure, meterRegistry)
+                : null;
+    }
+
+    /**
+     * @return the breaker's state, or {@code null} when the breaker is disabled
+     */
+    public CircuitBreaker.State breakerState() {
+        return breaker == null ? null : breaker.state();
+    }
+
+    /** A 4xx means the request was bad, not that the sidecar is unhealthy. */
+    private static boolean isSidecarFailure(Throwable err) {
+        return !(err instanceof WebClientResponseException r && r.getStatusCode().is4xxClientError());
+    }
+
+    /**
+     * Stop the coalescing client, if any.
+     */
+    @PreDestroy
+    void close() {
+        if (batcher != null) batcher.close();
     }
 
     /**
@@ -121,10 +251,23 @@ public class PredictionService {
      * @param features the PDF features to score; must not be {@code null}
      * @return a {@link Mono} that emits a single {@link RouteDecision} on success, or propagates
      *         an error (e.g., {@link org.springframework.web.reactive.function.client.WebClientResponseException})
-     *         if the HTTP call fails or the body cannot be decoded
+     *         if the HTTP call fails or the body cannot be decoded, or {@link CircuitBreaker.OpenException}
+     *         without calling the sidecar while the breaker is open
      */
     public Mono<RouteDecision> predictViaSidecar(PdfFeatures features) {
-        return webClient.post()
+        Mono<RouteDecision> call;
+        if (batcher != null) {
+            call = batcher.predict(features).timeout(batchTimeout);
+        } else if (hedger != null) {
+            call = hedger.hedge(post(webClient, features), post(hedgeWebClient, features));
+        } else {
+            call = post(webClient, features);
+        }
+        return breaker != null ? breaker.protect(call) : call;
+    }
+
+    private static Mono<RouteDecision> post(WebClient client, PdfFeatures features) {
+        return client.post()
                 .uri("/predict")
                 .contentType(MediaType.APPLICATION_JSON)
                 .accept(MediaType.APPLICATION_JSON)
@@ -132,4 +275,21 @@ public class PredictionService {
                 .retrieve()
                 .bodyToMono(RouteDecision.class);
     }
+
+    /**
+     * POST a batch to the sidecar's <code>/predict_batch</code> endpoint.
+     *
+     * @param items documents to score
+     * @return a {@link Mono} emitting one decision per document, in order
+     */
+    public Mono<List<RouteDecision>> predictBatchViaSidecar(List<PdfFeatures> items) {
+        return webClient.post()
+                .uri("/predict_batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .bodyValue(new PredictBatchRequest(items, null))
+                .retrieve()
+                .bodyToMono(PredictBatchResponse.class)
+                .map(PredictBatchResponse::results);
+    }
 }
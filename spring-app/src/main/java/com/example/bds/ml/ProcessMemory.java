@@ -0,0 +1,239 @@
+package com.example.bds.ml;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point-in-time readings of the memory the JVM heap does not show: process RSS, NIO buffer pools
+ * and the container's cgroup, plus the growth between two readings.
+ * <p>
+ * {@link MemorySampler} only sees the heap, but the OOM killer acts on the container's memory:
+ * PDFBox rasterization buffers, direct {@code ByteBuffer}s and mapped spool files all count there.
+ *
+ * <h2>Sources</h2>
+ * <ul>
+ *   <li><b>RSS:</b> {@code VmRSS} (now) and {@code VmHWM} (high-water mark) from
+ *       {@code /proc/self/status}.</li>
+ *   <li><b>Off-heap:</b> {@link BufferPoolMXBean} {@code direct} + {@code mapped} memory used.</li>
+ *   <li><b>cgroup v2:</b> {@code memory.current} and {@code memory.peak} of this process's cgroup
+ *       (resolved from {@code /proc/self/cgroup}); page cache of mapped files is charged here.</li>
+ * </ul>
+ * Readings that are unavailable (not Linux, cgroup v1, kernel without {@code memory.peak}) are
+ * {@code -1}.
+ *
+ * <h2>Window peaks</h2>
+ * {@code VmHWM} and {@code memory.peak} only ever grow. If one grew between two readings, its new
+ * value was reached between them and is the exact peak of that window. Once the process is warm,
+ * though, most windows stay below the lifetime mark, and their two end points only give net
+ * growth: a transient rasterization or direct-buffer spike freed before the end is invisible.
+ * A {@link Window} therefore also samples {@code VmRSS} and {@code memory.current} at a fixed
+ * interval on one shared daemon thread, and a window's peak is the largest of the risen
+ * high-water mark, the samples and the end points. Spikes shorter than the interval can still be
+ * missed, so below the lifetime mark the figure is a sampled peak, not an exact one. All readings
+ * are process-wide (container-wide for the cgroup): concurrent work is included.
+ *
+ * @since 1.1
+ */
+public final class ProcessMemory {
+
+    private static final double MB = 1024.0 * 1024.0;
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+    private static final Path CGROUP_DIR = cgroupDir(Path.of("/proc/self/cgroup"), CGROUP_ROOT);
+    private static final List<BufferPoolMXBean> BUFFER_POOLS =
+            ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+
+    /** Shared sampler of open {@link Window}s; one daemon thread, started on first use. */
+    private static final class Sampler {
+        static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bds-rss-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Non-instantiable utility class. */
+    private ProcessMemory() {}
+
+    /**
+     * A measured window: start reading, resident memory sampled while open, end reading on
+     * {@link #close()}.
+     */
+    public static final class Window {
+        private final Snapshot start;
+        private final AtomicLong maxRss = new AtomicLong(-1);
+        private final AtomicLong maxCgroup = new AtomicLong(-1);
+        private final ScheduledFuture<?> sampling;
+
+        private Window(Duration interval) {
+            this.start = read();
+            long nanos = interval.toNanos();
+            this.sampling = nanos > 0
+                    ? Sampler.EXECUTOR.scheduleAtFixedRate(this::sample, nanos, nanos, TimeUnit.NANOSECONDS)
+                    : null;
+        }
+
+        private void sample() {
+            maxRss.accumulateAndGet(residentBytes(PROC_STATUS), Math::max);
+            maxCgroup.accumulateAndGet(number(CGROUP_DIR, "memory.current"), Math::max);
+        }
+
+        /**
+         * Stop sampling and take the end reading.
+         *
+         * @return what the window added on top of its start, peaks included
+         */
+        public Growth close() {
+            if (sampling != null) sampling.cancel(false);
+            return between(start, read(), maxRss.get(), maxCgroup.get());
+        }
+    }
+
+    /**
+     * Open a window that samples resident memory every {@code interval}.
+     *
+     * @param interval sampling period; zero or negative samples nothing (end points and
+     *                 high-water marks only)
+     * @return the open window; {@link Window#close()} it when the measured work is done
+     */
+    public static Window open(Duration interval) {
+        return new Window(interval);
+    }
+
+    /**
+     * Memory readings at one instant, bytes; {@code -1} where unavailable.
+     *
+     * @param rssBytes        resident set size
+     * @param rssPeakBytes    resident set high-water mark of the process
+     * @param offHeapBytes    direct + mapped NIO buffers in use
+     * @param cgroupBytes     memory charged to the cgroup
+     * @param cgroupPeakBytes high-water mark of the cgroup
+     */
+    public record Snapshot(long rssBytes, long rssPeakBytes, long offHeapBytes, long cgroupBytes, long cgroupPeakBytes) {}
+
+    /**
+     * Growth over a window, MB; {@link Double#NaN} where unavailable.
+     *
+     * @param offHeapMb off-heap buffers in use at the end, beyond the start (0 if they shrank)
+     * @param rssMb     peak resident memory above the start: the larger of the RSS and cgroup
+     *                  estimates (see the class notes for how exact the peak is)
+     */
+    public record Growth(double offHeapMb, double rssMb) {}
+
+    /** @return current readings */
+    public static Snapshot read() {
+        return read(PROC_STATUS, CGROUP_DIR);
+    }
+
+    /**
+     * @param procStatus a {@code /proc/<pid>/status} file
+     * @param cgroupDir  the cgroup v2 directory, or {@code null}
+     */
+    static Snapshot read(Path procStatus, Path cgroupDir) {
+        long rss = -1, hwm = -1;
+        try {
+            for (String line : Files.readAllLines(procStatus)) {
+                if (line.startsWith("VmRSS:")) rss = kilobytes(line);
+                else if (line.startsWith("VmHWM:")) hwm = kilobytes(line);
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux, or unreadable: leave -1
+        }
+        long offHeap = 0;
+        for (BufferPoolMXBean pool : BUFFER_POOLS) {
+            if ("direct".equals(pool.getName()) || "mapped".equals(pool.getName())) {
+                offHeap += Math.max(0, pool.getMemoryUsed());
+            }
+        }
+        return new Snapshot(rss, hwm, offHeap,
+                number(cgroupDir, "memory.current"), number(cgroupDir, "memory.peak"));
+    }
+
+    /**
+     * @param start reading at the beginning of the window
+     * @param end   reading at its end
+     * @return what the window added on top of {@code start}
+     */
+    public static Growth between(Snapshot start, Snapshot end) {
+        return between(start, end, -1, -1);
+    }
+
+    /**
+     * @param start         reading at the beginning of the window
+     * @param end           reading at its end
+     * @param sampledRss    largest RSS sampled in between, {@code -1} if none
+     * @param sampledCgroup largest cgroup charge sampled in between, {@code -1} if none
+     * @return what the window added on top of {@code start}
+     */
+    static Growth between(Snapshot start, Snapshot end, long sampledRss, long sampledCgroup) {
+        double offHeap = Math.max(0, end.offHeapBytes() - start.offHeapBytes()) / MB;
+        double rss = Math.max(
+                growth(start.rssBytes(), start.rssPeakBytes(), end.rssBytes(), end.rssPeakBytes(), sampledRss),
+                growth(start.cgroupBytes(), start.cgroupPeakBytes(), end.cgroupBytes(), end.cgroupPeakBytes(),
+                        sampledCgroup));
+        return new Growth(offHeap, rss < 0 ? Double.NaN : rss / MB);
+    }
+
+    /** Peak in the window above the starting value, or {@code -1} if unknown. */
+    private static double growth(long startNow, long startPeak, long endNow, long endPeak, long sampled) {
+        if (startNow < 0 || endNow < 0) return -1;
+        long peak = startPeak >= 0 && endPeak > startPeak ? endPeak : Math.max(startNow, endNow);
+        return Math.max(0, Math.max(peak, sampled) - startNow);
+    }
+
+    /** {@code VmRSS} alone, for sampling; {@code -1} if unavailable. */
+    private static long residentBytes(Path procStatus) {
+        try {
+            for (String line : Files.readAllLines(procStatus)) {
+                if (line.startsWith("VmRSS:")) return kilobytes(line);
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux, or unreadable
+        }
+        return -1;
+    }
+
+    private static long kilobytes(String statusLine) {
+        // "VmRSS:	  123456 kB"
+        String v = statusLine.substring(statusLine.indexOf(':') + 1).trim();
+        int space = v.indexOf(' ');
+        return Long.parseLong(space < 0 ? v : v.substring(0, space)) * 1024;
+    }
+
+    private static long number(Path dir, String file) {
+        if (dir == null) return -1;
+        try {
+            return Long.parseLong(Files.readString(dir.resolve(file)).trim());
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The cgroup v2 directory of this process: {@code root} + the path of the {@code 0::} line,
+     * falling back to {@code root} itself (a container's namespaced view), else {@code null}.
+     */
+    static Path cgroupDir(Path procCgroup, Path root) {
+        try {
+            for (String line : Files.readAllLines(procCgroup)) {
+                if (line.startsWith("0::")) {
+                    Path dir = root.resolve(line.substring(3).replaceFirst("^/", ""));
+                    if (Files.isRegularFile(dir.resolve("memory.current"))) return dir;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // no cgroup info
+        }
+        return Files.isRegularFile(root.resolve("memory.current")) ? root : null;
+    }
+}
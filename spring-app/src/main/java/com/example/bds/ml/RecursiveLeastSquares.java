@@ -0,0 +1,235 @@
+package com.example.bds.ml;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Online linear regression by recursive least squares (RLS).
+ * <p>
+ * Fits {@code y = dot(weights, x) + bias} and keeps, besides the coefficients, the inverse
+ * (regularized) covariance matrix {@code P = (X^T X + I / delta)^-1}. Each labelled sample updates
+ * both in {@code O(d^2)} time with no allocation, so the model tracks the full least-squares
+ * solution without ever re-reading past samples.
+ *
+ * <h2>Standardization</h2>
+ * Inputs are standardized ({@code (x - mean) / scale}) before they reach the regression. The
+ * means and scales are estimated by {@link #fit} and then frozen, so online updates stay exact
+ * least squares in a fixed, well-conditioned coordinate system. A learner created with the
+ * public constructor uses the identity transform.
+ *
+ * <h2>Update</h2>
+ * For the augmented, standardized input {@code z = [(x - mean) / scale, 1]}:
+ * <pre>
+ * k = P z / (lambda + z^T P z)
+ * w = w + k (y - w^T z)
+ * P = (P - k (P z)^T) / lambda
+ * </pre>
+ * With forgetting factor {@code lambda = 1} every sample weighs the same; values slightly below 1
+ * (e.g. 0.999) let the model follow drift by discounting old samples geometrically.
+ *
+ * <h2>Numerical drift</h2>
+ * Rounding errors accumulate in {@code P} over millions of updates. {@link #fit} rebuilds the
+ * state exactly from stored samples (accumulating {@code X^T X} and {@code X^T y} and inverting
+ * once); callers run it periodically as a compaction step.
+ *
+ * <h2>Thread-safety</h2>
+ * Not thread-safe; callers serialize {@link #update} and snapshot reads.
+ *
+ * @since 1.1
+ */
+public final class RecursiveLeastSquares {
+
+    /**
+     * Floor of the prior's weight {@code lambda^n} in {@link #fit}. The weight underflows to 0
+     * after a few thousand rows at {@code lambda < 1}, and without a prior a direction the data
+     * never spans (a constant feature) makes {@code X^T X} singular.
+     */
+    static final double MIN_PRIOR_WEIGHT = 1e-9;
+
+    private final int features;
+    private final int d; // features + intercept
+    private final double lambda;
+    private final double delta;
+
+    /** Frozen input standardization. */
+    private final double[] means;
+    private final double[] scales;
+
+    /** Coefficients in standardized space; the last one is the bias. */
+    private final double[] w;
+    /** Inverse covariance, d x d, kept symmetric. */
+    private final double[][] p;
+
+    /* scratch, reused by update() */
+    private final double[] z;
+    private final double[] pz;
+
+    private long samples;
+
+    /**
+     * Start from zero coefficients and {@code P = delta * I}.
+     *
+     * @param features number of input features (the bias is added internally)
+     * @param lambda   forgetting factor in {@code (0, 1]}
+     * @param delta    prior variance of the coefficients; large values mean a weak prior
+     */
+    public RecursiveLeastSquares(int features, double lambda, double delta) {
+        this(lambda, delta, Standardization.identity(features));
+    }
+
+    private RecursiveLeastSquares(double lambda, double delta, Standardization standardization) {
+        int features = standardization.means().length;
+        if (features < 1) throw new IllegalArgumentException("features must be >= 1");
+        if (!(lambda > 0 && lambda <= 1)) throw new IllegalArgumentException("lambda must be in (0, 1]");
+        if (!(delta > 0)) throw new IllegalArgumentException("delta must be > 0");
+        this.means = standardization.means();
+        this.scales = standardization.scales();
+        this.features = features;
+        this.d = features + 1;
+        this.lambda = lambda;
+        this.delta = delta;
+        this.w = new double[d];
+        this.p = new double[d][d];
+        this.z = new double[d];
+        this.pz = new double[d];
+        for (int i = 0; i < d; i++) p[i][i] = delta;
+    }
+
+    /**
+     * Incorporate one labelled sample.
+     *
+     * @param x feature values, length {@code features} (only read)
+     * @param y observed target
+     */
+    public void update(double[] x, double y) {
+        for (int j = 0; j < features; j++) z[j] = (x[j] - means[j]) / scales[j];
+        z[features] = 1.0;
+
+        double zPz = 0.0;
+        for (int i = 0; i < d; i++) {
+            double s = 0.0;
+            double[] row = p[i];
+            for (int j = 0; j < d; j++) s += row[j] * z[j];
+            pz[i] = s;
+            zPz += z[i] * s;
+        }
+        double denom = lambda + zPz;
+
+        double err = y;
+        for (int i = 0; i < d; i++) err -= w[i] * z[i];
+
+        // k = pz / denom; w += k * err; P = (P - k pz^T) / lambda
+        double invLambda = 1.0 / lambda;
+        for (int i = 0; i < d; i++) {
+            double ki = pz[i] / denom;
+            w[i] += ki * err;
+            double[] row = p[i];
+            for (int j = 0; j < d; j++) row[j] = (row[j] - ki * pz[j]) * invLambda;
+        }
+        samples++;
+    }
+
+    /**
+     * Rebuild the state exactly from stored samples: estimate the standardization over the
+     * labelled rows, then {@code P = (sum z z^T + I / delta)^-1},
+     * {@code w = P * sum z y}, with rows older by {@code k} samples weighted {@code lambda^k}.
+     * The prior is discounted the same way but never below {@link #MIN_PRIOR_WEIGHT}, so the
+     * system stays invertible when a feature does not vary.
+     *
+     * @param features number of input features
+     * @param lambda   forgetting factor in {@code (0, 1]}
+     * @param delta    prior variance of the coefficients
+     * @param x        column-major features, {@code x[j][i]} is feature {@code j} of row {@code i}
+     * @param y        targets; rows with {@code y < 0} (no label) are skipped
+     * @param rows     number of rows to read from the arrays
+     * @return a learner equivalent to having {@link #update updated} on every labelled row in order,
+     *         starting from the estimated standardization
+     */
+    public static RecursiveLeastSquares fit(int features, double lambda, double delta,
+                                            double[][] x, double[] y, int rows) {
+        Standardization s = Standardization.of(x, y, rows);
+        double[] means = s.means();
+        double[] scales = s.scales();
+        RecursiveLeastSquares rls = new RecursiveLeastSquares(lambda, delta, s);
+        int d = rls.d;
+        double[][] a = new double[d][d];
+        double[] b = new double[d];
+        double[] z = rls.z;
+        double priorWeight = 1.0; // lambda^n, discounts the prior like the recursive form does
+
+        for (int i = 0; i < rows; i++) {
+            if (y[i] < 0) continue;
+            for (int j = 0; j < features; j++) z[j] = (x[j][i] - means[j]) / scales[j];
+            z[features] = 1.0;
+            if (lambda < 1.0) {
+                for (int r = 0; r < d; r++) {
+                    b[r] *= lambda;
+                    for (int c = 0; c <= r; c++) a[r][c] *= lambda;
+                }
+                priorWeight *= lambda;
+            }
+            for (int r = 0; r < d; r++) {
+                b[r] += z[r] * y[i];
+                for (int c = 0; c <= r; c++) a[r][c] += z[r] * z[c];
+            }
+            rls.samples++;
+        }
+
+        for (int r = 0; r < d; r++) {
+            a[r][r] += Math.max(priorWeight, MIN_PRIOR_WEIGHT) / delta;
+            for (int c = 0; c < r; c++) a[c][r] = a[r][c];
+        }
+        RealMatrix inv = MatrixUtils.inverse(MatrixUtils.createRealMatrix(a));
+        for (int r = 0; r < d; r++) {
+            double acc = 0.0;
+            for (int c = 0; c < d; c++) {
+                double v = inv.getEntry(r, c);
+                rls.p[r][c] = v;
+                acc += v * b[c];
+            }
+            rls.w[r] = acc;
+        }
+        return rls;
+    }
+
+    /**
+     * Batch {@link Trainer} view of {@link #fit}, for comparison with the other trainers.
+     *
+     * @param lambda forgetting factor in {@code (0, 1]}
+     * @param delta  prior variance of the coefficients
+     * @return a trainer returning {@code fit(...).model()}
+     */
+    public static Trainer trainer(double lambda, double delta) {
+        return (x, y, rows) -> fit(x.length, lambda, delta, x, y, rows).model();
+    }
+
+    /**
+     * @return a snapshot of the current coefficients together with the standardization
+     */
+    public LinearModel model() {
+        return new LinearModel(weights(), bias(), means.clone(), scales.clone());
+    }
+
+    /**
+     * @return a copy of the feature coefficients in standardized space (without the bias)
+     */
+    public double[] weights() {
+        double[] out = new double[features];
+        System.arraycopy(w, 0, out, 0, features);
+        return out;
+    }
+
+    /**
+     * @return the intercept
+     */
+    public double bias() {
+        return w[features];
+    }
+
+    /**
+     * @return number of labelled samples incorporated (by updates or the initial fit)
+     */
+    public long samples() {
+        return samples;
+    }
+}
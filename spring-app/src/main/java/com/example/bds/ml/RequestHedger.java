@@ -0,0 +1,205 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hedges slow sidecar calls: when the primary call has not answered within a high percentile of
+ * recent latency, a backup call is sent (to a replica or the same endpoint) and whichever answers
+ * first wins; the other is cancelled.
+ *
+ * <h2>Delay</h2>
+ * Primary latencies go into a ring of the last {@code window} calls; every {@value #RECOMPUTE}
+ * samples (and once at {@code minSamples}) the hedge delay is reset to the configured percentile
+ * of the ring, floored at {@code minDelay}. Until {@code minSamples} latencies are known nothing
+ * is hedged. A primary that loses is recorded with its elapsed time at cancellation, a lower
+ * bound, so hedging cannot hide the tail it reacts to.
+ *
+ * <h2>Budget</h2>
+ * Hedges are paid from a token bucket: every call deposits {@code budgetPercent / 100} of a token
+ * and a hedge costs one, so over time at most {@code budgetPercent}% of calls are hedged even when
+ * the whole sidecar is slow (and hedging would only add load). The bucket holds at most
+ * {@value #MAX_TOKENS} tokens, which bounds the burst after a quiet period.
+ *
+ * <h2>Errors</h2>
+ * A primary that fails before the backup is sent fails the call, as without hedging. Once the
+ * backup is in flight, either call failing just leaves the other to answer; the call fails only
+ * when both have, with the primary's error (the backup's suppressed).
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * <ul>
+ *   <li><code>triage.hedge.calls</code> (counter) — tag {@code outcome}: {@code sent} (backup
+ *       issued), {@code won} (backup answered first), {@code over_budget} (hedge due but not
+ *       paid for).</li>
+ *   <li><code>triage.hedge.delay</code> (gauge, seconds) — current delay, {@code NaN} while
+ *       warming up.</li>
+ * </ul>
+ *
+ * <h2>Thread-safety</h2>
+ * Lock-free. Concurrent samples may overwrite each other in the ring, which only thins it.
+ *
+ * @since 1.1
+ */
+public final class RequestHedger {
+
+    /**
+     * Hedging limits.
+     *
+     * @param percentile    latency percentile after which to hedge, in (0, 100)
+     * @param minDelay      lower bound of the hedge delay
+     * @param budgetPercent share of calls that may be hedged, in (0, 100]
+     * @param window        recent latencies kept
+     * @param minSamples    latencies needed before hedging starts
+     * @throws IllegalArgumentException if a limit is out of range
+     */
+    public record Settings(double percentile, Duration minDelay, double budgetPercent, int window, int minSamples) {
+        public Settings {
+            if (!(percentile > 0 && percentile < 100)) {
+                throw new IllegalArgumentException("triage.hedge.percentile must be in (0, 100)");
+            }
+            if (minDelay.isNegative()) throw new IllegalArgumentException("triage.hedge.min-delay must be >= 0");
+            if (!(budgetPercent > 0 && budgetPercent <= 100)) {
+                throw new IllegalArgumentException("triage.hedge.budget-percent must be in (0, 100]");
+            }
+            if (window < 1 || minSamples < 1 || minSamples > window) {
+                throw new IllegalArgumentException("triage.hedge.min-samples must be in [1, triage.hedge.window]");
+            }
+        }
+    }
+
+    /** Which call produced a value. */
+    private record Answer<T>(T value, boolean hedge) {}
+
+    /** Samples between percentile recomputations. */
+    static final int RECOMPUTE = 64;
+
+    /** Bucket capacity, in tokens. */
+    static final int MAX_TOKENS = 10;
+
+    private static final long TOKEN = 1000;
+
+    private final Settings settings;
+    private final long minDelayNanos;
+    private final long deposit;
+
+    private final long[] latencies;
+    private final AtomicLong samples = new AtomicLong();
+    /** Current hedge delay, {@code -1} while warming up. */
+    private volatile long delayNanos = -1;
+    /** Budget in thousandths of a token. */
+    private final AtomicLong tokens = new AtomicLong();
+
+    private final Counter sent;
+    private final Counter won;
+    private final Counter overBudget;
+
+    /**
+     * @param settings limits
+     * @param registry registry for the hedging metrics
+     */
+    public RequestHedger(Settings settings, MeterRegistry registry) {
+        this.settings = settings;
+        this.minDelayNanos = settings.minDelay().toNanos();
+        this.deposit = Math.max(1, Math.round(settings.budgetPercent() * TOKEN / 100));
+        this.latencies = new long[settings.window()];
+        this.sent = calls(registry, "sent");
+        this.won = calls(registry, "won");
+        this.overBudget = calls(registry, "over_budget");
+        Gauge.builder("triage.hedge.delay", this, h -> h.delayNanos < 0 ? Double.NaN : h.delayNanos / 1e9)
+                .description("Time after which a sidecar call is hedged").baseUnit("seconds")
+                .register(registry);
+    }
+
+    /**
+     * Run {@code primary}, and {@code backup} as well if the primary is slow and the budget allows.
+     *
+     * @param primary the call
+     * @param backup  the same call against the hedge endpoint; only subscribed when hedging
+     * @param <T>     element type
+     * @return the first answer, or the primary's error once no call can still answer
+     */
+    public <T> Mono<T> hedge(Mono<T> primary, Mono<T> backup) {
+        return Mono.defer(() -> {
+            tokens.getAndUpdate(t -> Math.min(MAX_TOKENS * TOKEN, t + deposit));
+            long delay = delayNanos;
+            long start = System.nanoTime();
+            Mono<T> timed = primary.doOnSuccess(v -> record(System.nanoTime() - start));
+            if (delay < 0) return timed;
+
+            // calls that may still answer; the one that takes it to 0 reports the failure
+            AtomicInteger pending = new AtomicInteger(1);
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            Mono<Answer<T>> second = Mono.delay(Duration.ofNanos(delay)).flatMap(tick -> {
+                if (!withdraw()) {
+                    overBudget.increment();
+                    return Mono.never();
+                }
+                if (pending.getAndIncrement() == 0) return Mono.never(); // primary already failed the call
+                sent.increment();
+                return backup.map(v -> new Answer<>(v, true)).onErrorResume(e -> {
+                    if (pending.decrementAndGet() > 0) return Mono.never();
+                    Throwable p = primaryError.get();
+                    p.addSuppressed(e);
+                    return Mono.error(p);
+                });
+            });
+            Mono<Answer<T>> first = timed.doOnCancel(() -> record(System.nanoTime() - start))
+                    .map(v -> new Answer<>(v, false))
+                    .onErrorResume(e -> {
+                        primaryError.set(e);
+                        return pending.decrementAndGet() > 0 ? Mono.never() : Mono.error(e);
+                    });
+            return Mono.firstWithSignal(first, second)
+                    .map(a -> {
+                        if (a.hedge()) won.increment();
+                        return a.value();
+                    });
+        });
+    }
+
+    /** @return the current hedge delay, or {@code null} while warming up */
+    public Duration delay() {
+        long d = delayNanos;
+        return d < 0 ? null : Duration.ofNanos(d);
+    }
+
+    private boolean withdraw() {
+        long t;
+        do {
+            t = tokens.get();
+            if (t < TOKEN) return false;
+        } while (!tokens.compareAndSet(t, t - TOKEN));
+        return true;
+    }
+
+    private void record(long nanos) {
+        long n = samples.getAndIncrement();
+        latencies[(int) (n % latencies.length)] = nanos;
+        long count = n + 1;
+        if (count >= settings.minSamples() && (count == settings.minSamples() || count % RECOMPUTE == 0)) {
+            recompute((int) Math.min(count, latencies.length));
+        }
+    }
+
+    private void recompute(int count) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(settings.percentile() / 100 * count) - 1;
+        delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, rank)]);
+    }
+
+    private static Counter calls(MeterRegistry registry, String outcome) {
+        return Counter.builder("triage.hedge.calls")
+                .description("Sidecar hedging decisions")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent single-document sidecar predictions into batch calls.
+ * <p>
+ * Each {@link #predict} call parks its caller's {@link MonoSink} in a shared stream that is cut
+ * into batches of at most {@code maxItems} documents, or whatever arrived within
+ * {@code maxWait} of the first one. A batch is sent with one call to the transport (the
+ * sidecar's {@code /predict_batch}); result {@code i} completes caller {@code i}.
+ *
+ * <h2>Failure semantics</h2>
+ * <ul>
+ *   <li>A failed batch call fails every caller in the batch with the same error, so each caller
+ *       applies its own fallback exactly as with a single {@code /predict} call.</li>
+ *   <li>A response whose length differs from the batch is treated as a failed call
+ *       ({@link IllegalStateException}).</li>
+ *   <li>A caller that cancels is still sent (the batch is already on the wire); its result is
+ *       dropped.</li>
+ *   <li>At most {@code maxQueued} documents wait for a batch; beyond that a call fails at once
+ *       with {@link RejectedExecutionException}.</li>
+ *   <li>Batches close on demand: while {@code maxInFlight} batch calls are outstanding, documents
+ *       keep queueing instead of overflowing the batching stage. If the stream still fails, the
+ *       batcher closes and every caller not yet answered gets the error.</li>
+ * </ul>
+ *
+ * <h2>Thread-safety</h2>
+ * {@link #predict} may be called from any thread; the intake sink serializes emissions.
+ *
+ * @since 1.1
+ */
+@Slf4j
+public final class SidecarBatcher implements AutoCloseable {
+
+    /** One waiting caller. */
+    private record Pending(PdfFeatures features, MonoSink<RouteDecision> caller) {}
+
+    private final Function<List<PdfFeatures>, Mono<List<RouteDecision>>> transport;
+    private final int maxQueued;
+
+    /** Documents accepted but not yet handed to the transport. */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** Callers not yet answered, queued or in flight; failed together if the stream dies. */
+    private final Set<Pending> outstanding = ConcurrentHashMap.newKeySet();
+
+    private volatile FluxSink<Pending> intake;
+    private volatile boolean closed;
+
+    /**
+     * @param transport   sends one batch and emits one decision per document, in order
+     * @param maxItems    largest batch
+     * @param maxWait     longest a document waits for companions
+     * @param maxInFlight concurrent batch calls
+     * @param maxQueued   documents allowed to wait for a batch
+     * @throws IllegalArgumentException if a limit is not positive
+     */
+    public SidecarBatcher(Function<List<PdfFeatures>, Mono<List<RouteDecision>>> transport,
+                          int maxItems, Duration maxWait, int maxInFlight, int maxQueued) {
+        if (maxItems < 1) throw new IllegalArgumentException("triage.batch.max-items must be >= 1");
+        if (maxWait.isNegative() || maxWait.isZero()) throw new IllegalArgumentException("triage.batch.max-wait must be > 0");
+        if (maxInFlight < 1) throw new IllegalArgumentException("triage.batch.max-in-flight must be >= 1");
+        if (maxQueued < 1) throw new IllegalArgumentException("triage.batch.max-queued must be >= 1");
+        this.transport = transport;
+        this.maxQueued = maxQueued;
+        // fair mode: a batch that closes on the timer with no downstream demand is held, not an error
+        Flux.<Pending>create(sink -> this.intake = sink)
+                .bufferTimeout(maxItems, maxWait, true)
+                .flatMap(this::send, maxInFlight)
+                .subscribe(null, this::failAll);
+    }
+
+    /**
+     * Queue one document for the next batch.
+     *
+     * @param features document to score
+     * @return a {@link Mono} emitting this document's decision, or the batch call's error
+     */
+    public Mono<RouteDecision> predict(PdfFeatures features) {
+        return Mono.create(caller -> {
+            FluxSink<Pending> sink = intake;
+            if (sink == null || closed) {
+                caller.error(new IllegalStateException("Sidecar batcher is closed"));
+                return;
+            }
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                caller.error(new RejectedExecutionException("Sidecar batch queue is full (" + maxQueued + ")"));
+                return;
+            }
+            Pending pending = new Pending(features, caller);
+            outstanding.add(pending);
+            sink.next(pending);
+            // the stream may have died between the check above and next(); failAll may have missed us
+            if (closed && outstanding.remove(pending)) {
+                caller.error(new IllegalStateException("Sidecar batcher is closed"));
+            }
+        });
+    }
+
+    /** The batching stream failed: stop accepting documents and answer everyone still waiting. */
+    private void failAll(Throwable err) {
+        closed = true;
+        log.warn("Sidecar batcher stopped: {}", err.toString());
+        for (Pending p : outstanding) {
+            if (outstanding.remove(p)) p.caller().error(err);
+        }
+    }
+
+    private Mono<Void> send(List<Pending> batch) {
+        queued.addAndGet(-batch.size());
+        List<PdfFeatures> items = new ArrayList<>(batch.size());
+        for (Pending p : batch) items.add(p.features());
+        return transport.apply(items)
+                .doOnNext(results -> {
+                    if (results.size() != batch.size()) {
+                        throw new IllegalStateException("Sidecar returned " + results.size()
+                                + " results for " + batch.size() + " documents");
+                    }
+                    for (int i = 0; i < batch.size(); i++) batch.get(i).caller().success(results.get(i));
+                })
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Sidecar returned no batch body")))
+                .onErrorResume(err -> {
+                    log.debug("Sidecar batch of {} failed: {}", batch.size(), err.toString());
+                    for (Pending p : batch) p.caller().error(err);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    for (Pending p : batch) {
+                        // cancelled only when the stream itself is torn down mid-call
+                        if (outstanding.remove(p) && signal == SignalType.CANCEL) {
+                            p.caller().error(new IllegalStateException("Sidecar batcher stopped"));
+                        }
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Stop accepting documents. The partial batch is flushed and calls already in flight are
+     * left to complete.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        FluxSink<Pending> sink = intake;
+        if (sink != null) sink.complete();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.resolver.AddressResolverGroup;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.transport.TransportConfig;
+
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Transport profile for the app → sidecar hop: a fixed Reactor Netty connection pool plus the
+ * {@link HttpClient} built on it.
+ *
+ * <h2>Why a dedicated pool</h2>
+ * The sidecar listens on loopback in the same pod, so the hop itself costs microseconds and
+ * client overhead dominates: connection setup, pool contention and unbounded queues. The pool
+ * here is sized explicitly, bounds how many requests may queue for a connection (and for how
+ * long), evicts idle connections in the background and recycles long-lived ones.
+ *
+ * <h2>Protocols</h2>
+ * <ul>
+ *   <li>{@code http11} (default) — pooled keep-alive HTTP/1.1, one request per connection at a
+ *       time.</li>
+ *   <li>{@code h2c} — cleartext HTTP/2 with prior knowledge, multiplexing concurrent requests
+ *       over few connections. The sidecar must speak it (e.g. hypercorn); plain uvicorn only
+ *       serves HTTP/1.1. The upgrade path is not used because it cannot carry a request body
+ *       of unknown size.</li>
+ * </ul>
+ *
+ * <h2>Transports</h2>
+ * By default requests go over TCP to the host and port of {@code triage.base-url}. With a socket
+ * path the client connects to a Unix domain socket instead (uvicorn {@code --uds}), skipping the
+ * TCP stack on the in-pod hop; the base URL then only supplies the path and {@code Host} header.
+ * Domain sockets need Netty's native epoll transport, i.e. Linux with glibc on x86_64 or aarch64
+ * (the two native libraries the build ships). Where epoll does not load, the client logs a warning
+ * and uses TCP to {@code triage.base-url} rather than failing startup; predictions then reach the
+ * sidecar only if it also listens there, and otherwise take the usual fallback.
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * Gauges tagged {@code pool} and {@code remote}: <code>triage.http.pool.active</code>,
+ * <code>triage.http.pool.idle</code>, <code>triage.http.pool.pending</code>,
+ * <code>triage.http.pool.allocated</code> and <code>triage.http.pool.max</code>.
+ *
+ * @since 1.1
+ */
+@Slf4j
+public final class SidecarHttp {
+
+    private SidecarHttp() {}
+
+    /**
+     * Pool limits.
+     *
+     * @param maxConnections        connections per remote address
+     * @param pendingAcquireMax     requests allowed to wait for a connection; more fail fast
+     * @param pendingAcquireTimeout longest wait for a connection
+     * @param maxIdleTime           idle connections older than this are closed
+     * @param maxLifeTime           connections older than this are closed once released
+     * @param evictionInterval      background eviction period; {@link Duration#ZERO} disables it
+     */
+    public record PoolSettings(int maxConnections, int pendingAcquireMax, Duration pendingAcquireTimeout,
+                               Duration maxIdleTime, Duration maxLifeTime, Duration evictionInterval) {}
+
+    /**
+     * Build a fixed connection pool whose occupancy is exported to {@code registry}.
+     *
+     * @param name     pool name (also the {@code pool} tag)
+     * @param settings limits
+     * @param registry registry for the pool gauges, or {@code null} for none
+     * @return the pool; dispose it on shutdown
+     */
+    public static ConnectionProvider pool(String name, PoolSettings settings, MeterRegistry registry) {
+        ConnectionProvider.Builder b = ConnectionProvider.builder(name)
+                .maxConnections(settings.maxConnections())
+                .pendingAcquireMaxCount(settings.pendingAcquireMax())
+                .pendingAcquireTimeout(settings.pendingAcquireTimeout())
+                .maxIdleTime(settings.maxIdleTime())
+                .maxLifeTime(settings.maxLifeTime())
+                .lifo();
+        if (!settings.evictionInterval().isZero()) b.evictInBackground(settings.evictionInterval());
+        if (registry != null) b.metrics(true, () -> new PoolGauges(registry));
+        return b.build();
+    }
+
+    /**
+     * Build the HTTP client for the sidecar on {@code pool}.
+     *
+     * @param pool            connection pool, see {@link #pool}
+     * @param protocol        {@code http11} or {@code h2c}
+     * @param socketPath      Unix domain socket of the sidecar, or {@code null}/blank for TCP
+     * @param connectTimeout  connect timeout
+     * @param responseTimeout time allowed between sending the request and each response read
+     * @return the client
+     * @throws IllegalArgumentException for an unknown protocol
+     */
+    public static HttpClient client(ConnectionProvider pool, String protocol, String socketPath,
+                                    Duration connectTimeout, Duration responseTimeout) {
+        HttpProtocol[] protocols = switch (protocol.toLowerCase(Locale.ROOT)) {
+            case "http11" -> new HttpProtocol[]{HttpProtocol.HTTP11};
+            case "h2c" -> new HttpProtocol[]{HttpProtocol.H2C};
+            default -> throw new IllegalArgumentException("Unknown triage.http.protocol: " + protocol);
+        };
+        ConnectionProvider provider = pool;
+        if (socketPath != null && !socketPath.isBlank()) {
+            if (Epoll.isAvailable()) {
+                provider = new DomainSocketProvider(pool, new DomainSocketAddress(socketPath));
+            } else {
+                log.warn("triage.socket-path={} needs the native epoll transport, which is unavailable here ({});"
+                                + " using TCP to triage.base-url instead",
+                        socketPath, String.valueOf(Epoll.unavailabilityCause()));
+            }
+        }
+        HttpClient client = HttpClient.create(provider)
+                .protocol(protocols)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Math.toIntExact(connectTimeout.toMillis()))
+                .responseTimeout(responseTimeout)
+                .keepAlive(true);
+        return provider == pool ? client.option(ChannelOption.TCP_NODELAY, true) : client;
+    }
+
+    /**
+     * Connects every request to one Unix domain socket, whatever host the request URI names.
+     * <p>
+     * {@link HttpClient#remoteAddress} alone is not enough: Reactor Netty derives the address from
+     * the URI whenever it is absolute, and {@link org.springframework.web.reactive.function.client.WebClient}
+     * always sends absolute URIs. Swapping the address at acquire time keeps the pool (and its
+     * gauges) shared and lets Netty pick the domain socket channel.
+     */
+    private record DomainSocketProvider(ConnectionProvider delegate, DomainSocketAddress address)
+            implements ConnectionProvider {
+
+        @Override
+        public Mono<? extends Connection> acquire(TransportConfig config, ConnectionObserver observer,
+                                                  Supplier<? extends SocketAddress> remoteAddress,
+                                                  AddressResolverGroup<?> resolverGroup) {
+            return delegate.acquire(config, observer, () -> address, resolverGroup);
+        }
+
+        @Override
+        public void disposeWhen(SocketAddress remoteAddress) {
+            delegate.disposeWhen(address);
+        }
+
+        @Override
+        public void dispose() {
+            delegate.dispose();
+        }
+
+        @Override
+        public Mono<Void> disposeLater() {
+            return delegate.disposeLater();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return delegate.isDisposed();
+        }
+
+        @Override
+        public int maxConnections() {
+            return delegate.maxConnections();
+        }
+
+        @Override
+        public Map<SocketAddress, Integer> maxConnectionsPerHost() {
+            return delegate.maxConnectionsPerHost();
+        }
+
+        @Override
+        public String name() {
+            return delegate.name();
+        }
+    }
+
+    /** Registers one gauge set per (pool, remote address) and removes it when the pool drops it. */
+    private static final class PoolGauges implements ConnectionProvider.MeterRegistrar {
+
+        private final MeterRegistry registry;
+        private final Map<String, List<Meter>> meters = new ConcurrentHashMap<>();
+
+        PoolGauges(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+            Tags tags = Tags.of("pool", poolName, "remote", String.valueOf(remoteAddress));
+            meters.put(id, List.of(
+                    gauge("triage.http.pool.active", "Connections handed out", tags, metrics, ConnectionPoolMetrics::acquiredSize),
+                    gauge("triage.http.pool.idle", "Idle pooled connections", tags, metrics, ConnectionPoolMetrics::idleSize),
+                    gauge("triage.http.pool.pending", "Requests waiting for a connection", tags, metrics, ConnectionPoolMetrics::pendingAcquireSize),
+                    gauge("triage.http.pool.allocated", "Open connections", tags, metrics, ConnectionPoolMetrics::allocatedSize),
+                    gauge("triage.http.pool.max", "Connection limit", tags, metrics, ConnectionPoolMetrics::maxAllocatedSize)));
+        }
+
+        @Override
+        public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+            List<Meter> removed = meters.remove(id);
+            if (removed != null) removed.forEach(registry::remove);
+        }
+
+        private Meter gauge(String name, String description, Tags tags, ConnectionPoolMetrics metrics,
+                            ToDoubleFunction<ConnectionPoolMetrics> value) {
+            // strong: the pool keeps no reference to this metrics view; deRegisterMetrics removes it
+            return Gauge.builder(name, metrics, value).description(description).tags(tags)
+                    .strongReference(true).register(registry);
+        }
+    }
+}
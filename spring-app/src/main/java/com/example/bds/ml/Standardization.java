@@ -0,0 +1,63 @@
+package com.example.bds.ml;
+
+import java.util.Arrays;
+
+/**
+ * Per-feature centering and scaling, {@code z = (x - mean) / scale}, estimated from the
+ * labelled rows of a column-major dataset.
+ * <p>
+ * Scales are population standard deviations; constant features get scale {@code 1} so they map
+ * to {@code 0} instead of dividing by zero.
+ *
+ * @param means  per-feature means
+ * @param scales per-feature scales (never 0)
+ * @since 1.1
+ */
+record Standardization(double[] means, double[] scales) {
+
+    /** Below this standard deviation a feature is treated as constant. */
+    private static final double MIN_SCALE = 1e-12;
+
+    /**
+     * @param features number of features
+     * @return the identity transform (means 0, scales 1)
+     */
+    static Standardization identity(int features) {
+        double[] ones = new double[features];
+        Arrays.fill(ones, 1.0);
+        return new Standardization(new double[features], ones);
+    }
+
+    /**
+     * Estimate means and scales over rows with {@code y >= 0}, in two passes for stability.
+     *
+     * @param x    column-major features, {@code x[j][i]}
+     * @param y    targets; negative means unlabelled
+     * @param rows rows to read
+     * @return the standardization; the identity if no row is labelled
+     */
+    static Standardization of(double[][] x, double[] y, int rows) {
+        int features = x.length;
+        Standardization s = identity(features);
+        long n = 0;
+        for (int i = 0; i < rows; i++) if (y[i] >= 0) n++;
+        if (n == 0) return s;
+
+        for (int j = 0; j < features; j++) {
+            double[] col = x[j];
+            double sum = 0.0;
+            for (int i = 0; i < rows; i++) if (y[i] >= 0) sum += col[i];
+            double mean = sum / n;
+            double ss = 0.0;
+            for (int i = 0; i < rows; i++) {
+                if (y[i] < 0) continue;
+                double dv = col[i] - mean;
+                ss += dv * dv;
+            }
+            double sd = Math.sqrt(ss / n);
+            s.means[j] = mean;
+            s.scales[j] = sd > MIN_SCALE ? sd : 1.0;
+        }
+        return s;
+    }
+}
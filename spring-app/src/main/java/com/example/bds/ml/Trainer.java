@@ -0,0 +1,32 @@
+package com.example.bds.ml;
+
+/**
+ * Batch trainer for the local linear model.
+ * <p>
+ * Implementations read the column-major arrays produced by {@link TrainingStore#read()} and
+ * must not allocate per row. Rows with a negative target are unlabelled and skipped.
+ *
+ * @since 1.1
+ */
+public interface Trainer {
+
+    /**
+     * Fit a model.
+     *
+     * @param x    column-major features, {@code x[j][i]} is feature {@code j} of row {@code i}
+     * @param y    targets (MB); negative means unlabelled
+     * @param rows number of rows to read from the arrays
+     * @return the fitted model; a zero model if no row is labelled
+     */
+    LinearModel fit(double[][] x, double[] y, int rows);
+
+    /**
+     * Convenience overload for a store snapshot.
+     *
+     * @param c training columns
+     * @return the fitted model
+     */
+    default LinearModel fit(TrainingStore.Columns c) {
+        return fit(c.features(), c.label(), c.rows());
+    }
+}
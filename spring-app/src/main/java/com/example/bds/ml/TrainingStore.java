@@ -0,0 +1,409 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, fixed-width columnar store for labelled training rows.
+ *
+ * <h2>Layout</h2>
+ * One file per column under the store directory, all little-endian:
+ * <ul>
+ *   <li>{@code <feature>.f64} for each of the 8 numeric {@link #FEATURE_COLUMNS} and
+ *       {@code label_mb.f64} — one 8-byte double per row;</li>
+ *   <li>{@code producer.i32} — one 4-byte dictionary id per row;</li>
+ *   <li>{@code producer.dict} — the dictionary, as {@code [int length][UTF-8 bytes]} records in id
+ *       order, appended whenever a new producer is first seen.</li>
+ * </ul>
+ * Row {@code i} lives at offset {@code i * width} in every column file, so the row count is
+ * implied by the file lengths. On open, the shortest column wins and longer ones are truncated,
+ * which discards a row torn by a crash mid-append. Appends write at those offsets rather than
+ * at the channel position, so a row that fails partway in a running store is overwritten by the
+ * next one instead of shifting it.
+ *
+ * <h2>Access</h2>
+ * <ul>
+ *   <li>{@link #append(PdfFeatures, double)} writes through long-lived {@link FileChannel}s with a
+ *       single reusable direct buffer; nothing is formatted or allocated per row.</li>
+ *   <li>{@link #read()} memory-maps each column and bulk-copies it into a primitive array, so
+ *       training over millions of rows costs one array per column and no per-row objects.</li>
+ *   <li>{@link #importCsv(Path)} / {@link #exportCsv(Path)} convert from/to the historical
+ *       {@code training.csv} schema, which {@code training/memory_spike_train.py} reads.</li>
+ * </ul>
+ * Non-finite values are stored as {@code 0.0}, as the CSV writer always did.
+ *
+ * <h2>Thread-safety</h2>
+ * All mutating and reading methods are synchronized; appends are visible to the next
+ * {@link #read()}.
+ *
+ * @since 1.1
+ */
+public final class TrainingStore implements AutoCloseable {
+
+    /** Numeric feature columns, in model order. */
+    public static final List<String> FEATURE_COLUMNS = List.of(
+            "size_mb", "pages", "image_page_ratio", "dpi_estimate",
+            "avg_image_size_kb", "fonts_embedded_pct", "xref_error_count", "ocr_required");
+
+    /** CSV header used by import/export. */
+    static final String CSV_HEADER = String.join(",", FEATURE_COLUMNS) + ",producer,label_mb";
+
+    private static final int NUM_FEATURES = 8;
+    private static final int LABEL = NUM_FEATURES; // index of the label in doubleColumns
+
+    /** 8 feature channels followed by the label channel. */
+    private final FileChannel[] doubleColumns = new FileChannel[NUM_FEATURES + 1];
+    private final FileChannel producerColumn;
+    private final FileChannel dictionaryFile;
+
+    /** Producer → id, mirrored by {@link #dictionary}. */
+    private final Map<String, Integer> producerIds = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+
+    /** Scratch buffer for appends (one value at a time). */
+    private final ByteBuffer scratch = ByteBuffer.allocateDirect(Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long rows;
+
+    private TrainingStore(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        try {
+            for (int j = 0; j < NUM_FEATURES; j++) doubleColumns[j] = openColumn(dir.resolve(FEATURE_COLUMNS.get(j) + ".f64"));
+            doubleColumns[LABEL] = openColumn(dir.resolve("label_mb.f64"));
+            producerColumn = openColumn(dir.resolve("producer.i32"));
+            dictionaryFile = openColumn(dir.resolve("producer.dict"));
+            loadDictionary();
+            recoverRowCount();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open (or create) a store in {@code dir}.
+     *
+     * @param dir store directory; created if missing
+     * @return the open store; close it to release the file channels
+     * @throws IOException if the column files cannot be opened or the dictionary is corrupt
+     */
+    public static TrainingStore open(Path dir) throws IOException {
+        return new TrainingStore(dir);
+    }
+
+    /**
+     * @return number of rows stored, labelled or not
+     */
+    public synchronized long size() {
+        return rows;
+    }
+
+    /**
+     * Append one row.
+     *
+     * @param f       features; the 8 numeric fields and the producer are stored
+     * @param labelMb measured peak memory (MB); negative means "no usable label"
+     * @throws IOException if a column cannot be written
+     */
+    public synchronized void append(PdfFeatures f, double labelMb) throws IOException {
+        int producer = producerId(f.producer() == null ? "" : f.producer());
+        // every column is written at the row's own offset and the count only moves once all of
+        // them are in, so a failure partway leaves a torn tail the next append overwrites
+        long at = rows * Double.BYTES;
+        writeDouble(doubleColumns[0], at, f.size_mb());
+        writeDouble(doubleColumns[1], at, f.pages());
+        writeDouble(doubleColumns[2], at, f.image_page_ratio());
+        writeDouble(doubleColumns[3], at, f.dpi_estimate());
+        writeDouble(doubleColumns[4], at, f.avg_image_size_kb());
+        writeDouble(doubleColumns[5], at, f.fonts_embedded_pct());
+        writeDouble(doubleColumns[6], at, f.xref_error_count());
+        writeDouble(doubleColumns[7], at, f.ocr_required());
+        writeDouble(doubleColumns[LABEL], at, labelMb);
+        scratch.clear().putInt(producer).flip();
+        writeFully(producerColumn, rows * Integer.BYTES, scratch);
+        rows++;
+    }
+
+    /**
+     * Snapshot of all rows as primitive column arrays.
+     *
+     * @param rows      number of rows
+     * @param features  {@code features[j][i]} is feature {@code j} (see {@link #FEATURE_COLUMNS}) of row {@code i}
+     * @param label     label (MB) per row
+     * @param producer  dictionary id per row
+     * @param producers dictionary, indexed by id
+     */
+    public record Columns(int rows, double[][] features, double[] label, int[] producer, List<String> producers) {}
+
+    /**
+     * Load every column into primitive arrays via read-only memory maps.
+     *
+     * @return the columns
+     * @throws IOException if a column cannot be mapped
+     */
+    public synchronized Columns read() throws IOException {
+        return read(0);
+    }
+
+    /**
+     * Load rows {@code [fromRow, size())} into primitive arrays via read-only memory maps, e.g. to
+     * catch up on rows appended since an earlier {@link #read()}.
+     *
+     * @param fromRow first row to load, {@code 0 <= fromRow <= size()}
+     * @return the columns; row {@code 0} of the result is row {@code fromRow} of the store
+     * @throws IOException if a column cannot be mapped
+     */
+    public synchronized Columns read(long fromRow) throws IOException {
+        if (fromRow < 0 || fromRow > rows) throw new IllegalArgumentException("fromRow out of range: " + fromRow);
+        long count = rows - fromRow;
+        if (count > Integer.MAX_VALUE / Double.BYTES) throw new IOException("Training store too large to load: " + count + " rows");
+        int n = (int) count;
+        double[][] features = new double[NUM_FEATURES][];
+        for (int j = 0; j < NUM_FEATURES; j++) features[j] = readDoubles(doubleColumns[j], fromRow, n);
+        double[] label = readDoubles(doubleColumns[LABEL], fromRow, n);
+        int[] producer = new int[n];
+        if (n > 0) mapped(producerColumn, fromRow * Integer.BYTES, (long) n * Integer.BYTES).asIntBuffer().get(producer);
+        return new Columns(n, features, label, producer, List.copyOf(dictionary));
+    }
+
+    /**
+     * Count rows with a usable label ({@code label_mb >= 0}) without copying the column.
+     *
+     * @return labelled row count
+     * @throws IOException if the label column cannot be mapped
+     */
+    public synchronized int labelledCount() throws IOException {
+        if (rows == 0) return 0;
+        int count = 0;
+        long done = 0;
+        while (done < rows) {
+            // map in bounded windows so huge stores need no single 2 GiB mapping
+            long n = Math.min(rows - done, 1L << 26);
+            DoubleBuffer labels = doubleColumns[LABEL]
+                    .map(FileChannel.MapMode.READ_ONLY, done * Double.BYTES, n * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            for (int i = 0; i < n; i++) if (labels.get(i) >= 0.0) count++;
+            done += n;
+        }
+        return count;
+    }
+
+    /**
+     * Append every row of a {@code training.csv}-style file (header + 10 columns).
+     * Rows with fewer than 10 columns are skipped; unparsable numbers become {@code 0.0}. The
+     * producer may be double-quoted and contain commas or doubled quotes.
+     *
+     * @param csv CSV file to import
+     * @return number of rows imported
+     * @throws IOException if the CSV cannot be read or a row cannot be appended
+     */
+    public synchronized long importCsv(Path csv) throws IOException {
+        long imported = 0;
+        try (Stream<String> lines = Files.lines(csv, StandardCharsets.UTF_8)) {
+            for (String line : (Iterable<String>) lines.skip(1)::iterator) {
+                List<String> row = splitCsv(line);
+                if (row.size() < 10) continue;
+                String[] cols = row.toArray(String[]::new);
+                PdfFeatures f = new PdfFeatures(
+                        parse(cols[0]), (int) parse(cols[1]), parse(cols[2]), (int) parse(cols[3]),
+                        parse(cols[4]), parse(cols[5]), (int) parse(cols[6]), (int) parse(cols[7]),
+                        cols[8]);
+                append(f, parse(cols[9]));
+                imported++;
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Write all rows to {@code csv} in the {@code training.csv} schema, replacing the file
+     * atomically (written to a sibling temp file, then moved).
+     *
+     * @param csv destination
+     * @throws IOException if the CSV cannot be written
+     */
+    public synchronized void exportCsv(Path csv) throws IOException {
+        Columns c = read();
+        Path parent = csv.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, csv.getFileName().toString(), ".tmp");
+        try {
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(CSV_HEADER);
+                w.newLine();
+                StringBuilder sb = new StringBuilder(128);
+                for (int i = 0; i < c.rows(); i++) {
+                    sb.setLength(0);
+                    double[][] x = c.features();
+                    sb.append(num(x[0][i])).append(',').append((int) x[1][i]).append(',')
+                            .append(num(x[2][i])).append(',').append((int) x[3][i]).append(',')
+                            .append(num(x[4][i])).append(',').append(num(x[5][i])).append(',')
+                            .append((int) x[6][i]).append(',').append((int) x[7][i]).append(',')
+                            .append(quote(c.producers().get(c.producer()[i]))).append(',')
+                            .append(num(c.label()[i]));
+                    w.write(sb.toString());
+                    w.newLine();
+                }
+            }
+            Files.move(tmp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Close all column channels. Idempotent.
+     */
+    @Override
+    public synchronized void close() {
+        for (FileChannel ch : doubleColumns) closeQuietly(ch);
+        closeQuietly(producerColumn);
+        closeQuietly(dictionaryFile);
+    }
+
+    /* ===================== internals ===================== */
+
+    private static FileChannel openColumn(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private int producerId(String producer) throws IOException {
+        Integer id = producerIds.get(producer);
+        if (id != null) return id;
+
+        byte[] utf8 = producer.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer rec = ByteBuffer.allocate(Integer.BYTES + utf8.length).order(ByteOrder.LITTLE_ENDIAN);
+        rec.putInt(utf8.length).put(utf8).flip();
+        dictionaryFile.position(dictionaryFile.size());
+        writeFully(dictionaryFile, rec);
+
+        int newId = dictionary.size();
+        dictionary.add(producer);
+        producerIds.put(producer, newId);
+        return newId;
+    }
+
+    private void loadDictionary() throws IOException {
+        long size = dictionaryFile.size();
+        if (size == 0) return;
+        ByteBuffer buf = mapped(dictionaryFile, 0, size);
+        while (buf.remaining() >= Integer.BYTES) {
+            int len = buf.getInt();
+            if (len < 0 || len > buf.remaining()) break; // torn trailing record
+            byte[] utf8 = new byte[len];
+            buf.get(utf8);
+            String producer = new String(utf8, StandardCharsets.UTF_8);
+            producerIds.put(producer, dictionary.size());
+            dictionary.add(producer);
+        }
+        dictionaryFile.truncate(buf.position());
+    }
+
+    /** Row count = shortest column; longer columns and out-of-dictionary ids are cut back to it. */
+    private void recoverRowCount() throws IOException {
+        long n = producerColumn.size() / Integer.BYTES;
+        for (FileChannel ch : doubleColumns) n = Math.min(n, ch.size() / Double.BYTES);
+
+        // a row whose producer id was written before its dictionary entry is torn too
+        while (n > 0) {
+            ByteBuffer id = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            producerColumn.read(id, (n - 1) * Integer.BYTES);
+            int last = id.flip().getInt();
+            if (last >= 0 && last < dictionary.size()) break;
+            n--;
+        }
+
+        for (FileChannel ch : doubleColumns) ch.truncate(n * Double.BYTES);
+        producerColumn.truncate(n * Integer.BYTES);
+        rows = n;
+    }
+
+    private void writeDouble(FileChannel ch, long position, double v) throws IOException {
+        scratch.clear().putDouble(Double.isFinite(v) ? v : 0.0).flip();
+        writeFully(ch, position, scratch);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    private static void writeFully(FileChannel ch, long position, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) position += ch.write(buf, position);
+    }
+
+    private static double[] readDoubles(FileChannel ch, long fromRow, int n) throws IOException {
+        double[] out = new double[n];
+        if (n > 0) mapped(ch, fromRow * Double.BYTES, (long) n * Double.BYTES).asDoubleBuffer().get(out);
+        return out;
+    }
+
+    private static ByteBuffer mapped(FileChannel ch, long offset, long bytes) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, offset, bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        if (ch == null) return;
+        try {
+            ch.close();
+        } catch (IOException ignore) {
+            // nothing buffered in user space; the OS has every byte already
+        }
+    }
+
+    /** Format a double with 4 decimal places, as the historical CSV writer did. */
+    private static String num(double v) {
+        return String.format(Locale.ROOT, "%.4f", v);
+    }
+
+    /** CSV-quote a producer (double-quote quoting). */
+    private static String quote(String s) {
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /** Split one CSV line into unquoted fields (RFC 4180 quoting, no embedded newlines). */
+    private static List<String> splitCsv(String line) {
+        List<String> out = new ArrayList<>(10);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch != '"') field.append(ch);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') field.append(line.charAt(++i)); // "" → "
+                else quoted = false;
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        out.add(field.toString());
+        return out;
+    }
+
+    /** Parse a double; returns {@code 0.0} if blank or unparsable. */
+    private static double parse(String s) {
+        if (s == null || s.isBlank()) return 0.0;
+        try { return Double.parseDouble(s); } catch (NumberFormatException e) { return 0.0; }
+    }
+}
@@ -0,0 +1,428 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-process evaluator for the sidecar's gradient-boosted regression trees.
+ * <p>
+ * {@code training/memory_spike_train.py} exports the fitted scikit-learn
+ * {@code GradientBoostingRegressor} and its {@code producer} one-hot encoding to
+ * {@code tree_ensemble.json}. This class reads that file into flat primitive arrays (all trees
+ * concatenated, child links as absolute node indices) and scores a {@link PdfFeatures} without
+ * allocating: one walk from each root to a leaf, then a sum.
+ *
+ * <h2>File format ({@value #FORMAT})</h2>
+ * <pre>
+ * {
+ *   "format": "bds-gbt/1",
+ *   "inputs": ["producer=Adobe", ..., "size_mb", "pages", ...],  // model input columns, in order
+ *   "init": 612.4,                                              // baseline prediction
+ *   "learning_rate": 0.1,
+ *   "trees": [ { "feature": [...], "threshold": [...], "left": [...], "right": [...],
+ *                "value": [...] }, ... ]
+ * }
+ * </pre>
+ * Per tree, node {@code n} is a leaf when {@code left[n] < 0}; otherwise it tests
+ * {@code inputs[feature[n]] <= threshold[n]} and continues at {@code left[n]} (true) or
+ * {@code right[n]} (false). {@code value[n]} is the raw leaf value; the prediction is
+ * {@code init + learning_rate * sum(leaf values)}. An input named {@code producer=X} is 1 when
+ * the document's producer equals {@code X} and 0 otherwise, so an unknown producer encodes as
+ * all zeros (scikit-learn's {@code handle_unknown="ignore"}). Every other input must name one
+ * of the eight numeric {@link PdfFeatures} fields.
+ *
+ * <h2>Parity with scikit-learn</h2>
+ * scikit-learn trees compare {@code float32} inputs against {@code float64} thresholds, so each
+ * feature value is narrowed to {@code float} before the comparison; predictions match
+ * {@code pipeline.predict} up to summation order. The exporter checks this on the holdout set.
+ *
+ * <h2>Batch scoring</h2>
+ * {@link #encode} lays a batch out as a column-major {@code float} matrix (numeric columns, then
+ * one 0/1 column per producer) and {@link #predict(float[], int, double[])} scores it tree by
+ * tree. With {@code --add-modules jdk.incubator.vector} the rows are walked in SIMD lanes by
+ * {@code VectorTreeKernel}: at each tree level every lane gathers its node's feature value and
+ * threshold, compares, and selects the next node, so one instruction sequence advances as many
+ * documents as the CPU has {@code float} lanes. Without the module the scalar loop is used; the
+ * kernel is loaded reflectively, so this class never links against the incubator API.
+ *
+ * <h2>Missing values</h2>
+ * The ensemble was not trained with missing values, so {@link #predict} returns
+ * {@link Double#NaN} for a document with a NaN numeric feature (in batches too); callers fall back
+ * to the sidecar.
+ *
+ * <h2>Thread-safety</h2>
+ * Immutable after construction.
+ *
+ * @since 1.1
+ */
+@Slf4j
+public final class TreeEnsembleModel {
+
+    /** Format tag written by the exporter. */
+    public static final String FORMAT = "bds-gbt/1";
+
+    /** Numeric inputs, in {@link PdfFeatures} order; their index is their input code. */
+    private static final List<String> NUMERIC = List.of("size_mb", "pages", "image_page_ratio",
+            "dpi_estimate", "avg_image_size_kb", "fonts_embedded_pct", "xref_error_count", "ocr_required");
+
+    /** Codes at or above this are producer indicators. */
+    private static final int NUMERIC_INPUTS = 8;
+
+    /** Numeric columns that can hold NaN (the {@code double} fields of {@link PdfFeatures}). */
+    private static final int[] NAN_COLUMNS = {0, 2, 4, 5};
+
+    private static final String PRODUCER_PREFIX = "producer=";
+
+    /** {@code jdk.incubator.vector} is resolved in the boot layer ({@code --add-modules}). */
+    private static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /** File layout; see the class comment. */
+    record Spec(@JsonProperty("format") String format,
+                @JsonProperty("inputs") List<String> inputs,
+                @JsonProperty("init") double init,
+                @JsonProperty("learning_rate") double learningRate,
+                @JsonProperty("trees") List<TreeSpec> trees) {}
+
+    /** One tree as parallel node arrays, node indices local to the tree. */
+    record TreeSpec(@JsonProperty("feature") int[] feature,
+                    @JsonProperty("threshold") double[] threshold,
+                    @JsonProperty("left") int[] left,
+                    @JsonProperty("right") int[] right,
+                    @JsonProperty("value") double[] value) {}
+
+    /** Producer of each categorical input code; {@code null} for numeric codes. */
+    private final String[] producers;
+
+    private final double init;
+    /** First node of each tree. */
+    private final int[] roots;
+    /** Input code tested at each node: a numeric field index, or a producer code. */
+    private final int[] feature;
+    private final double[] threshold;
+    /** Absolute index of the left child, or {@code -1} for a leaf. */
+    private final int[] left;
+    private final int[] right;
+    /** Leaf value already scaled by the learning rate; 0 for split nodes. */
+    private final double[] value;
+
+    /** SIMD batch kernel, or {@code null} without the Vector API. */
+    private final Kernel vector;
+
+    private TreeEnsembleModel(Spec spec) {
+        if (!FORMAT.equals(spec.format())) {
+            throw new IllegalArgumentException("Unsupported tree model format: " + spec.format());
+        }
+        if (spec.inputs() == null || spec.trees() == null || spec.trees().isEmpty()) {
+            throw new IllegalArgumentException("Tree model needs inputs and at least one tree");
+        }
+        if (!Double.isFinite(spec.init()) || !Double.isFinite(spec.learningRate())) {
+            throw new IllegalArgumentException("Tree model init and learning_rate must be finite");
+        }
+
+        // input column -> code: numeric fields keep their PdfFeatures index, producers follow densely
+        int inputs = spec.inputs().size();
+        int[] codeOf = new int[inputs];
+        List<String> producers = new ArrayList<>();
+        for (int i = 0; i < inputs; i++) {
+            String name = spec.inputs().get(i);
+            int numeric = NUMERIC.indexOf(name);
+            if (numeric >= 0) {
+                codeOf[i] = numeric;
+            } else if (name != null && name.startsWith(PRODUCER_PREFIX)) {
+                codeOf[i] = NUMERIC_INPUTS + producers.size();
+                producers.add(name.substring(PRODUCER_PREFIX.length()));
+            } else {
+                throw new IllegalArgumentException("Unknown tree model input: " + name);
+            }
+        }
+        this.producers = new String[NUMERIC_INPUTS + producers.size()];
+        for (int p = 0; p < producers.size(); p++) this.producers[NUMERIC_INPUTS + p] = producers.get(p);
+
+        int total = 0;
+        for (TreeSpec t : spec.trees()) total += checkedSize(t);
+        this.init = spec.init();
+        this.roots = new int[spec.trees().size()];
+        this.feature = new int[total];
+        this.threshold = new double[total];
+        this.left = new int[total];
+        this.right = new int[total];
+        this.value = new double[total];
+
+        int base = 0;
+        for (int t = 0; t < roots.length; t++) {
+            TreeSpec tree = spec.trees().get(t);
+            int size = tree.left().length;
+            roots[t] = base;
+            for (int n = 0; n < size; n++) {
+                int at = base + n;
+                if (tree.left()[n] < 0) {
+                    if (!Double.isFinite(tree.value()[n])) {
+                        throw new IllegalArgumentException("Tree " + t + " leaf " + n + " is not finite");
+                    }
+                    left[at] = -1;
+                    right[at] = -1;
+                    value[at] = spec.learningRate() * tree.value()[n];
+                    continue;
+                }
+                // children after their parent (as scikit-learn lays them out) rules out cycles
+                int l = tree.left()[n];
+                int r = tree.right()[n];
+                int f = tree.feature()[n];
+                if (l <= n || r <= n || l >= size || r >= size || f < 0 || f >= inputs) {
+                    throw new IllegalArgumentException("Tree " + t + " node " + n + " is malformed");
+                }
+                feature[at] = codeOf[f];
+                threshold[at] = tree.threshold()[n];
+                left[at] = base + l;
+                right[at] = base + r;
+            }
+            base += size;
+        }
+        this.vector = VECTOR_API ? vectorKernel(this) : null;
+    }
+
+    /** Adds the ensemble's leaf values for every row of a column-major matrix into {@code out}. */
+    interface Kernel {
+        void score(float[] x, int rows, double[] out);
+    }
+
+    /**
+     * Instantiated reflectively so that this class links without the incubator module; only
+     * called when {@link #VECTOR_API} is set.
+     */
+    private static Kernel vectorKernel(TreeEnsembleModel model) {
+        try {
+            return (Kernel) Class.forName("com.example.bds.ml.VectorTreeKernel")
+                    .getDeclaredConstructor(TreeEnsembleModel.class)
+                    .newInstance(model);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector API present but unusable; tree batches use the scalar path: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static int checkedSize(TreeSpec t) {
+        int size = t.left() == null ? 0 : t.left().length;
+        if (size == 0 || t.right() == null || t.right().length != size || t.feature() == null
+                || t.feature().length != size || t.threshold() == null || t.threshold().length != size
+                || t.value() == null || t.value().length != size) {
+            throw new IllegalArgumentException("Tree node arrays must be non-empty and of equal length");
+        }
+        return size;
+    }
+
+    /**
+     * @param file exported {@code tree_ensemble.json}
+     * @return the model
+     * @throws IOException              if the file cannot be read or is not valid JSON
+     * @throws IllegalArgumentException if the content is not a well-formed {@value #FORMAT} model
+     */
+    public static TreeEnsembleModel read(Path file) throws IOException {
+        return parse(Files.readAllBytes(file));
+    }
+
+    /**
+     * @param json exported model
+     * @return the model
+     * @throws IOException              if the bytes are not valid JSON
+     * @throws IllegalArgumentException if the content is not a well-formed {@value #FORMAT} model
+     */
+    public static TreeEnsembleModel parse(byte[] json) throws IOException {
+        return new TreeEnsembleModel(MAPPER.readValue(json, Spec.class));
+    }
+
+    /**
+     * Score one document without allocating.
+     *
+     * @param f features
+     * @return predicted peak MB (unrounded), or {@link Double#NaN} if a numeric feature is NaN
+     */
+    public double predict(PdfFeatures f) {
+        if (Double.isNaN(f.size_mb()) || Double.isNaN(f.image_page_ratio())
+                || Double.isNaN(f.avg_image_size_kb()) || Double.isNaN(f.fonts_embedded_pct())) {
+            return Double.NaN;
+        }
+        int producer = producerCode(f.producer());
+        int[] feature = this.feature;
+        double[] threshold = this.threshold;
+        int[] left = this.left;
+        int[] right = this.right;
+        double sum = init;
+        for (int root : roots) {
+            int n = root;
+            while (left[n] >= 0) {
+                int code = feature[n];
+                float x = code < NUMERIC_INPUTS ? (float) numeric(f, code) : (code == producer ? 1f : 0f);
+                n = x <= threshold[n] ? left[n] : right[n];
+            }
+            sum += value[n];
+        }
+        return sum;
+    }
+
+    /**
+     * Lay out documents as the column-major matrix read by {@link #predict(float[], int, double[])}:
+     * column {@code c} of row {@code i} is at {@code x[c * rows + i]}. Columns {@code 0..7} are the
+     * numeric features (narrowed to {@code float}), then one 0/1 column per known producer.
+     *
+     * @param docs documents
+     * @return a new matrix of {@link #columns()} columns by {@code docs.size()} rows
+     */
+    public float[] encode(List<PdfFeatures> docs) {
+        int rows = docs.size();
+        float[] x = new float[columns() * rows];
+        for (int i = 0; i < rows; i++) {
+            PdfFeatures f = docs.get(i);
+            for (int j = 0; j < NUMERIC_INPUTS; j++) x[j * rows + i] = (float) numeric(f, j);
+            int producer = producerCode(f.producer());
+            if (producer >= 0) x[producer * rows + i] = 1f;
+        }
+        return x;
+    }
+
+    /**
+     * Score a batch from {@link #encode}: SIMD over rows when the Vector API is available (see
+     * {@link #vectorized()}), otherwise the scalar loop. Both give exactly the results of
+     * {@link #predict(PdfFeatures)}.
+     *
+     * @param x    column-major matrix from {@link #encode}
+     * @param rows rows in {@code x}
+     * @param out  receives predictions, length {@code >= rows}; NaN for rows with a NaN feature
+     */
+    public void predict(float[] x, int rows, double[] out) {
+        if (vector != null) {
+            predictVectorized(x, rows, out);
+        } else {
+            predictScalar(x, rows, out);
+        }
+    }
+
+    /**
+     * Scalar batch path: tree by tree, each row walked from the root to its leaf.
+     *
+     * @param x    column-major matrix from {@link #encode}
+     * @param rows rows in {@code x}
+     * @param out  receives predictions, length {@code >= rows}
+     */
+    public void predictScalar(float[] x, int rows, double[] out) {
+        Arrays.fill(out, 0, rows, init);
+        int[] feature = this.feature;
+        double[] threshold = this.threshold;
+        int[] left = this.left;
+        int[] right = this.right;
+        for (int root : roots) {
+            for (int i = 0; i < rows; i++) {
+                int n = root;
+                while (left[n] >= 0) {
+                    n = x[feature[n] * rows + i] <= threshold[n] ? left[n] : right[n];
+                }
+                out[i] += value[n];
+            }
+        }
+        maskMissing(x, rows, out);
+    }
+
+    /**
+     * Vector API batch path ({@code jdk.incubator.vector}); see {@code VectorTreeKernel}.
+     *
+     * @param x    column-major matrix from {@link #encode}
+     * @param rows rows in {@code x}
+     * @param out  receives predictions, length {@code >= rows}
+     * @throws UnsupportedOperationException if {@link #vectorized()} is {@code false}
+     */
+    public void predictVectorized(float[] x, int rows, double[] out) {
+        if (vector == null) {
+            throw new UnsupportedOperationException("jdk.incubator.vector is not enabled (--add-modules jdk.incubator.vector)");
+        }
+        Arrays.fill(out, 0, rows, init);
+        vector.score(x, rows, out);
+        maskMissing(x, rows, out);
+    }
+
+    /**
+     * @return {@code true} if batches are scored with the Vector API
+     */
+    public boolean vectorized() {
+        return vector != null;
+    }
+
+    /**
+     * @return columns of the {@link #encode} matrix: 8 numeric plus one per known producer
+     */
+    public int columns() {
+        return producers.length;
+    }
+
+    /**
+     * @return number of trees
+     */
+    public int trees() {
+        return roots.length;
+    }
+
+    /**
+     * @return total nodes across all trees
+     */
+    public int nodes() {
+        return left.length;
+    }
+
+    /** Rows with a NaN in a floating-point feature column cannot be scored; see "Missing values". */
+    private static void maskMissing(float[] x, int rows, double[] out) {
+        for (int j : NAN_COLUMNS) {
+            int base = j * rows;
+            for (int i = 0; i < rows; i++) {
+                if (Float.isNaN(x[base + i])) out[i] = Double.NaN;
+            }
+        }
+    }
+
+    /* flat arrays, shared with VectorTreeKernel */
+
+    int[] roots() { return roots; }
+
+    int[] feature() { return feature; }
+
+    double[] threshold() { return threshold; }
+
+    int[] left() { return left; }
+
+    int[] right() { return right; }
+
+    double[] value() { return value; }
+
+    /** Code of the input that is 1 for {@code producer}, or {@code -1} if none (unknown producer). */
+    private int producerCode(String producer) {
+        if (producer == null) return -1;
+        for (int c = NUMERIC_INPUTS; c < producers.length; c++) {
+            if (producer.equals(producers[c])) return c;
+        }
+        return -1;
+    }
+
+    private static double numeric(PdfFeatures f, int j) {
+        return switch (j) {
+            case 0 -> f.size_mb();
+            case 1 -> f.pages();
+            case 2 -> f.image_page_ratio();
+            case 3 -> f.dpi_estimate();
+            case 4 -> f.avg_image_size_kb();
+            case 5 -> f.fonts_embedded_pct();
+            case 6 -> f.xref_error_count();
+            default -> f.ocr_required();
+        };
+    }
+}
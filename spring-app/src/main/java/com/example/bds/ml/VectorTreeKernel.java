@@ -0,0 +1,125 @@
+package com.example.bds.ml;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * SIMD batch kernel for {@link TreeEnsembleModel}, on the incubating Vector API.
+ * <p>
+ * Rows are processed {@code LANES} at a time. Each lane holds the current node of one document;
+ * per tree level the kernel collects, for every lane, the document's value in the node's feature
+ * column, the node's threshold and both children, then selects the next node for all lanes with
+ * one compare and blend. The per-lane loads are plain array reads into small buffers rather than
+ * index-map gathers ({@code fromArray(species, a, offset, indexMap, mapOffset)}): on JDK 21.0.1
+ * the C2 gather intrinsic crashes the JVM for this access pattern. Every tree runs for its full depth: leaves are rewritten
+ * to point at themselves with a {@code +Infinity} threshold, so lanes that reach a leaf early
+ * stay there, and the loop has no data-dependent branches.
+ *
+ * <h2>Exactness</h2>
+ * Thresholds are stored as the largest {@code float} not above the {@code double} threshold,
+ * which makes {@code x <= t} in {@code float} equivalent to the scalar {@code double} comparison.
+ * Leaf values are added per row in tree order from {@code init}, as on the scalar path, so
+ * results are bit-identical.
+ *
+ * <h2>Loading</h2>
+ * Only instantiated (reflectively) when {@code jdk.incubator.vector} is in the boot layer; see
+ * {@link TreeEnsembleModel}.
+ *
+ * @since 1.1
+ */
+final class VectorTreeKernel implements TreeEnsembleModel.Kernel {
+
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = F.length();
+
+    private final int[] roots;
+    /** Levels to walk per tree (its depth). */
+    private final int[] depth;
+    /** Feature column per node; 0 for leaves. */
+    private final int[] feature;
+    /** Float threshold per node; {@code +Infinity} for leaves. */
+    private final float[] threshold;
+    /** Children per node; a leaf's children are itself. */
+    private final int[] left;
+    private final int[] right;
+    private final double[] value;
+
+    VectorTreeKernel(TreeEnsembleModel model) {
+        if (I.length() != LANES) {
+            throw new IllegalStateException("int and float species differ in lane count");
+        }
+        int nodes = model.left().length;
+        this.roots = model.roots();
+        this.value = model.value();
+        this.feature = model.feature().clone();
+        this.threshold = new float[nodes];
+        this.left = new int[nodes];
+        this.right = new int[nodes];
+        int[] level = new int[nodes];
+        this.depth = new int[roots.length];
+        for (int t = 0; t < roots.length; t++) {
+            int end = t + 1 < roots.length ? roots[t + 1] : nodes;
+            for (int n = roots[t]; n < end; n++) {
+                if (model.left()[n] < 0) {
+                    feature[n] = 0;
+                    threshold[n] = Float.POSITIVE_INFINITY;
+                    left[n] = n;
+                    right[n] = n;
+                    depth[t] = Math.max(depth[t], level[n]);
+                    continue;
+                }
+                double th = model.threshold()[n];
+                float f = (float) th;
+                threshold[n] = f > th ? Math.nextDown(f) : f;
+                left[n] = model.left()[n];
+                right[n] = model.right()[n];
+                level[left[n]] = level[n] + 1;
+                level[right[n]] = level[n] + 1;
+            }
+        }
+    }
+
+    @Override
+    public void score(float[] x, int rows, double[] out) {
+        int[] node = new int[LANES];
+        float[] xs = new float[LANES];
+        float[] ts = new float[LANES];
+        int[] ls = new int[LANES];
+        int[] rs = new int[LANES];
+        int bound = rows - rows % LANES;
+        for (int t = 0; t < roots.length; t++) {
+            int root = roots[t];
+            int levels = depth[t];
+            for (int i = 0; i < bound; i += LANES) {
+                Arrays.fill(node, root);
+                for (int d = 0; d < levels; d++) {
+                    // plain loads, not index-map gathers: C2 in 21.0.1 miscompiles those (SIGSEGV)
+                    for (int k = 0; k < LANES; k++) {
+                        int n = node[k];
+                        xs[k] = x[feature[n] * rows + i + k];
+                        ts[k] = threshold[n];
+                        ls[k] = left[n];
+                        rs[k] = right[n];
+                    }
+                    VectorMask<Integer> goLeft = FloatVector.fromArray(F, xs, 0)
+                            .compare(VectorOperators.LE, FloatVector.fromArray(F, ts, 0)).cast(I);
+                    IntVector.fromArray(I, rs, 0).blend(IntVector.fromArray(I, ls, 0), goLeft).intoArray(node, 0);
+                }
+                for (int k = 0; k < LANES; k++) out[i + k] += value[node[k]];
+            }
+            for (int i = bound; i < rows; i++) {
+                int n = root;
+                for (int d = 0; d < levels; d++) {
+                    n = x[feature[n] * rows + i] <= threshold[n] ? left[n] : right[n];
+                }
+                out[i] += value[n];
+            }
+        }
+    }
+}
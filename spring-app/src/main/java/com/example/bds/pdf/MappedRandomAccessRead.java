@@ -0,0 +1,176 @@
+package com.example.bds.pdf;
+
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadView;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Zero-copy {@link RandomAccessRead} over a memory-mapped file, for feeding PDFBox without
+ * copying the document into a heap array.
+ *
+ * <h2>Layout</h2>
+ * <ul>
+ *   <li>The file is mapped as a sequence of read-only chunks of {@code 2^chunkShift} bytes
+ *       (1 GiB by default), so documents larger than the 2 GiB limit of a single
+ *       {@link java.nio.MappedByteBuffer} are supported.</li>
+ *   <li>Reads use absolute {@link ByteBuffer} access, so the chunks carry no cursor state and a
+ *       read that straddles a chunk boundary is simply split in two.</li>
+ * </ul>
+ *
+ * <h2>Memory</h2>
+ * The mapped pages live in the OS page cache, outside the Java heap; they are neither counted
+ * against {@code -Xmx} nor scanned by the GC. The JDK offers no explicit unmap: {@link #close()}
+ * drops the references and the mapping is released when the buffers become unreachable.
+ *
+ * <h2>Thread-safety</h2>
+ * Like every {@link RandomAccessRead}, an instance has a single position and must not be shared
+ * between threads. Use {@link #duplicate()} to give each thread its own reader over the same
+ * mapping.
+ *
+ * @since 1.1
+ */
+public final class MappedRandomAccessRead implements RandomAccessRead {
+
+    /** Default chunk size exponent: 2^30 bytes = 1 GiB per mapping. */
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+
+    private final long length;
+    private final int chunkShift;
+    private final long chunkMask;
+    private ByteBuffer[] chunks;
+    private long position;
+
+    /**
+     * Map the whole file behind {@code channel} using the default chunk size.
+     * <p>
+     * The mapping stays valid after the channel is closed; the caller keeps ownership of it.
+     *
+     * @param channel an open, readable file channel
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedRandomAccessRead(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * Map the whole file behind {@code channel} in chunks of {@code 2^chunkShift} bytes.
+     *
+     * @param channel    an open, readable file channel
+     * @param chunkShift chunk size exponent, between 10 and 30 (smaller values are useful in tests)
+     * @throws IOException if the file cannot be mapped
+     */
+    MappedRandomAccessRead(FileChannel channel, int chunkShift) throws IOException {
+        if (chunkShift < 10 || chunkShift > 30) throw new IllegalArgumentException("chunkShift out of range: " + chunkShift);
+        this.length = channel.size();
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+
+        long chunkSize = 1L << chunkShift;
+        int count = (int) ((length + chunkSize - 1) >>> chunkShift);
+        this.chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long offset = (long) i << chunkShift;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(chunkSize, length - offset));
+        }
+    }
+
+    /** Copy constructor for {@link #duplicate()}. */
+    private MappedRandomAccessRead(MappedRandomAccessRead other) {
+        this.length = other.length;
+        this.chunkShift = other.chunkShift;
+        this.chunkMask = other.chunkMask;
+        this.chunks = new ByteBuffer[other.chunks.length];
+        for (int i = 0; i < chunks.length; i++) chunks[i] = other.chunks[i].duplicate();
+    }
+
+    /**
+     * Create an independent reader over the same mapping, positioned at 0. No bytes are copied
+     * or re-mapped; closing either reader does not affect the other.
+     *
+     * @return a new reader sharing this reader's mapped chunks
+     * @throws IOException if this reader is closed
+     */
+    public MappedRandomAccessRead duplicate() throws IOException {
+        checkClosed();
+        return new MappedRandomAccessRead(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        if (position >= length) return -1;
+        int b = chunks[(int) (position >>> chunkShift)].get((int) (position & chunkMask)) & 0xFF;
+        position++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (len == 0) return 0;
+        if (position >= length) return -1;
+
+        int total = (int) Math.min(len, length - position);
+        int done = 0;
+        while (done < total) {
+            ByteBuffer chunk = chunks[(int) (position >>> chunkShift)];
+            int inChunk = (int) (position & chunkMask);
+            int n = Math.min(total - done, chunk.limit() - inChunk);
+            chunk.get(inChunk, b, off + done, n);
+            done += n;
+            position += n;
+        }
+        return total;
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        checkClosed();
+        return position;
+    }
+
+    @Override
+    public void seek(long newPosition) throws IOException {
+        checkClosed();
+        if (newPosition < 0) throw new IOException("Invalid position " + newPosition);
+        position = Math.min(newPosition, length);
+    }
+
+    @Override
+    public long length() throws IOException {
+        checkClosed();
+        return length;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return chunks == null;
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        checkClosed();
+        return position >= length;
+    }
+
+    @Override
+    public RandomAccessReadView createView(long startPosition, long streamLength) throws IOException {
+        checkClosed();
+        return new RandomAccessReadView(this, startPosition, streamLength);
+    }
+
+    /**
+     * Drop the chunk references; the OS mapping is released once they are garbage collected.
+     */
+    @Override
+    public void close() {
+        chunks = null;
+    }
+
+    private void checkClosed() throws IOException {
+        if (chunks == null) throw new IOException("MappedRandomAccessRead already closed");
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.bds.pdf;
+
+import com.example.bds.dto.PdfFeatures;
+
+/**
+ * Running per-page totals behind {@link PdfFeatures}, shared by {@link PdfQuickScanner} and the
+ * full PDFBox walk in {@link PdfFeatureExtractor} so both produce bit-for-bit identical records.
+ * <p>
+ * Every total is an integer (the embedded-fonts score is kept in twentieths), so partial stats
+ * built over disjoint page ranges can be {@link #merge merged} in any order with exactly the
+ * result of a single sequential pass. Not thread-safe; use one instance per worker.
+ */
+final class PageStats {
+
+    private int pages;
+    private int imagePages;
+    private int imagesSeen;
+    private long imageBytesApprox;
+    private int dpiSum;
+    /** Sum of per-page scores {@code min(1.0, 0.5 + 0.05 * min(10, fonts))}, in units of 1/20. */
+    private long fontScoreTwentieths;
+
+    /**
+     * Account for one page.
+     *
+     * @param images       image XObjects referenced by the page's resources
+     * @param pixelsApprox sum of {@code max(1, width * max(1, height))} over those images
+     * @param fontCount    fonts declared in the page's resources
+     */
+    void addPage(int images, long pixelsApprox, int fontCount) {
+        pages++;
+        boolean pageHasImage = images > 0;
+        imagesSeen += images;
+        imageBytesApprox += pixelsApprox;
+
+        if (fontCount > 0) {
+            // heuristically: more declared fonts -> more likely some are embedded
+            // min(1.0, 0.5 + 0.05 * min(10, n)) == min(20, 10 + min(10, n)) / 20, kept exact
+            fontScoreTwentieths += Math.min(20, 10 + Math.min(10, fontCount));
+        }
+
+        if (pageHasImage) imagePages++;
+
+        // give pages with images higher “dpi” heuristic
+        dpiSum += pageHasImage ? 300 : 150;
+    }
+
+    /**
+     * Add the totals of another page range into this one.
+     *
+     * @param other stats for a disjoint range of pages
+     * @return this instance
+     */
+    PageStats merge(PageStats other) {
+        pages += other.pages;
+        imagePages += other.imagePages;
+        imagesSeen += other.imagesSeen;
+        imageBytesApprox += other.imageBytesApprox;
+        dpiSum += other.dpiSum;
+        fontScoreTwentieths += other.fontScoreTwentieths;
+        return this;
+    }
+
+    /**
+     * Proxy for one image's memory weight: PDF doesn’t store original image file size directly,
+     * so width*height is used as a stable proxy.
+     */
+    static long pixelsApprox(int width, int height) {
+        return Math.max(1L, (long) width * Math.max(1, height));
+    }
+
+    /**
+     * Derive the final feature record from the accumulated totals.
+     *
+     * @param sizeMb   document size in MiB (unrounded)
+     * @param producer document producer, or "Unknown"
+     */
+    PdfFeatures toFeatures(double sizeMb, String producer) {
+        double imagePageRatio = pages == 0 ? 0.0 : (imagePages / (double) pages);
+        int dpiEstimate = pages == 0 ? 0 : (dpiSum / Math.max(1, pages));
+
+        // average image "size" proxy => normalize the proxy counts back into KB scale
+        double avgImageSizeKb;
+        if (imagesSeen == 0) {
+            avgImageSizeKb = 0.0;
+        } else {
+            // scale the proxy (pixels) to a rough KB number to keep values sane
+            double proxyAvg = imageBytesApprox / (double) imagesSeen;
+            avgImageSizeKb = Math.max(8.0, proxyAvg / 2048.0);
+        }
+
+        // page-level average of our heuristic embedded-fonts score
+        double fontsPct = pages == 0 ? 0.0 : clamp01(fontScoreTwentieths / 20.0 / pages);
+
+        // keep 0 for xref_error_count unless the parser threw (we’re in the success path now)
+        int xrefErrorCount = 0;
+
+        // OCR likely if most pages look like images
+        int ocrRequired = imagePageRatio > 0.6 ? 1 : 0;
+
+        return new PdfFeatures(
+                round2(sizeMb),
+                pages,
+                clamp01(imagePageRatio),
+                dpiEstimate,
+                round2(avgImageSizeKb),
+                clamp01(fontsPct),
+                xrefErrorCount,
+                ocrRequired,
+                producer
+        );
+    }
+
+    /**
+     * Clamp a floating-point value to the closed interval [0, 1].
+     *
+     * @param v input value
+     * @return 0 if v &lt; 0, 1 if v &gt; 1, otherwise v
+     */
+    private static double clamp01(double v) { return Math.max(0.0, Math.min(1.0, v)); }
+
+    /**
+     * Round a floating-point value to two decimal places.
+     *
+     * @param v input value
+     * @return value rounded to 2 decimals using {@code Math.round(v * 100.0) / 100.0}
+     */
+    private static double round2(double v) { return Math.round(v * 100.0) / 100.0; }
+}
@@ -1,7 +1,10 @@
 package com.example.bds.pdf;
 
 import com.example.bds.dto.PdfFeatures;
+import com.example.bds.jfr.PhaseEvent;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -10,6 +13,16 @@ import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
 
 /**
  * Extracts a stable, conservative set of PDF features using Apache PDFBox (3.x) for
@@ -25,7 +38,7 @@ import java.io.IOException;
  *
  * <h2>What is extracted?</h2>
  * <ul>
- *   <li><b>size_mb</b>: input byte array size / 1024² (MiB), rounded to 2 decimals.</li>
+ *   <li><b>size_mb</b>: input size (byte array length or file size) / 1024² (MiB), rounded to 2 decimals.</li>
  *   <li><b>pages</b>: total page count (0 if empty).</li>
  *   <li><b>image_page_ratio</b>: fraction of pages that reference at least one image XObject.</li>
  *   <li><b>dpi_estimate</b>: simple per-page heuristic (150 for text-only pages, 300 if images present),
@@ -49,12 +62,70 @@ import java.io.IOException;
  *   <li>Encrypted documents are rejected (see exceptions below).</li>
  * </ul>
  *
+ * <h2>Two passes</h2>
+ * Features are first derived by {@link PdfQuickScanner} straight from the page tree and resource
+ * dictionaries, which keeps large scanned documents cheap. The PDFBox page-model walk
+ * ({@code PDPage}/{@code PDResources}/{@code PDImageXObject}) only runs when the scanner bails
+ * out on an unusual structure; both share {@link PageStats} and return the same record.
+ *
  * <h2>Thread-safety</h2>
- * This class is stateless and therefore thread-safe; create once and reuse.
+ * This class holds only immutable configuration and an optional worker pool, and is therefore
+ * thread-safe; create once and reuse, and {@link #close()} it to stop the pool.
  *
  * @since 1.0
  */
-public class PdfFeatureExtractor {
+public class PdfFeatureExtractor implements AutoCloseable {
+
+    /** COS-level pre-pass; the page-model walk in {@link #fullScan} is only the fallback. */
+    private final PdfQuickScanner quickScanner = new PdfQuickScanner();
+
+    /** Whether to try {@link #quickScanner} before the page-model walk. */
+    private final boolean quickScan;
+
+    /** Dedicated workers for parallel page-model walks; {@code null} when parallelism is off. */
+    private final ForkJoinPool pool;
+
+    /** Documents with fewer pages than this are always walked sequentially. */
+    private final int parallelThresholdPages;
+
+    /** Upper bound on page ranges (and therefore threads) used for one document. */
+    private final int maxParallelism;
+
+    /**
+     * Create a sequential extractor with the quick scanner enabled.
+     */
+    public PdfFeatureExtractor() {
+        this(true, 0, Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * Create an extractor with an optional parallel page-model walk.
+     * <p>
+     * When the page-model walk runs (quick scan disabled or bailed out) on a document with at
+     * least {@code parallelThresholdPages} pages, the page range is split into up to
+     * {@code maxParallelism} contiguous slices. The calling thread walks the first slice on the
+     * already-loaded document; the other slices run on a dedicated {@link ForkJoinPool}, each
+     * worker loading its own {@link PDDocument} over an independent reader (PDFBox documents are
+     * not thread-safe). Workers accumulate private {@link PageStats} that are merged at the end,
+     * so the result is bit-for-bit identical to the sequential walk.
+     *
+     * @param quickScan              try {@link PdfQuickScanner} first
+     * @param poolSize               worker threads in the dedicated pool; {@code <= 1} disables parallelism
+     * @param parallelThresholdPages minimum page count for a parallel walk
+     * @param maxParallelism         maximum slices per document, including the calling thread
+     */
+    public PdfFeatureExtractor(boolean quickScan, int poolSize, int parallelThresholdPages, int maxParallelism) {
+        this.quickScan = quickScan;
+        this.parallelThresholdPages = parallelThresholdPages;
+        this.maxParallelism = maxParallelism;
+        this.pool = (poolSize > 1 && maxParallelism > 1)
+                ? new ForkJoinPool(poolSize, p -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName("pdf-extract-" + t.getPoolIndex());
+                    return t;
+                }, null, false)
+                : null;
+    }
 
     /**
      * Parse a PDF from bytes and return a fully-populated {@link PdfFeatures} record.
@@ -68,8 +139,10 @@ public class PdfFeatureExtractor {
      * </ul>
      *
      * <h3>Performance</h3>
-     * Makes a single pass over pages and their resources. It iterates XObjects and fonts but
-     * avoids expensive stream decoding where possible.
+     * Tries {@link PdfQuickScanner} first, which reads only the page tree and resource
+     * dictionaries. If it bails out, makes a single pass over pages and their resources through
+     * the PDFBox page model (in parallel for large documents, if configured). All paths avoid
+     * stream decoding and yield identical records.
      *
      * @param pdfBytes PDF content as a byte array; must represent a valid, non-encrypted PDF.
      *                 <strong>Note:</strong> callers should pre-check size/emptiness; this method
@@ -82,96 +155,189 @@ public class PdfFeatureExtractor {
      *                                  or unreadable/corrupt.
      */
     public PdfFeatures extract(byte[] pdfBytes) throws IOException {
-        double sizeMb = (pdfBytes == null ? 0 : pdfBytes.length) / (1024.0 * 1024.0);
+        return extract(() -> new RandomAccessReadBuffer(pdfBytes), pdfBytes.length);
+    }
 
-        try (PDDocument doc = Loader.loadPDF(pdfBytes)) {
-            if (doc.isEncrypted()) throw new IllegalArgumentException("Encrypted PDFs are not supported");
-            if (doc.getNumberOfPages() > 5000) throw new IllegalArgumentException("PDF too large (pages)");
-
-            int pages = Math.max(0, doc.getNumberOfPages());
-            int imagePages = 0;
-            int imagesSeen = 0;
-            long imageBytesApprox = 0;
-
-            // Very defensive defaults
-            int dpiSum = 0;
-            double fontsEmbeddedPct = 0.0;
-
-            for (int i = 0; i < pages; i++) {
-                PDPage page = doc.getPage(i);
-                PDResources res = page.getResources();
-
-                boolean pageHasImage = false;
-                if (res != null) {
-                    // images
-                    for (var name : res.getXObjectNames()) {
-                        PDXObject xo = res.getXObject(name);
-                        if (xo instanceof PDImageXObject img) {
-                            pageHasImage = true;
-                            imagesSeen++;
-                            // PDF doesn’t store original image file size directly; use width*height as a stable proxy.
-                            imageBytesApprox += Math.max(1L, (long) img.getWidth() * Math.max(1, img.getHeight()));
-                        }
-                    }
+    /**
+     * Parse a PDF from a file and return a fully-populated {@link PdfFeatures} record.
+     * <p>
+     * The file is memory-mapped (see {@link MappedRandomAccessRead}) and handed to PDFBox as a
+     * zero-copy random-access source, so the raw document bytes stay off-heap and out of GC
+     * pressure. Produces the same features as {@link #extract(byte[])} for the same content;
+     * guardrails and exceptions are identical.
+     *
+     * @param pdfFile path to a readable, non-encrypted PDF (e.g. a {@link SpooledPdf} file)
+     * @return a {@link PdfFeatures} instance with all fields filled (no NaNs).
+     * @throws IOException if the file cannot be opened or mapped
+     * @throws IllegalArgumentException if the PDF is encrypted, unreasonably large (pages),
+     *                                  or unreadable/corrupt.
+     */
+    public PdfFeatures extract(Path pdfFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pdfFile, StandardOpenOption.READ)) {
+            return extract(channel);
+        }
+    }
 
-                    // crude "embedded fonts" heuristic: if page declares fonts, treat half as embedded on average
-                    int fontCount = 0;
-                    for (var fn : res.getFontNames()) fontCount++;
-                    if (fontCount > 0) {
-                        // heuristically: more declared fonts -> more likely some are embedded
-                        fontsEmbeddedPct += Math.min(1.0, 0.5 + 0.05 * Math.min(10, fontCount));
-                    }
-                }
+    /**
+     * Parse a PDF from an open file channel by memory-mapping its full contents.
+     * <p>
+     * The channel is not closed and its position is not used; the mapping stays valid
+     * independently of the channel. See {@link #extract(Path)}.
+     *
+     * @param channel an open, readable channel positioned anywhere
+     * @return a {@link PdfFeatures} instance with all fields filled (no NaNs).
+     * @throws IOException if the file cannot be mapped
+     * @throws IllegalArgumentException if the PDF is encrypted, unreasonably large (pages),
+     *                                  or unreadable/corrupt.
+     */
+    public PdfFeatures extract(FileChannel channel) throws IOException {
+        try (MappedRandomAccessRead mapping = new MappedRandomAccessRead(channel)) {
+            return extract(mapping::duplicate, channel.size());
+        }
+    }
 
-                if (pageHasImage) imagePages++;
+    /**
+     * Shut down the dedicated worker pool, if any.
+     */
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdownNow();
+    }
 
-                // give pages with images higher “dpi” heuristic
-                dpiSum += pageHasImage ? 300 : 150;
-            }
+    /**
+     * Opens a fresh, independently positioned reader over the same document bytes each time it
+     * is called, so parallel workers never share a {@link RandomAccessRead}.
+     */
+    @FunctionalInterface
+    private interface SourceFactory {
+        RandomAccessRead open() throws IOException;
+    }
 
-            double imagePageRatio = pages == 0 ? 0.0 : (imagePages / (double) pages);
-            int dpiEstimate = pages == 0 ? 0 : (dpiSum / Math.max(1, pages));
-
-            // average image "size" proxy => normalize the proxy counts back into KB scale
-            double avgImageSizeKb;
-            if (imagesSeen == 0) {
-                avgImageSizeKb = 0.0;
-            } else {
-                // scale the proxy (pixels) to a rough KB number to keep values sane
-                double proxyAvg = imageBytesApprox / (double) imagesSeen;
-                avgImageSizeKb = Math.max(8.0, proxyAvg / 2048.0);
-            }
+    /**
+     * Shared implementation for all input sources.
+     *
+     * @param sources   opens readers over the PDF bytes; each reader is closed after use
+     * @param sizeBytes total document size in bytes (used for {@code size_mb})
+     */
+    private PdfFeatures extract(SourceFactory sources, long sizeBytes) {
+        double sizeMb = sizeBytes / (1024.0 * 1024.0);
 
-            // page-level average of our heuristic embedded-fonts score
-            double fontsPct = pages == 0 ? 0.0 : clamp01(fontsEmbeddedPct / pages);
-
-            // keep 0 for xref_error_count unless the parser threw (we’re in the success path now)
-            int xrefErrorCount = 0;
-
-            // OCR likely if most pages look like images
-            int ocrRequired = imagePageRatio > 0.6 ? 1 : 0;
-
-            String producer = "Unknown";
-            PDDocumentInformation info = doc.getDocumentInformation();
-            if (info != null && info.getProducer() != null) producer = info.getProducer();
-
-            return new PdfFeatures(
-                    round2(sizeMb),
-                    pages,
-                    clamp01(imagePageRatio),
-                    dpiEstimate,
-                    round2(avgImageSizeKb),
-                    clamp01(fontsPct),
-                    xrefErrorCount,
-                    ocrRequired,
-                    producer
-            );
+        PhaseEvent.PdfLoad load = new PhaseEvent.PdfLoad();
+        load.begin();
+        try (RandomAccessRead source = sources.open(); PDDocument doc = Loader.loadPDF(source)) {
+            int pages = doc.getNumberOfPages();
+            load.commit(sizeBytes, pages);
+            if (doc.isEncrypted()) throw new IllegalArgumentException("Encrypted PDFs are not supported");
+            if (pages > 5000) throw new IllegalArgumentException("PDF too large (pages)");
+
+            PhaseEvent.PageScan scan = new PhaseEvent.PageScan();
+            scan.begin();
+            try {
+                if (quickScan) {
+                    PdfFeatures quick = quickScanner.scan(doc, sizeMb);
+                    if (quick != null) return quick;
+                }
+                return fullScan(doc, sources, sizeMb);
+            } finally {
+                scan.commit(sizeBytes, pages);
+            }
         } catch (IOException e) {
             // Narrow the external exception surface to a user-friendly IllegalArgumentException.
             throw new IllegalArgumentException("Unreadable PDF (corrupt or truncated)");
         }
     }
 
+    /**
+     * Walk every page through the PDFBox page model, sequentially or in parallel slices.
+     *
+     * @param doc     a loaded, non-encrypted document
+     * @param sources opens independent readers for parallel workers
+     * @param sizeMb  document size in MiB (unrounded)
+     * @return the features
+     * @throws IOException if a page or resource cannot be resolved
+     */
+    private PdfFeatures fullScan(PDDocument doc, SourceFactory sources, double sizeMb) throws IOException {
+        int pages = Math.max(0, doc.getNumberOfPages());
+        int slices = (pool == null || pages < parallelThresholdPages)
+                ? 1
+                : Math.min(maxParallelism, Math.min(pages, pool.getParallelism() + 1));
+
+        PageStats stats = new PageStats();
+        if (slices <= 1) {
+            scanPages(doc, 0, pages, stats);
+        } else {
+            parallelScan(doc, sources, pages, slices, stats);
+        }
+
+        String producer = "Unknown";
+        PDDocumentInformation info = doc.getDocumentInformation();
+        if (info != null && info.getProducer() != null) producer = info.getProducer();
+
+        return stats.toFeatures(sizeMb, producer);
+    }
+
+    /**
+     * Split {@code [0, pages)} into contiguous slices. Slice 0 runs here on {@code doc}; the rest
+     * run on {@link #pool}, each on its own document. Partial stats are merged into {@code total}.
+     */
+    private void parallelScan(PDDocument doc, SourceFactory sources, int pages, int slices, PageStats total)
+            throws IOException {
+        List<Future<PageStats>> futures = new ArrayList<>(slices - 1);
+        try {
+            for (int s = 1; s < slices; s++) {
+                int from = (int) ((long) pages * s / slices);
+                int to = (int) ((long) pages * (s + 1) / slices);
+                futures.add(pool.submit(() -> {
+                    try (RandomAccessRead source = sources.open(); PDDocument own = Loader.loadPDF(source)) {
+                        PageStats partial = new PageStats();
+                        scanPages(own, from, to, partial);
+                        return partial;
+                    }
+                }));
+            }
+
+            scanPages(doc, 0, pages / slices, total);
+            for (Future<PageStats> f : futures) total.merge(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted during parallel page scan");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<PageStats> f : futures) f.cancel(true);
+        }
+    }
+
+    /**
+     * Add pages {@code [from, to)} of {@code doc} to {@code stats}, in order.
+     */
+    private static void scanPages(PDDocument doc, int from, int to, PageStats stats) throws IOException {
+        for (int i = from; i < to; i++) {
+            PDPage page = doc.getPage(i);
+            PDResources res = page.getResources();
+
+            int images = 0;
+            long pixels = 0;
+            int fontCount = 0;
+            if (res != null) {
+                // images
+                for (var name : res.getXObjectNames()) {
+                    PDXObject xo = res.getXObject(name);
+                    if (xo instanceof PDImageXObject img) {
+                        images++;
+                        pixels += PageStats.pixelsApprox(img.getWidth(), img.getHeight());
+                    }
+                }
+
+                // crude "embedded fonts" heuristic: if page declares fonts, treat half as embedded on average
+                for (var fn : res.getFontNames()) fontCount++;
+            }
+            stats.addPage(images, pixels, fontCount);
+        }
+    }
+
     /**
      * Convert the numeric subset of {@link PdfFeatures} into a fixed-length vector
      * suitable for feeding very small local models that do not accept categorical input.
@@ -201,18 +367,26 @@ public class PdfFeatureExtractor {
     }
 
     /**
-     * Clamp a floating-point value to the closed interval [0, 1].
-     *
-     * @param v input value
-     * @return 0 if v &lt; 0, 1 if v &gt; 1, otherwise v
-     */
-    private static double clamp01(double v) { return Math.max(0.0, Math.min(1.0, v)); }
-
-    /**
-     * Round a floating-point value to two decimal places.
+     * Column-major form of {@link #toVector} for a batch: {@code x[j][i]} is numeric feature
+     * {@code j} (same order) of document {@code i}.
      *
-     * @param v input value
-     * @return value rounded to 2 decimals using {@code Math.round(v * 100.0) / 100.0}
+     * @param batch the features records to project
+     * @return a new {@code double[8][batch.size()]}
      */
-    private static double round2(double v) { return Math.round(v * 100.0) / 100.0; }
+    public static double[][] toColumns(List<PdfFeatures> batch) {
+        int n = batch.size();
+        double[][] x = new double[8][n];
+        for (int i = 0; i < n; i++) {
+            PdfFeatures f = batch.get(i);
+            x[0][i] = f.size_mb();
+            x[1][i] = f.pages();
+            x[2][i] = f.image_page_ratio();
+            x[3][i] = f.dpi_estimate();
+            x[4][i] = f.avg_image_size_kb();
+            x[5][i] = f.fonts_embedded_pct();
+            x[6][i] = f.xref_error_count();
+            x[7][i] = f.ocr_required();
+        }
+        return x;
+    }
 }
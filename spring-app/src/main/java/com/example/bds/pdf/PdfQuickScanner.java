@@ -0,0 +1,161 @@
+package com.example.bds.pdf;
+
+import com.example.bds.dto.PdfFeatures;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPageTree;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Fast pre-pass that derives {@link PdfFeatures} from the raw COS object graph, without building
+ * the PDFBox page model.
+ *
+ * <h2>How it works</h2>
+ * <ul>
+ *   <li>{@link org.apache.pdfbox.Loader} has already read the trailer and the xref table or
+ *       streams; every other object is parsed lazily, on first access.</li>
+ *   <li>The scanner walks the page tree from the catalog's {@code /Pages} root through
+ *       {@code /Kids}, visiting leaves in document order.</li>
+ *   <li>For each page it looks up the (inherited) {@code /Resources} dictionary and counts
+ *       {@code /XObject} entries whose stream dictionary has {@code /Subtype /Image}, reading
+ *       {@code /Width} and {@code /Height} straight from the dictionary. No {@code PDPage},
+ *       {@code PDResources} or {@code PDImageXObject} is created and no stream data is read.</li>
+ *   <li>Page totals go through the same {@link PageStats} as the full walk, so a successful scan
+ *       yields exactly the record {@link PdfFeatureExtractor} would have produced.</li>
+ * </ul>
+ *
+ * <h2>Bailing out</h2>
+ * {@link #scan(PDDocument, double)} returns {@code null} whenever the full PDFBox walk could
+ * behave differently, and the caller falls back to it:
+ * <ul>
+ *   <li>the page tree is malformed: missing root, cycles, non-dictionary kids, or a
+ *       {@code /Count} that disagrees with the leaves found;</li>
+ *   <li>an XObject is not a stream or has a subtype PDFBox would reject;</li>
+ *   <li>an image uses {@code JPXDecode}, whose dimensions PDFBox takes from the codestream;</li>
+ *   <li>any unexpected runtime exception while resolving objects.</li>
+ * </ul>
+ *
+ * <h2>Thread-safety</h2>
+ * Stateless; a {@link PDDocument} itself must not be shared between threads.
+ *
+ * @since 1.1
+ */
+public final class PdfQuickScanner {
+
+    /** Guard against pathological page-tree nesting. */
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * Scan the document's page tree and resource dictionaries.
+     *
+     * @param doc    a loaded, non-encrypted document
+     * @param sizeMb document size in MiB (unrounded)
+     * @return the features, or {@code null} if the scanner bailed out
+     */
+    public PdfFeatures scan(PDDocument doc, double sizeMb) {
+        try {
+            COSDictionary root = doc.getDocumentCatalog().getCOSObject().getCOSDictionary(COSName.PAGES);
+            if (root == null) return null;
+
+            PageStats stats = new PageStats();
+            int leaves = walk(root, stats, new IdentityHashMap<>(), 0);
+            if (leaves < 0 || leaves != doc.getNumberOfPages()) return null;
+
+            return stats.toFeatures(sizeMb, producer(doc));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Depth-first walk of a page-tree node.
+     *
+     * @return number of leaf pages below {@code node}, or -1 to bail out
+     */
+    private static int walk(COSDictionary node, PageStats stats, Map<COSDictionary, Boolean> seen, int depth) {
+        if (depth > MAX_DEPTH || seen.put(node, Boolean.TRUE) != null) return -1;
+
+        if (!isPageTreeNode(node)) {
+            return scanPage(node, stats) ? 1 : -1;
+        }
+
+        COSArray kids = node.getCOSArray(COSName.KIDS);
+        if (kids == null) return -1;
+        int leaves = 0;
+        for (int i = 0; i < kids.size(); i++) {
+            if (!(kids.getObject(i) instanceof COSDictionary kid)) return -1;
+            int n = walk(kid, stats, seen, depth + 1);
+            if (n < 0) return -1;
+            leaves += n;
+        }
+        // PDPageTree navigates by /Count; any disagreement means it would see different pages.
+        return node.getInt(COSName.COUNT, -1) == leaves ? leaves : -1;
+    }
+
+    /** Same test PDFBox uses to tell intermediate nodes from leaves. */
+    private static boolean isPageTreeNode(COSDictionary node) {
+        return COSName.PAGES.equals(node.getCOSName(COSName.TYPE)) || node.containsKey(COSName.KIDS);
+    }
+
+    /**
+     * Count images and fonts on one page.
+     *
+     * @return {@code false} to bail out
+     */
+    private static boolean scanPage(COSDictionary page, PageStats stats) {
+        int images = 0;
+        long pixels = 0;
+        int fontCount = 0;
+
+        if (PDPageTree.getInheritableAttribute(page, COSName.RESOURCES) instanceof COSDictionary res) {
+            COSDictionary xobjects = res.getCOSDictionary(COSName.XOBJECT);
+            if (xobjects != null) {
+                for (COSName name : xobjects.keySet()) {
+                    // dereferences indirect objects and maps COSNull to null, like PDResources
+                    COSBase value = xobjects.getDictionaryObject(name);
+                    if (value == null) continue;
+                    if (!(value instanceof COSStream stream)) return false;
+
+                    COSName subtype = stream.getCOSName(COSName.SUBTYPE);
+                    if (COSName.IMAGE.equals(subtype)) {
+                        if (hasJpxFilter(stream)) return false;
+                        images++;
+                        pixels += PageStats.pixelsApprox(stream.getInt(COSName.WIDTH), stream.getInt(COSName.HEIGHT));
+                    } else if (!COSName.FORM.equals(subtype) && !COSName.PS.equals(subtype)) {
+                        return false;
+                    }
+                }
+            }
+
+            COSDictionary fonts = res.getCOSDictionary(COSName.FONT);
+            if (fonts != null) fontCount = fonts.size();
+        }
+
+        stats.addPage(images, pixels, fontCount);
+        return true;
+    }
+
+    private static boolean hasJpxFilter(COSStream stream) {
+        COSBase filters = stream.getDictionaryObject(COSName.FILTER);
+        if (filters instanceof COSName name) return COSName.JPX_DECODE.equals(name);
+        if (filters instanceof COSArray array) {
+            for (int i = 0; i < array.size(); i++) {
+                if (COSName.JPX_DECODE.equals(array.getObject(i))) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Producer from the trailer's {@code /Info} dictionary, as {@code PDDocumentInformation} reads it. */
+    private static String producer(PDDocument doc) {
+        COSDictionary info = doc.getDocument().getTrailer().getCOSDictionary(COSName.INFO);
+        String producer = info == null ? null : info.getString(COSName.PRODUCER);
+        return producer == null ? "Unknown" : producer;
+    }
+}
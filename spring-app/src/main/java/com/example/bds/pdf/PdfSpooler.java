@@ -0,0 +1,159 @@
+package com.example.bds.pdf;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Streams an uploaded PDF from a reactive {@link DataBuffer} publisher into a temporary
+ * spool file, validating it while the bytes are still arriving.
+ *
+ * <h2>Why spool?</h2>
+ * <ul>
+ *   <li>Joining a multipart body and copying it into a {@code byte[]} holds two full copies of
+ *       the upload on the heap at peak. The spooler writes each chunk to disk as soon as it
+ *       arrives, so heap usage is bounded by the transport's chunk size rather than the file size.</li>
+ *   <li>PDFBox only needs random access to the document, which a file provides without
+ *       materializing the bytes (see {@link SpooledPdf#path()}).</li>
+ * </ul>
+ *
+ * <h2>Early validation</h2>
+ * <ul>
+ *   <li>The {@code %PDF-} signature is checked on the first bytes received (even if they are split
+ *       across several chunks); a mismatch aborts the upload before the rest is read.</li>
+ *   <li>The running byte count is compared against {@code maxBytes} on every chunk; oversized
+ *       uploads are cancelled as soon as the cap is crossed.</li>
+ *   <li>Empty uploads are rejected once the stream completes.</li>
+ * </ul>
+ * All validation failures are reported as {@link IllegalArgumentException} (mapped to 4xx by
+ * the global exception handler). The offending chunk is released and the partial spool file is
+ * deleted.
+ *
+ * <h2>Content digest</h2>
+ * A SHA-256 of the upload is updated from each chunk's readable bytes in place (no copy) as it
+ * passes through, and exposed as {@link SpooledPdf#sha256()} for content-keyed caching; the file
+ * is never re-read to hash it.
+ *
+ * <h2>Back-pressure</h2>
+ * Writing goes through {@link DataBufferUtils#write(org.reactivestreams.Publisher, Path, java.nio.file.OpenOption...)},
+ * which requests one buffer at a time from the upstream and releases each buffer after it has
+ * been written, so at most one chunk per upload is in flight.
+ *
+ * @since 1.1
+ */
+public final class PdfSpooler {
+
+    /** ASCII {@code %PDF-}, the mandatory file signature. */
+    private static final byte[] SIGNATURE = {'%', 'P', 'D', 'F', '-'};
+
+    /** Non-instantiable utility class. */
+    private PdfSpooler() {}
+
+    /**
+     * Spool the given content to a new temporary file under {@code spoolDir}.
+     *
+     * @param content  upload bytes, in order; buffers are released by this method
+     * @param spoolDir directory for spool files (created if missing)
+     * @param maxBytes maximum accepted upload size in bytes
+     * @return a {@link Mono} emitting the {@link SpooledPdf}; the caller owns the file and must
+     *         {@link SpooledPdf#close() close} it. On error or cancellation the file is deleted here.
+     */
+    public static Mono<SpooledPdf> spool(Flux<DataBuffer> content, Path spoolDir, long maxBytes) {
+        return Mono.defer(() -> {
+            final Path file;
+            try {
+                Files.createDirectories(spoolDir);
+                file = Files.createTempFile(spoolDir, "upload-", ".pdf");
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+
+            UploadGuard guard = new UploadGuard(maxBytes);
+            Flux<DataBuffer> checked = content.handle((buf, sink) -> {
+                try {
+                    guard.accept(buf);
+                    sink.next(buf);
+                } catch (IllegalArgumentException e) {
+                    DataBufferUtils.release(buf);
+                    sink.error(e);
+                }
+            });
+
+            return DataBufferUtils.write(checked, file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                    .then(Mono.fromCallable(() -> new SpooledPdf(file, guard.finish(), guard.digestHex())))
+                    .doOnError(e -> SpooledPdf.deleteQuietly(file))
+                    .doOnCancel(() -> SpooledPdf.deleteQuietly(file));
+        });
+    }
+
+    /**
+     * Per-upload validation state: signature bytes seen so far, the running size and digest.
+     * Not thread-safe; a reactive stream delivers chunks sequentially.
+     */
+    private static final class UploadGuard {
+        private final long maxBytes;
+        private final MessageDigest sha256;
+        private long total;
+        private int signatureMatched;
+
+        UploadGuard(long maxBytes) {
+            this.maxBytes = maxBytes;
+            try {
+                this.sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e); // mandatory in every JRE
+            }
+        }
+
+        /**
+         * Validate the next chunk.
+         *
+         * @throws IllegalArgumentException if the signature does not match or the cap is exceeded
+         */
+        void accept(DataBuffer buf) {
+            int readable = buf.readableByteCount();
+            int start = buf.readPosition();
+            for (int i = 0; i < readable && signatureMatched < SIGNATURE.length; i++) {
+                if (buf.getByte(start + i) != SIGNATURE[signatureMatched]) {
+                    throw new IllegalArgumentException("Not a valid PDF header");
+                }
+                signatureMatched++;
+            }
+            total += readable;
+            if (total > maxBytes) throw new IllegalArgumentException("File too large");
+
+            // read-only views over the chunk: the buffer's own read position is untouched
+            try (DataBuffer.ByteBufferIterator it = buf.readableByteBuffers()) {
+                while (it.hasNext()) sha256.update(it.next());
+            }
+        }
+
+        /**
+         * Validate end-of-stream conditions.
+         *
+         * @return total number of bytes spooled
+         * @throws IllegalArgumentException if the upload was empty or shorter than the signature
+         */
+        long finish() {
+            if (total == 0) throw new IllegalArgumentException("Empty upload");
+            if (signatureMatched < SIGNATURE.length) throw new IllegalArgumentException("Not a valid PDF header");
+            return total;
+        }
+
+        /**
+         * @return lowercase hex SHA-256 of all accepted bytes; call once, after {@link #finish()}
+         */
+        String digestHex() {
+            return HexFormat.of().formatHex(sha256.digest());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.bds.pdf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A validated PDF upload that has been written to a temporary spool file by {@link PdfSpooler}.
+ * <p>
+ * The file is owned by whoever holds this handle; {@link #close()} deletes it. Closing is
+ * idempotent and never throws, so it is safe to call from reactive cleanup hooks.
+ *
+ * @param path      location of the spool file
+ * @param sizeBytes number of bytes written (always &gt; 0)
+ * @param sha256    lowercase hex SHA-256 of the uploaded bytes, computed while spooling
+ * @since 1.1
+ */
+public record SpooledPdf(Path path, long sizeBytes, String sha256) implements AutoCloseable {
+
+    /**
+     * Delete the spool file, ignoring errors.
+     */
+    @Override
+    public void close() {
+        deleteQuietly(path);
+    }
+
+    /**
+     * Best-effort file deletion used for spool cleanup.
+     *
+     * @param file file to delete; missing files are ignored
+     */
+    static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignore) {
+            // spool dir lives under tmp; a leftover file is harmless
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.bds.workload;
+
+/**
+ * What one measured workload run produced, and the training label chosen from it.
+ *
+ * @param value       the workload's own result (bytes written, pixels rendered, characters)
+ * @param heapPeakMb  heap peak, per {@code bds.workload.measurement}
+ * @param allocatedMb heap the job allocated (allocation measurement), else {@link Double#NaN}
+ * @param offHeapMb   direct + mapped buffers the job left in use
+ * @param rssMb       peak resident memory the window added (RSS or cgroup), sampled below the
+ *                    process's lifetime high-water mark; {@link Double#NaN} where the OS does not
+ *                    report it
+ * @param labelSource which of the above the label is built from ({@code bds.workload.label}, or
+ *                    {@code heap+off-heap} when {@code combined} could not use rss)
+ * @param labelMb     the training label, {@link Double#NaN} if its source is unavailable
+ *                    ({@code rss} where the OS does not report resident memory)
+ * @since 1.1
+ */
+public record Measurement(long value, double heapPeakMb, double allocatedMb, double offHeapMb, double rssMb,
+                          String labelSource, double labelMb) {
+
+    /** @return {@code true} if {@link #labelMb()} can be trained on */
+    public boolean labelled() {
+        return Double.isFinite(labelMb);
+    }
+}
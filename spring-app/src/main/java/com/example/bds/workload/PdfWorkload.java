@@ -0,0 +1,46 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A representative piece of PDF processing whose heap peak is used as the training label
+ * ({@code measured_peak_mb}) for an upload.
+ * <p>
+ * Implementations do the work the production path would do with the document (watermarking,
+ * rasterizing, extracting text), so the label reflects real memory behaviour rather than the
+ * cost of reading the file. They are Spring beans; {@link WorkloadRunner} picks one by
+ * {@link #name()} ({@code bds.workload.kind}), so adding a workload means adding a bean.
+ *
+ * <h2>Contract</h2>
+ * <ul>
+ *   <li>{@link #run} is called on a {@link WorkloadRunner} thread, inside a
+ *       {@link com.example.bds.ml.MemorySampler}, and may block.</li>
+ *   <li>It must open and close its own {@link org.apache.pdfbox.pdmodel.PDDocument}, so the
+ *       document's memory is part of the measurement.</li>
+ *   <li>It returns a work-dependent count (bytes written, pixels, characters) so the work has an
+ *       observable result and cannot be skipped.</li>
+ *   <li>Implementations are stateless and thread-safe.</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+public interface PdfWorkload {
+
+    /**
+     * @return the name used to select this workload ({@code bds.workload.kind})
+     */
+    String name();
+
+    /**
+     * Process the document.
+     *
+     * @param pdf      the spooled upload
+     * @param features its extracted features (e.g. {@code dpi_estimate} for rendering)
+     * @return a count of what was produced
+     * @throws IOException if the document cannot be read or written
+     */
+    long run(Path pdf, PdfFeatures features) throws IOException;
+}
@@ -0,0 +1,69 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Renders every page to an RGB bitmap at the document's own resolution, as a thumbnailing or
+ * OCR pre-processing step would.
+ * <p>
+ * The resolution is the extracted {@code dpi_estimate}, clamped to
+ * [{@value #MIN_DPI}, {@code bds.workload.raster.max-dpi}]; text-only documents (estimate 0)
+ * render at {@value #MIN_DPI}. One page bitmap is alive at a time, so the peak is driven by the
+ * largest page at that resolution plus the decoded images on it.
+ *
+ * @since 1.1
+ */
+@Component
+public class RasterizeWorkload implements PdfWorkload {
+
+    static final int MIN_DPI = 72;
+
+    private final int maxDpi;
+
+    /**
+     * @param maxDpi highest rendering resolution (property {@code bds.workload.raster.max-dpi})
+     * @throws IllegalArgumentException if {@code maxDpi} is below {@value #MIN_DPI}
+     */
+    public RasterizeWorkload(@Value("${bds.workload.raster.max-dpi:300}") int maxDpi) {
+        if (maxDpi < MIN_DPI) throw new IllegalArgumentException("bds.workload.raster.max-dpi must be >= " + MIN_DPI);
+        this.maxDpi = maxDpi;
+    }
+
+    @Override
+    public String name() {
+        return "rasterize";
+    }
+
+    /**
+     * @return pixels rendered
+     */
+    @Override
+    public long run(Path pdf, PdfFeatures features) throws IOException {
+        float dpi = dpi(features.dpi_estimate());
+        long pixels = 0;
+        try (PDDocument doc = Loader.loadPDF(pdf.toFile())) {
+            PDFRenderer renderer = new PDFRenderer(doc);
+            renderer.setSubsamplingAllowed(false);
+            for (int i = 0, n = doc.getNumberOfPages(); i < n; i++) {
+                BufferedImage page = renderer.renderImageWithDPI(i, dpi, ImageType.RGB);
+                pixels += (long) page.getWidth() * page.getHeight();
+            }
+        }
+        return pixels;
+    }
+
+    /** Rendering resolution for a document's estimate. */
+    float dpi(int estimate) {
+        return Math.max(MIN_DPI, Math.min(maxDpi, estimate));
+    }
+}
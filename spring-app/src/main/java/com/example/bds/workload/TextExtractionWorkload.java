@@ -0,0 +1,39 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Extracts the text of every page in reading order, as an indexing step would.
+ * <p>
+ * Font parsing, glyph positioning and the accumulated text dominate; scanned documents without
+ * a text layer are cheap here, which is exactly what their label should say for this workload.
+ *
+ * @since 1.1
+ */
+@Component
+public class TextExtractionWorkload implements PdfWorkload {
+
+    @Override
+    public String name() {
+        return "text";
+    }
+
+    /**
+     * @return characters extracted
+     */
+    @Override
+    public long run(Path pdf, PdfFeatures features) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(pdf.toFile())) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+            return stripper.getText(doc).length();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.util.Matrix;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Stamps a translucent diagonal text watermark on every page and re-serializes the document,
+ * discarding the output.
+ * <p>
+ * This is the stamping path of a typical document pipeline: the whole object graph is loaded,
+ * every page's content stream is appended to, and the full file is written back, so the peak
+ * grows with page count and embedded resources.
+ *
+ * @since 1.1
+ */
+@Component
+public class WatermarkWorkload implements PdfWorkload {
+
+    private static final String TEXT = "ROUTED";
+    private static final float FONT_SIZE = 64;
+
+    @Override
+    public String name() {
+        return "watermark";
+    }
+
+    /**
+     * @return bytes of the watermarked document
+     */
+    @Override
+    public long run(Path pdf, PdfFeatures features) throws IOException {
+        try (PDDocument doc = Loader.loadPDF(pdf.toFile())) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+            PDExtendedGraphicsState translucent = new PDExtendedGraphicsState();
+            translucent.setNonStrokingAlphaConstant(0.2f);
+            for (PDPage page : doc.getPages()) {
+                PDRectangle box = page.getMediaBox();
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page,
+                        PDPageContentStream.AppendMode.APPEND, true, true)) {
+                    cs.setGraphicsStateParameters(translucent);
+                    cs.beginText();
+                    cs.setFont(font, FONT_SIZE);
+                    cs.setTextMatrix(Matrix.getRotateInstance(Math.PI / 4,
+                            box.getWidth() / 4, box.getHeight() / 4));
+                    cs.showText(TEXT);
+                    cs.endText();
+                }
+            }
+            CountingOutputStream out = new CountingOutputStream();
+            doc.save(out);
+            return out.count;
+        }
+    }
+
+    /** Discards bytes, counting them. */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
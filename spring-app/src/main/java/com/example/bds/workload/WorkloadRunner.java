@@ -0,0 +1,301 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.jfr.PhaseEvent;
+import com.example.bds.ml.MemorySampler;
+import com.example.bds.ml.ProcessMemory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the configured {@link PdfWorkload} inside a {@link MemorySampler} and
+ * {@link ProcessMemory} readings to label uploads with a measured peak.
+ *
+ * <h2>Measurement</h2>
+ * With {@code bds.workload.measurement=allocation} (the default) the label is the job's own
+ * retained-peak estimate from per-thread allocation counters
+ * ({@link MemorySampler#measureAllocations}): other jobs and requests do not show up in it, so it
+ * stays meaningful however many uploads run at once, and no thread or GC is spent per job.
+ * {@code heap} reports the whole-heap high-water mark while the job ran
+ * ({@link MemorySampler#measure}), which counts everything else running in the JVM.
+ *
+ * <h2>Label</h2>
+ * {@code bds.workload.label} picks the training label from the {@link Measurement}:
+ * <ul>
+ *   <li>{@code heap} — the heap peak above.</li>
+ *   <li>{@code off-heap} — direct + mapped NIO buffers the job left in use.</li>
+ *   <li>{@code rss} — peak resident memory the job's window added (process RSS or the
+ *       container's cgroup, whichever grew more); process-wide, so neighbours' native memory
+ *       counts too. Below the process's lifetime high-water mark the peak comes from sampling
+ *       every {@code bds.workload.rss-sample-interval} ({@link ProcessMemory.Window}), so spikes
+ *       shorter than that can be missed; with sampling off it is only net growth.</li>
+ *   <li>{@code combined} (default) — heap + off-heap, raised to rss when the job had the workload
+ *       pool to itself for its whole window. Alone, resident growth is mostly this job's, and it
+ *       catches native memory the JVM does not account for. With other jobs running, rss holds
+ *       their growth too, so it is ignored and the label stays the job's own; the
+ *       {@link Measurement#labelSource()} is then {@code heap+off-heap}. Uploads being extracted
+ *       at the same time are not tracked and can still add to a lone job's rss.</li>
+ * </ul>
+ * Where RSS is not reported (not Linux) {@code rss} is {@link Double#NaN}, which callers treat as
+ * "no label" ({@link Measurement#labelled()}), and {@code combined} falls back to heap + off-heap.
+ *
+ * <h2>Executor</h2>
+ * Workloads run on a dedicated fixed pool ({@code bds-workload-N} daemon threads) with a bounded
+ * queue, not on {@code boundedElastic}: what limits them is heap, not cores. The pool size is
+ * half of the max heap divided by {@code bds.workload.heap-per-job}, at least 1, capped by
+ * {@code bds.workload.max-concurrency} when that is positive; the other half of the heap is left
+ * to the rest of the application. A job that finds {@code bds.workload.queue-capacity} jobs
+ * already waiting fails with {@link RejectedExecutionException} (mapped to 503).
+ *
+ * <h2>Label quality</h2>
+ * In {@code heap} mode jobs running side by side see each other's allocations; a pool of 1 gives
+ * the cleanest labels there, at the cost of throughput.
+ *
+ * <h2>Metrics (Micrometer)</h2>
+ * <ul>
+ *   <li><code>bds.workload.duration</code> (timer) — tag {@code workload}.</li>
+ *   <li><code>bds.workload.active</code>, <code>bds.workload.queue.depth</code>,
+ *       <code>bds.workload.concurrency</code> (gauges).</li>
+ *   <li><code>bds.workload.rejected</code> (counter) — jobs refused by a full queue.</li>
+ *   <li><code>bds.workload.allocated</code> (summary, MB) — bytes a job allocated (allocation
+ *       mode only).</li>
+ *   <li><code>bds.workload.offheap</code>, <code>bds.workload.rss</code> (summaries, MB) — off-heap
+ *       and resident growth per job.</li>
+ * </ul>
+ *
+ * <h2>Configuration properties</h2>
+ * <ul>
+ *   <li><code>bds.workload.kind</code> (default <code>watermark</code>) — {@code watermark}|{@code rasterize}|{@code text}</li>
+ *   <li><code>bds.workload.heap-per-job</code> (default <code>512MB</code>)</li>
+ *   <li><code>bds.workload.max-concurrency</code> (default <code>0</code> = derived from the heap only)</li>
+ *   <li><code>bds.workload.queue-capacity</code> (default <code>32</code>)</li>
+ *   <li><code>bds.workload.measurement</code> (default <code>allocation</code>) — {@code allocation}|{@code heap}</li>
+ *   <li><code>bds.workload.label</code> (default <code>combined</code>) — {@code heap}|{@code off-heap}|{@code rss}|{@code combined}</li>
+ *   <li><code>bds.workload.rss-sample-interval</code> (default <code>10ms</code>, {@code 0} = end points only)</li>
+ * </ul>
+ *
+ * @since 1.1
+ */
+@Component
+@Slf4j
+public class WorkloadRunner {
+
+    private final PdfWorkload workload;
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final boolean allocationMode;
+    private final String label;
+    private final Duration rssSampleInterval;
+    private final Timer duration;
+    private final Counter rejected;
+    private final DistributionSummary allocated;
+    private final DistributionSummary offHeap;
+    private final DistributionSummary rss;
+
+    /** Measured jobs running now, and jobs ever started; see {@link #enter()}. Guarded by {@code this}. */
+    private int running;
+    private long started;
+
+    /**
+     * @param workloads      available workload beans
+     * @param kind           name of the workload to run (property {@code bds.workload.kind})
+     * @param heapPerJob     heap budget of one job (property {@code bds.workload.heap-per-job})
+     * @param maxConcurrency upper bound on the pool, {@code 0} for none (property {@code bds.workload.max-concurrency})
+     * @param queueCapacity  jobs allowed to wait (property {@code bds.workload.queue-capacity})
+     * @param measurement    {@code allocation} or {@code heap} (property {@code bds.workload.measurement})
+     * @param label          training label source (property {@code bds.workload.label})
+     * @param rssSampleInterval resident memory sampling period, {@code 0} for none
+     *                       (property {@code bds.workload.rss-sample-interval})
+     * @param registry       registry for the workload metrics
+     * @throws IllegalArgumentException if {@code kind}, {@code measurement} or {@code label} is
+     *                                  unknown, or a limit is out of range
+     */
+    public WorkloadRunner(List<PdfWorkload> workloads,
+                          @Value("${bds.workload.kind:watermark}") String kind,
+                          @Value("${bds.workload.heap-per-job:512MB}") DataSize heapPerJob,
+                          @Value("${bds.workload.max-concurrency:0}") int maxConcurrency,
+                          @Value("${bds.workload.queue-capacity:32}") int queueCapacity,
+                          @Value("${bds.workload.measurement:allocation}") String measurement,
+                          @Value("${bds.workload.label:combined}") String label,
+                          @Value("${bds.workload.rss-sample-interval:10ms}") Duration rssSampleInterval,
+                          MeterRegistry registry) {
+        this.workload = workloads.stream().filter(w -> w.name().equals(kind)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown bds.workload.kind: " + kind + " (known: "
+                        + workloads.stream().map(PdfWorkload::name).collect(Collectors.joining(", ")) + ")"));
+        this.allocationMode = switch (measurement) {
+            case "allocation" -> true;
+            case "heap" -> false;
+            default -> throw new IllegalArgumentException("Unknown bds.workload.measurement: " + measurement);
+        };
+        if (!List.of("heap", "off-heap", "rss", "combined").contains(label)) {
+            throw new IllegalArgumentException("Unknown bds.workload.label: " + label);
+        }
+        this.label = label;
+        this.rssSampleInterval = rssSampleInterval;
+        if (queueCapacity < 1) throw new IllegalArgumentException("bds.workload.queue-capacity must be >= 1");
+        int threads = concurrency(Runtime.getRuntime().maxMemory(), heapPerJob.toBytes(), maxConcurrency);
+
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "bds-workload-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.scheduler = Schedulers.fromExecutorService(executor, "bds-workload");
+
+        this.duration = Timer.builder("bds.workload.duration").tag("workload", workload.name()).register(registry);
+        this.rejected = registry.counter("bds.workload.rejected");
+        this.allocated = DistributionSummary.builder("bds.workload.allocated").baseUnit("megabytes")
+                .description("Heap allocated by one measured workload").register(registry);
+        this.offHeap = DistributionSummary.builder("bds.workload.offheap").baseUnit("megabytes")
+                .description("Direct and mapped buffers left in use by one measured workload").register(registry);
+        this.rss = DistributionSummary.builder("bds.workload.rss").baseUnit("megabytes")
+                .description("Resident memory added while one workload ran").register(registry);
+        Gauge.builder("bds.workload.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+        Gauge.builder("bds.workload.queue.depth", executor, e -> e.getQueue().size()).register(registry);
+        Gauge.builder("bds.workload.concurrency", executor, ThreadPoolExecutor::getMaximumPoolSize).register(registry);
+        log.info("Workload '{}' on {} thread(s), queue {}, {} measurement, {} label",
+                workload.name(), threads, queueCapacity, measurement, label);
+    }
+
+    /**
+     * Jobs that fit in half of the heap, at least one.
+     *
+     * @param maxHeapBytes   {@link Runtime#maxMemory()}
+     * @param heapPerJob     budget per job, bytes
+     * @param maxConcurrency cap, or {@code <= 0} for none
+     * @return pool size
+     * @throws IllegalArgumentException if {@code heapPerJob} is not positive
+     */
+    static int concurrency(long maxHeapBytes, long heapPerJob, int maxConcurrency) {
+        if (heapPerJob <= 0) throw new IllegalArgumentException("bds.workload.heap-per-job must be > 0");
+        int byHeap = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxHeapBytes / 2 / heapPerJob));
+        return maxConcurrency > 0 ? Math.min(byHeap, maxConcurrency) : byHeap;
+    }
+
+    /**
+     * Run the workload on a spooled upload and measure its memory.
+     *
+     * @param pdf      the spooled PDF
+     * @param features its features
+     * @return a {@link Mono} emitting the workload's count, its memory readings and the label
+     *         (see the class notes); errors with
+     *         {@link RejectedExecutionException} if the queue is full, or
+     *         {@link UncheckedIOException} if the document cannot be processed
+     */
+    public Mono<Measurement> measure(Path pdf, PdfFeatures features) {
+        return Mono.fromCallable(() -> {
+                    Timer.Sample sample = Timer.start();
+                    PhaseEvent.Workload event = new PhaseEvent.Workload();
+                    event.begin();
+                    MemorySampler.Result<Long> heap;
+                    ProcessMemory.Growth growth;
+                    long ticket = enter();
+                    boolean alone;
+                    try {
+                        ProcessMemory.Window window = ProcessMemory.open(rssSampleInterval);
+                        try {
+                            heap = allocationMode
+                                    ? MemorySampler.measureAllocations(() -> run(pdf, features))
+                                    : MemorySampler.measure(() -> run(pdf, features));
+                        } finally {
+                            sample.stop(duration);
+                            event.commit(PhaseEvent.bytes(features.size_mb()), features.pages());
+                            growth = window.close();
+                        }
+                    } finally {
+                        alone = exit(ticket);
+                    }
+                    if (allocationMode) allocated.record(heap.allocatedMb());
+                    offHeap.record(growth.offHeapMb());
+                    if (!Double.isNaN(growth.rssMb())) rss.record(growth.rssMb());
+                    return measurement(heap, growth, alone);
+                })
+                .subscribeOn(scheduler)
+                .doOnError(RejectedExecutionException.class, e -> rejected.increment());
+    }
+
+    private Measurement measurement(MemorySampler.Result<Long> heap, ProcessMemory.Growth growth, boolean alone) {
+        double jvm = heap.peakMb() + growth.offHeapMb();
+        String source = label;
+        double labelMb = switch (label) {
+            case "heap" -> heap.peakMb();
+            case "off-heap" -> growth.offHeapMb();
+            case "rss" -> growth.rssMb();
+            default -> {
+                if (alone && !Double.isNaN(growth.rssMb())) yield Math.max(jvm, growth.rssMb());
+                source = "heap+off-heap";
+                yield jvm;
+            }
+        };
+        return new Measurement(heap.value(), heap.peakMb(), heap.allocatedMb(), growth.offHeapMb(),
+                growth.rssMb(), source, labelMb);
+    }
+
+    /**
+     * Start tracking a measured job.
+     *
+     * @return ticket for {@link #exit}; negative if another job was already running
+     */
+    private synchronized long enter() {
+        long ticket = ++started;
+        return running++ == 0 ? ticket : -ticket;
+    }
+
+    /**
+     * Stop tracking a measured job.
+     *
+     * @param ticket from {@link #enter()}
+     * @return {@code true} if no other job ran at any point between the two calls
+     */
+    private synchronized boolean exit(long ticket) {
+        running--;
+        return ticket > 0 && started == ticket;
+    }
+
+    /** @return name of the workload being run */
+    public String workload() {
+        return workload.name();
+    }
+
+    private long run(Path pdf, PdfFeatures features) {
+        try {
+            return workload.run(pdf, features);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Stop the pool; running jobs are interrupted.
+     */
+    @PreDestroy
+    void close() {
+        scheduler.dispose();
+        executor.shutdownNow();
+    }
+}
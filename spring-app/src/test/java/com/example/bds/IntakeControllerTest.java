@@ -0,0 +1,98 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "spring.profiles.active=test",
+        "springdoc.api-docs.enabled=false",
+        "springdoc.swagger-ui.enabled=false",
+        "bds.batch.max-size=3"
+})
+@AutoConfigureWebTestClient
+class IntakeControllerTest {
+
+    @Autowired WebTestClient web;
+
+    @MockBean
+    MemorySpikeService memorySpikeService;
+
+    @TempDir
+    static Path tmp;
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry r) {
+        r.add("bds.data-dir", () -> tmp.resolve("bds").toString());
+        r.add("triage.base-url", () -> "http://127.0.0.1:65535");
+    }
+
+    private static String doc(int pages) {
+        return """
+                {"size_mb":1.0,"pages":%d,"image_page_ratio":0.0,"dpi_estimate":72,"avg_image_size_kb":0.0,\
+                "fonts_embedded_pct":1.0,"xref_error_count":0,"ocr_required":0,"producer":"x"}""".formatted(pages);
+    }
+
+    private void echoPagesAsPrediction() {
+        when(memorySpikeService.predictBatch(anyList(), anyInt())).thenAnswer(inv -> {
+            List<PdfFeatures> batch = inv.getArgument(0);
+            return Mono.just(batch.stream().map(f -> new RouteDecision("STANDARD_PATH", f.pages())).toList());
+        });
+    }
+
+    @Test
+    void jsonArray_returnsDecisionsInOrder() {
+        echoPagesAsPrediction();
+        web.post().uri("/v1/intake/route:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[" + doc(3) + "," + doc(1) + "," + doc(2) + "]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].predicted_peak_mb").isEqualTo(3.0)
+                .jsonPath("$[1].predicted_peak_mb").isEqualTo(1.0)
+                .jsonPath("$[2].predicted_peak_mb").isEqualTo(2.0);
+    }
+
+    @Test
+    void ndjson_returnsDecisionsInOrder() {
+        echoPagesAsPrediction();
+        web.post().uri("/v1/intake/route:batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(doc(7) + "\n" + doc(5) + "\n")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].predicted_peak_mb").isEqualTo(7.0)
+                .jsonPath("$[1].predicted_peak_mb").isEqualTo(5.0);
+    }
+
+    @Test
+    void oversizedBatch_rejected400() {
+        echoPagesAsPrediction();
+        web.post().uri("/v1/intake/route:batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[" + doc(1) + "," + doc(2) + "," + doc(3) + "," + doc(4) + "]")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bds;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryBudgetTest {
+
+    private static MemoryBudget budget(long bytes, int maxQueue, Duration timeout) {
+        return new MemoryBudget(true, DataSize.ofBytes(bytes), maxQueue, timeout, DataSize.ofBytes(30),
+                new SimpleMeterRegistry());
+    }
+
+    @Test
+    void waitersAreAdmittedInOrderAsReservationsAreReleased() {
+        MemoryBudget b = budget(100, 4, Duration.ofSeconds(5));
+        MemoryBudget.Permit first = b.reserve(60).block();
+        Mono<MemoryBudget.Permit> big = b.reserve(80).cache();
+        Mono<MemoryBudget.Permit> small = b.reserve(10).cache();
+        big.subscribe();
+        small.subscribe();
+        // 10 would fit, but waits behind 80 so the large reservation is not starved
+        assertThat(b.queueDepth()).isEqualTo(2);
+        assertThat(b.reservedBytes()).isEqualTo(60);
+
+        first.release();
+        first.release(); // idempotent
+        assertThat(big.block(Duration.ofSeconds(1)).bytes()).isEqualTo(80);
+        assertThat(small.block(Duration.ofSeconds(1)).bytes()).isEqualTo(10);
+        assertThat(b.reservedBytes()).isEqualTo(90);
+        assertThat(b.queueDepth()).isZero();
+
+        // no prediction (fallback sentinel): the default workload reservation
+        assertThat(b.workloadBytes(-1)).isEqualTo(30);
+        assertThat(b.workloadBytes(2.0)).isEqualTo(2 * 1024 * 1024);
+    }
+
+    @Test
+    void fullQueueIsShedAndLongWaitsTimeOut() {
+        MemoryBudget b = budget(100, 1, Duration.ofMillis(100));
+        assertThat(b.withReservation(100, p -> Mono.just(p.bytes())).block()).isEqualTo(100L);
+        assertThat(b.reservedBytes()).isZero();
+
+        // larger than the whole budget: cut down so it can still run alone
+        MemoryBudget.Permit all = b.reserve(1_000).block();
+        assertThat(all.bytes()).isEqualTo(100);
+        Mono<MemoryBudget.Permit> waiting = b.reserve(10).cache();
+        waiting.subscribe(p -> { }, e -> { });
+
+        assertThatThrownBy(() -> b.reserve(10).block())
+                .isInstanceOfSatisfying(MemoryBudget.RejectedException.class, e -> assertThat(e.queueFull()).isTrue());
+        assertThatThrownBy(() -> waiting.block(Duration.ofSeconds(2)))
+                .isInstanceOfSatisfying(MemoryBudget.RejectedException.class, e -> assertThat(e.queueFull()).isFalse());
+        assertThat(b.queueDepth()).isZero();
+
+        all.release();
+        assertThat(b.reservedBytes()).isZero();
+    }
+
+    @Test
+    void releaseRacingTheQueueTimeoutNeverLosesThePermit() throws Exception {
+        MemoryBudget b = budget(100, 4, Duration.ofMillis(1));
+        for (int i = 0; i < 500; i++) {
+            MemoryBudget.Permit held = b.reserve(100).block();
+            CompletableFuture<MemoryBudget.Permit> waiting = b.reserve(100).toFuture();
+            // release as the 1 ms timeout fires: either the waiter is admitted or it is refused
+            LockSupport.parkNanos(1_000_000);
+            held.release();
+            try {
+                waiting.get(1, TimeUnit.SECONDS).release();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(MemoryBudget.RejectedException.class);
+            }
+            assertThat(b.reservedBytes()).isZero();
+            assertThat(b.queueDepth()).isZero();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import com.example.bds.ml.CircuitBreaker;
+import com.example.bds.ml.PredictionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemorySpikeServiceTest {
+
+    @TempDir
+    Path tmp;
+
+    private MemorySpikeService newService() throws Exception {
+        return newService("online", 1000);
+    }
+
+    private MemorySpikeService newService(String trainer, int retrainEvery) throws Exception {
+        return newService(null, trainer, retrainEvery);
+    }
+
+    private MemorySpikeService newService(PredictionService sidecar, String trainer, int retrainEvery) throws Exception {
+        var registry = new SimpleMeterRegistry();
+        return new MemorySpikeService(sidecar, tmp.toString(), tmp.resolve("training.csv").toString(),
+                tmp.resolve("model.json").toString(), tmp.resolve("tree_ensemble.json").toString(),
+                tmp.resolve("store").toString(), retrainEvery, 1.0, 1e6,
+                Duration.ZERO, trainer, 0.0, 10_000, 256, "drop-oldest", 3500, 10_000, Duration.ofMinutes(10), registry, registry);
+    }
+
+    @Test
+    void sampleCount_isSeededFromCsvImportThenTrackedAndPersisted() throws Exception {
+        Files.writeString(tmp.resolve("training.csv"), """
+                size_mb,pages,image_page_ratio,dpi_estimate,avg_image_size_kb,fonts_embedded_pct,xref_error_count,ocr_required,producer,label_mb
+                1.0,10,0.5,300,64.0,0.8,0,0,"Scanner",900.0
+                2.0,20,0.0,150,0.0,1.0,0,0,"Word",-1.0
+
+                3.0,30,1.0,300,128.0,0.0,0,1,"Scanner",2500.0
+                """);
+
+        MemorySpikeService service = newService();
+        assertThat(service.sampleCount()).isEqualTo(2);
+
+        var f = new PdfFeatures(1.5, 12, 0.25, 200, 32.0, 0.9, 0, 0, "Scanner");
+        service.train(f, 1200.0).block();
+        service.train(f, -1.0).block();
+        service.train(f, Double.NaN).block(); // label source unavailable: stored, not counted
+        assertThat(service.awaitTrainingIdle(Duration.ofSeconds(5))).isTrue();
+        assertThat(service.sampleCount()).isEqualTo(3);
+        service.close();
+
+        // restart: counts come back from the store; the exported CSV re-imports to the same
+        assertThat(newService().sampleCount()).isEqualTo(3);
+        assertThat(Files.readAllLines(tmp.resolve("training.csv"))).hasSize(1 + 6);
+        deleteRecursively(tmp.resolve("store"));
+        assertThat(newService().sampleCount()).isEqualTo(3);
+    }
+
+    @Test
+    void ridgeModelWithStandardizationSurvivesRestart() throws Exception {
+        MemorySpikeService service = newService("ridge", 4);
+        for (int pages = 10; pages <= 40; pages += 10) {
+            service.train(new PdfFeatures(5.0, pages, 0.5, 300, 64.0, 0.8, 0, 0, "Scanner"), 100 + 50.0 * pages).block();
+        }
+        var probe = new PdfFeatures(5.0, 25, 0.5, 300, 64.0, 0.8, 0, 0, "Scanner");
+        assertThat(service.awaitTrainingIdle(Duration.ofSeconds(5))).isTrue();
+        assertThat(service.hasLocalModel()).isTrue();
+        assertThat(service.predictOnly(probe).block().predicted_peak_mb()).isEqualTo(1350.0);
+        service.close();
+
+        MemorySpikeService restarted = newService("ridge", 4);
+        restarted.initAsyncModelLoad();
+        for (int i = 0; i < 100 && !restarted.hasLocalModel(); i++) Thread.sleep(20);
+        assertThat(restarted.predictOnly(probe).block().predicted_peak_mb()).isEqualTo(1350.0);
+        restarted.close();
+    }
+
+    @Test
+    void batchScoresMatchSingleDocumentPredictions() throws Exception {
+        MemorySpikeService service = newService("online", 8);
+        for (int i = 0; i < 8; i++) {
+            var f = new PdfFeatures(1 + i, 10 * i, (i % 4) / 4.0, 150 + 10 * i, 2.0 * i, 0.5, i % 3, i % 2, "Scanner");
+            service.train(f, 300 + 40.0 * f.size_mb() + 2.0 * f.pages()).block();
+        }
+        assertThat(service.awaitTrainingIdle(Duration.ofSeconds(5))).isTrue();
+
+        var docs = List.of(
+                new PdfFeatures(2.5, 40, 0.25, 170, 3.0, 0.5, 1, 0, "a"),
+                new PdfFeatures(80.0, 900, 1.0, 300, 500.0, 0.1, 0, 1, "b"),
+                new PdfFeatures(0.1, 1, 0.0, 72, 0.0, 1.0, 0, 0, "c"));
+        List<RouteDecision> batch = service.predictBatch(docs, 4).block();
+        assertThat(batch).containsExactlyElementsOf(docs.stream().map(d -> service.predictOnly(d).block()).toList());
+        assertThat(batch.get(1).decision()).isEqualTo("ROUTE_BIG_MEMORY");
+        service.close();
+    }
+
+    @Test
+    void exportedTreeEnsembleIsPreferredOverTheLinearModel() throws Exception {
+        Files.writeString(tmp.resolve("tree_ensemble.json"), """
+                {"format": "bds-gbt/1", "inputs": ["producer=Scanner", "pages"], "init": 1000.0,
+                 "learning_rate": 1.0,
+                 "trees": [{"feature": [1, 0, 0], "threshold": [100.5, 0, 0],
+                            "left": [1, -1, -1], "right": [2, -1, -1], "value": [0, 0, 4000]}]}
+                """);
+        MemorySpikeService service = newService("online", 1);
+        service.train(new PdfFeatures(1.0, 10, 0.0, 150, 0.0, 1.0, 0, 0, "Scanner"), 150.0).block();
+        assertThat(service.awaitTrainingIdle(Duration.ofSeconds(5))).isTrue();
+        service.initAsyncModelLoad();
+        for (int i = 0; i < 100 && service.modelVersion() < 2; i++) Thread.sleep(20);
+
+        var small = new PdfFeatures(1.0, 10, 0.0, 150, 0.0, 1.0, 0, 0, "Scanner");
+        var large = new PdfFeatures(1.0, 500, 0.0, 150, 0.0, 1.0, 0, 0, "Scanner");
+        assertThat(service.predictOnly(small).block()).isEqualTo(new RouteDecision("STANDARD_PATH", 1000.0));
+        assertThat(service.predictOnly(large).block()).isEqualTo(new RouteDecision("ROUTE_BIG_MEMORY", 5000.0));
+        assertThat(service.predictBatch(List.of(small, large), 1).block())
+                .containsExactly(new RouteDecision("STANDARD_PATH", 1000.0), new RouteDecision("ROUTE_BIG_MEMORY", 5000.0));
+        service.close();
+    }
+
+    @Test
+    void sidecarOutageReplaysRecentDecisionsBeforeTheBlindFallback() throws Exception {
+        AtomicBoolean up = new AtomicBoolean(true);
+        WebClient web = WebClient.builder().exchangeFunction(req -> up.get()
+                ? Mono.just(ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body("{\"decision\": \"ROUTE_BIG_MEMORY\", \"predicted_peak_mb\": 4200.0}")
+                        .build())
+                : Mono.error(new IllegalStateException("sidecar down"))).build();
+        var breaker = new CircuitBreaker.Settings(10, 2, 50, Duration.ofSeconds(1), 100, Duration.ofMinutes(1), 1);
+        var sidecar = new PredictionService(web, false, 1, Duration.ofMillis(1), 1, 1, Duration.ofSeconds(1),
+                true, breaker, web, false, null, new SimpleMeterRegistry());
+        MemorySpikeService service = newService(sidecar, "online", 1000);
+
+        var seen = new PdfFeatures(1.0, 10, 0.0, 150, 0.0, 1.0, 0, 0, "Scanner");
+        var unseen = new PdfFeatures(2.0, 20, 0.0, 150, 0.0, 1.0, 0, 0, "Scanner");
+        var sidecarDecision = new RouteDecision("ROUTE_BIG_MEMORY", 4200.0);
+        assertThat(service.predictOnly(seen).block()).isEqualTo(sidecarDecision);
+
+        up.set(false);
+        assertThat(service.predictOnly(seen).block()).isEqualTo(sidecarDecision);
+        assertThat(service.predict(unseen).block())
+                .isEqualTo(new MemorySpikeService.Prediction(new RouteDecision("STANDARD_PATH", -1.0),
+                        MemorySpikeService.Source.FALLBACK));
+        assertThat(sidecar.breakerState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(service.predict(seen).block().source()).isEqualTo(MemorySpikeService.Source.RECENT);
+        service.close();
+    }
+
+    @Test
+    void sidecarOutageScoresAMissingFeatureWithTheLinearModel() throws Exception {
+        WebClient web = WebClient.builder()
+                .exchangeFunction(req -> Mono.error(new IllegalStateException("sidecar down"))).build();
+        var sidecar = new PredictionService(web, false, 1, Duration.ofMillis(1), 1, 1, Duration.ofSeconds(1),
+                false, null, web, false, null, new SimpleMeterRegistry());
+        MemorySpikeService service = newService(sidecar, "ridge", 4);
+        for (int pages = 10; pages <= 40; pages += 10) {
+            service.train(new PdfFeatures(5.0, pages, 0.5, 300, 64.0, 0.8, 0, 0, "Scanner"), 100 + 50.0 * pages).block();
+        }
+        assertThat(service.awaitTrainingIdle(Duration.ofSeconds(5))).isTrue();
+
+        // the local path declines a NaN feature; with the sidecar down the linear model imputes it
+        var missingSize = new PdfFeatures(Double.NaN, 25, 0.5, 300, 64.0, 0.8, 0, 0, "Scanner");
+        assertThat(service.scoreLocal(missingSize)).isNaN();
+        MemorySpikeService.Prediction p = service.predict(missingSize).block();
+        assertThat(p.source()).isEqualTo(MemorySpikeService.Source.LINEAR);
+        assertThat(p.source().cacheable()).isFalse();
+        assertThat(p.decision()).isEqualTo(new RouteDecision("STANDARD_PATH", 1350.0));
+        service.close();
+    }
+
+    @Test
+    void unknownTrainerIsRejected() {
+        assertThatThrownBy(() -> newService("sgd", 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void deleteRecursively(Path dir) throws Exception {
+        try (var files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrainingQueueTest {
+
+    private static final PdfFeatures F = new PdfFeatures(1.0, 1, 0.0, 72, 0.0, 1.0, 0, 0, "x");
+
+    @Test
+    void dropOldestKeepsNewestSamplesAndDrainsInBatches() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch firstBatch = new CountDownLatch(1);
+        List<Double> applied = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        TrainingQueue queue = new TrainingQueue(3, 2, TrainingQueue.Overflow.DROP_OLDEST, batch -> {
+            firstBatch.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batchSizes.add(batch.size());
+            batch.forEach(s -> applied.add(s.labelMb()));
+        }, registry);
+
+        queue.submit(F, 0);                       // taken by the trainer, which then waits
+        assertThat(firstBatch.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int i = 1; i <= 5; i++) queue.submit(F, i); // 1 and 2 are dropped
+        assertThat(queue.depth()).isEqualTo(3);
+        assertThat(registry.get("bds.train.queue.depth").gauge().value()).isEqualTo(3.0);
+        assertThat(registry.get("bds.train.queue.lag").gauge().value()).isGreaterThan(0.0);
+        assertThat(registry.get("bds.train.queue.dropped").counter().count()).isEqualTo(2.0);
+
+        release.countDown();
+        assertThat(queue.awaitIdle(Duration.ofSeconds(5))).isTrue();
+        assertThat(applied).containsExactly(0.0, 3.0, 4.0, 5.0);
+        assertThat(batchSizes).containsExactly(1, 2, 1);
+        assertThat(registry.get("bds.train.queue.lag").gauge().value()).isZero();
+        queue.close(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void unknownOverflowPolicyIsRejected() {
+        assertThat(TrainingQueue.Overflow.parse("BLOCK")).isEqualTo(TrainingQueue.Overflow.BLOCK);
+        assertThatThrownBy(() -> TrainingQueue.Overflow.parse("drop-newest"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.bds;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UploadCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final UploadCache cache = new UploadCache(100, Duration.ofMinutes(5), registry);
+    private final PdfFeatures features = new PdfFeatures(1.2, 10, 0.5, 300, 64.0, 0.8, 0, 0, "Scanner");
+
+    @Test
+    void decisionIsInvalidatedByModelVersion_featuresAreKept() {
+        cache.putFeatures("abc", features);
+        cache.putDecision("abc", features, new RouteDecision("STANDARD_PATH", 900.0), 3);
+
+        assertThat(cache.decision("abc", 3)).isEqualTo(new RouteDecision("STANDARD_PATH", 900.0));
+        assertThat(cache.decision("abc", 4)).isNull();
+        assertThat(cache.features("abc")).isEqualTo(features);
+        assertThat(cache.features("other")).isNull();
+
+        assertThat(registry.get("bds.upload.cache.requests").tags("kind", "decision", "result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("bds.upload.cache.requests").tags("kind", "decision", "result", "miss").counter().count()).isEqualTo(1);
+        assertThat(registry.get("bds.upload.cache.requests").tags("kind", "features", "result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void fallbackDecisionIsNotCached() {
+        cache.putFeatures("abc", features);
+        cache.putDecision("abc", features, new RouteDecision("STANDARD_PATH", -1.0), 0);
+        assertThat(cache.decision("abc", 0)).isNull();
+    }
+}
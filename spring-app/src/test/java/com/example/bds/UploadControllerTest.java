@@ -3,12 +3,15 @@ package com.example.bds;
 
 import com.example.bds.dto.PdfFeatures;
 import com.example.bds.dto.RouteDecision;
+import com.example.bds.workload.Measurement;
+import com.example.bds.workload.WorkloadRunner;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.MediaType;
@@ -19,10 +22,17 @@ import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.stream.Stream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @SpringBootTest(properties = {
@@ -38,6 +48,9 @@ class UploadControllerTest {
     @MockBean
     MemorySpikeService memorySpikeService;
 
+    @SpyBean
+    WorkloadRunner workloadRunner;
+
     @TempDir
     static Path tmp; // per-test-run unique directory
 
@@ -53,14 +66,15 @@ class UploadControllerTest {
         r.add("triage.base-url", () -> "http://127.0.0.1:65535");
         // cap upload size at 5 MB so we can exercise an "oversized" case deterministically
         r.add("bds.max-bytes", () -> String.valueOf(5 * 1024 * 1024));
+        r.add("bds.spool-dir", () -> tmp.resolve("spool").toString());
     }
 
     @Test
     void uploadPdf_scoresAndReturnsDecision() {
         // Controller flow:
-        // 1) predictOnly (before)
+        // 1) predict (before)
         // 2) train (optional)
-        // 3) predictOnly (after)
+        // 3) predict (after)
         // plus threshold/hasLocalModel/sampleCount queries
 
         when(memorySpikeService.threshold()).thenReturn(3500.0);
@@ -68,10 +82,10 @@ class UploadControllerTest {
         when(memorySpikeService.sampleCount()).thenReturn(0, 1);          // before/after
 
         // predict before training
-        when(memorySpikeService.predictOnly(any(PdfFeatures.class)))
-                .thenReturn(Mono.just(new RouteDecision("STANDARD_PATH", 1234.5)))
+        when(memorySpikeService.predict(any(PdfFeatures.class)))
+                .thenReturn(Mono.just(local(new RouteDecision("STANDARD_PATH", 1234.5))))
                 // predict after training
-                .thenReturn(Mono.just(new RouteDecision("STANDARD_PATH", 1234.5)));
+                .thenReturn(Mono.just(local(new RouteDecision("STANDARD_PATH", 1234.5))));
 
         // training completes successfully
         when(memorySpikeService.train(any(PdfFeatures.class), anyDouble()))
@@ -98,6 +112,86 @@ class UploadControllerTest {
                 .jsonPath("$.trained_this_upload").isEqualTo(true);
     }
 
+    @Test
+    void unavailableLabel_isNotTrainedOn_andReportedAsNull() {
+        when(memorySpikeService.threshold()).thenReturn(3500.0);
+        when(memorySpikeService.predict(any(PdfFeatures.class)))
+                .thenReturn(Mono.just(local(new RouteDecision("STANDARD_PATH", 1234.5))));
+        // bds.workload.label=rss on a host that does not report resident memory
+        doReturn(Mono.just(new Measurement(3, 12.0, Double.NaN, 0.5, Double.NaN, "rss", Double.NaN)))
+                .when(workloadRunner).measure(any(), any());
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", new ClassPathResource("samples/text.pdf"))
+                .contentType(MediaType.APPLICATION_PDF);
+
+        web.post().uri("/v1/upload/pdf")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .bodyValue(builder.build())
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.measured_peak_mb").doesNotExist()
+                .jsonPath("$.measured_rss_mb").doesNotExist()
+                .jsonPath("$.measured_heap_mb").isEqualTo(12.0)
+                .jsonPath("$.label_source").isEqualTo("rss")
+                .jsonPath("$.trained_this_upload").isEqualTo(false);
+        verify(memorySpikeService, never()).train(any(), anyDouble());
+    }
+
+    @Test
+    void outageTimeDecision_isNotCached() {
+        when(memorySpikeService.threshold()).thenReturn(3500.0);
+        when(memorySpikeService.modelVersion()).thenReturn(42L); // no entry from other tests
+        // breaker open: the sidecar's recent decision is replayed
+        when(memorySpikeService.predict(any(PdfFeatures.class))).thenReturn(Mono.just(
+                new MemorySpikeService.Prediction(new RouteDecision("ROUTE_BIG_MEMORY", 4000.0),
+                        MemorySpikeService.Source.RECENT)));
+        when(memorySpikeService.train(any(PdfFeatures.class), anyDouble())).thenReturn(Mono.empty());
+
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", new ClassPathResource("samples/text.pdf"))
+                .contentType(MediaType.APPLICATION_PDF);
+
+        web.post().uri("/v1/upload/pdf")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .bodyValue(builder.build())
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.decision").isEqualTo("ROUTE_BIG_MEMORY");
+        // the after-decision is predicted again instead of served from the cache
+        verify(memorySpikeService, times(2)).predict(any(PdfFeatures.class));
+    }
+
+    private static MemorySpikeService.Prediction local(RouteDecision decision) {
+        return new MemorySpikeService.Prediction(decision, MemorySpikeService.Source.LOCAL);
+    }
+
+    @Test
+    void twoFileParts_rejected400_andNothingLeftSpooled() throws Exception {
+        MultipartBodyBuilder builder = new MultipartBodyBuilder();
+        builder.part("file", new ClassPathResource("samples/text.pdf"))
+                .contentType(MediaType.APPLICATION_PDF);
+        builder.part("file", new ClassPathResource("samples/text.pdf"))
+                .contentType(MediaType.APPLICATION_PDF);
+
+        web.post().uri("/v1/upload/pdf")
+                .contentType(MediaType.MULTIPART_FORM_DATA)
+                .bodyValue(builder.build())
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.error").isEqualTo("Only one file part is allowed");
+
+        Path spool = tmp.resolve("spool");
+        if (Files.isDirectory(spool)) {
+            try (Stream<Path> files = Files.list(spool)) {
+                assertThat(files).isEmpty();
+            }
+        }
+    }
+
     @Test
     void nonPdfContentType_rejected4xx() {
         // Build a plain-text payload and mark the *part* as text/plain.
@@ -0,0 +1,96 @@
+package com.example.bds.bench;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.pdf.PdfFeatureExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap-array vs memory-mapped feature extraction.
+ * <p>
+ * {@code heapArray} mirrors the original upload path: the whole document sits in a {@code byte[]}
+ * and PDFBox parses from it. {@code mappedFile} maps the same bytes from disk.
+ * <p>
+ * Latency is the JMH score. Heap cost shows up in two places:
+ * <ul>
+ *   <li>{@code -prof gc} reports {@code gc.alloc.rate.norm} (bytes allocated per extraction);</li>
+ *   <li>the trial teardown prints the highest heap-pool peak seen during any iteration, which
+ *       includes the live {@code byte[]} copy for {@code heapArray}.</li>
+ * </ul>
+ * Run: {@code mvn -Pbench test -Djmh.args="ExtractionBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+@State(Scope.Benchmark)
+public class ExtractionBenchmark {
+
+    /** Page count of the synthetic document; every page is a scan. */
+    @Param({"50", "500"})
+    public int pages;
+
+    private final PdfFeatureExtractor extractor = new PdfFeatureExtractor();
+    private Path file;
+    private byte[] bytes;
+    private long maxPeakBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = Files.createTempFile("bench-", ".pdf");
+        Files.write(file, SamplePdfs.scanned(pages, 1));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+        System.out.printf("%n[heap] pages=%d max heap-pool peak %.1f MB%n", pages, maxPeakBytes / (1024.0 * 1024.0));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void recordPeaks() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        maxPeakBytes = Math.max(maxPeakBytes, peak);
+    }
+
+    @Benchmark
+    public PdfFeatures heapArray() throws Exception {
+        // The old upload path: the full document is materialized before parsing.
+        bytes = Files.readAllBytes(file);
+        return extractor.extract(bytes);
+    }
+
+    @Benchmark
+    public PdfFeatures mappedFile() throws Exception {
+        return extractor.extract(file);
+    }
+}
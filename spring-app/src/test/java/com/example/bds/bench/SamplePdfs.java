@@ -0,0 +1,66 @@
+package com.example.bds.bench;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic PDFs for benchmarks: a mix of "scanned" pages (one full-page JPEG
+ * each) and text pages, so both the image and the font branches of the extractor are exercised.
+ */
+public final class SamplePdfs {
+
+    private SamplePdfs() {}
+
+    /**
+     * Build a PDF with {@code pages} pages; every {@code imageEvery}-th page carries its own image.
+     *
+     * @param pages      number of pages
+     * @param imageEvery image page cadence (1 = every page is a scan)
+     * @return the serialized document
+     */
+    public static byte[] scanned(int pages, int imageEvery) throws IOException {
+        Random rnd = new Random(42);
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument doc = new PDDocument();
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            doc.getDocumentInformation().setProducer("Scanner");
+            for (int i = 0; i < pages; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    if (i % imageEvery == 0) {
+                        PDImageXObject img = JPEGFactory.createFromImage(doc, noise(rnd, 240, 320), 0.6f);
+                        cs.drawImage(img, 0, 0, PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight());
+                    } else {
+                        cs.beginText();
+                        cs.setFont(font, 11);
+                        cs.newLineAtOffset(72, 720);
+                        cs.showText("Page " + i + " of a synthetic benchmark document");
+                        cs.endText();
+                    }
+                }
+            }
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static BufferedImage noise(Random rnd, int w, int h) {
+        BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) img.setRGB(x, y, rnd.nextInt(0x1000000));
+        }
+        return img;
+    }
+}
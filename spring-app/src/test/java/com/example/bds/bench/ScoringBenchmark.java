@@ -0,0 +1,114 @@
+package com.example.bds.bench;
+
+import com.example.bds.MemorySpikeService;
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import com.example.bds.ml.TreeEnsembleModel;
+import com.example.bds.ml.TreeEnsembles;
+import com.example.bds.pdf.PdfFeatureExtractor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of one local prediction.
+ * <ul>
+ *   <li>{@code scoreLocal} — the model's dot product over the record fields; {@code -prof gc}
+ *       should report {@code gc.alloc.rate.norm} of 0 B/op.</li>
+ *   <li>{@code predictOnly} — scoring plus decision counter and the returned
+ *       {@code Mono<RouteDecision>}, which is all that is left to allocate.</li>
+ *   <li>{@code legacyScore} — the previous shape: {@code toVector} copy, loop, and a registry
+ *       lookup with varargs tags for the counter.</li>
+ *   <li>{@code treeScore} — {@link TreeEnsembleModel} with the sidecar's shape (100 trees of
+ *       depth 3, six producer categories, random splits); also 0 B/op. Compare with a sidecar
+ *       round trip in {@code SidecarHopBenchmark}.</li>
+ * </ul>
+ * Run: {@code mvn -Pbench test -Djmh.args="ScoringBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScoringBenchmark {
+
+    private Path dir;
+    private MemorySpikeService service;
+    private MeterRegistry registry;
+    private double[] weights;
+    private double bias;
+    private TreeEnsembleModel trees;
+    private final PdfFeatures features = new PdfFeatures(12.5, 240, 0.75, 300, 180.0, 0.4, 1, 1, "Scanner");
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("bench-scoring-");
+        registry = new SimpleMeterRegistry();
+        service = new MemorySpikeService(null, dir.toString(), dir.resolve("training.csv").toString(),
+                dir.resolve("model.json").toString(), dir.resolve("tree_ensemble.json").toString(),
+                dir.resolve("store").toString(), 64, 1.0, 1e6,
+                Duration.ZERO, "online", 1.0, 1024, 64, "drop-oldest", 3500, 10_000, Duration.ofMinutes(10), registry, registry);
+        for (int i = 0; i < 64; i++) {
+            var f = new PdfFeatures(1 + i, 10 * i, (i % 4) / 4.0, 150 + i, 2.0 * i, 0.5, i % 3, i % 2, "Scanner");
+            service.train(f, 200 + 30.0 * f.size_mb() + 2.0 * f.pages()).block();
+        }
+        if (!service.awaitTrainingIdle(Duration.ofSeconds(30)) || !service.hasLocalModel()) {
+            throw new IllegalStateException("no local model after training");
+        }
+        weights = service.snapshot().beta();
+        bias = service.scoreLocal(features) / 2; // any value; only the cost matters
+        trees = TreeEnsembleModel.parse(TreeEnsembles.random(100, 3, 0.0, 7).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public double scoreLocal() {
+        return service.scoreLocal(features);
+    }
+
+    @Benchmark
+    public RouteDecision predictOnly() {
+        return service.predictOnly(features).block();
+    }
+
+    @Benchmark
+    public double treeScore() {
+        return trees.predict(features);
+    }
+
+    @Benchmark
+    public double legacyScore() {
+        double[] x = PdfFeatureExtractor.toVector(features);
+        double y = bias;
+        for (int i = 0; i < weights.length; i++) y += weights[i] * x[i];
+        registry.counter("bds.route.decision", "decision", y >= 3500 ? "ROUTE_BIG_MEMORY" : "STANDARD_PATH",
+                "source", "local").increment();
+        return y;
+    }
+}
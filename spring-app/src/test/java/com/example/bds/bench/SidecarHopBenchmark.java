@@ -0,0 +1,134 @@
+package com.example.bds.bench;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import com.example.bds.ml.PredictionService;
+import com.example.bds.ml.SidecarHttp;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the app → sidecar hop against an in-process stub sidecar on loopback.
+ * <p>
+ * 32 JMH threads call {@code /predict} concurrently through {@link PredictionService}; the stub
+ * answers with a fixed body after {@code serverDelayMicros}, so the score is client and
+ * transport overhead. {@code SampleTime} mode reports p50/p99/p99.9 per profile:
+ * <ul>
+ *   <li>{@code baseline} — the previous client: {@code HttpClient.create()} with a 2 s response
+ *       timeout on the shared global pool;</li>
+ *   <li>{@code http11} — {@link SidecarHttp} pool (16 connections, bounded queue) over HTTP/1.1;</li>
+ *   <li>{@code h2c} — the same pool with cleartext HTTP/2 multiplexing;</li>
+ *   <li>{@code uds} — the {@code http11} profile over a Unix domain socket instead of TCP
+ *       loopback ({@code triage.socket-path}); needs native epoll (Linux).</li>
+ * </ul>
+ * Run: {@code mvn -Pbench test -Djmh.args="SidecarHopBenchmark"}; for TCP vs domain socket only,
+ * add {@code -p profile=http11,uds}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class SidecarHopBenchmark {
+
+    @Param({"baseline", "http11", "h2c", "uds"})
+    public String profile;
+
+    @Param({"0", "200"})
+    public int serverDelayMicros;
+
+    private static final byte[] BODY =
+            "{\"predicted_peak_mb\":812.5,\"decision\":\"STANDARD_PATH\",\"threshold_mb\":3500.0}"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    private final PdfFeatures features = new PdfFeatures(12.5, 240, 0.75, 300, 180.0, 0.4, 1, 1, "Scanner");
+
+    private Path socketDir;
+    private DisposableServer server;
+    private ConnectionProvider pool;
+    private PredictionService client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Duration delay = Duration.ofNanos(serverDelayMicros * 1_000L);
+        boolean uds = profile.equals("uds");
+        String socketPath = null;
+        HttpServer stub = HttpServer.create().host("127.0.0.1").port(0);
+        if (uds) {
+            socketDir = Files.createTempDirectory("bds-hop");
+            socketPath = socketDir.resolve("sidecar.sock").toString();
+            DomainSocketAddress address = new DomainSocketAddress(socketPath);
+            stub = HttpServer.create().bindAddress(() -> address);
+        }
+        server = stub
+                .protocol(profile.equals("h2c") ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .route(r -> r.post("/predict", (req, res) -> req.receive().then()
+                        .then(delay.isZero() ? Mono.empty() : Mono.delay(delay).then())
+                        .then(res.header("Content-Type", "application/json").sendByteArray(Mono.just(BODY)).then())))
+                .bindNow();
+
+        HttpClient http;
+        if (profile.equals("baseline")) {
+            http = HttpClient.create().responseTimeout(Duration.ofSeconds(2));
+        } else {
+            pool = SidecarHttp.pool("bench", new SidecarHttp.PoolSettings(16, 256, Duration.ofMillis(500),
+                    Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofSeconds(30)), null);
+            http = SidecarHttp.client(pool, uds ? "http11" : profile, socketPath,
+                    Duration.ofMillis(250), Duration.ofSeconds(2));
+        }
+        WebClient web = WebClient.builder()
+                .baseUrl(uds ? "http://localhost" : "http://127.0.0.1:" + server.port())
+                .clientConnector(new ReactorClientHttpConnector(http))
+                .build();
+        client = new PredictionService(web, false, 1, Duration.ofMillis(1), 1, 1, Duration.ofSeconds(1),
+                false, null, web, false, null, null);
+        // open connections and load codecs before 32 threads start at once
+        Flux.range(0, 64).flatMap(i -> client.predictViaSidecar(features), 16).blockLast();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (pool != null) pool.disposeLater().block();
+        server.disposeNow();
+        if (socketDir != null) {
+            Files.deleteIfExists(socketDir.resolve("sidecar.sock"));
+            Files.deleteIfExists(socketDir);
+        }
+    }
+
+    @Benchmark
+    public RouteDecision predict() {
+        return client.predictViaSidecar(features).block();
+    }
+}
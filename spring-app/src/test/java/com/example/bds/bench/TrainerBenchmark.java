@@ -0,0 +1,99 @@
+package com.example.bds.bench;
+
+import com.example.bds.ml.GradientDescentTrainer;
+import com.example.bds.ml.LinearModel;
+import com.example.bds.ml.RecursiveLeastSquares;
+import com.example.bds.ml.RidgeTrainer;
+import com.example.bds.ml.Trainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fit time and accuracy of the batch trainers on synthetic training columns.
+ * <p>
+ * The columns mimic the eight numeric features (sizes in MB, page counts in the thousands, DPI
+ * in the hundreds, ratios and flags in {@code [0, 1]}) with a known linear target plus noise.
+ * Fit time is the JMH score; the trial teardown prints the training RMSE of the last fitted
+ * model, which shows how far the fixed-epoch gradient descent is from the least-squares optimum.
+ * <p>
+ * Run: {@code mvn -Pbench test -Djmh.args="TrainerBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class TrainerBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"gd", "ridge", "rls"})
+    public String trainer;
+
+    private static final double[] TRUE_WEIGHTS = {25, 0.8, 600, 1.5, 2.0, -150, 40, 900};
+
+    private double[][] x;
+    private double[] y;
+    private Trainer impl;
+    private LinearModel last;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random rnd = new Random(42);
+        x = new double[8][rows];
+        y = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            x[0][i] = rnd.nextDouble() * 200;        // size_mb
+            x[1][i] = rnd.nextInt(3000);             // pages
+            x[2][i] = rnd.nextDouble();              // image_page_ratio
+            x[3][i] = 72 + rnd.nextInt(529);         // dpi_estimate
+            x[4][i] = rnd.nextDouble() * 500;        // avg_image_size_kb
+            x[5][i] = rnd.nextDouble();              // fonts_embedded_pct
+            x[6][i] = rnd.nextInt(5);                // xref_error_count
+            x[7][i] = rnd.nextBoolean() ? 1 : 0;     // ocr_required
+            double t = 300 + rnd.nextGaussian() * 50;
+            for (int j = 0; j < 8; j++) t += TRUE_WEIGHTS[j] * x[j][i];
+            y[i] = t;
+        }
+        impl = switch (trainer) {
+            case "gd" -> new GradientDescentTrainer(1e-5, 8);
+            case "ridge" -> new RidgeTrainer(1.0);
+            case "rls" -> RecursiveLeastSquares.trainer(1.0, 1e6);
+            default -> throw new IllegalArgumentException(trainer);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        double[] row = new double[8];
+        double ss = 0.0;
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < 8; j++) row[j] = x[j][i];
+            double e = last.predict(row) - y[i];
+            ss += e * e;
+        }
+        System.out.printf("%n[accuracy] trainer=%s rows=%d rmse=%.1f MB%n", trainer, rows, Math.sqrt(ss / rows));
+    }
+
+    @Benchmark
+    public LinearModel fit() {
+        last = impl.fit(x, y, rows);
+        return last;
+    }
+}
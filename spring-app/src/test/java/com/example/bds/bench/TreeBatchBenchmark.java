@@ -0,0 +1,92 @@
+package com.example.bds.bench;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.ml.TreeEnsembleModel;
+import com.example.bds.ml.TreeEnsembles;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch scoring of a sidecar-shaped tree ensemble (100 trees, depth 3, six producers).
+ * <ul>
+ *   <li>{@code perDocument} — {@link TreeEnsembleModel#predict(PdfFeatures)} in a loop;</li>
+ *   <li>{@code scalar} — {@link TreeEnsembleModel#predictScalar} over the encoded matrix;</li>
+ *   <li>{@code vector} — {@link TreeEnsembleModel#predictVectorized}, SIMD across rows;</li>
+ *   <li>{@code encode} — building the column-major matrix, paid once per batch by both matrix
+ *       paths.</li>
+ * </ul>
+ * The bench profile passes {@code --add-modules=jdk.incubator.vector}; without it {@code vector}
+ * fails. Run: {@code mvn -Pbench test -Djmh.args="TreeBatchBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBatchBenchmark {
+
+    @Param({"64", "1024", "10000"})
+    public int rows;
+
+    @Param({"3", "6"})
+    public int depth;
+
+    private TreeEnsembleModel model;
+    private List<PdfFeatures> docs;
+    private float[] x;
+    private double[] out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        model = TreeEnsembleModel.parse(TreeEnsembles.random(100, depth, 0.0, 7).getBytes(StandardCharsets.UTF_8));
+        Random rnd = new Random(1);
+        docs = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            docs.add(new PdfFeatures(rnd.nextDouble() * 20, rnd.nextInt(200), rnd.nextDouble(), 72 + rnd.nextInt(400),
+                    rnd.nextDouble() * 300, rnd.nextDouble(), rnd.nextInt(3), rnd.nextInt(2),
+                    TreeEnsembles.PRODUCERS[rnd.nextInt(TreeEnsembles.PRODUCERS.length)]));
+        }
+        x = model.encode(docs);
+        out = new double[rows];
+    }
+
+    @Benchmark
+    public double[] perDocument() {
+        for (int i = 0; i < rows; i++) out[i] = model.predict(docs.get(i));
+        return out;
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        model.predictScalar(x, rows, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] vector() {
+        model.predictVectorized(x, rows, out);
+        return out;
+    }
+
+    @Benchmark
+    public float[] encode() {
+        return model.encode(docs);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.bds.jfr;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PhaseProfilerTest {
+
+    private static volatile Object sink;
+
+    @Test
+    void phaseEventsBecomePerPhaseMetrics() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (PhaseProfiler profiler = new PhaseProfiler(true, "1000/s", Duration.ofMinutes(1), registry)) {
+            assertThat(profiler.running()).isTrue();
+            Thread.sleep(500); // let the stream start before the events it should see
+
+            PhaseEvent.Workload workload = new PhaseEvent.Workload();
+            workload.begin();
+            long until = System.nanoTime() + 300_000_000L;
+            while (System.nanoTime() < until) sink = new byte[64 * 1024];
+            workload.commit(4096, 3);
+            PhaseEvent.around(PhaseEvent.Predict::new, 4096, 3, Mono.just(1)).block();
+
+            // registered up front; wait for the events to be recorded
+            Timer workloadTime = registry.get("bds.phase.duration").tag("phase", "workload").timer();
+            Timer predictTime = registry.get("bds.phase.duration").tag("phase", "predict").timer();
+            DistributionSummary allocated = registry.get("bds.phase.allocated").tag("phase", "workload").summary();
+            long deadline = System.nanoTime() + 15_000_000_000L;
+            while (System.nanoTime() < deadline && (allocated.count() == 0 || predictTime.count() == 0)) {
+                Thread.sleep(100);
+            }
+            assertThat(workloadTime.count()).isEqualTo(1);
+            assertThat(workloadTime.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(250);
+            assertThat(workloadTime.takeSnapshot().histogramCounts()).isNotEmpty();
+            assertThat(allocated.totalAmount()).isPositive();
+            assertThat(registry.find("bds.phase.allocated").tag("phase", "predict").summary()).isNull();
+        }
+    }
+
+    @Test
+    void disabledProfilerStartsNothing() {
+        PhaseProfiler profiler = new PhaseProfiler(false, "100/s", Duration.ofMinutes(1), new SimpleMeterRegistry());
+        assertThat(profiler.running()).isFalse();
+        profiler.close();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private CircuitBreaker breaker() {
+        var settings = new CircuitBreaker.Settings(10, 4, 50, Duration.ofMillis(100), 50, Duration.ofSeconds(5), 2);
+        return new CircuitBreaker("test", settings, e -> !(e instanceof IllegalArgumentException), registry, now::get);
+    }
+
+    private static Mono<String> fail() {
+        return Mono.error(new IllegalStateException("down"));
+    }
+
+    /** A call that advances the fake clock by {@code millis} before succeeding. */
+    private Mono<String> takes(long millis) {
+        return Mono.fromSupplier(() -> {
+            now.addAndGet(Duration.ofMillis(millis).toNanos());
+            return "ok";
+        });
+    }
+
+    @Test
+    void opensOnFailureRateAndRejectsWithoutCalling() {
+        CircuitBreaker cb = breaker();
+        cb.protect(Mono.just("ok")).block();
+        cb.protect(Mono.just("ok")).block();
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> cb.protect(fail()).block()).hasMessageContaining("down");
+        }
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        AtomicInteger subscribed = new AtomicInteger();
+        assertThatThrownBy(() -> cb.protect(Mono.fromSupplier(subscribed::incrementAndGet)).block())
+                .isInstanceOf(CircuitBreaker.OpenException.class);
+        assertThat(subscribed).hasValue(0);
+        assertThat(registry.get("triage.breaker.state").gauge().value()).isEqualTo(1.0);
+        assertThat(registry.get("triage.breaker.calls").tag("outcome", "rejected").counter().count()).isEqualTo(1.0);
+        assertThat(registry.get("triage.breaker.transitions").tag("from", "closed").tag("to", "open")
+                .counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void halfOpenProbesCloseOrReopen() {
+        CircuitBreaker cb = breaker();
+        for (int i = 0; i < 4; i++) cb.protect(fail()).onErrorResume(e -> Mono.empty()).block();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        cb.protect(fail()).onErrorResume(e -> Mono.empty()).block();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        cb.protect(Mono.just("ok")).block();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        cb.protect(Mono.just("ok")).block();
+        cb.protect(Mono.just("ok")).block();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(registry.get("triage.breaker.failure.rate").gauge().value()).isEqualTo(-1.0);
+    }
+
+    @Test
+    void slowCallsOpenAndIgnoredErrorsDoNot() {
+        CircuitBreaker cb = breaker();
+        for (int i = 0; i < 4; i++) {
+            assertThatThrownBy(() -> cb.protect(Mono.error(new IllegalArgumentException("bad request"))).block())
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        for (int i = 0; i < 4; i++) cb.protect(takes(150)).block();
+        assertThat(cb.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(registry.get("triage.breaker.calls").tag("outcome", "slow").counter().count()).isEqualTo(4.0);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bds.ml;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeapPeakTrackerTest {
+
+    private static final long MB = 1 << 20;
+    private static volatile Object sink;
+
+    @Test
+    void windowSeesTheHeapBeforeACollectionThatFreedIt() throws Exception {
+        HeapPeakTracker tracker = HeapPeakTracker.shared();
+        System.gc();
+        Thread.sleep(50);
+        HeapPeakTracker.Window w = tracker.open();
+        long opened = w.peakBytes();
+
+        byte[][] held = new byte[48][];
+        for (int i = 0; i < held.length; i++) held[i] = new byte[(int) MB];
+        sink = held;
+        sink = null;
+        held = null;
+        System.gc(); // frees the 48 MB; only the pre-GC notification still knows about it
+
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (w.peakBytes() < opened + 40 * MB && System.nanoTime() < deadline) Thread.sleep(10);
+        w.close();
+        assertThat(w.peakBytes()).isGreaterThanOrEqualTo(opened + 40 * MB);
+        assertThat(tracker.usedHeapBytes()).isLessThan(w.peakBytes());
+    }
+
+    @Test
+    void windowStartsAtCurrentUsageAndCloseIsIdempotent() {
+        HeapPeakTracker tracker = HeapPeakTracker.shared();
+        HeapPeakTracker.Window w = tracker.open();
+        assertThat(w.peakBytes()).isPositive();
+        w.close();
+        long peak = w.peakBytes();
+        w.close();
+        assertThat(w.peakBytes()).isEqualTo(peak);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.bds.ml;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class MemorySamplerTest {
+
+    private static volatile Object sink;
+
+    @Test
+    void allocationModeCountsOnlyTheCallingThread() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread noisy = new Thread(() -> {
+            started.countDown();
+            while (!stop.get()) sink = new byte[1 << 20];
+        }, "noisy-neighbour");
+        noisy.setDaemon(true);
+        noisy.start();
+        started.await();
+        try {
+            MemorySampler.Result<Integer> r = MemorySampler.measureAllocations(() -> {
+                byte[][] held = new byte[32][];
+                for (int i = 0; i < held.length; i++) held[i] = new byte[1 << 20];
+                return held.length;
+            });
+            assertThat(r.value()).isEqualTo(32);
+            // 32 MB held plus a little bookkeeping; the neighbour's gigabytes are not in it
+            assertThat(r.allocatedMb()).isCloseTo(32, within(2.0));
+            assertThat(r.peakMb()).isPositive().isLessThanOrEqualTo(r.allocatedMb());
+        } finally {
+            stop.set(true);
+            noisy.join();
+        }
+    }
+
+    @Test
+    void allocationModePropagatesTaskFailures() {
+        assertThatThrownBy(() -> MemorySampler.measureAllocations(() -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("boom");
+        assertThat(MemorySampler.measure(() -> 1).allocatedMb()).isNaN();
+    }
+}
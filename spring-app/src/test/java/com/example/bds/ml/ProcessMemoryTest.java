@@ -0,0 +1,69 @@
+package com.example.bds.ml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ProcessMemoryTest {
+
+    private static final long MB = 1 << 20;
+
+    @Test
+    void readsProcStatusAndTheProcessCgroup(@TempDir Path dir) throws Exception {
+        Path status = Files.writeString(dir.resolve("status"),
+                "Name:\tjava\nVmHWM:\t  409600 kB\nVmRSS:\t  307200 kB\nThreads:\t42\n");
+        Path cgroup = Files.writeString(dir.resolve("cgroup"), "0::/kubepods/pod1/app\n");
+        Path leaf = Files.createDirectories(dir.resolve("fs/kubepods/pod1/app"));
+        Files.writeString(leaf.resolve("memory.current"), "536870912\n");
+        Files.writeString(leaf.resolve("memory.peak"), "805306368\n");
+
+        Path resolved = ProcessMemory.cgroupDir(cgroup, dir.resolve("fs"));
+        assertThat(resolved).isEqualTo(leaf);
+        ProcessMemory.Snapshot s = ProcessMemory.read(status, resolved);
+        assertThat(s.rssBytes()).isEqualTo(300 * MB);
+        assertThat(s.rssPeakBytes()).isEqualTo(400 * MB);
+        assertThat(s.cgroupBytes()).isEqualTo(512 * MB);
+        assertThat(s.cgroupPeakBytes()).isEqualTo(768 * MB);
+        assertThat(s.offHeapBytes()).isNotNegative();
+
+        ProcessMemory.Snapshot missing = ProcessMemory.read(dir.resolve("nope"), null);
+        assertThat(missing.rssBytes()).isEqualTo(-1);
+        assertThat(missing.cgroupPeakBytes()).isEqualTo(-1);
+        assertThat(ProcessMemory.between(missing, missing).rssMb()).isNaN();
+    }
+
+    @Test
+    void growthUsesARisenHighWaterMarkAsTheWindowPeak() {
+        // RSS HWM rose from 400 to 700 MB during the window: the window peaked at 700
+        var start = new ProcessMemory.Snapshot(300 * MB, 400 * MB, 10 * MB, -1, -1);
+        var end = new ProcessMemory.Snapshot(350 * MB, 700 * MB, 40 * MB, -1, -1);
+        ProcessMemory.Growth g = ProcessMemory.between(start, end);
+        assertThat(g.rssMb()).isCloseTo(400, within(1e-9));
+        assertThat(g.offHeapMb()).isCloseTo(30, within(1e-9));
+
+        // HWM unchanged: only the current values bound the window; the cgroup grew more
+        var quietStart = new ProcessMemory.Snapshot(300 * MB, 900 * MB, 40 * MB, 500 * MB, 2000 * MB);
+        var quietEnd = new ProcessMemory.Snapshot(320 * MB, 900 * MB, 20 * MB, 560 * MB, 2000 * MB);
+        ProcessMemory.Growth q = ProcessMemory.between(quietStart, quietEnd);
+        assertThat(q.rssMb()).isCloseTo(60, within(1e-9));
+        assertThat(q.offHeapMb()).isZero();
+    }
+
+    @Test
+    void sampledPeakBelowTheHighWaterMarkCounts() {
+        // warm process: a 250 MB spike freed before the end stays under the 900 MB HWM
+        var start = new ProcessMemory.Snapshot(300 * MB, 900 * MB, 0, -1, -1);
+        var end = new ProcessMemory.Snapshot(310 * MB, 900 * MB, 0, -1, -1);
+        assertThat(ProcessMemory.between(start, end).rssMb()).isCloseTo(10, within(1e-9));
+        assertThat(ProcessMemory.between(start, end, 550 * MB, -1).rssMb()).isCloseTo(250, within(1e-9));
+
+        // a live window closes with a reading either way
+        assertThat(ProcessMemory.open(Duration.ofMillis(1)).close().offHeapMb()).isNotNegative();
+    }
+}
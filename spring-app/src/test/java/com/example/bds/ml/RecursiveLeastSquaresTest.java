@@ -0,0 +1,68 @@
+package com.example.bds.ml;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RecursiveLeastSquaresTest {
+
+    @Test
+    void onlineUpdatesMatchBatchFitAndRecoverCoefficients() {
+        int n = 2000;
+        double[][] x = new double[3][n];
+        double[] y = new double[n];
+        Random rnd = new Random(7);
+        for (int i = 0; i < n; i++) {
+            x[0][i] = rnd.nextDouble() * 50;      // size_mb-like
+            x[1][i] = rnd.nextInt(500);           // pages-like
+            x[2][i] = rnd.nextBoolean() ? 1 : 0;  // flag
+            y[i] = i % 10 == 0 ? -1.0             // unlabelled rows are skipped
+                    : 120 + 30 * x[0][i] + 2.5 * x[1][i] + 400 * x[2][i] + rnd.nextGaussian();
+        }
+
+        // raw coordinates online vs. standardized batch fit: same least-squares solution
+        RecursiveLeastSquares online = new RecursiveLeastSquares(3, 1.0, 1e6);
+        double[] row = new double[3];
+        for (int i = 0; i < n; i++) {
+            if (y[i] < 0) continue;
+            for (int j = 0; j < 3; j++) row[j] = x[j][i];
+            online.update(row, y[i]);
+        }
+        RecursiveLeastSquares batch = RecursiveLeastSquares.fit(3, 1.0, 1e6, x, y, n);
+
+        assertThat(online.samples()).isEqualTo(batch.samples()).isEqualTo(1800);
+        assertThat(online.weights()).containsExactly(new double[]{30, 2.5, 400}, within(0.1));
+        assertThat(online.bias()).isCloseTo(120, within(1.0));
+        for (double[] probe : new double[][]{{0, 0, 0}, {25, 250, 1}, {50, 499, 0}}) {
+            assertThat(online.model().predict(probe)).isCloseTo(batch.model().predict(probe), within(1e-3));
+        }
+
+        // online updates continue in the batch fit's frozen coordinates
+        batch.update(new double[]{10, 100, 1}, 120 + 300 + 250 + 400);
+        assertThat(batch.model().predict(new double[]{10, 100, 1})).isCloseTo(1070, within(1.0));
+    }
+
+    @Test
+    void fitWithForgettingSurvivesAConstantFeature() {
+        // lambda^n underflows long before the last row; the constant column adds nothing to X^T X
+        int n = 10_000;
+        double[][] x = new double[2][n];
+        double[] y = new double[n];
+        Random rnd = new Random(11);
+        for (int i = 0; i < n; i++) {
+            x[0][i] = rnd.nextDouble() * 50;
+            x[1][i] = 1.0;
+            y[i] = 120 + 30 * x[0][i] + rnd.nextGaussian();
+        }
+
+        RecursiveLeastSquares rls = RecursiveLeastSquares.fit(2, 0.9, 1e6, x, y, n);
+
+        assertThat(rls.samples()).isEqualTo(n);
+        assertThat(rls.model().predict(new double[]{10, 1})).isCloseTo(420, within(5.0));
+        rls.update(new double[]{20, 1}, 720);
+        assertThat(rls.model().predict(new double[]{20, 1})).isCloseTo(720, within(5.0));
+    }
+}
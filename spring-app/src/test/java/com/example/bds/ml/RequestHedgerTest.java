@@ -0,0 +1,84 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RequestHedgerTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private double calls(String outcome) {
+        return registry.get("triage.hedge.calls").tag("outcome", outcome).counter().count();
+    }
+
+    private static Mono<String> slow() {
+        return Mono.delay(Duration.ofMillis(300)).thenReturn("primary");
+    }
+
+    @Test
+    void slowPrimaryIsHedgedWithinBudgetAndFirstAnswerWins() {
+        // 50%: the four warm-up calls leave two tokens, each later call adds half a token
+        var hedger = new RequestHedger(new RequestHedger.Settings(90, Duration.ofMillis(20), 50, 16, 4), registry);
+        AtomicInteger backups = new AtomicInteger();
+        Mono<String> backup = Mono.fromSupplier(() -> {
+            backups.incrementAndGet();
+            return "backup";
+        });
+        for (int i = 0; i < 4; i++) assertThat(hedger.hedge(Mono.just("primary"), backup).block()).isEqualTo("primary");
+        assertThat(backups).hasValue(0);
+        assertThat(hedger.delay()).isEqualTo(Duration.ofMillis(20));
+
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        for (int i = 0; i < 4; i++) {
+            String answer = hedger.hedge(slow().doOnCancel(() -> primaryCancelled.set(true)), backup)
+                    .block(Duration.ofSeconds(5));
+            assertThat(answer).isEqualTo("backup");
+        }
+        assertThat(primaryCancelled).isTrue();
+        assertThat(hedger.hedge(slow(), backup).block(Duration.ofSeconds(5))).isEqualTo("primary");
+
+        assertThat(backups).hasValue(4);
+        assertThat(calls("sent")).isEqualTo(4.0);
+        assertThat(calls("won")).isEqualTo(4.0);
+        assertThat(calls("over_budget")).isEqualTo(1.0);
+    }
+
+    @Test
+    void primaryErrorsPropagateAndBackupErrorsAreIgnored() {
+        var hedger = new RequestHedger(new RequestHedger.Settings(50, Duration.ofMillis(10), 100, 8, 1), registry);
+        hedger.hedge(Mono.just("warm"), Mono.just("warm")).block();
+
+        assertThatThrownBy(() -> hedger.hedge(Mono.error(new IllegalStateException("down")), Mono.just("backup"))
+                .block(Duration.ofSeconds(5))).hasMessageContaining("down");
+        assertThat(hedger.hedge(slow(), Mono.error(new IllegalStateException("replica down")))
+                .block(Duration.ofSeconds(5))).isEqualTo("primary");
+        assertThat(calls("sent")).isEqualTo(1.0);
+        assertThat(calls("won")).isZero();
+    }
+
+    @Test
+    void primaryErrorAfterTheHedgeWaitsForTheBackup() {
+        var hedger = new RequestHedger(new RequestHedger.Settings(50, Duration.ofMillis(10), 100, 8, 1), registry);
+        hedger.hedge(Mono.just("warm"), Mono.just("warm")).block();
+        Mono<String> lateFailure = Mono.delay(Duration.ofMillis(50))
+                .then(Mono.error(() -> new IllegalStateException("down")));
+
+        assertThat(hedger.hedge(lateFailure, Mono.delay(Duration.ofMillis(200)).thenReturn("backup"))
+                .block(Duration.ofSeconds(5))).isEqualTo("backup");
+        assertThatThrownBy(() -> hedger.hedge(lateFailure,
+                        Mono.delay(Duration.ofMillis(200)).then(Mono.error(new IllegalStateException("replica down"))))
+                .block(Duration.ofSeconds(5)))
+                .hasMessageContaining("down")
+                .satisfies(e -> assertThat(e.getSuppressed()).extracting(Throwable::getMessage).contains("replica down"));
+        assertThat(calls("sent")).isEqualTo(2.0);
+        assertThat(calls("won")).isEqualTo(1.0);
+    }
+}
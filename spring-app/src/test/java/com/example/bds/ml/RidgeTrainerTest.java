@@ -0,0 +1,62 @@
+package com.example.bds.ml;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RidgeTrainerTest {
+
+    /** size_mb-like, pages-like, constant and unlabelled rows; y = 200 + 40 size + 3 pages + noise. */
+    private static double[][] x;
+    private static double[] y;
+    private static final int N = 5000;
+
+    static {
+        x = new double[3][N];
+        y = new double[N];
+        Random rnd = new Random(11);
+        for (int i = 0; i < N; i++) {
+            x[0][i] = rnd.nextDouble() * 100;
+            x[1][i] = rnd.nextInt(2000);
+            x[2][i] = 300;
+            y[i] = i % 7 == 0 ? -1.0 : 200 + 40 * x[0][i] + 3 * x[1][i] + rnd.nextGaussian();
+        }
+    }
+
+    @Test
+    void closedFormRecoversCoefficientsWithConstantColumn() {
+        LinearModel m = new RidgeTrainer(0.0).fit(x, y, N);
+
+        assertThat(m.scales()[2]).isEqualTo(1.0);
+        assertThat(m.weights()[2]).isCloseTo(0.0, within(1e-9));
+        assertThat(m.predict(new double[]{0, 0, 300})).isCloseTo(200, within(0.5));
+        assertThat(m.predict(new double[]{50, 1000, 300})).isCloseTo(200 + 2000 + 3000, within(0.5));
+        // the RLS batch fit solves the same system (up to its weak prior)
+        LinearModel rls = RecursiveLeastSquares.trainer(1.0, 1e6).fit(x, y, N);
+        assertThat(rls.predict(new double[]{50, 1000, 300})).isCloseTo(m.predict(new double[]{50, 1000, 300}), within(1e-3));
+    }
+
+    @Test
+    void ridgeShrinksAndGradientDescentDoesNotConverge() {
+        double[] probe = {80, 1500, 300};
+        double truth = 200 + 40 * 80 + 3 * 1500;
+
+        LinearModel ridge = new RidgeTrainer(1.0).fit(x, y, N);
+        assertThat(ridge.predict(probe)).isCloseTo(truth, within(5.0));
+
+        LinearModel heavy = new RidgeTrainer(1e6).fit(x, y, N);
+        assertThat(Math.abs(heavy.predict(probe) - truth)).isGreaterThan(Math.abs(ridge.predict(probe) - truth));
+
+        LinearModel gd = new GradientDescentTrainer(1e-5, 8).fit(x, y, N);
+        assertThat(Math.abs(gd.predict(probe) - truth)).isGreaterThan(100.0);
+    }
+
+    @Test
+    void noLabelledRowsGivesZeroModel() {
+        LinearModel m = new RidgeTrainer(1.0).fit(new double[][]{{1, 2}}, new double[]{-1, -1}, 2);
+        assertThat(m.predict(new double[]{5})).isEqualTo(0.0);
+    }
+}
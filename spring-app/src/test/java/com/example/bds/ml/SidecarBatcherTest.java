@@ -0,0 +1,90 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+import com.example.bds.dto.RouteDecision;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SidecarBatcherTest {
+
+    private static PdfFeatures doc(int pages) {
+        return new PdfFeatures(1.0, pages, 0.0, 72, 0.0, 1.0, 0, 0, "x");
+    }
+
+    @Test
+    void concurrentCallsShareBatchesAndGetTheirOwnResult() {
+        List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        SidecarBatcher batcher = new SidecarBatcher(items -> {
+            batchSizes.add(items.size());
+            return Mono.just(items.stream().map(f -> new RouteDecision("STANDARD_PATH", f.pages())).toList())
+                    .delayElement(Duration.ofMillis(5));
+        }, 8, Duration.ofMillis(50), 2, 64);
+
+        List<RouteDecision> results = Flux.range(0, 20)
+                .flatMapSequential(i -> batcher.predict(doc(i)), 20)
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertThat(results).extracting(RouteDecision::predicted_peak_mb)
+                .containsExactlyElementsOf(Flux.range(0, 20).map(Integer::doubleValue).toIterable());
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(20);
+        assertThat(batchSizes).hasSizeLessThanOrEqualTo(4).allMatch(n -> n <= 8);
+        batcher.close();
+    }
+
+    @Test
+    void failedOrShortBatchFailsEveryCaller() {
+        SidecarBatcher failing = new SidecarBatcher(items -> Mono.error(new IllegalStateException("down")),
+                4, Duration.ofMillis(20), 1, 64);
+        assertThatThrownBy(() -> failing.predict(doc(1)).block(Duration.ofSeconds(5))).hasMessageContaining("down");
+
+        SidecarBatcher shortReply = new SidecarBatcher(items -> Mono.just(List.of()), 4, Duration.ofMillis(20), 1, 64);
+        assertThatThrownBy(() -> shortReply.predict(doc(1)).block(Duration.ofSeconds(5)))
+                .hasMessageContaining("0 results for 1");
+
+        shortReply.close();
+        assertThatThrownBy(() -> shortReply.predict(doc(1)).block(Duration.ofSeconds(5)))
+                .hasMessageContaining("closed");
+        failing.close();
+    }
+
+    @Test
+    void timerClosedBatchesWaitForASlowSidecarInsteadOfFailingTheStream() {
+        // 60 callers > 2 in flight x 8 per batch; arrivals every 2ms close batches on the 5ms timer
+        SidecarBatcher batcher = new SidecarBatcher(items ->
+                Mono.just(items.stream().map(f -> new RouteDecision("STANDARD_PATH", f.pages())).toList())
+                        .delayElement(Duration.ofMillis(100)), 8, Duration.ofMillis(5), 2, 64);
+
+        List<RouteDecision> results = Flux.range(0, 60)
+                .delayElements(Duration.ofMillis(2))
+                .flatMapSequential(i -> batcher.predict(doc(i)), 60)
+                .collectList()
+                .block(Duration.ofSeconds(10));
+
+        assertThat(results).extracting(RouteDecision::predicted_peak_mb)
+                .containsExactlyElementsOf(Flux.range(0, 60).map(Integer::doubleValue).toIterable());
+        // the stream survived: a later call is still served
+        assertThat(batcher.predict(doc(7)).block(Duration.ofSeconds(5)).predicted_peak_mb()).isEqualTo(7.0);
+        batcher.close();
+    }
+
+    @Test
+    void fullQueueRejectsAtOnce() {
+        SidecarBatcher batcher = new SidecarBatcher(items -> Mono.never(), 1, Duration.ofMillis(5), 1, 2);
+        for (int i = 0; i < 3; i++) batcher.predict(doc(i)).subscribe(d -> {}, e -> {}); // 1 in flight, 2 queued
+
+        assertThatThrownBy(() -> batcher.predict(doc(3)).block(Duration.ofSeconds(5)))
+                .isInstanceOf(RejectedExecutionException.class)
+                .hasMessageContaining("full");
+        batcher.close();
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.bds.ml;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.unix.DomainSocketAddress;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SidecarHttpTest {
+
+    @Test
+    void pooledClientExportsPoolGauges() {
+        DisposableServer server = HttpServer.create().host("127.0.0.1").port(0)
+                .route(r -> r.get("/health", (req, res) -> res.sendString(Mono.just("ok"))))
+                .bindNow();
+        var registry = new SimpleMeterRegistry();
+        ConnectionProvider pool = SidecarHttp.pool("test", new SidecarHttp.PoolSettings(4, 8,
+                Duration.ofSeconds(1), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ZERO), registry);
+        try {
+            String body = SidecarHttp.client(pool, "http11", null, Duration.ofMillis(250), Duration.ofSeconds(2))
+                    .get().uri("http://127.0.0.1:" + server.port() + "/health")
+                    .responseContent().aggregate().asString()
+                    .block(Duration.ofSeconds(5));
+
+            assertThat(body).isEqualTo("ok");
+            assertThat(registry.get("triage.http.pool.max").tag("pool", "test").gauge().value()).isEqualTo(4.0);
+            assertThat(registry.get("triage.http.pool.allocated").gauge().value()).isEqualTo(1.0);
+        } finally {
+            pool.disposeLater().block();
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void socketPathRoutesOverUnixDomainSocket(@TempDir Path dir) {
+        assumeTrue(Epoll.isAvailable(), "native epoll not available");
+        String socket = dir.resolve("sidecar.sock").toString();
+        DisposableServer server = HttpServer.create()
+                .bindAddress(() -> new DomainSocketAddress(socket))
+                .route(r -> r.get("/health", (req, res) -> res.sendString(Mono.just("uds"))))
+                .bindNow();
+        ConnectionProvider pool = ConnectionProvider.create("test-uds", 2);
+        try {
+            // host and port are ignored; only the path is used
+            String body = SidecarHttp.client(pool, "http11", socket, Duration.ofMillis(250), Duration.ofSeconds(2))
+                    .get().uri("http://localhost/health")
+                    .responseContent().aggregate().asString()
+                    .block(Duration.ofSeconds(5));
+
+            assertThat(body).isEqualTo("uds");
+        } finally {
+            pool.disposeLater().block();
+            server.disposeNow();
+        }
+    }
+
+    @Test
+    void unknownProtocolIsRejected() {
+        ConnectionProvider pool = ConnectionProvider.newConnection();
+        assertThatThrownBy(() -> SidecarHttp.client(pool, "h3", null, Duration.ofMillis(250), Duration.ofSeconds(2)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
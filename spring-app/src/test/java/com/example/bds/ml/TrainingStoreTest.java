@@ -0,0 +1,102 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TrainingStoreTest {
+
+    @TempDir
+    Path tmp;
+
+    private final PdfFeatures scanned = new PdfFeatures(1.5, 12, 0.75, 300, 64.0, 0.5, 1, 1, "Scanner, \"v2\"");
+    private final PdfFeatures word = new PdfFeatures(0.25, 3, 0.0, 150, 0.0, 1.0, 0, 0, "Word");
+
+    @Test
+    void appendedRowsReadBackAsColumns() throws Exception {
+        try (TrainingStore store = TrainingStore.open(tmp)) {
+            store.append(scanned, 1200.0);
+            store.append(word, -1.0);
+            store.append(scanned, Double.NaN);
+
+            TrainingStore.Columns c = store.read();
+            assertThat(c.rows()).isEqualTo(3);
+            assertThat(c.features()[1]).containsExactly(12, 3, 12);
+            assertThat(c.label()).containsExactly(1200.0, -1.0, 0.0);
+            assertThat(c.producer()).containsExactly(0, 1, 0);
+            assertThat(c.producers()).containsExactly("Scanner, \"v2\"", "Word");
+            assertThat(store.labelledCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void tornTrailingRowIsDroppedOnOpen() throws Exception {
+        try (TrainingStore store = TrainingStore.open(tmp)) {
+            store.append(scanned, 1200.0);
+            store.append(word, 300.0);
+        }
+        // simulate a crash after the label of row 2 but before its producer id
+        try (FileChannel ch = FileChannel.open(tmp.resolve("producer.i32"), StandardOpenOption.WRITE)) {
+            ch.truncate(Integer.BYTES);
+        }
+        try (TrainingStore store = TrainingStore.open(tmp)) {
+            assertThat(store.size()).isEqualTo(1);
+            store.append(word, 300.0);
+            assertThat(store.read().label()).containsExactly(1200.0, 300.0);
+        }
+    }
+
+    @Test
+    void appendFailingPartwayDoesNotShiftLaterRows() throws Exception {
+        try (TrainingStore store = TrainingStore.open(tmp)) {
+            store.append(scanned, 1200.0);
+
+            // the features of row 2 go in, then the label column fails
+            Field f = TrainingStore.class.getDeclaredField("doubleColumns");
+            f.setAccessible(true);
+            FileChannel[] columns = (FileChannel[]) f.get(store);
+            FileChannel label = columns[8];
+            FileChannel broken = FileChannel.open(tmp.resolve("broken"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            broken.close();
+            columns[8] = broken;
+            assertThatThrownBy(() -> store.append(scanned, 900.0)).isInstanceOf(IOException.class);
+            columns[8] = label;
+
+            store.append(word, 300.0);
+            TrainingStore.Columns c = store.read();
+            assertThat(c.rows()).isEqualTo(2);
+            assertThat(c.features()[1]).containsExactly(12, 3);
+            assertThat(c.label()).containsExactly(1200.0, 300.0);
+            assertThat(c.producer()).containsExactly(0, 1);
+        }
+        try (TrainingStore store = TrainingStore.open(tmp)) {
+            assertThat(store.read().features()[1]).containsExactly(12, 3);
+        }
+    }
+
+    @Test
+    void csvExportImportRoundTrips() throws Exception {
+        Path csv = tmp.resolve("training.csv");
+        try (TrainingStore store = TrainingStore.open(tmp.resolve("a"))) {
+            store.append(scanned, 1200.0);
+            store.append(word, -1.0);
+            store.exportCsv(csv);
+        }
+        try (TrainingStore store = TrainingStore.open(tmp.resolve("b"))) {
+            assertThat(store.importCsv(csv)).isEqualTo(2);
+            TrainingStore.Columns c = store.read();
+            assertThat(c.features()[0]).containsExactly(1.5, 0.25);
+            assertThat(c.label()).containsExactly(1200.0, -1.0);
+            assertThat(c.producers()).containsExactly("Scanner, \"v2\"", "Word");
+        }
+    }
+}
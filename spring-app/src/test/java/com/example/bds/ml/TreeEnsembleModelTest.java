@@ -0,0 +1,101 @@
+package com.example.bds.ml;
+
+import com.example.bds.dto.PdfFeatures;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TreeEnsembleModelTest {
+
+    /** Tree 0 splits on producer=Scanner; tree 1 on size_mb, then pages. */
+    private static final String MODEL = """
+            {"format": "bds-gbt/1",
+             "inputs": ["producer=Adobe", "producer=Scanner", "size_mb", "pages"],
+             "init": 100.0, "learning_rate": 0.5,
+             "trees": [
+               {"feature": [1, 0, 0], "threshold": [0.5, 0, 0], "left": [1, -1, -1], "right": [2, -1, -1],
+                "value": [0, 0, 200]},
+               {"feature": [2, 0, 3, 0, 0], "threshold": [10.0, 0, 100.5, 0, 0],
+                "left": [1, -1, 3, -1, -1], "right": [2, -1, 4, -1, -1], "value": [0, 20, 0, 40, 80]}
+             ]}
+            """;
+
+    private static TreeEnsembleModel parse(String json) throws Exception {
+        return TreeEnsembleModel.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static PdfFeatures doc(double sizeMb, int pages, String producer) {
+        return new PdfFeatures(sizeMb, pages, 0.5, 300, 64.0, 0.8, 0, 0, producer);
+    }
+
+    @Test
+    void sumsScaledLeavesOverInit() throws Exception {
+        TreeEnsembleModel m = parse(MODEL);
+
+        assertThat(m.trees()).isEqualTo(2);
+        assertThat(m.nodes()).isEqualTo(8);
+        assertThat(m.predict(doc(5.0, 10, "Scanner"))).isEqualTo(100 + 0.5 * 200 + 0.5 * 20);
+        assertThat(m.predict(doc(50.0, 500, "Adobe"))).isEqualTo(100 + 0.5 * 80);
+        // unknown producer encodes as all zeros, like handle_unknown="ignore"
+        assertThat(m.predict(doc(50.0, 10, "Word"))).isEqualTo(100 + 0.5 * 40);
+        assertThat(m.predict(doc(50.0, 10, null))).isEqualTo(100 + 0.5 * 40);
+        assertThat(m.predict(doc(Double.NaN, 10, "Adobe"))).isNaN();
+    }
+
+    @Test
+    void comparesFeaturesAtFloatPrecisionLikeScikitLearn() throws Exception {
+        // threshold is (double) 0.1f; 0.1000000016 is above it in double but rounds to 0.1f
+        TreeEnsembleModel m = parse("""
+                {"format": "bds-gbt/1", "inputs": ["size_mb"], "init": 0.0, "learning_rate": 1.0,
+                 "trees": [{"feature": [0, 0, 0], "threshold": [0.10000000149011612, 0, 0],
+                            "left": [1, -1, -1], "right": [2, -1, -1], "value": [0, 1, 2]}]}
+                """);
+
+        assertThat(m.predict(doc(0.1000000016, 1, "x"))).isEqualTo(1.0);
+        assertThat(m.predict(doc(0.1000001, 1, "x"))).isEqualTo(2.0);
+    }
+
+    @Test
+    void batchPathsMatchSingleDocumentScoring() throws Exception {
+        TreeEnsembleModel m = parse(TreeEnsembles.random(50, 6, 0.2, 11));
+        Random rnd = new Random(3);
+        List<PdfFeatures> docs = new ArrayList<>();
+        for (int i = 0; i < 103; i++) { // not a multiple of any lane count
+            String producer = i % 7 == 0 ? "Word" : TreeEnsembles.PRODUCERS[rnd.nextInt(TreeEnsembles.PRODUCERS.length)];
+            docs.add(new PdfFeatures(i == 5 ? Double.NaN : rnd.nextDouble() * 20, rnd.nextInt(200), rnd.nextDouble(),
+                    72 + rnd.nextInt(400), rnd.nextDouble() * 300, rnd.nextDouble(), rnd.nextInt(3), rnd.nextInt(2), producer));
+        }
+        double[] expected = docs.stream().mapToDouble(m::predict).toArray();
+        float[] x = m.encode(docs);
+
+        double[] scalar = new double[docs.size()];
+        m.predictScalar(x, docs.size(), scalar);
+        assertThat(scalar).containsExactly(expected);
+        assertThat(scalar[5]).isNaN();
+
+        assumeTrue(m.vectorized(), "jdk.incubator.vector not enabled");
+        double[] vector = new double[docs.size()];
+        m.predictVectorized(x, docs.size(), vector);
+        assertThat(vector).containsExactly(expected);
+    }
+
+    @Test
+    void malformedModelsAreRejected() {
+        assertThatThrownBy(() -> parse(MODEL.replace("bds-gbt/1", "bds-gbt/2")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parse(MODEL.replace("\"pages\"", "\"colour\"")))
+                .isInstanceOf(IllegalArgumentException.class);
+        // a child pointing back at its parent would loop forever
+        assertThatThrownBy(() -> parse(MODEL.replace("\"left\": [1, -1, -1]", "\"left\": [0, -1, -1]")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> parse(MODEL.replace("\"value\": [0, 0, 200]", "\"value\": [0, 0]")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.bds.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic {@code bds-gbt/1} models shaped like the sidecar's: six producer inputs plus the eight
+ * numeric features, random splits over realistic ranges. Used by tests and benchmarks.
+ */
+public final class TreeEnsembles {
+
+    public static final String[] PRODUCERS = {"Adobe", "Ghostscript", "PDFBox", "Scanner", "Unknown", "iText"};
+
+    private static final String[] NUMERIC = {"size_mb", "pages", "image_page_ratio", "dpi_estimate",
+            "avg_image_size_kb", "fonts_embedded_pct", "xref_error_count", "ocr_required"};
+    private static final double[] RANGE = {20, 200, 1, 400, 300, 1, 2, 1};
+
+    private TreeEnsembles() {}
+
+    /**
+     * @param trees    number of trees
+     * @param maxDepth depth limit; with {@code leafChance > 0} some branches stop earlier
+     * @param leafChance probability that a node below the root becomes a leaf early
+     * @param seed     random seed
+     * @return model JSON
+     */
+    public static String random(int trees, int maxDepth, double leafChance, long seed) {
+        Random rnd = new Random(seed);
+        StringBuilder sb = new StringBuilder("{\"format\":\"bds-gbt/1\",\"init\":600.0,\"learning_rate\":0.1,\"inputs\":[");
+        for (int p = 0; p < PRODUCERS.length; p++) sb.append('"').append("producer=").append(PRODUCERS[p]).append("\",");
+        for (int j = 0; j < NUMERIC.length; j++) sb.append(j == 0 ? "" : ",").append('"').append(NUMERIC[j]).append('"');
+        sb.append("],\"trees\":[");
+        for (int t = 0; t < trees; t++) {
+            Tree tree = new Tree();
+            tree.grow(0, maxDepth, leafChance, rnd);
+            sb.append(t == 0 ? "" : ",").append(tree.json());
+        }
+        return sb.append("]}").toString();
+    }
+
+    /** Nodes appended in preorder, so children always follow their parent. */
+    private static final class Tree {
+        final StringBuilder feature = new StringBuilder(), threshold = new StringBuilder(),
+                left = new StringBuilder(), right = new StringBuilder(), value = new StringBuilder();
+        final List<int[]> links = new ArrayList<>();
+        final List<double[]> nodes = new ArrayList<>();
+
+        int grow(int depth, int maxDepth, double leafChance, Random rnd) {
+            int id = nodes.size();
+            int[] link = {-1, -1};
+            links.add(link);
+            if (depth == maxDepth || (depth > 0 && rnd.nextDouble() < leafChance)) {
+                nodes.add(new double[]{0, 0, rnd.nextGaussian() * 100});
+                return id;
+            }
+            int input = rnd.nextInt(PRODUCERS.length + NUMERIC.length);
+            double th = input < PRODUCERS.length ? 0.5 : rnd.nextDouble() * RANGE[input - PRODUCERS.length];
+            nodes.add(new double[]{input, th, 0});
+            link[0] = grow(depth + 1, maxDepth, leafChance, rnd);
+            link[1] = grow(depth + 1, maxDepth, leafChance, rnd);
+            return id;
+        }
+
+        String json() {
+            for (int n = 0; n < nodes.size(); n++) {
+                String sep = n == 0 ? "" : ",";
+                feature.append(sep).append((int) nodes.get(n)[0]);
+                threshold.append(sep).append(nodes.get(n)[1]);
+                left.append(sep).append(links.get(n)[0]);
+                right.append(sep).append(links.get(n)[1]);
+                value.append(sep).append(nodes.get(n)[2]);
+            }
+            return "{\"feature\":[" + feature + "],\"threshold\":[" + threshold + "],\"left\":[" + left
+                    + "],\"right\":[" + right + "],\"value\":[" + value + "]}";
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.bds.pdf;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedRandomAccessReadTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void readsAcrossChunkBoundaries() throws Exception {
+        byte[] data = new byte[5000];
+        new Random(1).nextBytes(data);
+        Path f = tmp.resolve("data.bin");
+        Files.write(f, data);
+
+        // 1 KiB chunks → the file spans 5 mappings
+        try (FileChannel ch = FileChannel.open(f, StandardOpenOption.READ);
+             MappedRandomAccessRead in = new MappedRandomAccessRead(ch, 10)) {
+            assertThat(in.length()).isEqualTo(5000);
+
+            in.seek(1020);
+            byte[] buf = new byte[10];
+            assertThat(in.read(buf, 0, 10)).isEqualTo(10);
+            for (int i = 0; i < 10; i++) assertThat(buf[i]).isEqualTo(data[1020 + i]);
+            assertThat(in.getPosition()).isEqualTo(1030);
+
+            in.seek(4998);
+            assertThat(in.read()).isEqualTo(data[4998] & 0xFF);
+            assertThat(in.read(buf, 0, 10)).isEqualTo(1);
+            assertThat(in.isEOF()).isTrue();
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void extractFromPathMatchesByteArray() throws Exception {
+        byte[] pdf;
+        try (var is = getClass().getResourceAsStream("/samples/text.pdf")) {
+            pdf = is.readAllBytes();
+        }
+        Path f = tmp.resolve("text.pdf");
+        Files.write(f, pdf);
+
+        PdfFeatureExtractor extractor = new PdfFeatureExtractor();
+        assertThat(extractor.extract(f)).isEqualTo(extractor.extract(pdf));
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bds.pdf;
+
+import com.example.bds.bench.SamplePdfs;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfFeatureExtractorTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void parallelPageWalk_matchesSequential() throws Exception {
+        byte[] pdf = SamplePdfs.scanned(61, 3);
+        Path f = tmp.resolve("scanned.pdf");
+        Files.write(f, pdf);
+
+        PdfFeatureExtractor sequential = new PdfFeatureExtractor(false, 0, Integer.MAX_VALUE, 1);
+        try (PdfFeatureExtractor parallel = new PdfFeatureExtractor(false, 4, 10, 4)) {
+            var expected = sequential.extract(pdf);
+            assertThat(parallel.extract(pdf)).isEqualTo(expected);
+            assertThat(parallel.extract(f)).isEqualTo(expected);
+        }
+    }
+}
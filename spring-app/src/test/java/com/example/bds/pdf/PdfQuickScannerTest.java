@@ -0,0 +1,48 @@
+package com.example.bds.pdf;
+
+import com.example.bds.bench.SamplePdfs;
+import com.example.bds.dto.PdfFeatures;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfQuickScannerTest {
+
+    private final PdfQuickScanner scanner = new PdfQuickScanner();
+    /** Page-model walk only, so the comparison is not against the scanner itself. */
+    private final PdfFeatureExtractor pageModel = new PdfFeatureExtractor(false, 0, Integer.MAX_VALUE, 1);
+
+    @Test
+    void textPdf_matchesFullScan() throws Exception {
+        byte[] pdf;
+        try (var is = getClass().getResourceAsStream("/samples/text.pdf")) {
+            pdf = is.readAllBytes();
+        }
+        assertSameAsFullScan(pdf);
+    }
+
+    @Test
+    void mixedScannedPdf_matchesFullScan() throws Exception {
+        assertSameAsFullScan(SamplePdfs.scanned(40, 3));
+    }
+
+    @Test
+    void brokenPageCount_bailsOut() throws Exception {
+        try (PDDocument doc = Loader.loadPDF(SamplePdfs.scanned(3, 1))) {
+            doc.getPages().getCOSObject().setInt(COSName.COUNT, 7);
+            assertThat(scanner.scan(doc, 1.0)).isNull();
+        }
+    }
+
+    private void assertSameAsFullScan(byte[] pdf) throws Exception {
+        double sizeMb = pdf.length / (1024.0 * 1024.0);
+        PdfFeatures quick;
+        try (PDDocument doc = Loader.loadPDF(pdf)) {
+            quick = scanner.scan(doc, sizeMb);
+        }
+        assertThat(quick).isNotNull().isEqualTo(pageModel.extract(pdf));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bds.workload;
+
+import com.example.bds.dto.PdfFeatures;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WorkloadRunnerTest {
+
+    private static final PdfFeatures TEXT_PDF = new PdfFeatures(0.01, 1, 0.0, 0, 0.0, 1.0, 0, 0, "x");
+
+    private static Path sample() throws Exception {
+        return new ClassPathResource("samples/text.pdf").getFile().toPath();
+    }
+
+    private static WorkloadRunner runner(List<PdfWorkload> workloads, String kind, int maxConcurrency, int queue) {
+        return new WorkloadRunner(workloads, kind, DataSize.ofMegabytes(1), maxConcurrency, queue,
+                "allocation", "combined", Duration.ofMillis(10), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void everyWorkloadProcessesARealDocument() throws Exception {
+        List<PdfWorkload> all = List.of(new WatermarkWorkload(), new RasterizeWorkload(300), new TextExtractionWorkload());
+        for (PdfWorkload w : all) {
+            WorkloadRunner runner = runner(all, w.name(), 1, 1);
+            Measurement r = runner.measure(sample(), TEXT_PDF).block(Duration.ofSeconds(30));
+            assertThat(r.value()).as(w.name()).isPositive();
+            assertThat(r.heapPeakMb()).as(w.name()).isPositive();
+            assertThat(r.allocatedMb()).as(w.name()).isGreaterThanOrEqualTo(r.heapPeakMb());
+            assertThat(r.labelMb()).as(w.name()).isGreaterThanOrEqualTo(r.heapPeakMb() + r.offHeapMb());
+            runner.close();
+        }
+    }
+
+    @Test
+    void combinedLabelIgnoresResidentGrowthWhileOtherJobsRun() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        PdfWorkload overlapping = new PdfWorkload() {
+            @Override public String name() { return "overlapping"; }
+            @Override public long run(Path pdf, PdfFeatures f) {
+                bothRunning.countDown();
+                try {
+                    bothRunning.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            }
+        };
+        WorkloadRunner runner = runner(List.of(overlapping), "overlapping", 2, 2);
+        Mono<Measurement> first = runner.measure(sample(), TEXT_PDF).cache();
+        Mono<Measurement> second = runner.measure(sample(), TEXT_PDF).cache();
+        first.subscribe();
+        second.subscribe();
+        for (Measurement r : List.of(first.block(Duration.ofSeconds(5)), second.block(Duration.ofSeconds(5)))) {
+            assertThat(r.labelSource()).isEqualTo("heap+off-heap");
+            assertThat(r.labelMb()).isEqualTo(r.heapPeakMb() + r.offHeapMb());
+        }
+
+        // alone (the latch is spent), resident growth counts where the OS reports it
+        Measurement alone = runner.measure(sample(), TEXT_PDF).block(Duration.ofSeconds(5));
+        assertThat(alone.labelSource()).isEqualTo(Double.isNaN(alone.rssMb()) ? "heap+off-heap" : "combined");
+        runner.close();
+    }
+
+    @Test
+    void rasterResolutionFollowsTheDpiEstimateWithinBounds() {
+        RasterizeWorkload raster = new RasterizeWorkload(200);
+        assertThat(raster.dpi(0)).isEqualTo(72f);
+        assertThat(raster.dpi(150)).isEqualTo(150f);
+        assertThat(raster.dpi(600)).isEqualTo(200f);
+    }
+
+    @Test
+    void poolIsSizedByHeapAndFullQueueRejects() throws Exception {
+        long gb = 1L << 30;
+        assertThat(WorkloadRunner.concurrency(8 * gb, gb / 2, 0)).isEqualTo(8);
+        assertThat(WorkloadRunner.concurrency(8 * gb, gb / 2, 3)).isEqualTo(3);
+        assertThat(WorkloadRunner.concurrency(gb / 4, gb, 0)).isEqualTo(1);
+
+        CountDownLatch release = new CountDownLatch(1);
+        PdfWorkload blocking = new PdfWorkload() {
+            @Override public String name() { return "blocking"; }
+            @Override public long run(Path pdf, PdfFeatures f) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 1;
+            }
+        };
+        WorkloadRunner runner = runner(List.of(blocking), "blocking", 1, 1);
+        Mono<Measurement> running = runner.measure(sample(), TEXT_PDF).cache();
+        Mono<Measurement> queued = runner.measure(sample(), TEXT_PDF).cache();
+        running.subscribe();
+        queued.subscribe();
+        assertThatThrownBy(() -> runner.measure(sample(), TEXT_PDF).block(Duration.ofSeconds(5)))
+                .isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        assertThat(running.block(Duration.ofSeconds(5)).value()).isEqualTo(1L);
+        assertThat(queued.block(Duration.ofSeconds(5)).value()).isEqualTo(1L);
+        runner.close();
+
+        assertThatThrownBy(() -> runner(List.of(blocking), "ocr", 1, 1))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("blocking");
+        assertThatThrownBy(() -> new WorkloadRunner(List.of(blocking), "blocking", DataSize.ofMegabytes(1), 1, 1,
+                "allocation", "pss", Duration.ZERO, new SimpleMeterRegistry()))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("bds.workload.label");
+    }
+}
@@ -5,6 +5,7 @@ Train Memory Spike Predictor (scikit-learn Pipeline) and export:
   - metrics.json
   - model_manifest.json
   - sample_data.csv
+  - tree_ensemble.json
 
 Usage:
   python memory_spike_train.py --out-dir ../sidecar/models --seed 7
@@ -24,6 +25,8 @@ Artifacts produced:
   - metrics.json          (evaluation metrics on holdout test set)
   - model_manifest.json   (created_at + metrics + feature columns)
   - sample_data.csv       (random 500-row sample of training data, for quick testing)
+  - tree_ensemble.json    (fitted trees + producer encoding as flat arrays, scored in-process
+                           by the Spring app's TreeEnsembleModel instead of calling the sidecar)
 
 How to extend
 -------------
@@ -134,14 +137,19 @@ def load_data(path=None, seed=7) -> pd.DataFrame:
     Load dataset from a CSV file (if provided) or synthesize new data.
 
     Args:
-        path: optional file path to CSV containing the full schema (including peak_mem_mb)
+        path: optional file path to CSV containing the full schema (including peak_mem_mb).
+              The Spring app's training.csv export (label column `label_mb`, negative = no
+              label) is accepted too.
         seed: RNG seed for synthetic data
 
     Returns:
         DataFrame ready for training
     """
     if path and os.path.exists(path):
-        return pd.read_csv(path)
+        df = pd.read_csv(path)
+        if "label_mb" in df.columns:
+            df = df[df["label_mb"] >= 0].rename(columns={"label_mb": "peak_mem_mb"})
+        return df
     return synthesize_data(seed=seed)
 
 
@@ -208,6 +216,89 @@ def train(df: pd.DataFrame, seed=42):
     return pipe, metrics
 
 
+TREE_FORMAT = "bds-gbt/1"
+
+
+def export_trees(pipe: Pipeline) -> dict:
+    """
+    Flatten the fitted GradientBoostingRegressor and its producer encoding for
+    com.example.bds.ml.TreeEnsembleModel.
+
+    Layout (see the Java class for the evaluation rule):
+      - inputs        : model input columns in order; "producer=<category>" for one-hot
+                        columns, the PdfFeatures field name for numeric passthrough columns
+      - init          : baseline raw prediction (the init estimator's constant)
+      - learning_rate : shrinkage applied to every leaf value
+      - trees         : per tree, parallel node arrays feature/threshold/left/right/value;
+                        left == -1 marks a leaf, value is the raw leaf value
+
+    Args:
+        pipe: fitted Pipeline from train()
+
+    Returns:
+        JSON-serializable dict
+    """
+    pre = pipe.named_steps["pre"]
+    gbr = pipe.named_steps["gbr"]
+
+    inputs = []
+    for name, transformer, columns in pre.transformers_:
+        if name == "cat":
+            inputs += [f"producer={c}" for c in transformer.categories_[0]]
+        elif name == "num":
+            inputs += list(columns)
+    if len(inputs) != gbr.n_features_in_:
+        raise RuntimeError(f"Export sees {len(inputs)} inputs, model expects {gbr.n_features_in_}")
+
+    if isinstance(gbr.init_, str):  # init="zero"
+        init = 0.0
+    else:
+        init = float(np.ravel(gbr.init_.predict(np.zeros((1, gbr.n_features_in_))))[0])
+
+    trees = []
+    for est in gbr.estimators_[:, 0]:
+        t = est.tree_
+        trees.append({
+            "feature": [int(v) if l >= 0 else 0 for v, l in zip(t.feature, t.children_left)],
+            "threshold": [float(v) for v in t.threshold],
+            "left": [int(v) for v in t.children_left],
+            "right": [int(v) for v in t.children_right],
+            "value": [float(v) for v in t.value[:, 0, 0]],
+        })
+    return {
+        "format": TREE_FORMAT,
+        "inputs": inputs,
+        "init": init,
+        "learning_rate": float(gbr.learning_rate),
+        "trees": trees,
+    }
+
+
+def score_exported(model: dict, X: pd.DataFrame) -> np.ndarray:
+    """
+    Reference implementation of the Java evaluator, used to check the export: inputs are
+    narrowed to float32 before each comparison, as scikit-learn trees do.
+    """
+    cols = []
+    for name in model["inputs"]:
+        if name.startswith("producer="):
+            cols.append((X["producer"].astype(str) == name[len("producer="):]).to_numpy(dtype=np.float32))
+        else:
+            cols.append(X[name].to_numpy(dtype=np.float32))
+    Z = np.column_stack(cols)
+    out = np.full(len(X), model["init"], dtype=np.float64)
+    lr = model["learning_rate"]
+    for tree in model["trees"]:
+        feature, threshold = tree["feature"], tree["threshold"]
+        left, right, value = tree["left"], tree["right"], tree["value"]
+        for i in range(len(X)):
+            n = 0
+            while left[n] >= 0:
+                n = left[n] if Z[i, feature[n]] <= threshold[n] else right[n]
+            out[i] += lr * value[n]
+    return out
+
+
 def main():
     """
     CLI entry point.
@@ -258,6 +349,19 @@ def main():
     }
     (out_dir / "model_manifest.json").write_text(json.dumps(manifest, indent=2))
 
+    # -----------------------------
+    # Export trees for in-process scoring (Java TreeEnsembleModel)
+    # -----------------------------
+    # Parity check on a slice of the data: the flat export must reproduce pipe.predict,
+    # otherwise the Java side would silently route differently from the sidecar.
+    trees = export_trees(pipe)
+    probe = df.drop(columns=["peak_mem_mb"]).iloc[:500]
+    drift = float(np.max(np.abs(score_exported(trees, probe) - pipe.predict(probe))))
+    if drift > 1e-6:
+        raise RuntimeError(f"Tree export parity FAILED: max |diff| = {drift}")
+    (out_dir / "tree_ensemble.json").write_text(json.dumps(trees, separators=(",", ":")))
+    print(f"Tree export: OK — {len(trees['trees'])} trees, max |diff| vs pipeline = {drift:.2e}")
+
     # -----------------------------
     # Smoke test the pickle
     # -----------------------------